@@ -0,0 +1,107 @@
+/**
+ * Copyright (C) 2006-2015 phloc systems
+ * http://www.phloc.com
+ * office[at]phloc[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.phloc.db.api.h2;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import com.phloc.commons.annotations.Nonempty;
+
+/**
+ * Predefined sets of H2 connection properties for common workloads. Use
+ * {@link H2ConnectionProperties#applyPreset(EH2ConnectionPreset)} to apply
+ * them.
+ * 
+ * @author Philip Helger
+ */
+public enum EH2ConnectionPreset
+{
+  /**
+   * Mostly reading access: a large cache, multi version concurrency so that
+   * readers never wait for writers, and less frequent log flushing.
+   */
+  READ_MOSTLY ("read-mostly")
+  {
+    @Override
+    public void applyTo (@Nonnull final H2ConnectionProperties aProps)
+    {
+      aProps.setCacheSizeKB (256 * 1024).setMVCC (true).setWriteDelayMillis (2000).setQueryCacheSize (64);
+    }
+  },
+  /**
+   * Importing large amounts of data: no transaction log, no undo log, no
+   * locking and a large cache. The database is not crash safe with this preset
+   * and must only be accessed by the importing connection.
+   */
+  BULK_LOAD ("bulk-load")
+  {
+    @Override
+    public void applyTo (@Nonnull final H2ConnectionProperties aProps)
+    {
+      aProps.setLog (EH2Log.DISABLE)
+            .setUndoLog (false)
+            .setLockMode (EH2LockMode.READ_UNCOMMITED)
+            .setCacheSizeKB (512 * 1024)
+            .setMaxOperationMemory (1000000);
+    }
+  },
+  /**
+   * Interactive access: multi version concurrency, operations fail fast
+   * instead of waiting long for locks, and results are kept in memory.
+   */
+  LOW_LATENCY ("low-latency")
+  {
+    @Override
+    public void applyTo (@Nonnull final H2ConnectionProperties aProps)
+    {
+      aProps.setCacheSizeKB (128 * 1024).setMVCC (true).setLockTimeoutMillis (250).setEarlyFilter (true);
+    }
+  };
+
+  private final String m_sID;
+
+  private EH2ConnectionPreset (@Nonnull @Nonempty final String sID)
+  {
+    m_sID = sID;
+  }
+
+  @Nonnull
+  @Nonempty
+  public String getID ()
+  {
+    return m_sID;
+  }
+
+  /**
+   * Set all properties of this preset in the passed properties.
+   * 
+   * @param aProps
+   *        The properties to modify. May not be <code>null</code>.
+   */
+  public abstract void applyTo (@Nonnull H2ConnectionProperties aProps);
+
+  @Nullable
+  public static EH2ConnectionPreset getFromIDOrNull (@Nullable final String sID)
+  {
+    if (sID != null)
+      for (final EH2ConnectionPreset e : values ())
+        if (e.m_sID.equals (sID))
+          return e;
+    return null;
+  }
+}
@@ -0,0 +1,119 @@
+/**
+ * Copyright (C) 2006-2015 phloc systems
+ * http://www.phloc.com
+ * office[at]phloc[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.phloc.db.api.h2;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import com.phloc.commons.annotations.Nonempty;
+
+/**
+ * List of H2 connection properties that can be appended to the connection
+ * URL. The default values refer to H2 1.4. <a
+ * href="http://www.h2database.com/html/features.html#database_url"
+ * >Source</a>
+ * 
+ * @author Philip Helger
+ */
+public enum EH2ConnectionProperty
+{
+  /** Forbid or allow write access to the database ("r" or "rw") */
+  ACCESS_MODE_DATA ("ACCESS_MODE_DATA", "rw"),
+  /** Number of changed rows after which the statistics are updated */
+  ANALYZE_AUTO ("ANALYZE_AUTO", "2000"),
+  /**
+   * Automatically start a server if the database is opened by a second
+   * process (true/false)
+   */
+  AUTO_SERVER ("AUTO_SERVER", Boolean.FALSE.toString ()),
+  /** The maximum size of the cache in KB */
+  CACHE_SIZE ("CACHE_SIZE", "65536"),
+  /** The cache algorithm: LRU, SOFT_LRU or TQ */
+  CACHE_TYPE ("CACHE_TYPE", "LRU"),
+  /** Compress large objects (true/false) */
+  COMPRESS ("COMPRESS", Boolean.FALSE.toString ()),
+  /**
+   * Number of seconds the database is kept open after the last connection was
+   * closed. -1 keeps in-memory databases open as long as the VM lives.
+   */
+  DB_CLOSE_DELAY ("DB_CLOSE_DELAY", "0"),
+  /** Close the database when the VM exits (true/false) */
+  DB_CLOSE_ON_EXIT ("DB_CLOSE_ON_EXIT", Boolean.TRUE.toString ()),
+  /** Let table implementations apply filter conditions early (true/false) */
+  EARLY_FILTER ("EARLY_FILTER", Boolean.FALSE.toString ()),
+  /** The file locking method: FILE, SOCKET, FS or NO */
+  FILE_LOCK ("FILE_LOCK", "FILE"),
+  /** Only open the database if it already exists (true/false) */
+  IFEXISTS ("IFEXISTS", Boolean.FALSE.toString ()),
+  /** Enable the JMX management beans (true/false) */
+  JMX ("JMX", Boolean.FALSE.toString ()),
+  /** The lock mode. See {@link EH2LockMode} */
+  LOCK_MODE ("LOCK_MODE", Integer.toString (EH2LockMode.DEFAULT.getValue ())),
+  /** The number of milliseconds to wait for a lock */
+  LOCK_TIMEOUT ("LOCK_TIMEOUT", "2000"),
+  /** The transaction log mode. See {@link EH2Log} */
+  LOG ("LOG", Integer.toString (EH2Log.DEFAULT.getValue ())),
+  /** The maximum number of rows of a result kept in memory */
+  MAX_MEMORY_ROWS ("MAX_MEMORY_ROWS", null),
+  /** The maximum number of undo records per session kept in memory */
+  MAX_MEMORY_UNDO ("MAX_MEMORY_UNDO", "50000"),
+  /** The maximum number of rows kept in memory by a single operation */
+  MAX_OPERATION_MEMORY ("MAX_OPERATION_MEMORY", "100000"),
+  /** The compatibility mode, e.g. "MySQL" or "Oracle" */
+  MODE ("MODE", "REGULAR"),
+  /** Allow concurrent access from multiple threads (true/false) */
+  MULTI_THREADED ("MULTI_THREADED", Boolean.FALSE.toString ()),
+  /** Use multi version concurrency control (true/false) */
+  MVCC ("MVCC", Boolean.TRUE.toString ()),
+  /** Use the MVStore instead of the page store (true/false) */
+  MV_STORE ("MV_STORE", Boolean.TRUE.toString ()),
+  /** The page size of new page store databases in bytes */
+  PAGE_SIZE ("PAGE_SIZE", "4096"),
+  /** The number of cached queries per session */
+  QUERY_CACHE_SIZE ("QUERY_CACHE_SIZE", "8"),
+  /** The trace level of the trace file (0-3) */
+  TRACE_LEVEL_FILE ("TRACE_LEVEL_FILE", "1"),
+  /** The trace level of System.out (0-3) */
+  TRACE_LEVEL_SYSTEM_OUT ("TRACE_LEVEL_SYSTEM_OUT", "0"),
+  /** Enable (1) or disable (0) the undo log */
+  UNDO_LOG ("UNDO_LOG", "1"),
+  /** The maximum delay in milliseconds between a commit and flushing the log */
+  WRITE_DELAY ("WRITE_DELAY", "500");
+
+  private final String m_sName;
+  private final String m_sDefaultValue;
+
+  private EH2ConnectionProperty (@Nonnull @Nonempty final String sName, @Nullable final String sDefaultValue)
+  {
+    m_sName = sName;
+    m_sDefaultValue = sDefaultValue;
+  }
+
+  @Nonnull
+  @Nonempty
+  public String getName ()
+  {
+    return m_sName;
+  }
+
+  @Nullable
+  public String getDefaultValue ()
+  {
+    return m_sDefaultValue;
+  }
+}
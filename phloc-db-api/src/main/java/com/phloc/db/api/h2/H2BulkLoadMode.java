@@ -0,0 +1,177 @@
+/**
+ * Copyright (C) 2006-2015 phloc systems
+ * http://www.phloc.com
+ * office[at]phloc[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.phloc.db.api.h2;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.CheckForSigned;
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+
+import com.phloc.commons.annotations.ReturnsMutableCopy;
+import com.phloc.commons.string.ToStringGenerator;
+
+/**
+ * The H2 settings that are changed to speed up bulk imports, together with
+ * their values before the import. The transaction log, the undo log and
+ * locking are disabled and the cache is enlarged. Afterwards the previous
+ * values are restored. As the undo log setting of a session cannot be
+ * queried, it is always re-enabled.
+ * 
+ * @author Philip Helger
+ */
+@Immutable
+public final class H2BulkLoadMode
+{
+  /** Default cache size during bulk load: 512 MB */
+  public static final long DEFAULT_CACHE_SIZE_KB = 512 * 1024L;
+
+  /**
+   * Query for the settings changed by the bulk load mode. Returns the setting
+   * names in the first column and their values in the second column.
+   */
+  public static final String SQL_READ_SETTINGS = "SELECT 'LOCK_MODE', CAST(LOCK_MODE() AS VARCHAR) " +
+                                                 "UNION ALL SELECT NAME, VALUE FROM INFORMATION_SCHEMA.SETTINGS " +
+                                                 "WHERE NAME IN ('LOG', 'CACHE_SIZE', 'MV_STORE', 'info.CACHE_MAX_SIZE')";
+
+  private final int m_nPrevLockMode;
+  private final int m_nPrevLog;
+  private final long m_nPrevCacheSizeKB;
+  private final long m_nBulkCacheSizeKB;
+
+  private static int _getInt (@Nullable final String sValue, final int nDefault)
+  {
+    try
+    {
+      return sValue == null ? nDefault : Integer.parseInt (sValue.trim ());
+    }
+    catch (final NumberFormatException ex)
+    {
+      return nDefault;
+    }
+  }
+
+  /**
+   * Constructor
+   * 
+   * @param aCurrentSettings
+   *        The current settings as read by {@link #SQL_READ_SETTINGS}. May not
+   *        be <code>null</code>.
+   * @param nBulkCacheSizeKB
+   *        The cache size in KB to use during the bulk load. Must be &gt; 0.
+   */
+  public H2BulkLoadMode (@Nonnull final Map <String, String> aCurrentSettings,
+                         @Nonnegative final long nBulkCacheSizeKB)
+  {
+    if (aCurrentSettings == null)
+      throw new NullPointerException ("currentSettings");
+    if (nBulkCacheSizeKB <= 0)
+      throw new IllegalArgumentException ("BulkCacheSizeKB must be > 0: " + nBulkCacheSizeKB);
+
+    m_nPrevLockMode = _getInt (aCurrentSettings.get ("LOCK_MODE"), EH2LockMode.DEFAULT.getValue ());
+    m_nPrevLog = _getInt (aCurrentSettings.get ("LOG"), EH2Log.DEFAULT.getValue ());
+
+    // An explicitly set cache size is in KB. Otherwise the maximum cache size
+    // is reported in KB for the page store and in MB for the MVStore. For
+    // in-memory databases no cache size is available
+    long nCacheSizeKB = _getInt (aCurrentSettings.get ("CACHE_SIZE"), -1);
+    if (nCacheSizeKB < 0)
+    {
+      nCacheSizeKB = _getInt (aCurrentSettings.get ("info.CACHE_MAX_SIZE"), -1);
+      if (nCacheSizeKB > 0 && Boolean.parseBoolean (aCurrentSettings.get ("MV_STORE")))
+        nCacheSizeKB *= 1024;
+    }
+    m_nPrevCacheSizeKB = nCacheSizeKB;
+    m_nBulkCacheSizeKB = nBulkCacheSizeKB;
+  }
+
+  public int getPreviousLockMode ()
+  {
+    return m_nPrevLockMode;
+  }
+
+  public int getPreviousLog ()
+  {
+    return m_nPrevLog;
+  }
+
+  /**
+   * @return The cache size in KB before the bulk load or -1 if it is unknown.
+   *         In that case the cache size is not changed.
+   */
+  @CheckForSigned
+  public long getPreviousCacheSizeKB ()
+  {
+    return m_nPrevCacheSizeKB;
+  }
+
+  @Nonnegative
+  public long getBulkCacheSizeKB ()
+  {
+    return m_nBulkCacheSizeKB;
+  }
+
+  /**
+   * @return The statements to enable the bulk load mode. Never
+   *         <code>null</code>.
+   */
+  @Nonnull
+  @ReturnsMutableCopy
+  public List <String> getAllEnableStatements ()
+  {
+    final List <String> ret = new ArrayList <String> ();
+    ret.add ("SET LOG " + EH2Log.DISABLE.getValue ());
+    ret.add ("SET UNDO_LOG 0");
+    ret.add ("SET LOCK_MODE " + EH2LockMode.READ_UNCOMMITED.getValue ());
+    if (m_nPrevCacheSizeKB >= 0 && m_nBulkCacheSizeKB > m_nPrevCacheSizeKB)
+      ret.add ("SET CACHE_SIZE " + m_nBulkCacheSizeKB);
+    return ret;
+  }
+
+  /**
+   * @return The statements to restore the previous settings, followed by
+   *         "ANALYZE" to update the statistics. Never <code>null</code>.
+   */
+  @Nonnull
+  @ReturnsMutableCopy
+  public List <String> getAllRestoreStatements ()
+  {
+    final List <String> ret = new ArrayList <String> ();
+    ret.add ("SET LOCK_MODE " + m_nPrevLockMode);
+    ret.add ("SET UNDO_LOG 1");
+    ret.add ("SET LOG " + m_nPrevLog);
+    if (m_nPrevCacheSizeKB >= 0 && m_nBulkCacheSizeKB > m_nPrevCacheSizeKB)
+      ret.add ("SET CACHE_SIZE " + m_nPrevCacheSizeKB);
+    ret.add ("ANALYZE");
+    return ret;
+  }
+
+  @Override
+  public String toString ()
+  {
+    return new ToStringGenerator (this).append ("prevLockMode", m_nPrevLockMode)
+                                       .append ("prevLog", m_nPrevLog)
+                                       .append ("prevCacheSizeKB", m_nPrevCacheSizeKB)
+                                       .append ("bulkCacheSizeKB", m_nBulkCacheSizeKB)
+                                       .toString ();
+  }
+}
@@ -0,0 +1,241 @@
+/**
+ * Copyright (C) 2006-2015 phloc systems
+ * http://www.phloc.com
+ * office[at]phloc[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.phloc.db.api.h2;
+
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.NotThreadSafe;
+
+import com.phloc.commons.annotations.ReturnsMutableCopy;
+import com.phloc.commons.string.ToStringGenerator;
+
+/**
+ * Builder for H2 connection properties. The resulting map can be passed to
+ * {@link H2Helper#buildJDBCString(String, Map)}.
+ * 
+ * @author Philip Helger
+ */
+@NotThreadSafe
+public class H2ConnectionProperties
+{
+  private final Map <EH2ConnectionProperty, String> m_aProps = new EnumMap <EH2ConnectionProperty, String> (EH2ConnectionProperty.class);
+
+  public H2ConnectionProperties ()
+  {}
+
+  /**
+   * Copy constructor
+   * 
+   * @param aOther
+   *        The object to copy from. May not be <code>null</code>.
+   */
+  public H2ConnectionProperties (@Nonnull final H2ConnectionProperties aOther)
+  {
+    if (aOther == null)
+      throw new NullPointerException ("other");
+    m_aProps.putAll (aOther.m_aProps);
+  }
+
+  /**
+   * Create new connection properties from a preset.
+   * 
+   * @param ePreset
+   *        The preset to use. May not be <code>null</code>.
+   * @return The new connection properties. Never <code>null</code>.
+   */
+  @Nonnull
+  public static H2ConnectionProperties createFromPreset (@Nonnull final EH2ConnectionPreset ePreset)
+  {
+    return new H2ConnectionProperties ().applyPreset (ePreset);
+  }
+
+  @Nonnull
+  public H2ConnectionProperties applyPreset (@Nonnull final EH2ConnectionPreset ePreset)
+  {
+    if (ePreset == null)
+      throw new NullPointerException ("preset");
+    ePreset.applyTo (this);
+    return this;
+  }
+
+  @Nonnull
+  public H2ConnectionProperties set (@Nonnull final EH2ConnectionProperty eProperty, @Nullable final String sValue)
+  {
+    if (eProperty == null)
+      throw new NullPointerException ("property");
+    if (sValue == null)
+      m_aProps.remove (eProperty);
+    else
+      m_aProps.put (eProperty, sValue);
+    return this;
+  }
+
+  @Nonnull
+  private H2ConnectionProperties _set (@Nonnull final EH2ConnectionProperty eProperty, final long nValue)
+  {
+    return set (eProperty, Long.toString (nValue));
+  }
+
+  @Nonnull
+  private H2ConnectionProperties _set (@Nonnull final EH2ConnectionProperty eProperty, final boolean bValue)
+  {
+    return set (eProperty, Boolean.toString (bValue).toUpperCase (Locale.US));
+  }
+
+  @Nonnull
+  public H2ConnectionProperties remove (@Nonnull final EH2ConnectionProperty eProperty)
+  {
+    return set (eProperty, null);
+  }
+
+  @Nullable
+  public String get (@Nonnull final EH2ConnectionProperty eProperty)
+  {
+    return m_aProps.get (eProperty);
+  }
+
+  public boolean contains (@Nonnull final EH2ConnectionProperty eProperty)
+  {
+    return m_aProps.containsKey (eProperty);
+  }
+
+  public boolean isEmpty ()
+  {
+    return m_aProps.isEmpty ();
+  }
+
+  @Nonnull
+  public H2ConnectionProperties setCacheSizeKB (@Nonnegative final long nCacheSizeKB)
+  {
+    if (nCacheSizeKB < 0)
+      throw new IllegalArgumentException ("CacheSizeKB must be >= 0: " + nCacheSizeKB);
+    return _set (EH2ConnectionProperty.CACHE_SIZE, nCacheSizeKB);
+  }
+
+  @Nonnull
+  public H2ConnectionProperties setLockTimeoutMillis (@Nonnegative final long nLockTimeoutMillis)
+  {
+    if (nLockTimeoutMillis < 0)
+      throw new IllegalArgumentException ("LockTimeoutMillis must be >= 0: " + nLockTimeoutMillis);
+    return _set (EH2ConnectionProperty.LOCK_TIMEOUT, nLockTimeoutMillis);
+  }
+
+  @Nonnull
+  public H2ConnectionProperties setLockMode (@Nonnull final EH2LockMode eLockMode)
+  {
+    if (eLockMode == null)
+      throw new NullPointerException ("lockMode");
+    return _set (EH2ConnectionProperty.LOCK_MODE, eLockMode.getValue ());
+  }
+
+  @Nonnull
+  public H2ConnectionProperties setLog (@Nonnull final EH2Log eLog)
+  {
+    if (eLog == null)
+      throw new NullPointerException ("log");
+    return _set (EH2ConnectionProperty.LOG, eLog.getValue ());
+  }
+
+  @Nonnull
+  public H2ConnectionProperties setUndoLog (final boolean bUndoLog)
+  {
+    return _set (EH2ConnectionProperty.UNDO_LOG, bUndoLog ? 1 : 0);
+  }
+
+  @Nonnull
+  public H2ConnectionProperties setMVStore (final boolean bMVStore)
+  {
+    return _set (EH2ConnectionProperty.MV_STORE, bMVStore);
+  }
+
+  @Nonnull
+  public H2ConnectionProperties setMVCC (final boolean bMVCC)
+  {
+    return _set (EH2ConnectionProperty.MVCC, bMVCC);
+  }
+
+  @Nonnull
+  public H2ConnectionProperties setMultiThreaded (final boolean bMultiThreaded)
+  {
+    return _set (EH2ConnectionProperty.MULTI_THREADED, bMultiThreaded);
+  }
+
+  @Nonnull
+  public H2ConnectionProperties setWriteDelayMillis (@Nonnegative final long nWriteDelayMillis)
+  {
+    if (nWriteDelayMillis < 0)
+      throw new IllegalArgumentException ("WriteDelayMillis must be >= 0: " + nWriteDelayMillis);
+    return _set (EH2ConnectionProperty.WRITE_DELAY, nWriteDelayMillis);
+  }
+
+  @Nonnull
+  public H2ConnectionProperties setPageSize (@Nonnegative final int nPageSize)
+  {
+    if (nPageSize <= 0 || Integer.bitCount (nPageSize) != 1)
+      throw new IllegalArgumentException ("PageSize must be a power of 2: " + nPageSize);
+    return _set (EH2ConnectionProperty.PAGE_SIZE, nPageSize);
+  }
+
+  @Nonnull
+  public H2ConnectionProperties setMaxOperationMemory (@Nonnegative final long nMaxOperationMemory)
+  {
+    if (nMaxOperationMemory < 0)
+      throw new IllegalArgumentException ("MaxOperationMemory must be >= 0: " + nMaxOperationMemory);
+    return _set (EH2ConnectionProperty.MAX_OPERATION_MEMORY, nMaxOperationMemory);
+  }
+
+  @Nonnull
+  public H2ConnectionProperties setQueryCacheSize (@Nonnegative final int nQueryCacheSize)
+  {
+    if (nQueryCacheSize < 0)
+      throw new IllegalArgumentException ("QueryCacheSize must be >= 0: " + nQueryCacheSize);
+    return _set (EH2ConnectionProperty.QUERY_CACHE_SIZE, nQueryCacheSize);
+  }
+
+  @Nonnull
+  public H2ConnectionProperties setEarlyFilter (final boolean bEarlyFilter)
+  {
+    return _set (EH2ConnectionProperty.EARLY_FILTER, bEarlyFilter);
+  }
+
+  /**
+   * @return All properties as a map from property name to value, in the order
+   *         of {@link EH2ConnectionProperty}. Never <code>null</code>.
+   */
+  @Nonnull
+  @ReturnsMutableCopy
+  public Map <String, String> getAsMap ()
+  {
+    final Map <String, String> ret = new LinkedHashMap <String, String> ();
+    for (final Map.Entry <EH2ConnectionProperty, String> aEntry : m_aProps.entrySet ())
+      ret.put (aEntry.getKey ().getName (), aEntry.getValue ());
+    return ret;
+  }
+
+  @Override
+  public String toString ()
+  {
+    return new ToStringGenerator (this).append ("props", m_aProps).toString ();
+  }
+}
@@ -0,0 +1,321 @@
+/**
+ * Copyright (C) 2006-2015 phloc systems
+ * http://www.phloc.com
+ * office[at]phloc[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.phloc.db.api.sql;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+
+import com.phloc.commons.string.StringHelper;
+
+/**
+ * Normalizes SQL statements so that statements that differ only in their
+ * literal values map to the same text and fingerprint. This is meant for
+ * statistics, caches and slow query aggregation. The normalization
+ * <ul>
+ * <li>replaces string and numeric literals with <code>?</code></li>
+ * <li>collapses IN lists of parameters to <code>IN (?+)</code></li>
+ * <li>removes comments</li>
+ * <li>separates all tokens by a single space, except inside parenthesis and
+ * before commas</li>
+ * <li>converts everything except quoted identifiers to upper case</li>
+ * </ul>
+ * The result is not meant to be executed. Only a single pass over the input is
+ * made, and the result builder and string are the only allocations.
+ * 
+ * @author Philip Helger
+ */
+@Immutable
+public final class SQLNormalizer
+{
+  /** The placeholder for literals */
+  public static final char PLACEHOLDER = '?';
+  /** The replacement for IN lists */
+  public static final String IN_LIST_PLACEHOLDER = "(?+)";
+
+  private static final long FNV64_OFFSET_BASIS = 0xcbf29ce484222325L;
+  private static final long FNV64_PRIME = 0x100000001b3L;
+
+  private SQLNormalizer ()
+  {}
+
+  // Token types for the spacing rules
+  private static final int TOKEN_NONE = 0;
+  private static final int TOKEN_WORD = 1;
+  private static final int TOKEN_OPERATOR = 2;
+  private static final int TOKEN_OPEN = 3;
+  private static final int TOKEN_CLOSE = 4;
+  private static final int TOKEN_SEPARATOR = 5;
+  private static final int TOKEN_DOT = 6;
+
+  private static boolean _isIdentifierPart (final char c)
+  {
+    return Character.isLetterOrDigit (c) || c == '_' || c == '$' || c == '#' || c == '@' || c == ':';
+  }
+
+  private static boolean _isOperator (final char c)
+  {
+    return "=<>!+-*/%|&^~".indexOf (c) >= 0;
+  }
+
+  /**
+   * Append the separator between the previous and the next token. Tokens are
+   * separated by a single space, except after "(" and ".", and before ")",
+   * ",", ";" and ".".
+   */
+  private static void _appendSeparator (@Nonnull final StringBuilder aSB, final int nPrevType, final int nNextType)
+  {
+    if (nPrevType == TOKEN_NONE || nPrevType == TOKEN_OPEN || nPrevType == TOKEN_DOT)
+      return;
+    if (nNextType == TOKEN_CLOSE || nNextType == TOKEN_SEPARATOR || nNextType == TOKEN_DOT)
+      return;
+    aSB.append (' ');
+  }
+
+  /**
+   * Get the normalized version of the passed SQL statement.
+   * 
+   * @param sSQL
+   *        The SQL statement to normalize. May be <code>null</code>.
+   * @return The normalized SQL and never <code>null</code>. An empty string
+   *         is returned for <code>null</code> input.
+   */
+  @Nonnull
+  public static String getNormalized (@Nullable final String sSQL)
+  {
+    if (StringHelper.hasNoText (sSQL))
+      return "";
+
+    final int nLen = sSQL.length ();
+    final StringBuilder aSB = new StringBuilder (nLen);
+    int nPrevType = TOKEN_NONE;
+    // Was the previous word the keyword IN?
+    boolean bPrevIsIn = false;
+    // Index of the "(" of an IN list in the output or -1
+    int nInListStart = -1;
+    int i = 0;
+    while (i < nLen)
+    {
+      final char c = sSQL.charAt (i);
+      if (Character.isWhitespace (c))
+      {
+        ++i;
+        continue;
+      }
+
+      if (c == '-' && i + 1 < nLen && sSQL.charAt (i + 1) == '-')
+      {
+        // Line comment
+        final int nEnd = sSQL.indexOf ('\n', i + 2);
+        i = nEnd < 0 ? nLen : nEnd;
+        continue;
+      }
+
+      if (c == '/' && i + 1 < nLen && sSQL.charAt (i + 1) == '*')
+      {
+        // Block comment
+        final int nEnd = sSQL.indexOf ("*/", i + 2);
+        i = nEnd < 0 ? nLen : nEnd + 2;
+        continue;
+      }
+
+      final int nStart = i;
+      boolean bIsPlaceholder = false;
+      if (c == '\'')
+      {
+        // String literal - doubled quotes are escapes
+        int nEnd = i + 1;
+        while (nEnd < nLen)
+        {
+          if (sSQL.charAt (nEnd) == '\'')
+          {
+            if (nEnd + 1 < nLen && sSQL.charAt (nEnd + 1) == '\'')
+              nEnd += 2;
+            else
+              break;
+          }
+          else
+            nEnd++;
+        }
+        _appendSeparator (aSB, nPrevType, TOKEN_WORD);
+        aSB.append (PLACEHOLDER);
+        bIsPlaceholder = true;
+        nPrevType = TOKEN_WORD;
+        i = nEnd + 1;
+      }
+      else
+        if (c == '"' || c == '`' || c == '[')
+        {
+          // Quoted identifier - kept as is
+          final char cEnd = c == '[' ? ']' : c;
+          int nEnd = sSQL.indexOf (cEnd, i + 1);
+          if (nEnd < 0)
+            nEnd = nLen - 1;
+          _appendSeparator (aSB, nPrevType, TOKEN_WORD);
+          aSB.append (sSQL, i, nEnd + 1);
+          nPrevType = TOKEN_WORD;
+          i = nEnd + 1;
+        }
+        else
+          if (Character.isDigit (c) || (c == '.' && i + 1 < nLen && Character.isDigit (sSQL.charAt (i + 1))))
+          {
+            // Numeric literal, incl. decimals, exponents and hex values. Digits
+            // inside identifiers never get here as identifiers are consumed as
+            // a whole.
+            int nEnd = i + 1;
+            while (nEnd < nLen)
+            {
+              final char n = sSQL.charAt (nEnd);
+              if (Character.isLetterOrDigit (n) || n == '.')
+                nEnd++;
+              else
+                if ((n == '+' || n == '-') && Character.toUpperCase (sSQL.charAt (nEnd - 1)) == 'E')
+                  nEnd++;
+                else
+                  break;
+            }
+            _appendSeparator (aSB, nPrevType, TOKEN_WORD);
+            aSB.append (PLACEHOLDER);
+            bIsPlaceholder = true;
+            nPrevType = TOKEN_WORD;
+            i = nEnd;
+          }
+          else
+            if (c == '?')
+            {
+              _appendSeparator (aSB, nPrevType, TOKEN_WORD);
+              aSB.append (PLACEHOLDER);
+              bIsPlaceholder = true;
+              nPrevType = TOKEN_WORD;
+              ++i;
+            }
+            else
+              if (_isIdentifierPart (c))
+              {
+                // Identifier or keyword
+                int nEnd = i + 1;
+                while (nEnd < nLen && _isIdentifierPart (sSQL.charAt (nEnd)))
+                  nEnd++;
+                _appendSeparator (aSB, nPrevType, TOKEN_WORD);
+                for (int j = i; j < nEnd; ++j)
+                  aSB.append (Character.toUpperCase (sSQL.charAt (j)));
+                nPrevType = TOKEN_WORD;
+                i = nEnd;
+              }
+              else
+                if (_isOperator (c))
+                {
+                  int nEnd = i + 1;
+                  while (nEnd < nLen && _isOperator (sSQL.charAt (nEnd)))
+                    nEnd++;
+                  _appendSeparator (aSB, nPrevType, TOKEN_OPERATOR);
+                  aSB.append (sSQL, i, nEnd);
+                  nPrevType = TOKEN_OPERATOR;
+                  i = nEnd;
+                }
+                else
+                {
+                  final int nType = c == '(' ? TOKEN_OPEN
+                                             : c == ')' ? TOKEN_CLOSE : c == '.' ? TOKEN_DOT : TOKEN_SEPARATOR;
+                  if (nType == TOKEN_CLOSE && nInListStart >= 0)
+                  {
+                    // IN list containing only placeholders
+                    aSB.setLength (nInListStart);
+                    aSB.append (IN_LIST_PLACEHOLDER);
+                    nInListStart = -1;
+                  }
+                  else
+                  {
+                    _appendSeparator (aSB, nPrevType, nType);
+                    if (nType == TOKEN_OPEN && bPrevIsIn)
+                      nInListStart = aSB.length ();
+                    aSB.append (c);
+                  }
+                  nPrevType = nType;
+                  ++i;
+                }
+
+      // Anything but placeholders and commas ends an IN list
+      if (nInListStart >= 0 && !bIsPlaceholder && c != ',' && c != '(')
+        nInListStart = -1;
+      final int nOutLen = aSB.length ();
+      bPrevIsIn = nPrevType == TOKEN_WORD &&
+                  i - nStart == 2 &&
+                  nOutLen >= 2 &&
+                  aSB.charAt (nOutLen - 2) == 'I' &&
+                  aSB.charAt (nOutLen - 1) == 'N';
+    }
+    return aSB.toString ();
+  }
+
+  /**
+   * Get the 64 bit FNV-1a hash of the passed normalized SQL.
+   * 
+   * @param sNormalizedSQL
+   *        The normalized SQL as returned by {@link #getNormalized(String)}.
+   *        May not be <code>null</code>.
+   * @return The hash value.
+   */
+  public static long getHash (@Nonnull final String sNormalizedSQL)
+  {
+    long ret = FNV64_OFFSET_BASIS;
+    final int nLen = sNormalizedSQL.length ();
+    for (int i = 0; i < nLen; ++i)
+    {
+      final char c = sNormalizedSQL.charAt (i);
+      ret ^= c & 0xff;
+      ret *= FNV64_PRIME;
+      ret ^= c >>> 8;
+      ret *= FNV64_PRIME;
+    }
+    return ret;
+  }
+
+  /**
+   * Get a stable fingerprint of the passed SQL statement. Statements that
+   * differ only in literal values, IN list lengths, comments, white spaces or
+   * case have the same fingerprint.
+   * 
+   * @param sSQL
+   *        The SQL statement. May be <code>null</code>.
+   * @return The fingerprint.
+   */
+  public static long getFingerprint (@Nullable final String sSQL)
+  {
+    return getHash (getNormalized (sSQL));
+  }
+
+  /**
+   * Get the fingerprint of the passed SQL statement as a fixed length hex
+   * string.
+   * 
+   * @param sSQL
+   *        The SQL statement. May be <code>null</code>.
+   * @return The fingerprint as 16 hex digits.
+   * @see #getFingerprint(String)
+   */
+  @Nonnull
+  public static String getFingerprintHex (@Nullable final String sSQL)
+  {
+    final String sHex = Long.toHexString (getFingerprint (sSQL));
+    final StringBuilder aSB = new StringBuilder (16);
+    for (int i = sHex.length (); i < 16; ++i)
+      aSB.append ('0');
+    return aSB.append (sHex).toString ();
+  }
+}
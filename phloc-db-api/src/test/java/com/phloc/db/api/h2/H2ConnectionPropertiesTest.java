@@ -0,0 +1,75 @@
+/**
+ * Copyright (C) 2006-2015 phloc systems
+ * http://www.phloc.com
+ * office[at]phloc[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.phloc.db.api.h2;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+
+import org.junit.Test;
+
+import com.phloc.db.api.CJDBC_H2;
+
+/**
+ * Test class for class {@link H2ConnectionProperties}.
+ * 
+ * @author Philip Helger
+ */
+public final class H2ConnectionPropertiesTest
+{
+  @Test
+  public void testBuild ()
+  {
+    final H2ConnectionProperties aProps = new H2ConnectionProperties ().setCacheSizeKB (1024)
+                                                                       .setMVCC (true)
+                                                                       .setLockMode (EH2LockMode.SERIALIZABLE);
+    assertEquals ("1024", aProps.get (EH2ConnectionProperty.CACHE_SIZE));
+    assertEquals ("jdbc:h2:mem:x;CACHE_SIZE=1024;LOCK_MODE=1;MVCC=TRUE",
+                  H2Helper.buildJDBCString ("jdbc:h2:mem:x", aProps.getAsMap ()));
+
+    aProps.remove (EH2ConnectionProperty.MVCC);
+    assertNull (aProps.get (EH2ConnectionProperty.MVCC));
+    assertEquals (2, aProps.getAsMap ().size ());
+  }
+
+  @Test
+  public void testPresets () throws SQLException
+  {
+    for (final EH2ConnectionPreset ePreset : EH2ConnectionPreset.values ())
+    {
+      assertSame (ePreset, EH2ConnectionPreset.getFromIDOrNull (ePreset.getID ()));
+      final H2ConnectionProperties aProps = H2ConnectionProperties.createFromPreset (ePreset);
+      assertTrue (!aProps.isEmpty ());
+
+      // All properties must be accepted by H2
+      final Connection aConnection = DriverManager.getConnection (H2Helper.buildJDBCString (CJDBC_H2.CONNECTION_PREFIX +
+                                                                                                "mem:preset" +
+                                                                                                ePreset.ordinal (),
+                                                                                            aProps.getAsMap ()),
+                                                                  "sa",
+                                                                  "");
+      aConnection.close ();
+    }
+    assertNull (EH2ConnectionPreset.getFromIDOrNull ("foo"));
+  }
+}
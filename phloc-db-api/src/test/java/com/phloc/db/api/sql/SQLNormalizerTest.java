@@ -0,0 +1,64 @@
+/**
+ * Copyright (C) 2006-2015 phloc systems
+ * http://www.phloc.com
+ * office[at]phloc[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.phloc.db.api.sql;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import org.junit.Test;
+
+/**
+ * Test class for class {@link SQLNormalizer}.
+ * 
+ * @author Philip Helger
+ */
+public final class SQLNormalizerTest
+{
+  @Test
+  public void testGetNormalized ()
+  {
+    assertEquals ("", SQLNormalizer.getNormalized (null));
+    assertEquals ("SELECT * FROM T1 WHERE ID = ? AND NAME = ?",
+                  SQLNormalizer.getNormalized ("select *\n  from t1 where id = 42 and name = 'it''s'"));
+    assertEquals ("SET LOCK_MODE = ?", SQLNormalizer.getNormalized ("SET LOCK_MODE=3"));
+    assertEquals ("SELECT ?, ?, ?, - ? FROM DUAL",
+                  SQLNormalizer.getNormalized ("SELECT 1.5, .5e-3, 0x1F, -7 FROM DUAL"));
+    assertEquals ("SELECT \"MixedCase\" FROM T WHERE A = ?",
+                  SQLNormalizer.getNormalized ("SELECT \"MixedCase\" /* hint */ FROM t -- comment\nWHERE a = 'x'"));
+    assertEquals ("SELECT T.*, COUNT (*) FROM T WHERE T.ID = :ID",
+                  SQLNormalizer.getNormalized ("SELECT t.*,count(*) FROM t WHERE t.id=:id"));
+
+    // IN lists
+    assertEquals ("SELECT * FROM T WHERE ID IN (?+)", SQLNormalizer.getNormalized ("SELECT * FROM t WHERE id IN (1)"));
+    assertEquals ("SELECT * FROM T WHERE ID IN (?+) AND X NOT IN (?+)",
+                  SQLNormalizer.getNormalized ("SELECT * FROM t WHERE id IN (?, ?, ?) AND x NOT IN('a','b')"));
+    assertEquals ("SELECT * FROM T WHERE ID IN (SELECT ID FROM U WHERE V = ?)",
+                  SQLNormalizer.getNormalized ("SELECT * FROM t WHERE id IN (SELECT id FROM u WHERE v = 1)"));
+    assertEquals ("INSERT INTO T (A, B) VALUES (?, ?)",
+                  SQLNormalizer.getNormalized ("INSERT INTO t (a, b) VALUES (1, 'x')"));
+  }
+
+  @Test
+  public void testFingerprint ()
+  {
+    assertEquals (SQLNormalizer.getFingerprint ("SELECT * FROM t WHERE id IN (1, 2) AND s = 'a'"),
+                  SQLNormalizer.getFingerprint ("select * from T where ID in (3,4,5,6) and S='b'"));
+    assertFalse (SQLNormalizer.getFingerprint ("SELECT * FROM t WHERE id = 1") == SQLNormalizer.getFingerprint ("SELECT * FROM u WHERE id = 1"));
+    assertEquals (16, SQLNormalizer.getFingerprintHex ("SELECT 1").length ());
+  }
+}
@@ -18,9 +18,12 @@
 package com.phloc.db.jdbc;
 
 import java.io.Closeable;
+import java.sql.Connection;
 import java.sql.SQLException;
 import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
@@ -34,6 +37,7 @@ import org.slf4j.LoggerFactory;
 import com.phloc.commons.annotations.Nonempty;
 import com.phloc.commons.annotations.OverrideOnDemand;
 import com.phloc.commons.string.ToStringGenerator;
+import com.phloc.db.jdbc.catalog.DBSchemaCatalog;
 
 /**
  * Abstract implementation of {@link IDataSourceProvider} based on
@@ -47,7 +51,9 @@ public abstract class AbstractConnector implements IDataSourceProvider, Closeabl
   private static final Logger s_aLogger = LoggerFactory.getLogger (AbstractConnector.class);
 
   private final Lock m_aLock = new ReentrantLock ();
+  private final ReadWriteLock m_aOperationLock = new ReentrantReadWriteLock ();
   protected BasicDataSource m_aDataSource;
+  private DBSchemaCatalog m_aSchemaCatalog;
 
   public AbstractConnector ()
   {}
@@ -58,6 +64,20 @@ public abstract class AbstractConnector implements IDataSourceProvider, Closeabl
     return m_aLock;
   }
 
+  /**
+   * @return The lock guarding the usage of the database. A
+   *         {@link com.phloc.db.jdbc.executor.DBExecutor} created for this
+   *         connector holds the read lock while it is working with a
+   *         connection. Maintenance operations that require exclusive access
+   *         acquire the write lock, thereby waiting for all running operations
+   *         to finish and blocking new ones. Never <code>null</code>.
+   */
+  @Nonnull
+  public final ReadWriteLock getOperationLock ()
+  {
+    return m_aOperationLock;
+  }
+
   @Nonnull
   @Nonempty
   protected abstract String getJDBCDriverClassName ();
@@ -87,6 +107,18 @@ public abstract class AbstractConnector implements IDataSourceProvider, Closeabl
   @Nonnull
   public abstract String getConnectionUrl ();
 
+  /**
+   * @return The SQL dialect of the database this connector connects to. By
+   *         default it is derived from the connection URL. Never
+   *         <code>null</code>.
+   */
+  @Nonnull
+  @OverrideOnDemand
+  public EDatabaseDialect getDialect ()
+  {
+    return EDatabaseDialect.getFromConnectionURL (getConnectionUrl ());
+  }
+
   @OverrideOnDemand
   protected boolean isUseDefaultAutoCommit ()
   {
@@ -128,6 +160,81 @@ public abstract class AbstractConnector implements IDataSourceProvider, Closeabl
     }
   }
 
+  /**
+   * @return The schema catalog of the database this connector connects to. It
+   *         is created upon first access and shared by all
+   *         {@link com.phloc.db.jdbc.executor.DBExecutor} objects created for
+   *         this connector. The catalog only uses the currently open data
+   *         source, so it cannot be loaded while this connector is closed.
+   *         Never <code>null</code>.
+   */
+  @Nonnull
+  public final DBSchemaCatalog getSchemaCatalog ()
+  {
+    m_aLock.lock ();
+    try
+    {
+      // The catalog is about to be used
+      getDataSource ();
+      if (m_aSchemaCatalog == null)
+        m_aSchemaCatalog = createSchemaCatalog ();
+      return m_aSchemaCatalog;
+    }
+    finally
+    {
+      m_aLock.unlock ();
+    }
+  }
+
+  /**
+   * Create the schema catalog for this connector.
+   * 
+   * @return The new schema catalog. May not be <code>null</code>.
+   */
+  @Nonnull
+  @OverrideOnDemand
+  protected DBSchemaCatalog createSchemaCatalog ()
+  {
+    // Don't use getDataSource() as this would re-create the data source if the
+    // catalog is reloaded after this connector was closed
+    return new DBSchemaCatalog (new IConnectionProvider ()
+    {
+      @Nullable
+      public Connection getConnection ()
+      {
+        final DataSource aDS;
+        m_aLock.lock ();
+        try
+        {
+          aDS = m_aDataSource;
+        }
+        finally
+        {
+          m_aLock.unlock ();
+        }
+        if (aDS == null)
+        {
+          s_aLogger.warn ("The connection to '" + getDatabase () + "' is closed");
+          return null;
+        }
+        try
+        {
+          return aDS.getConnection ();
+        }
+        catch (final SQLException ex)
+        {
+          s_aLogger.error ("No connection retrieved from dataSource " + aDS, ex);
+          return null;
+        }
+      }
+
+      public boolean shouldCloseConnection ()
+      {
+        return true;
+      }
+    });
+  }
+
   public final void close ()
   {
     m_aLock.lock ();
@@ -145,6 +252,10 @@ public abstract class AbstractConnector implements IDataSourceProvider, Closeabl
           throw new IllegalStateException ("Failed to close DataSource", ex);
         }
 
+        // The database may be modified while the data source is closed
+        if (m_aSchemaCatalog != null)
+          m_aSchemaCatalog.invalidate ();
+
         if (s_aLogger.isDebugEnabled ())
           s_aLogger.debug ("Closed database connection to '" + getDatabase () + "'");
       }
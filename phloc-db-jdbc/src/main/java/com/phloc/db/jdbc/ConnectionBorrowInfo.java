@@ -0,0 +1,160 @@
+/**
+ * Copyright (C) 2006-2015 phloc systems
+ * http://www.phloc.com
+ * office[at]phloc[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.phloc.db.jdbc;
+
+import java.sql.Connection;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+
+import com.phloc.commons.annotations.Nonempty;
+import com.phloc.commons.string.ToStringGenerator;
+import com.phloc.datetime.PDTFactory;
+
+/**
+ * Contains the information about a single connection borrowed via a
+ * {@link ConnectionLeakDetector}: when it was borrowed, by which thread and
+ * optionally from where.
+ * 
+ * @author Philip Helger
+ */
+@ThreadSafe
+public final class ConnectionBorrowInfo
+{
+  private final long m_nID;
+  private final Connection m_aConnection;
+  private final long m_nBorrowMillis;
+  private final String m_sThreadName;
+  private final Throwable m_aBorrowSite;
+  private final AtomicBoolean m_aLeakReported = new AtomicBoolean (false);
+  private final AtomicBoolean m_aReclaimed = new AtomicBoolean (false);
+
+  ConnectionBorrowInfo (final long nID,
+                        @Nonnull final Connection aConnection,
+                        @Nonnull @Nonempty final String sThreadName,
+                        @Nullable final Throwable aBorrowSite)
+  {
+    m_nID = nID;
+    m_aConnection = aConnection;
+    m_nBorrowMillis = PDTFactory.getCurrentMillis ();
+    m_sThreadName = sThreadName;
+    m_aBorrowSite = aBorrowSite;
+  }
+
+  /**
+   * @return The unique ID of this borrow operation within the owning detector.
+   */
+  public long getID ()
+  {
+    return m_nID;
+  }
+
+  /**
+   * @return The original (unwrapped) connection.
+   */
+  @Nonnull
+  Connection getConnection ()
+  {
+    return m_aConnection;
+  }
+
+  /**
+   * @return The time stamp in milliseconds when the connection was borrowed.
+   */
+  public long getBorrowMillis ()
+  {
+    return m_nBorrowMillis;
+  }
+
+  /**
+   * @return The number of milliseconds the connection is already held.
+   */
+  @Nonnegative
+  public long getHeldMillis ()
+  {
+    return Math.max (0, PDTFactory.getCurrentMillis () - m_nBorrowMillis);
+  }
+
+  /**
+   * @return The name of the thread that borrowed the connection.
+   */
+  @Nonnull
+  @Nonempty
+  public String getThreadName ()
+  {
+    return m_sThreadName;
+  }
+
+  /**
+   * @return The stack trace of the borrow site. Is only present if the borrow
+   *         operation was sampled, so <code>null</code> may be returned.
+   */
+  @Nullable
+  public Throwable getBorrowSite ()
+  {
+    return m_aBorrowSite;
+  }
+
+  public boolean hasBorrowSite ()
+  {
+    return m_aBorrowSite != null;
+  }
+
+  /**
+   * @return <code>true</code> if this connection was already reported as a
+   *         leak.
+   */
+  public boolean isLeakReported ()
+  {
+    return m_aLeakReported.get ();
+  }
+
+  boolean markLeakReported ()
+  {
+    return m_aLeakReported.compareAndSet (false, true);
+  }
+
+  /**
+   * @return <code>true</code> if this connection was forcibly closed by the
+   *         leak detector.
+   */
+  public boolean isReclaimed ()
+  {
+    return m_aReclaimed.get ();
+  }
+
+  boolean markReclaimed ()
+  {
+    return m_aReclaimed.compareAndSet (false, true);
+  }
+
+  @Override
+  public String toString ()
+  {
+    return new ToStringGenerator (this).append ("ID", m_nID)
+                                       .append ("borrowMillis", m_nBorrowMillis)
+                                       .append ("threadName", m_sThreadName)
+                                       .append ("hasBorrowSite", hasBorrowSite ())
+                                       .append ("leakReported", isLeakReported ())
+                                       .append ("reclaimed", isReclaimed ())
+                                       .toString ();
+  }
+}
@@ -33,7 +33,8 @@ import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 
 /**
  * Implementation of {@link IConnectionProvider} that creates a connection from
- * an {@link IDataSourceProvider}.
+ * an {@link IDataSourceProvider}. Optionally all borrowed connections can be
+ * tracked by a {@link ConnectionLeakDetector}.
  * 
  * @author Philip Helger
  */
@@ -41,31 +42,78 @@ public class ConnectionFromDataSourceProvider implements IConnectionProvider
 {
   private static final Logger s_aLogger = LoggerFactory.getLogger (ConnectionFromDataSourceProvider.class);
 
-  private final DataSource m_aDS;
+  private final IDataSourceProvider m_aDSP;
+  private volatile ConnectionLeakDetector m_aLeakDetector;
 
-  @SuppressFBWarnings ("RCN_REDUNDANT_NULLCHECK_OF_NONNULL_VALUE")
   public ConnectionFromDataSourceProvider (@Nonnull final IDataSourceProvider aDSP)
+  {
+    this (aDSP, null);
+  }
+
+  /**
+   * Constructor
+   * 
+   * @param aDSP
+   *        The data source provider to use. May not be <code>null</code>.
+   * @param aLeakDetector
+   *        The optional connection leak detector to be used. May be
+   *        <code>null</code>.
+   */
+  @SuppressFBWarnings ("RCN_REDUNDANT_NULLCHECK_OF_NONNULL_VALUE")
+  public ConnectionFromDataSourceProvider (@Nonnull final IDataSourceProvider aDSP,
+                                           @Nullable final ConnectionLeakDetector aLeakDetector)
   {
     if (aDSP == null)
       throw new NullPointerException ("dataSourceProvider");
-    m_aDS = aDSP.getDataSource ();
-    if (m_aDS == null)
+    if (aDSP.getDataSource () == null)
       throw new IllegalArgumentException ("Failed to create dataSource from " + aDSP);
+    m_aDSP = aDSP;
+    m_aLeakDetector = aLeakDetector;
+  }
+
+  /**
+   * @return The connection leak detector in use. May be <code>null</code>.
+   */
+  @Nullable
+  public final ConnectionLeakDetector getLeakDetector ()
+  {
+    return m_aLeakDetector;
+  }
+
+  /**
+   * Set the connection leak detector to use for all connections borrowed from
+   * now on.
+   * 
+   * @param aLeakDetector
+   *        The leak detector to use. May be <code>null</code> to disable leak
+   *        tracking.
+   */
+  public final void setLeakDetector (@Nullable final ConnectionLeakDetector aLeakDetector)
+  {
+    m_aLeakDetector = aLeakDetector;
   }
 
   @Nullable
   public Connection getConnection ()
   {
+    // Resolve the data source each time, as a connector may re-create it (e.g.
+    // after maintenance operations)
+    final DataSource aDS = m_aDSP.getDataSource ();
     try
     {
-      final Connection ret = m_aDS.getConnection ();
+      final Connection ret = aDS.getConnection ();
       if (ret == null)
-        s_aLogger.warn ("Failed to get connection from dataSource " + m_aDS + "!");
-      return ret;
+      {
+        s_aLogger.warn ("Failed to get connection from dataSource " + aDS + "!");
+        return null;
+      }
+
+      final ConnectionLeakDetector aLeakDetector = m_aLeakDetector;
+      return aLeakDetector == null ? ret : aLeakDetector.onConnectionBorrowed (ret);
     }
     catch (final SQLException ex)
     {
-      s_aLogger.error ("No connection retrieved from dataSource " + m_aDS, ex);
+      s_aLogger.error ("No connection retrieved from dataSource " + aDS, ex);
       return null;
     }
   }
@@ -78,6 +126,6 @@ public class ConnectionFromDataSourceProvider implements IConnectionProvider
   @Override
   public String toString ()
   {
-    return new ToStringGenerator (this).append ("dataSource", m_aDS).toString ();
+    return new ToStringGenerator (this).append ("dataSourceProvider", m_aDSP).append ("leakDetector", m_aLeakDetector).toString ();
   }
 }
@@ -0,0 +1,393 @@
+/**
+ * Copyright (C) 2006-2015 phloc systems
+ * http://www.phloc.com
+ * office[at]phloc[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.phloc.db.jdbc;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.phloc.commons.annotations.OverrideOnDemand;
+import com.phloc.commons.annotations.ReturnsMutableCopy;
+import com.phloc.commons.string.ToStringGenerator;
+import com.phloc.datetime.PDTFactory;
+import com.phloc.db.api.jdbc.JDBCHelper;
+
+/**
+ * Keeps track of all connections borrowed from a connection provider and
+ * detects connections that are held longer than a configurable threshold.
+ * Each borrowed connection is wrapped in a proxy that deregisters the
+ * connection upon {@link Connection#close()}.<br>
+ * Capturing the stack trace of the borrow site is sampled (only every n-th
+ * borrow operation captures the stack) so that the detector is cheap enough to
+ * be used in production. The check for leaked connections is performed
+ * automatically when a connection is borrowed (at most once per check
+ * interval) and can be triggered manually via {@link #checkForLeaks()}.
+ * 
+ * @author Philip Helger
+ */
+@ThreadSafe
+public class ConnectionLeakDetector
+{
+  /** Default threshold after which a connection is considered leaked: 60s */
+  public static final long DEFAULT_LEAK_THRESHOLD_MS = 60 * 1000L;
+  /** Default minimum interval between two automatic checks: 10s */
+  public static final long DEFAULT_CHECK_INTERVAL_MS = 10 * 1000L;
+  /** By default every 10th borrow operation captures the stack trace */
+  public static final int DEFAULT_STACK_TRACE_SAMPLE_RATE = 10;
+  /** By default leaked connections are only reported but not reclaimed */
+  public static final boolean DEFAULT_RECLAIM_LEAKED_CONNECTIONS = false;
+
+  private static final Logger s_aLogger = LoggerFactory.getLogger (ConnectionLeakDetector.class);
+
+  private final AtomicLong m_aBorrowCounter = new AtomicLong (0);
+  private final AtomicLong m_aLastCheckMillis = new AtomicLong (PDTFactory.getCurrentMillis ());
+  private final AtomicLong m_aLeakCount = new AtomicLong (0);
+  private final AtomicLong m_aReclaimCount = new AtomicLong (0);
+  private final Map <Long, ConnectionBorrowInfo> m_aBorrowed = new ConcurrentHashMap <Long, ConnectionBorrowInfo> ();
+  private volatile long m_nLeakThresholdMS = DEFAULT_LEAK_THRESHOLD_MS;
+  private volatile long m_nCheckIntervalMS = DEFAULT_CHECK_INTERVAL_MS;
+  private volatile int m_nStackTraceSampleRate = DEFAULT_STACK_TRACE_SAMPLE_RATE;
+  private volatile boolean m_bReclaimLeakedConnections = DEFAULT_RECLAIM_LEAKED_CONNECTIONS;
+
+  public ConnectionLeakDetector ()
+  {}
+
+  @Nonnegative
+  public final long getLeakThresholdMS ()
+  {
+    return m_nLeakThresholdMS;
+  }
+
+  /**
+   * @param nLeakThresholdMS
+   *        The number of milliseconds after which a borrowed connection is
+   *        considered leaked. Must be &ge; 0.
+   */
+  public final void setLeakThresholdMS (@Nonnegative final long nLeakThresholdMS)
+  {
+    if (nLeakThresholdMS < 0)
+      throw new IllegalArgumentException ("LeakThreshold may not be negative: " + nLeakThresholdMS);
+    m_nLeakThresholdMS = nLeakThresholdMS;
+  }
+
+  @Nonnegative
+  public final long getCheckIntervalMS ()
+  {
+    return m_nCheckIntervalMS;
+  }
+
+  /**
+   * @param nCheckIntervalMS
+   *        The minimum number of milliseconds between two automatic leak
+   *        checks. Must be &ge; 0. 0 means a check on every borrow operation.
+   */
+  public final void setCheckIntervalMS (@Nonnegative final long nCheckIntervalMS)
+  {
+    if (nCheckIntervalMS < 0)
+      throw new IllegalArgumentException ("CheckInterval may not be negative: " + nCheckIntervalMS);
+    m_nCheckIntervalMS = nCheckIntervalMS;
+  }
+
+  @Nonnegative
+  public final int getStackTraceSampleRate ()
+  {
+    return m_nStackTraceSampleRate;
+  }
+
+  /**
+   * @param nStackTraceSampleRate
+   *        Capture the borrow stack trace on every n-th borrow operation. 1
+   *        means capture it always, 0 means never capture it.
+   */
+  public final void setStackTraceSampleRate (@Nonnegative final int nStackTraceSampleRate)
+  {
+    if (nStackTraceSampleRate < 0)
+      throw new IllegalArgumentException ("StackTraceSampleRate may not be negative: " + nStackTraceSampleRate);
+    m_nStackTraceSampleRate = nStackTraceSampleRate;
+  }
+
+  public final boolean isReclaimLeakedConnections ()
+  {
+    return m_bReclaimLeakedConnections;
+  }
+
+  /**
+   * @param bReclaimLeakedConnections
+   *        <code>true</code> to forcibly close connections that are considered
+   *        leaked, so that they are returned to the pool. Any further usage of
+   *        a reclaimed connection results in an {@link SQLException}.
+   */
+  public final void setReclaimLeakedConnections (final boolean bReclaimLeakedConnections)
+  {
+    m_bReclaimLeakedConnections = bReclaimLeakedConnections;
+  }
+
+  /**
+   * Register a freshly borrowed connection and wrap it, so that closing it
+   * deregisters it again.
+   * 
+   * @param aConnection
+   *        The connection retrieved from the underlying data source. May not be
+   *        <code>null</code>.
+   * @return The wrapped connection to be handed out to the caller. Never
+   *         <code>null</code>.
+   */
+  @Nonnull
+  public Connection onConnectionBorrowed (@Nonnull final Connection aConnection)
+  {
+    if (aConnection == null)
+      throw new NullPointerException ("connection");
+
+    final long nID = m_aBorrowCounter.incrementAndGet ();
+    final int nSampleRate = m_nStackTraceSampleRate;
+    Throwable aBorrowSite = null;
+    if (nSampleRate > 0 && (nID % nSampleRate) == 0)
+      aBorrowSite = new Exception ("Connection #" + nID + " borrowed here");
+    final ConnectionBorrowInfo aInfo = new ConnectionBorrowInfo (nID,
+                                                                 aConnection,
+                                                                 Thread.currentThread ().getName (),
+                                                                 aBorrowSite);
+    m_aBorrowed.put (Long.valueOf (nID), aInfo);
+
+    // Check for leaks, if the check interval is exceeded
+    final long nNow = PDTFactory.getCurrentMillis ();
+    final long nLastCheck = m_aLastCheckMillis.get ();
+    if (nNow - nLastCheck >= m_nCheckIntervalMS && m_aLastCheckMillis.compareAndSet (nLastCheck, nNow))
+      checkForLeaks ();
+
+    return (Connection) Proxy.newProxyInstance (ConnectionLeakDetector.class.getClassLoader (),
+                                                new Class <?> [] { Connection.class },
+                                                new LeakTrackingHandler (this, aInfo));
+  }
+
+  void onConnectionReturned (@Nonnull final ConnectionBorrowInfo aInfo)
+  {
+    if (m_aBorrowed.remove (Long.valueOf (aInfo.getID ())) != null && aInfo.isLeakReported ())
+      s_aLogger.info ("Connection #" +
+                      aInfo.getID () +
+                      " previously reported as leaked was returned after " +
+                      aInfo.getHeldMillis () +
+                      " ms");
+  }
+
+  /**
+   * Check all currently borrowed connections for leaks. Each leaked connection
+   * is reported only once.
+   * 
+   * @return The number of connections that were newly detected as leaked.
+   */
+  @Nonnegative
+  public int checkForLeaks ()
+  {
+    final long nThreshold = m_nLeakThresholdMS;
+    final boolean bReclaim = m_bReclaimLeakedConnections;
+    int nNewLeaks = 0;
+    for (final ConnectionBorrowInfo aInfo : m_aBorrowed.values ())
+    {
+      final long nHeldMillis = aInfo.getHeldMillis ();
+      if (nHeldMillis >= nThreshold)
+      {
+        if (aInfo.markLeakReported ())
+        {
+          ++nNewLeaks;
+          m_aLeakCount.incrementAndGet ();
+          try
+          {
+            onLeakDetected (aInfo, nHeldMillis);
+          }
+          catch (final Throwable t)
+          {
+            s_aLogger.error ("Failed to handle leaked connection " + aInfo, t);
+          }
+        }
+
+        if (bReclaim && aInfo.markReclaimed ())
+        {
+          m_aReclaimCount.incrementAndGet ();
+          m_aBorrowed.remove (Long.valueOf (aInfo.getID ()));
+          s_aLogger.warn ("Reclaiming leaked connection #" + aInfo.getID ());
+          JDBCHelper.rollback (aInfo.getConnection ());
+          JDBCHelper.close (aInfo.getConnection ());
+        }
+      }
+    }
+    return nNewLeaks;
+  }
+
+  /**
+   * Called exactly once for every connection that is considered leaked. By
+   * default a warning is logged.
+   * 
+   * @param aInfo
+   *        The borrow information of the leaked connection. Never
+   *        <code>null</code>.
+   * @param nHeldMillis
+   *        The number of milliseconds the connection is already held.
+   */
+  @OverrideOnDemand
+  protected void onLeakDetected (@Nonnull final ConnectionBorrowInfo aInfo, @Nonnegative final long nHeldMillis)
+  {
+    final String sMsg = "Connection #" +
+                        aInfo.getID () +
+                        " borrowed by thread '" +
+                        aInfo.getThreadName () +
+                        "' is held for " +
+                        nHeldMillis +
+                        " ms - possible connection leak";
+    if (aInfo.hasBorrowSite ())
+      s_aLogger.warn (sMsg, aInfo.getBorrowSite ());
+    else
+      s_aLogger.warn (sMsg + " (borrow site was not sampled)");
+  }
+
+  /**
+   * @return The number of connections currently borrowed and not yet returned.
+   */
+  @Nonnegative
+  public int getBorrowedConnectionCount ()
+  {
+    return m_aBorrowed.size ();
+  }
+
+  /**
+   * @return A copy of all currently borrowed connection information objects.
+   */
+  @Nonnull
+  @ReturnsMutableCopy
+  public List <ConnectionBorrowInfo> getAllBorrowedConnections ()
+  {
+    return new ArrayList <ConnectionBorrowInfo> (m_aBorrowed.values ());
+  }
+
+  /**
+   * @return The total number of connections borrowed so far.
+   */
+  @Nonnegative
+  public long getTotalBorrowCount ()
+  {
+    return m_aBorrowCounter.get ();
+  }
+
+  /**
+   * @return The total number of connections detected as leaked so far.
+   */
+  @Nonnegative
+  public long getTotalLeakCount ()
+  {
+    return m_aLeakCount.get ();
+  }
+
+  /**
+   * @return The total number of connections that were reclaimed so far.
+   */
+  @Nonnegative
+  public long getTotalReclaimCount ()
+  {
+    return m_aReclaimCount.get ();
+  }
+
+  @Override
+  public String toString ()
+  {
+    return new ToStringGenerator (this).append ("leakThresholdMS", m_nLeakThresholdMS)
+                                       .append ("checkIntervalMS", m_nCheckIntervalMS)
+                                       .append ("stackTraceSampleRate", m_nStackTraceSampleRate)
+                                       .append ("reclaimLeakedConnections", m_bReclaimLeakedConnections)
+                                       .append ("borrowedCount", m_aBorrowed.size ())
+                                       .toString ();
+  }
+
+  /**
+   * The invocation handler used for the connection proxy.
+   * 
+   * @author Philip Helger
+   */
+  private static final class LeakTrackingHandler implements InvocationHandler
+  {
+    private final ConnectionLeakDetector m_aDetector;
+    private final ConnectionBorrowInfo m_aInfo;
+    private volatile boolean m_bClosed = false;
+
+    LeakTrackingHandler (@Nonnull final ConnectionLeakDetector aDetector, @Nonnull final ConnectionBorrowInfo aInfo)
+    {
+      m_aDetector = aDetector;
+      m_aInfo = aInfo;
+    }
+
+    public Object invoke (final Object aProxy, final Method aMethod, final Object [] aArgs) throws Throwable
+    {
+      final String sMethodName = aMethod.getName ();
+      if ("equals".equals (sMethodName) && aArgs != null && aArgs.length == 1)
+        return Boolean.valueOf (aProxy == aArgs[0]);
+      if ("hashCode".equals (sMethodName) && aArgs == null)
+        return Integer.valueOf (System.identityHashCode (aProxy));
+      if ("toString".equals (sMethodName) && aArgs == null)
+        return "LeakTracked#" + m_aInfo.getID () + "[" + m_aInfo.getConnection () + "]";
+
+      if ("close".equals (sMethodName) && aArgs == null)
+      {
+        if (m_bClosed)
+          return null;
+        m_bClosed = true;
+        m_aDetector.onConnectionReturned (m_aInfo);
+        if (m_aInfo.isReclaimed ())
+        {
+          // Already closed by the detector
+          return null;
+        }
+      }
+      else
+        if ("isClosed".equals (sMethodName) && aArgs == null)
+        {
+          if (m_bClosed || m_aInfo.isReclaimed ())
+            return Boolean.TRUE;
+        }
+        else
+          if (m_aInfo.isReclaimed ())
+            throw new SQLException ("Connection #" +
+                                    m_aInfo.getID () +
+                                    " was reclaimed by the connection leak detector after it was held for more than " +
+                                    m_aDetector.getLeakThresholdMS () +
+                                    " ms");
+
+      try
+      {
+        return aMethod.invoke (m_aInfo.getConnection (), aArgs);
+      }
+      catch (final InvocationTargetException ex)
+      {
+        throw ex.getCause ();
+      }
+    }
+  }
+}
@@ -0,0 +1,409 @@
+/**
+ * Copyright (C) 2006-2015 phloc systems
+ * http://www.phloc.com
+ * office[at]phloc[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.phloc.db.jdbc;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Locale;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.phloc.commons.annotations.Nonempty;
+import com.phloc.db.api.CJDBC_DB2;
+import com.phloc.db.api.CJDBC_H2;
+import com.phloc.db.api.CJDBC_MySQL;
+import com.phloc.db.api.CJDBC_Oracle;
+import com.phloc.db.api.CJDBC_SQLServer;
+
+/**
+ * Contains the SQL dialects supported by this library, together with the
+ * dialect specific limitations.
+ * 
+ * @author Philip Helger
+ */
+public enum EDatabaseDialect
+{
+  H2 ("h2", "H2", new String [] { CJDBC_H2.CONNECTION_PREFIX }, 1000, 10000),
+  MYSQL ("mysql", "MySQL", new String [] { CJDBC_MySQL.CONNECTION_PREFIX }, 1000, 60000),
+  /** Microsoft SQL Server: max. 2100 parameters and 1000 rows per VALUES */
+  MSSQL ("mssql", "Microsoft SQL Server", new String [] { CJDBC_SQLServer.CONNECTION_PREFIX }, 1000, 2000),
+  DB2 ("db2", "DB2", new String [] { CJDBC_DB2.CONNECTION_PREFIX }, 1000, 10000),
+  ORACLE ("oracle",
+          "Oracle",
+          new String [] { CJDBC_Oracle.CONNECTION_PREFIX, CJDBC_Oracle.CONNECTION_PREFIX_OCI },
+          1000,
+          30000),
+  /** Fallback for all other databases - no multi row statements */
+  GENERIC ("generic", null, new String [0], 1, 1000);
+
+  private static final Logger s_aLogger = LoggerFactory.getLogger (EDatabaseDialect.class);
+
+  private final String m_sID;
+  private final String m_sProductNamePrefix;
+  private final String [] m_aConnectionPrefixes;
+  private final int m_nMaxRowsPerInsert;
+  private final int m_nMaxParametersPerStatement;
+
+  private EDatabaseDialect (@Nonnull @Nonempty final String sID,
+                            @Nullable final String sProductNamePrefix,
+                            @Nonnull final String [] aConnectionPrefixes,
+                            @Nonnegative final int nMaxRowsPerInsert,
+                            @Nonnegative final int nMaxParametersPerStatement)
+  {
+    m_sID = sID;
+    m_sProductNamePrefix = sProductNamePrefix;
+    m_aConnectionPrefixes = aConnectionPrefixes;
+    m_nMaxRowsPerInsert = nMaxRowsPerInsert;
+    m_nMaxParametersPerStatement = nMaxParametersPerStatement;
+  }
+
+  @Nonnull
+  @Nonempty
+  public String getID ()
+  {
+    return m_sID;
+  }
+
+  /**
+   * @return The maximum number of rows to be inserted with a single multi-row
+   *         INSERT statement. If this value is 1, multi-row INSERT statements
+   *         are not supported.
+   */
+  @Nonnegative
+  public int getMaxRowsPerInsert ()
+  {
+    return m_nMaxRowsPerInsert;
+  }
+
+  /**
+   * @return The maximum number of bind parameters to be used in a single
+   *         statement. This value is below the hard driver/server limit to
+   *         leave some room.
+   */
+  @Nonnegative
+  public int getMaxParametersPerStatement ()
+  {
+    return m_nMaxParametersPerStatement;
+  }
+
+  /**
+   * @return <code>true</code> if this dialect supports multi-row INSERT
+   *         statements (either with multiple VALUES or via "INSERT ALL").
+   */
+  public boolean isMultiRowInsertSupported ()
+  {
+    return m_nMaxRowsPerInsert > 1;
+  }
+
+  /**
+   * @return <code>true</code> if this dialect supports a single statement
+   *         "insert or update" (MERGE or ON DUPLICATE KEY UPDATE). DB2
+   *         rejects untyped parameter markers in the VALUES clause of a MERGE,
+   *         so the markers need to be typed with the column types.
+   */
+  public boolean isUpsertSupported ()
+  {
+    return this != GENERIC;
+  }
+
+  /**
+   * @return <code>true</code> if the upsert statement of this dialect requires
+   *         the SQL types of the columns.
+   */
+  public boolean isUpsertRequiringColumnTypes ()
+  {
+    return this == DB2;
+  }
+
+  /**
+   * @return The fetch size to use for queries as long as the row width of a
+   *         query is unknown, or 0 to use the driver default. The Oracle
+   *         driver only fetches 10 rows per round trip by default. Note: MySQL
+   *         Connector/J ignores the fetch size and reads the whole result
+   *         unless the connection property "useCursorFetch" is enabled, as
+   *         done by {@link com.phloc.db.jdbc.mysql.AbstractMySQLConnector}.
+   */
+  @Nonnegative
+  public int getDefaultFetchSize ()
+  {
+    switch (this)
+    {
+      case H2:
+      case MYSQL:
+      case MSSQL:
+      case DB2:
+      case ORACLE:
+        return 100;
+      default:
+        return 0;
+    }
+  }
+
+  /**
+   * @return <code>true</code> if this dialect supports sequences.
+   */
+  public boolean isSequenceSupported ()
+  {
+    return this != MYSQL && this != GENERIC;
+  }
+
+  /**
+   * Get the query to retrieve the next value of a sequence.
+   * 
+   * @param sSequenceName
+   *        The name of the sequence. May neither be <code>null</code> nor
+   *        empty.
+   * @return The SQL query returning a single row with a single column.
+   * @throws UnsupportedOperationException
+   *         If this dialect does not support sequences.
+   */
+  @Nonnull
+  @Nonempty
+  public String getNextSequenceValueSQL (@Nonnull @Nonempty final String sSequenceName)
+  {
+    switch (this)
+    {
+      case H2:
+      case MSSQL:
+        return "SELECT NEXT VALUE FOR " + sSequenceName;
+      case DB2:
+        return "VALUES NEXT VALUE FOR " + sSequenceName;
+      case ORACLE:
+        return "SELECT " + sSequenceName + ".NEXTVAL FROM DUAL";
+      default:
+        throw new UnsupportedOperationException ("Dialect " + this + " does not support sequences");
+    }
+  }
+
+  /**
+   * Get the query to retrieve the increment of a sequence from the system
+   * catalog.
+   * 
+   * @return The SQL query returning a single row with a single numeric column.
+   *         It contains exactly one <code>?</code> for the unqualified name of
+   *         the sequence, which is compared case-insensitively where the
+   *         database folds unquoted names.
+   * @throws UnsupportedOperationException
+   *         If this dialect does not support sequences.
+   */
+  @Nonnull
+  @Nonempty
+  public String getSequenceIncrementSQL ()
+  {
+    switch (this)
+    {
+      case H2:
+        return "SELECT INCREMENT FROM INFORMATION_SCHEMA.SEQUENCES WHERE UPPER(SEQUENCE_NAME) = UPPER(?)";
+      case MSSQL:
+        return "SELECT increment FROM sys.sequences WHERE name = ?";
+      case DB2:
+        return "SELECT INCREMENT FROM SYSCAT.SEQUENCES WHERE SEQNAME = UPPER(?)";
+      case ORACLE:
+        return "SELECT INCREMENT_BY FROM USER_SEQUENCES WHERE SEQUENCE_NAME = UPPER(?)";
+      default:
+        throw new UnsupportedOperationException ("Dialect " + this + " does not support sequences");
+    }
+  }
+
+  /**
+   * @return <code>true</code> if a Java array can be bound to a single
+   *         parameter and used as a table in a query.
+   */
+  public boolean isArrayParameterSupported ()
+  {
+    return this == H2;
+  }
+
+  /**
+   * Get the table expression that turns a single array parameter into a table
+   * with one column.
+   * 
+   * @param sColumnName
+   *        The name of the resulting column. May neither be <code>null</code>
+   *        nor empty.
+   * @param sColumnType
+   *        The SQL type of the column. May neither be <code>null</code> nor
+   *        empty.
+   * @return The table expression containing exactly one <code>?</code>.
+   * @throws UnsupportedOperationException
+   *         If this dialect does not support array parameters.
+   */
+  @Nonnull
+  @Nonempty
+  public String getArrayParameterTableSQL (@Nonnull @Nonempty final String sColumnName,
+                                           @Nonnull @Nonempty final String sColumnType)
+  {
+    if (this != H2)
+      throw new UnsupportedOperationException ("Dialect " + this + " does not support array parameters");
+    return "TABLE(" + sColumnName + " " + sColumnType + " = ?)";
+  }
+
+  /**
+   * Get the name under which a session specific temporary table can be
+   * addressed.
+   * 
+   * @param sTableName
+   *        The plain table name. May neither be <code>null</code> nor empty.
+   * @return The table name to be used in SQL statements.
+   */
+  @Nonnull
+  @Nonempty
+  public String getTemporaryTableName (@Nonnull @Nonempty final String sTableName)
+  {
+    switch (this)
+    {
+      case MSSQL:
+        return "#" + sTableName;
+      case DB2:
+        return "SESSION." + sTableName;
+      case ORACLE:
+        return "ORA$PTT_" + sTableName;
+      default:
+        return sTableName;
+    }
+  }
+
+  /**
+   * Get the statement to create a session specific temporary table.
+   * 
+   * @param sTemporaryTableName
+   *        The table name as returned by {@link #getTemporaryTableName(String)}
+   *        . May neither be <code>null</code> nor empty.
+   * @param sColumnDefinitions
+   *        The column definitions, e.g. <code>id BIGINT</code>. May neither be
+   *        <code>null</code> nor empty.
+   * @return The CREATE statement.
+   */
+  @Nonnull
+  @Nonempty
+  public String getCreateTemporaryTableSQL (@Nonnull @Nonempty final String sTemporaryTableName,
+                                           @Nonnull @Nonempty final String sColumnDefinitions)
+  {
+    switch (this)
+    {
+      case MYSQL:
+        return "CREATE TEMPORARY TABLE " + sTemporaryTableName + " (" + sColumnDefinitions + ")";
+      case MSSQL:
+        return "CREATE TABLE " + sTemporaryTableName + " (" + sColumnDefinitions + ")";
+      case DB2:
+        return "DECLARE GLOBAL TEMPORARY TABLE " +
+               sTemporaryTableName +
+               " (" +
+               sColumnDefinitions +
+               ") ON COMMIT PRESERVE ROWS NOT LOGGED";
+      case ORACLE:
+        // Private temporary tables are dropped automatically on commit
+        return "CREATE PRIVATE TEMPORARY TABLE " +
+               sTemporaryTableName +
+               " (" +
+               sColumnDefinitions +
+               ") ON COMMIT DROP DEFINITION";
+      default:
+        return "CREATE LOCAL TEMPORARY TABLE " + sTemporaryTableName + " (" + sColumnDefinitions + ")";
+    }
+  }
+
+  /**
+   * Get the statement to drop a session specific temporary table.
+   * 
+   * @param sTemporaryTableName
+   *        The table name as returned by {@link #getTemporaryTableName(String)}
+   *        . May neither be <code>null</code> nor empty.
+   * @return The DROP statement or <code>null</code> if the table is dropped
+   *         automatically at the end of the transaction.
+   */
+  @Nullable
+  public String getDropTemporaryTableSQL (@Nonnull @Nonempty final String sTemporaryTableName)
+  {
+    switch (this)
+    {
+      case MYSQL:
+        return "DROP TEMPORARY TABLE " + sTemporaryTableName;
+      case ORACLE:
+        return null;
+      default:
+        return "DROP TABLE " + sTemporaryTableName;
+    }
+  }
+
+  /**
+   * Get the dialect from the passed JDBC connection URL.
+   * 
+   * @param sConnectionURL
+   *        The JDBC connection URL. May be <code>null</code>.
+   * @return {@link #GENERIC} if the dialect could not be determined.
+   */
+  @Nonnull
+  public static EDatabaseDialect getFromConnectionURL (@Nullable final String sConnectionURL)
+  {
+    if (sConnectionURL != null)
+      for (final EDatabaseDialect e : values ())
+        for (final String sPrefix : e.m_aConnectionPrefixes)
+          if (sConnectionURL.startsWith (sPrefix))
+            return e;
+    return GENERIC;
+  }
+
+  /**
+   * Get the dialect from the database product name as returned by
+   * {@link java.sql.DatabaseMetaData#getDatabaseProductName()}.
+   * 
+   * @param sProductName
+   *        The product name. May be <code>null</code>.
+   * @return {@link #GENERIC} if the dialect could not be determined.
+   */
+  @Nonnull
+  public static EDatabaseDialect getFromProductName (@Nullable final String sProductName)
+  {
+    if (sProductName != null)
+    {
+      final String sLCProductName = sProductName.toLowerCase (Locale.US);
+      for (final EDatabaseDialect e : values ())
+        if (e.m_sProductNamePrefix != null &&
+            sLCProductName.startsWith (e.m_sProductNamePrefix.toLowerCase (Locale.US)))
+          return e;
+    }
+    return GENERIC;
+  }
+
+  /**
+   * Determine the dialect from the meta data of the passed connection.
+   * 
+   * @param aConnection
+   *        The connection to use. May not be <code>null</code>.
+   * @return {@link #GENERIC} if the dialect could not be determined.
+   */
+  @Nonnull
+  public static EDatabaseDialect getFromConnection (@Nonnull final Connection aConnection)
+  {
+    try
+    {
+      return getFromProductName (aConnection.getMetaData ().getDatabaseProductName ());
+    }
+    catch (final SQLException ex)
+    {
+      s_aLogger.warn ("Failed to determine database product name", ex);
+      return GENERIC;
+    }
+  }
+}
@@ -0,0 +1,95 @@
+/**
+ * Copyright (C) 2006-2015 phloc systems
+ * http://www.phloc.com
+ * office[at]phloc[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.phloc.db.jdbc.callback;
+
+import java.beans.IntrospectionException;
+import java.beans.Introspector;
+import java.beans.PropertyDescriptor;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import com.phloc.commons.annotations.Nonempty;
+import com.phloc.commons.string.ToStringGenerator;
+
+/**
+ * An implementation of {@link INamedParameterSource} that reads the parameter
+ * values from the readable properties of a Java bean. The parameter
+ * <code>:name</code> is resolved by calling <code>getName()</code> or
+ * <code>isName()</code>.
+ * 
+ * @author Philip Helger
+ */
+public final class BeanNamedParameterSource implements INamedParameterSource
+{
+  private final Object m_aBean;
+  private final Map <String, Method> m_aGetters = new HashMap <String, Method> ();
+
+  public BeanNamedParameterSource (@Nonnull final Object aBean)
+  {
+    if (aBean == null)
+      throw new NullPointerException ("bean");
+    m_aBean = aBean;
+    try
+    {
+      // The bean info is cached by the introspector
+      for (final PropertyDescriptor aPD : Introspector.getBeanInfo (aBean.getClass ()).getPropertyDescriptors ())
+        if (aPD.getReadMethod () != null)
+          m_aGetters.put (aPD.getName (), aPD.getReadMethod ());
+    }
+    catch (final IntrospectionException ex)
+    {
+      throw new IllegalArgumentException ("Failed to introspect bean " + aBean, ex);
+    }
+  }
+
+  public boolean containsParameter (@Nonnull @Nonempty final String sName)
+  {
+    return m_aGetters.containsKey (sName);
+  }
+
+  @Nullable
+  public Object getParameterValue (@Nonnull @Nonempty final String sName)
+  {
+    final Method aGetter = m_aGetters.get (sName);
+    if (aGetter == null)
+      return null;
+    try
+    {
+      return aGetter.invoke (m_aBean);
+    }
+    catch (final IllegalAccessException ex)
+    {
+      throw new IllegalStateException ("Failed to read bean property '" + sName + "'", ex);
+    }
+    catch (final InvocationTargetException ex)
+    {
+      throw new IllegalStateException ("Failed to read bean property '" + sName + "'", ex.getCause ());
+    }
+  }
+
+  @Override
+  public String toString ()
+  {
+    return new ToStringGenerator (this).append ("bean", m_aBean).toString ();
+  }
+}
@@ -0,0 +1,52 @@
+/**
+ * Copyright (C) 2006-2015 phloc systems
+ * http://www.phloc.com
+ * office[at]phloc[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.phloc.db.jdbc.callback;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import com.phloc.commons.annotations.Nonempty;
+
+/**
+ * Interface for objects that deliver the values of named parameters of an SQL
+ * template like <code>WHERE id = :id</code>.
+ * 
+ * @author Philip Helger
+ */
+public interface INamedParameterSource
+{
+  /**
+   * Check if a value for the passed parameter is present. This is required to
+   * distinguish between a missing parameter and a <code>null</code> value.
+   * 
+   * @param sName
+   *        The parameter name without the leading colon.
+   * @return <code>true</code> if a value is present.
+   */
+  boolean containsParameter (@Nonnull @Nonempty String sName);
+
+  /**
+   * Get the value of the passed parameter.
+   * 
+   * @param sName
+   *        The parameter name without the leading colon.
+   * @return The value of the parameter. May be <code>null</code>.
+   */
+  @Nullable
+  Object getParameterValue (@Nonnull @Nonempty String sName);
+}
@@ -0,0 +1,48 @@
+/**
+ * Copyright (C) 2006-2015 phloc systems
+ * http://www.phloc.com
+ * office[at]phloc[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.phloc.db.jdbc.callback;
+
+import java.io.IOException;
+import java.sql.SQLException;
+
+import javax.annotation.Nonnull;
+
+import com.phloc.db.jdbc.executor.DBStreamingResultRow;
+
+/**
+ * A callback that is executed for each row in a {@link java.sql.ResultSet}
+ * while the cursor is positioned on that row. It allows for streamed access to
+ * large binary and character columns without materializing them.
+ * 
+ * @author Philip Helger
+ */
+public interface IStreamingResultSetRowCallback
+{
+  /**
+   * Called for each result row. The passed row object is only valid during
+   * this call and may not be stored.
+   * 
+   * @param aRow
+   *        The current row. Never <code>null</code>.
+   * @throws SQLException
+   *         On database error
+   * @throws IOException
+   *         On IO error when streaming column values
+   */
+  void run (@Nonnull DBStreamingResultRow aRow) throws SQLException, IOException;
+}
@@ -0,0 +1,75 @@
+/**
+ * Copyright (C) 2006-2015 phloc systems
+ * http://www.phloc.com
+ * office[at]phloc[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.phloc.db.jdbc.callback;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import com.phloc.commons.annotations.Nonempty;
+import com.phloc.commons.string.ToStringGenerator;
+
+/**
+ * An implementation of {@link INamedParameterSource} based on a {@link Map}.
+ * 
+ * @author Philip Helger
+ */
+public final class MapNamedParameterSource implements INamedParameterSource
+{
+  private final Map <String, Object> m_aValues;
+
+  public MapNamedParameterSource ()
+  {
+    m_aValues = new HashMap <String, Object> ();
+  }
+
+  public MapNamedParameterSource (@Nonnull final Map <String, ?> aValues)
+  {
+    if (aValues == null)
+      throw new NullPointerException ("values");
+    m_aValues = new HashMap <String, Object> (aValues);
+  }
+
+  @Nonnull
+  public MapNamedParameterSource addValue (@Nonnull @Nonempty final String sName, @Nullable final Object aValue)
+  {
+    if (sName == null)
+      throw new NullPointerException ("name");
+    m_aValues.put (sName, aValue);
+    return this;
+  }
+
+  public boolean containsParameter (@Nonnull @Nonempty final String sName)
+  {
+    return m_aValues.containsKey (sName);
+  }
+
+  @Nullable
+  public Object getParameterValue (@Nonnull @Nonempty final String sName)
+  {
+    return m_aValues.get (sName);
+  }
+
+  @Override
+  public String toString ()
+  {
+    return new ToStringGenerator (this).append ("values", m_aValues).toString ();
+  }
+}
@@ -0,0 +1,130 @@
+/**
+ * Copyright (C) 2006-2015 phloc systems
+ * http://www.phloc.com
+ * office[at]phloc[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.phloc.db.jdbc.catalog;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+
+import com.phloc.commons.annotations.Nonempty;
+import com.phloc.commons.string.StringHelper;
+import com.phloc.commons.string.ToStringGenerator;
+
+/**
+ * Represents a single column of a {@link DBCatalogTable}.
+ * 
+ * @author Philip Helger
+ */
+@Immutable
+public final class DBCatalogColumn
+{
+  private final String m_sName;
+  private final int m_nPosition;
+  private final int m_nDataType;
+  private final String m_sTypeName;
+  private final int m_nColumnSize;
+  private final int m_nDecimalDigits;
+  private final boolean m_bNullable;
+
+  public DBCatalogColumn (@Nonnull @Nonempty final String sName,
+                          @Nonnegative final int nPosition,
+                          final int nDataType,
+                          @Nullable final String sTypeName,
+                          final int nColumnSize,
+                          final int nDecimalDigits,
+                          final boolean bNullable)
+  {
+    if (StringHelper.hasNoText (sName))
+      throw new IllegalArgumentException ("name");
+    m_sName = sName;
+    m_nPosition = nPosition;
+    m_nDataType = nDataType;
+    m_sTypeName = sTypeName;
+    m_nColumnSize = nColumnSize;
+    m_nDecimalDigits = nDecimalDigits;
+    m_bNullable = bNullable;
+  }
+
+  @Nonnull
+  @Nonempty
+  public String getName ()
+  {
+    return m_sName;
+  }
+
+  /**
+   * @return The 1-based position of the column within the table.
+   */
+  @Nonnegative
+  public int getPosition ()
+  {
+    return m_nPosition;
+  }
+
+  /**
+   * @return The column type as defined in {@link java.sql.Types}.
+   */
+  public int getDataType ()
+  {
+    return m_nDataType;
+  }
+
+  /**
+   * @return The database specific type name. May be <code>null</code>.
+   */
+  @Nullable
+  public String getTypeName ()
+  {
+    return m_sTypeName;
+  }
+
+  /**
+   * @return The column size (precision or length) as reported by the driver.
+   */
+  public int getColumnSize ()
+  {
+    return m_nColumnSize;
+  }
+
+  /**
+   * @return The number of fractional digits as reported by the driver.
+   */
+  public int getDecimalDigits ()
+  {
+    return m_nDecimalDigits;
+  }
+
+  public boolean isNullable ()
+  {
+    return m_bNullable;
+  }
+
+  @Override
+  public String toString ()
+  {
+    return new ToStringGenerator (this).append ("name", m_sName)
+                                       .append ("position", m_nPosition)
+                                       .append ("dataType", m_nDataType)
+                                       .append ("typeName", m_sTypeName)
+                                       .append ("columnSize", m_nColumnSize)
+                                       .append ("decimalDigits", m_nDecimalDigits)
+                                       .append ("nullable", m_bNullable)
+                                       .toString ();
+  }
+}
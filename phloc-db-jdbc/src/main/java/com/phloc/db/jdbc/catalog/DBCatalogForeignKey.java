@@ -0,0 +1,100 @@
+/**
+ * Copyright (C) 2006-2015 phloc systems
+ * http://www.phloc.com
+ * office[at]phloc[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.phloc.db.jdbc.catalog;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+
+import com.phloc.commons.annotations.Nonempty;
+import com.phloc.commons.string.StringHelper;
+import com.phloc.commons.string.ToStringGenerator;
+
+/**
+ * Represents a single column of a foreign key of a {@link DBCatalogTable}.
+ * Foreign keys over multiple columns are represented by one object per
+ * column, all sharing the same name.
+ * 
+ * @author Philip Helger
+ */
+@Immutable
+public final class DBCatalogForeignKey
+{
+  private final String m_sName;
+  private final String m_sColumnName;
+  private final String m_sReferencedTableName;
+  private final String m_sReferencedColumnName;
+
+  public DBCatalogForeignKey (@Nullable final String sName,
+                              @Nonnull @Nonempty final String sColumnName,
+                              @Nonnull @Nonempty final String sReferencedTableName,
+                              @Nonnull @Nonempty final String sReferencedColumnName)
+  {
+    if (StringHelper.hasNoText (sColumnName))
+      throw new IllegalArgumentException ("columnName");
+    if (StringHelper.hasNoText (sReferencedTableName))
+      throw new IllegalArgumentException ("referencedTableName");
+    if (StringHelper.hasNoText (sReferencedColumnName))
+      throw new IllegalArgumentException ("referencedColumnName");
+    m_sName = sName;
+    m_sColumnName = sColumnName;
+    m_sReferencedTableName = sReferencedTableName;
+    m_sReferencedColumnName = sReferencedColumnName;
+  }
+
+  /**
+   * @return The name of the foreign key constraint. May be <code>null</code>
+   *         if the driver does not report it.
+   */
+  @Nullable
+  public String getName ()
+  {
+    return m_sName;
+  }
+
+  @Nonnull
+  @Nonempty
+  public String getColumnName ()
+  {
+    return m_sColumnName;
+  }
+
+  @Nonnull
+  @Nonempty
+  public String getReferencedTableName ()
+  {
+    return m_sReferencedTableName;
+  }
+
+  @Nonnull
+  @Nonempty
+  public String getReferencedColumnName ()
+  {
+    return m_sReferencedColumnName;
+  }
+
+  @Override
+  public String toString ()
+  {
+    return new ToStringGenerator (this).append ("name", m_sName)
+                                       .append ("columnName", m_sColumnName)
+                                       .append ("referencedTableName", m_sReferencedTableName)
+                                       .append ("referencedColumnName", m_sReferencedColumnName)
+                                       .toString ();
+  }
+}
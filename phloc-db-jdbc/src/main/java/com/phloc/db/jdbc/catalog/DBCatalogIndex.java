@@ -0,0 +1,86 @@
+/**
+ * Copyright (C) 2006-2015 phloc systems
+ * http://www.phloc.com
+ * office[at]phloc[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.phloc.db.jdbc.catalog;
+
+import java.util.List;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.Immutable;
+
+import com.phloc.commons.annotations.Nonempty;
+import com.phloc.commons.annotations.ReturnsMutableCopy;
+import com.phloc.commons.collections.ContainerHelper;
+import com.phloc.commons.string.StringHelper;
+import com.phloc.commons.string.ToStringGenerator;
+
+/**
+ * Represents a single index of a {@link DBCatalogTable}.
+ * 
+ * @author Philip Helger
+ */
+@Immutable
+public final class DBCatalogIndex
+{
+  private final String m_sName;
+  private final boolean m_bUnique;
+  private final List <String> m_aColumnNames;
+
+  public DBCatalogIndex (@Nonnull @Nonempty final String sName,
+                         final boolean bUnique,
+                         @Nonnull final List <String> aColumnNames)
+  {
+    if (StringHelper.hasNoText (sName))
+      throw new IllegalArgumentException ("name");
+    if (aColumnNames == null)
+      throw new NullPointerException ("columnNames");
+    m_sName = sName;
+    m_bUnique = bUnique;
+    m_aColumnNames = ContainerHelper.newList (aColumnNames);
+  }
+
+  @Nonnull
+  @Nonempty
+  public String getName ()
+  {
+    return m_sName;
+  }
+
+  public boolean isUnique ()
+  {
+    return m_bUnique;
+  }
+
+  /**
+   * @return The names of the indexed columns in index order.
+   */
+  @Nonnull
+  @ReturnsMutableCopy
+  public List <String> getAllColumnNames ()
+  {
+    return ContainerHelper.newList (m_aColumnNames);
+  }
+
+  @Override
+  public String toString ()
+  {
+    return new ToStringGenerator (this).append ("name", m_sName)
+                                       .append ("unique", m_bUnique)
+                                       .append ("columnNames", m_aColumnNames)
+                                       .toString ();
+  }
+}
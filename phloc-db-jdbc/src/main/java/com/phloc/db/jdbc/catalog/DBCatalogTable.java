@@ -0,0 +1,191 @@
+/**
+ * Copyright (C) 2006-2015 phloc systems
+ * http://www.phloc.com
+ * office[at]phloc[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.phloc.db.jdbc.catalog;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+
+import com.phloc.commons.annotations.Nonempty;
+import com.phloc.commons.annotations.ReturnsMutableCopy;
+import com.phloc.commons.collections.ContainerHelper;
+import com.phloc.commons.string.StringHelper;
+import com.phloc.commons.string.ToStringGenerator;
+
+/**
+ * Represents the meta data of a single table or view as contained in a
+ * {@link DBSchemaCatalog}. Column names are looked up case insensitive.
+ * 
+ * @author Philip Helger
+ */
+@Immutable
+public final class DBCatalogTable
+{
+  private final String m_sSchemaName;
+  private final String m_sName;
+  private final String m_sType;
+  private final Map <String, DBCatalogColumn> m_aColumns = new LinkedHashMap <String, DBCatalogColumn> ();
+  private final List <String> m_aPrimaryKeyColumnNames;
+  private final List <DBCatalogIndex> m_aIndexes;
+  private final List <DBCatalogForeignKey> m_aForeignKeys;
+
+  public DBCatalogTable (@Nullable final String sSchemaName,
+                         @Nonnull @Nonempty final String sName,
+                         @Nonnull @Nonempty final String sType,
+                         @Nonnull final List <DBCatalogColumn> aColumns,
+                         @Nonnull final List <String> aPrimaryKeyColumnNames,
+                         @Nonnull final List <DBCatalogIndex> aIndexes,
+                         @Nonnull final List <DBCatalogForeignKey> aForeignKeys)
+  {
+    if (StringHelper.hasNoText (sName))
+      throw new IllegalArgumentException ("name");
+    if (StringHelper.hasNoText (sType))
+      throw new IllegalArgumentException ("type");
+    if (aColumns == null)
+      throw new NullPointerException ("columns");
+    if (aPrimaryKeyColumnNames == null)
+      throw new NullPointerException ("primaryKeyColumnNames");
+    if (aIndexes == null)
+      throw new NullPointerException ("indexes");
+    if (aForeignKeys == null)
+      throw new NullPointerException ("foreignKeys");
+    m_sSchemaName = sSchemaName;
+    m_sName = sName;
+    m_sType = sType;
+    for (final DBCatalogColumn aColumn : aColumns)
+      m_aColumns.put (DBSchemaCatalog.getLookupKey (aColumn.getName ()), aColumn);
+    m_aPrimaryKeyColumnNames = ContainerHelper.newList (aPrimaryKeyColumnNames);
+    m_aIndexes = ContainerHelper.newList (aIndexes);
+    m_aForeignKeys = ContainerHelper.newList (aForeignKeys);
+  }
+
+  /**
+   * @return The name of the schema the table resides in. May be
+   *         <code>null</code> if the database does not support schemas.
+   */
+  @Nullable
+  public String getSchemaName ()
+  {
+    return m_sSchemaName;
+  }
+
+  /**
+   * @return The table name as stored in the database.
+   */
+  @Nonnull
+  @Nonempty
+  public String getName ()
+  {
+    return m_sName;
+  }
+
+  /**
+   * @return The table type as reported by the driver (e.g. "TABLE" or
+   *         "VIEW").
+   */
+  @Nonnull
+  @Nonempty
+  public String getType ()
+  {
+    return m_sType;
+  }
+
+  /**
+   * @return All columns in the order of their position.
+   */
+  @Nonnull
+  @ReturnsMutableCopy
+  public List <DBCatalogColumn> getAllColumns ()
+  {
+    return ContainerHelper.newList (m_aColumns.values ());
+  }
+
+  /**
+   * @return All column names in the order of their position.
+   */
+  @Nonnull
+  @ReturnsMutableCopy
+  public List <String> getAllColumnNames ()
+  {
+    final List <String> ret = ContainerHelper.newList ();
+    for (final DBCatalogColumn aColumn : m_aColumns.values ())
+      ret.add (aColumn.getName ());
+    return ret;
+  }
+
+  /**
+   * Get the column with the passed name.
+   * 
+   * @param sColumnName
+   *        The column name to search. Case insensitive. May be
+   *        <code>null</code>.
+   * @return <code>null</code> if no such column exists.
+   */
+  @Nullable
+  public DBCatalogColumn getColumn (@Nullable final String sColumnName)
+  {
+    return sColumnName == null ? null : m_aColumns.get (DBSchemaCatalog.getLookupKey (sColumnName));
+  }
+
+  public boolean containsColumn (@Nullable final String sColumnName)
+  {
+    return getColumn (sColumnName) != null;
+  }
+
+  /**
+   * @return The names of the primary key columns in key order. Empty if the
+   *         table has no primary key.
+   */
+  @Nonnull
+  @ReturnsMutableCopy
+  public List <String> getAllPrimaryKeyColumnNames ()
+  {
+    return ContainerHelper.newList (m_aPrimaryKeyColumnNames);
+  }
+
+  @Nonnull
+  @ReturnsMutableCopy
+  public List <DBCatalogIndex> getAllIndexes ()
+  {
+    return ContainerHelper.newList (m_aIndexes);
+  }
+
+  @Nonnull
+  @ReturnsMutableCopy
+  public List <DBCatalogForeignKey> getAllForeignKeys ()
+  {
+    return ContainerHelper.newList (m_aForeignKeys);
+  }
+
+  @Override
+  public String toString ()
+  {
+    return new ToStringGenerator (this).append ("schemaName", m_sSchemaName)
+                                       .append ("name", m_sName)
+                                       .append ("type", m_sType)
+                                       .append ("columns", m_aColumns.values ())
+                                       .append ("primaryKeyColumnNames", m_aPrimaryKeyColumnNames)
+                                       .append ("indexes", m_aIndexes)
+                                       .append ("foreignKeys", m_aForeignKeys)
+                                       .toString ();
+  }
+}
@@ -0,0 +1,494 @@
+/**
+ * Copyright (C) 2006-2015 phloc systems
+ * http://www.phloc.com
+ * office[at]phloc[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.phloc.db.jdbc.catalog;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.phloc.commons.annotations.OverrideOnDemand;
+import com.phloc.commons.annotations.ReturnsMutableCopy;
+import com.phloc.commons.collections.ContainerHelper;
+import com.phloc.commons.state.EChange;
+import com.phloc.commons.string.ToStringGenerator;
+import com.phloc.db.api.jdbc.JDBCHelper;
+import com.phloc.db.jdbc.IConnectionProvider;
+
+/**
+ * An in-memory catalog of the tables of a database, including their columns,
+ * primary keys, indexes and foreign keys. The information is read from the
+ * {@link DatabaseMetaData} upon first access and kept until the catalog is
+ * invalidated - either explicitly via {@link #invalidate()} or by executing a
+ * DDL statement via a {@link com.phloc.db.jdbc.executor.DBExecutor} that uses
+ * this catalog. Table and column names are looked up case insensitive.
+ * 
+ * @author Philip Helger
+ */
+@ThreadSafe
+public class DBSchemaCatalog
+{
+  private static final Logger s_aLogger = LoggerFactory.getLogger (DBSchemaCatalog.class);
+
+  /** The table types that are contained in the catalog */
+  private static final String [] TABLE_TYPES = { "TABLE", "VIEW" };
+
+  /** The leading keywords of statements that change the schema */
+  private static final String [] SCHEMA_CHANGING_KEYWORDS = { "CREATE", "ALTER", "DROP", "RENAME", "RUNSCRIPT" };
+
+  private final ReadWriteLock m_aRWLock = new ReentrantReadWriteLock ();
+  private final IConnectionProvider m_aConnectionProvider;
+  private final String m_sSchemaPattern;
+  // Lookup key to table - null if not loaded
+  private Map <String, DBCatalogTable> m_aTables;
+  private int m_nLoadCount = 0;
+
+  public DBSchemaCatalog (@Nonnull final IConnectionProvider aConnectionProvider)
+  {
+    this (aConnectionProvider, null);
+  }
+
+  /**
+   * Constructor
+   * 
+   * @param aConnectionProvider
+   *        The connection provider used to read the meta data. May not be
+   *        <code>null</code>.
+   * @param sSchemaPattern
+   *        The schema name pattern to restrict the catalog to. May be
+   *        <code>null</code> to load the tables of all schemas. If the
+   *        database contains tables with the same name in multiple schemas,
+   *        only the first one is accessible by name.
+   */
+  public DBSchemaCatalog (@Nonnull final IConnectionProvider aConnectionProvider,
+                          @Nullable final String sSchemaPattern)
+  {
+    if (aConnectionProvider == null)
+      throw new NullPointerException ("connectionProvider");
+    m_aConnectionProvider = aConnectionProvider;
+    m_sSchemaPattern = sSchemaPattern;
+  }
+
+  @Nonnull
+  static String getLookupKey (@Nonnull final String sName)
+  {
+    return sName.toUpperCase (Locale.US);
+  }
+
+  /**
+   * @return The schema name pattern the catalog is restricted to. May be
+   *         <code>null</code>.
+   */
+  @Nullable
+  public String getSchemaPattern ()
+  {
+    return m_sSchemaPattern;
+  }
+
+  /**
+   * @return <code>true</code> if the meta data is currently loaded.
+   */
+  public boolean isLoaded ()
+  {
+    m_aRWLock.readLock ().lock ();
+    try
+    {
+      return m_aTables != null;
+    }
+    finally
+    {
+      m_aRWLock.readLock ().unlock ();
+    }
+  }
+
+  /**
+   * @return The number of times the meta data was loaded from the database.
+   */
+  @Nonnegative
+  public int getLoadCount ()
+  {
+    m_aRWLock.readLock ().lock ();
+    try
+    {
+      return m_nLoadCount;
+    }
+    finally
+    {
+      m_aRWLock.readLock ().unlock ();
+    }
+  }
+
+  /**
+   * Discard the loaded meta data. It is reloaded upon the next access.
+   * 
+   * @return {@link EChange#UNCHANGED} if the meta data was not loaded.
+   */
+  @Nonnull
+  public EChange invalidate ()
+  {
+    m_aRWLock.writeLock ().lock ();
+    try
+    {
+      if (m_aTables == null)
+        return EChange.UNCHANGED;
+      m_aTables = null;
+    }
+    finally
+    {
+      m_aRWLock.writeLock ().unlock ();
+    }
+    if (s_aLogger.isDebugEnabled ())
+      s_aLogger.debug ("Invalidated schema catalog");
+    return EChange.CHANGED;
+  }
+
+  /**
+   * Check if the passed SQL statement changes the database schema, based on
+   * its leading keyword. Leading white spaces and comments are skipped.
+   * 
+   * @param sSQL
+   *        The SQL statement to check. May be <code>null</code>.
+   * @return <code>true</code> if the statement is a DDL statement.
+   */
+  public static boolean isSchemaChangingStatement (@Nullable final String sSQL)
+  {
+    if (sSQL == null)
+      return false;
+
+    final int nLen = sSQL.length ();
+    int i = 0;
+    while (i < nLen)
+    {
+      final char c = sSQL.charAt (i);
+      if (Character.isWhitespace (c) || c == '(')
+        ++i;
+      else
+        if (c == '-' && i + 1 < nLen && sSQL.charAt (i + 1) == '-')
+        {
+          // Line comment
+          while (i < nLen && sSQL.charAt (i) != '\n')
+            ++i;
+        }
+        else
+          if (c == '/' && i + 1 < nLen && sSQL.charAt (i + 1) == '*')
+          {
+            // Block comment
+            final int nEnd = sSQL.indexOf ("*/", i + 2);
+            if (nEnd < 0)
+              return false;
+            i = nEnd + 2;
+          }
+          else
+            break;
+    }
+
+    for (final String sKeyword : SCHEMA_CHANGING_KEYWORDS)
+    {
+      final int nEnd = i + sKeyword.length ();
+      if (sSQL.regionMatches (true, i, sKeyword, 0, sKeyword.length ()) &&
+          (nEnd == nLen || !Character.isLetterOrDigit (sSQL.charAt (nEnd))))
+        return true;
+    }
+    return false;
+  }
+
+  @Nonnull
+  private static String _getInternalKey (@Nullable final String sSchemaName, @Nonnull final String sTableName)
+  {
+    return sSchemaName == null ? sTableName : sSchemaName + '.' + sTableName;
+  }
+
+  @Nonnull
+  private static List <String> _getOrCreate (@Nonnull final Map <String, List <String>> aMap, @Nonnull final String sKey)
+  {
+    List <String> ret = aMap.get (sKey);
+    if (ret == null)
+    {
+      ret = new ArrayList <String> ();
+      aMap.put (sKey, ret);
+    }
+    return ret;
+  }
+
+  /**
+   * Read all tables from the passed meta data.
+   * 
+   * @param aMetaData
+   *        The meta data to read from. May not be <code>null</code>.
+   * @return A list with all tables. Never <code>null</code>.
+   * @throws SQLException
+   *         If reading the meta data fails
+   */
+  @Nonnull
+  @OverrideOnDemand
+  protected List <DBCatalogTable> loadTables (@Nonnull final DatabaseMetaData aMetaData) throws SQLException
+  {
+    // Tables
+    final List <String []> aTableInfos = new ArrayList <String []> ();
+    ResultSet aRS = aMetaData.getTables (null, m_sSchemaPattern, "%", TABLE_TYPES);
+    try
+    {
+      while (aRS.next ())
+        aTableInfos.add (new String [] { aRS.getString ("TABLE_SCHEM"),
+                                        aRS.getString ("TABLE_NAME"),
+                                        aRS.getString ("TABLE_TYPE") });
+    }
+    finally
+    {
+      aRS.close ();
+    }
+
+    // All columns of all tables at once
+    final Map <String, List <DBCatalogColumn>> aColumns = new LinkedHashMap <String, List <DBCatalogColumn>> ();
+    aRS = aMetaData.getColumns (null, m_sSchemaPattern, "%", "%");
+    try
+    {
+      while (aRS.next ())
+      {
+        final String sKey = _getInternalKey (aRS.getString ("TABLE_SCHEM"), aRS.getString ("TABLE_NAME"));
+        List <DBCatalogColumn> aList = aColumns.get (sKey);
+        if (aList == null)
+        {
+          aList = new ArrayList <DBCatalogColumn> ();
+          aColumns.put (sKey, aList);
+        }
+        aList.add (new DBCatalogColumn (aRS.getString ("COLUMN_NAME"),
+                                        aRS.getInt ("ORDINAL_POSITION"),
+                                        aRS.getInt ("DATA_TYPE"),
+                                        aRS.getString ("TYPE_NAME"),
+                                        aRS.getInt ("COLUMN_SIZE"),
+                                        aRS.getInt ("DECIMAL_DIGITS"),
+                                        aRS.getInt ("NULLABLE") != DatabaseMetaData.columnNoNulls));
+      }
+    }
+    finally
+    {
+      aRS.close ();
+    }
+
+    final List <DBCatalogTable> ret = new ArrayList <DBCatalogTable> (aTableInfos.size ());
+    for (final String [] aTableInfo : aTableInfos)
+    {
+      final String sSchemaName = aTableInfo[0];
+      final String sTableName = aTableInfo[1];
+
+      // Primary key - sorted by key sequence
+      final Map <Integer, String> aPKColumns = new TreeMap <Integer, String> ();
+      aRS = aMetaData.getPrimaryKeys (null, sSchemaName, sTableName);
+      try
+      {
+        while (aRS.next ())
+          aPKColumns.put (Integer.valueOf (aRS.getInt ("KEY_SEQ")), aRS.getString ("COLUMN_NAME"));
+      }
+      finally
+      {
+        aRS.close ();
+      }
+
+      // Indexes - rows are ordered by index name and position
+      final Map <String, List <String>> aIndexColumns = new LinkedHashMap <String, List <String>> ();
+      final Map <String, Boolean> aIndexUnique = new LinkedHashMap <String, Boolean> ();
+      aRS = aMetaData.getIndexInfo (null, sSchemaName, sTableName, false, true);
+      try
+      {
+        while (aRS.next ())
+        {
+          final String sIndexName = aRS.getString ("INDEX_NAME");
+          if (sIndexName == null || aRS.getShort ("TYPE") == DatabaseMetaData.tableIndexStatistic)
+            continue;
+          _getOrCreate (aIndexColumns, sIndexName).add (aRS.getString ("COLUMN_NAME"));
+          aIndexUnique.put (sIndexName, Boolean.valueOf (!aRS.getBoolean ("NON_UNIQUE")));
+        }
+      }
+      finally
+      {
+        aRS.close ();
+      }
+      final List <DBCatalogIndex> aIndexes = new ArrayList <DBCatalogIndex> ();
+      for (final Map.Entry <String, List <String>> aEntry : aIndexColumns.entrySet ())
+        aIndexes.add (new DBCatalogIndex (aEntry.getKey (),
+                                          aIndexUnique.get (aEntry.getKey ()).booleanValue (),
+                                          aEntry.getValue ()));
+
+      // Foreign keys
+      final List <DBCatalogForeignKey> aForeignKeys = new ArrayList <DBCatalogForeignKey> ();
+      aRS = aMetaData.getImportedKeys (null, sSchemaName, sTableName);
+      try
+      {
+        while (aRS.next ())
+          aForeignKeys.add (new DBCatalogForeignKey (aRS.getString ("FK_NAME"),
+                                                     aRS.getString ("FKCOLUMN_NAME"),
+                                                     aRS.getString ("PKTABLE_NAME"),
+                                                     aRS.getString ("PKCOLUMN_NAME")));
+      }
+      finally
+      {
+        aRS.close ();
+      }
+
+      final List <DBCatalogColumn> aTableColumns = aColumns.get (_getInternalKey (sSchemaName, sTableName));
+      ret.add (new DBCatalogTable (sSchemaName,
+                                   sTableName,
+                                   aTableInfo[2],
+                                   aTableColumns != null ? aTableColumns : new ArrayList <DBCatalogColumn> (),
+                                   new ArrayList <String> (aPKColumns.values ()),
+                                   aIndexes,
+                                   aForeignKeys));
+    }
+    return ret;
+  }
+
+  @Nonnull
+  private Map <String, DBCatalogTable> _load ()
+  {
+    final Connection aConnection = m_aConnectionProvider.getConnection ();
+    if (aConnection == null)
+      throw new IllegalStateException ("Failed to get a connection to read the schema catalog");
+
+    try
+    {
+      final long nStart = System.currentTimeMillis ();
+      final Map <String, DBCatalogTable> ret = new LinkedHashMap <String, DBCatalogTable> ();
+      for (final DBCatalogTable aTable : loadTables (aConnection.getMetaData ()))
+      {
+        final String sKey = getLookupKey (aTable.getName ());
+        if (!ret.containsKey (sKey))
+          ret.put (sKey, aTable);
+      }
+      s_aLogger.info ("Loaded schema catalog with " +
+                      ret.size () +
+                      " tables in " +
+                      (System.currentTimeMillis () - nStart) +
+                      " ms");
+      return ret;
+    }
+    catch (final SQLException ex)
+    {
+      throw new IllegalStateException ("Failed to read the database meta data", ex);
+    }
+    finally
+    {
+      if (m_aConnectionProvider.shouldCloseConnection ())
+        JDBCHelper.close (aConnection);
+    }
+  }
+
+  @Nonnull
+  private Map <String, DBCatalogTable> _getTables ()
+  {
+    m_aRWLock.readLock ().lock ();
+    try
+    {
+      if (m_aTables != null)
+        return m_aTables;
+    }
+    finally
+    {
+      m_aRWLock.readLock ().unlock ();
+    }
+
+    m_aRWLock.writeLock ().lock ();
+    try
+    {
+      // Try again in write lock
+      if (m_aTables == null)
+      {
+        m_aTables = _load ();
+        m_nLoadCount++;
+      }
+      return m_aTables;
+    }
+    finally
+    {
+      m_aRWLock.writeLock ().unlock ();
+    }
+  }
+
+  /**
+   * @return The names of all tables and views in the catalog. Never
+   *         <code>null</code>.
+   */
+  @Nonnull
+  @ReturnsMutableCopy
+  public List <String> getAllTableNames ()
+  {
+    final List <String> ret = ContainerHelper.newList ();
+    for (final DBCatalogTable aTable : _getTables ().values ())
+      ret.add (aTable.getName ());
+    return ret;
+  }
+
+  /**
+   * @return All tables and views in the catalog. Never <code>null</code>.
+   */
+  @Nonnull
+  @ReturnsMutableCopy
+  public List <DBCatalogTable> getAllTables ()
+  {
+    return ContainerHelper.newList (_getTables ().values ());
+  }
+
+  /**
+   * Get the table or view with the passed name.
+   * 
+   * @param sTableName
+   *        The name of the table. Case insensitive. May be <code>null</code>.
+   * @return <code>null</code> if no such table exists.
+   */
+  @Nullable
+  public DBCatalogTable getTable (@Nullable final String sTableName)
+  {
+    return sTableName == null ? null : _getTables ().get (getLookupKey (sTableName));
+  }
+
+  public boolean containsTable (@Nullable final String sTableName)
+  {
+    return getTable (sTableName) != null;
+  }
+
+  public boolean containsColumn (@Nullable final String sTableName, @Nullable final String sColumnName)
+  {
+    final DBCatalogTable aTable = getTable (sTableName);
+    return aTable != null && aTable.containsColumn (sColumnName);
+  }
+
+  @Override
+  public String toString ()
+  {
+    return new ToStringGenerator (this).append ("connectionProvider", m_aConnectionProvider)
+                                       .append ("schemaPattern", m_sSchemaPattern)
+                                       .append ("loaded", isLoaded ())
+                                       .toString ();
+  }
+}
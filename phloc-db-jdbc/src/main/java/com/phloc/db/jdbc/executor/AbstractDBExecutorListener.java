@@ -0,0 +1,90 @@
+/**
+ * Copyright (C) 2006-2015 phloc systems
+ * http://www.phloc.com
+ * office[at]phloc[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.phloc.db.jdbc.executor;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import com.phloc.commons.annotations.OverrideOnDemand;
+
+/**
+ * Empty implementation of {@link IDBExecutorListener}. Override only the
+ * methods of interest.
+ * 
+ * @author Philip Helger
+ */
+public abstract class AbstractDBExecutorListener implements IDBExecutorListener
+{
+  @OverrideOnDemand
+  public void beforeConnectionAcquire (@Nonnull final DBExecutor aExecutor)
+  {}
+
+  @OverrideOnDemand
+  public void afterConnectionAcquire (@Nonnull final DBExecutor aExecutor,
+                                      @Nonnegative final long nDurationNanos,
+                                      final boolean bSuccess)
+  {}
+
+  @OverrideOnDemand
+  public void beforePrepare (@Nonnull final DBExecutor aExecutor, @Nonnull final String sSQL)
+  {}
+
+  @OverrideOnDemand
+  public void afterPrepare (@Nonnull final DBExecutor aExecutor,
+                            @Nonnull final String sSQL,
+                            @Nonnegative final long nDurationNanos,
+                            final boolean bSuccess)
+  {}
+
+  @OverrideOnDemand
+  public void beforeExecute (@Nonnull final DBExecutor aExecutor, @Nullable final String sSQL)
+  {}
+
+  @OverrideOnDemand
+  public void afterExecute (@Nonnull final DBExecutor aExecutor,
+                            @Nullable final String sSQL,
+                            @Nonnegative final long nDurationNanos,
+                            final boolean bSuccess)
+  {}
+
+  @OverrideOnDemand
+  public void onRowBlockFetched (@Nonnull final DBExecutor aExecutor,
+                                 @Nullable final String sSQL,
+                                 @Nonnegative final int nRowCount,
+                                 @Nonnegative final long nDurationNanos)
+  {}
+
+  @OverrideOnDemand
+  public void beforeCommit (@Nonnull final DBExecutor aExecutor)
+  {}
+
+  @OverrideOnDemand
+  public void afterCommit (@Nonnull final DBExecutor aExecutor,
+                           @Nonnegative final long nDurationNanos,
+                           final boolean bSuccess)
+  {}
+
+  @OverrideOnDemand
+  public void beforeRollback (@Nonnull final DBExecutor aExecutor)
+  {}
+
+  @OverrideOnDemand
+  public void afterRollback (@Nonnull final DBExecutor aExecutor, @Nonnegative final long nDurationNanos)
+  {}
+}
@@ -0,0 +1,186 @@
+/**
+ * Copyright (C) 2006-2015 phloc systems
+ * http://www.phloc.com
+ * office[at]phloc[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.phloc.db.jdbc.executor;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.Immutable;
+
+import com.phloc.commons.annotations.Nonempty;
+import com.phloc.commons.annotations.ReturnsMutableCopy;
+import com.phloc.commons.collections.ArrayHelper;
+import com.phloc.commons.string.ToStringGenerator;
+
+/**
+ * A set of keys that is bound as a whole to a query, e.g. for bulk lookups
+ * with thousands of keys. Inside the SQL, the keys are referenced with
+ * {@link #PLACEHOLDER} which is replaced by a sub-select returning the keys in
+ * the column {@link #COLUMN_NAME}, e.g.
+ * <code>SELECT * FROM t WHERE id IN {keys}</code>. On databases that support
+ * array parameters, the keys are passed as a single parameter. Otherwise they
+ * are loaded into a temporary table first.
+ * 
+ * @author Philip Helger
+ * @see DBExecutor#queryAllWithArray(String, DBArrayParameter,
+ *      com.phloc.db.jdbc.callback.IPreparedStatementDataProvider,
+ *      com.phloc.db.jdbc.callback.IResultSetRowCallback)
+ */
+@Immutable
+public final class DBArrayParameter
+{
+  /** The placeholder in the SQL that is replaced with the keys */
+  public static final String PLACEHOLDER = "{keys}";
+  /** The name of the column containing the keys */
+  public static final String COLUMN_NAME = "key_value";
+  /** The name of the temporary table used if arrays are not supported */
+  public static final String TEMPORARY_TABLE_NAME = "phloc_keys";
+
+  private final Object [] m_aValues;
+  private final String m_sColumnType;
+
+  private DBArrayParameter (@Nonnull final Object [] aValues, @Nonnull @Nonempty final String sColumnType)
+  {
+    m_aValues = aValues;
+    m_sColumnType = sColumnType;
+  }
+
+  /**
+   * @return The number of keys.
+   */
+  @Nonnegative
+  public int getSize ()
+  {
+    return m_aValues.length;
+  }
+
+  /**
+   * @return A copy of all keys.
+   */
+  @Nonnull
+  @ReturnsMutableCopy
+  public Object [] getAllValues ()
+  {
+    return ArrayHelper.getCopy (m_aValues);
+  }
+
+  // Avoid copying for internal use
+  @Nonnull
+  Object [] directGetAllValues ()
+  {
+    return m_aValues;
+  }
+
+  /**
+   * @return The SQL type of the key column, e.g. <code>BIGINT</code>.
+   */
+  @Nonnull
+  @Nonempty
+  public String getColumnType ()
+  {
+    return m_sColumnType;
+  }
+
+  /**
+   * Get the passed SQL with the {@link #PLACEHOLDER} replaced.
+   * 
+   * @param sSQL
+   *        The SQL containing the placeholder exactly once.
+   * @param sTableSQL
+   *        The table expression to select the keys from.
+   * @return The SQL to execute.
+   * @throws IllegalArgumentException
+   *         If the placeholder is not contained exactly once
+   */
+  @Nonnull
+  static String getReplacedSQL (@Nonnull final String sSQL, @Nonnull final String sTableSQL)
+  {
+    final int nIndex = sSQL.indexOf (PLACEHOLDER);
+    if (nIndex < 0 || sSQL.indexOf (PLACEHOLDER, nIndex + 1) >= 0)
+      throw new IllegalArgumentException ("The SQL must contain the placeholder " +
+                                          PLACEHOLDER +
+                                          " exactly once: " +
+                                          sSQL);
+    return sSQL.substring (0, nIndex) +
+           "(SELECT " +
+           COLUMN_NAME +
+           " FROM " +
+           sTableSQL +
+           ")" +
+           sSQL.substring (nIndex + PLACEHOLDER.length ());
+  }
+
+  /**
+   * Get the number of positional parameters in the passed SQL before the
+   * {@link #PLACEHOLDER}. Question marks in string literals are ignored.
+   * 
+   * @param sSQL
+   *        The SQL containing the placeholder.
+   * @return The number of parameters before the placeholder.
+   */
+  @Nonnegative
+  static int getParameterCountBeforePlaceholder (@Nonnull final String sSQL)
+  {
+    final int nEnd = sSQL.indexOf (PLACEHOLDER);
+    int ret = 0;
+    boolean bInLiteral = false;
+    for (int i = 0; i < nEnd; ++i)
+    {
+      final char c = sSQL.charAt (i);
+      if (c == '\'')
+        bInLiteral = !bInLiteral;
+      else
+        if (c == '?' && !bInLiteral)
+          ++ret;
+    }
+    return ret;
+  }
+
+  @Nonnull
+  public static DBArrayParameter create (@Nonnull final long [] aKeys)
+  {
+    if (aKeys == null)
+      throw new NullPointerException ("keys");
+    final Object [] aValues = new Object [aKeys.length];
+    for (int i = 0; i < aKeys.length; ++i)
+      aValues[i] = Long.valueOf (aKeys[i]);
+    return new DBArrayParameter (aValues, "BIGINT");
+  }
+
+  @Nonnull
+  public static DBArrayParameter create (@Nonnull final String [] aKeys)
+  {
+    if (aKeys == null)
+      throw new NullPointerException ("keys");
+    int nMaxLength = 1;
+    for (final String sKey : aKeys)
+    {
+      if (sKey == null)
+        throw new IllegalArgumentException ("Keys may not contain null");
+      nMaxLength = Math.max (nMaxLength, sKey.length ());
+    }
+    return new DBArrayParameter (ArrayHelper.getCopy (aKeys), "VARCHAR(" + nMaxLength + ")");
+  }
+
+  @Override
+  public String toString ()
+  {
+    return new ToStringGenerator (this).append ("size", m_aValues.length)
+                                       .append ("columnType", m_sColumnType)
+                                       .toString ();
+  }
+}
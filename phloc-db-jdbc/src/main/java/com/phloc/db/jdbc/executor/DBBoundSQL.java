@@ -0,0 +1,56 @@
+package com.phloc.db.jdbc.executor;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.Immutable;
+
+import com.phloc.commons.annotations.Nonempty;
+import com.phloc.commons.string.ToStringGenerator;
+import com.phloc.db.jdbc.callback.IPreparedStatementDataProvider;
+
+/**
+ * A positional SQL statement together with the values of its parameters, as
+ * created by {@link DBNamedParameterSQL}.
+ * 
+ * @author Philip Helger
+ */
+@Immutable
+public final class DBBoundSQL
+{
+  private final String m_sSQL;
+  private final IPreparedStatementDataProvider m_aDataProvider;
+
+  public DBBoundSQL (@Nonnull @Nonempty final String sSQL, @Nonnull final IPreparedStatementDataProvider aDataProvider)
+  {
+    if (sSQL == null)
+      throw new NullPointerException ("SQL");
+    if (aDataProvider == null)
+      throw new NullPointerException ("dataProvider");
+    m_sSQL = sSQL;
+    m_aDataProvider = aDataProvider;
+  }
+
+  /**
+   * @return The SQL with positional <code>?</code> parameters.
+   */
+  @Nonnull
+  @Nonempty
+  public String getSQL ()
+  {
+    return m_sSQL;
+  }
+
+  /**
+   * @return The values of the positional parameters.
+   */
+  @Nonnull
+  public IPreparedStatementDataProvider getDataProvider ()
+  {
+    return m_aDataProvider;
+  }
+
+  @Override
+  public String toString ()
+  {
+    return new ToStringGenerator (this).append ("SQL", m_sSQL).append ("dataProvider", m_aDataProvider).toString ();
+  }
+}
@@ -0,0 +1,668 @@
+/**
+ * Copyright (C) 2006-2015 phloc systems
+ * http://www.phloc.com
+ * office[at]phloc[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.phloc.db.jdbc.executor;
+
+import java.nio.ByteBuffer;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.WillClose;
+import javax.annotation.concurrent.ThreadSafe;
+
+import com.phloc.commons.annotations.Nonempty;
+import com.phloc.commons.string.ToStringGenerator;
+import com.phloc.db.jdbc.callback.IResultSetRowCallback;
+
+/**
+ * A compact, column oriented storage of a complete query result. Numeric,
+ * boolean and date/time values are packed into off-heap (direct)
+ * {@link ByteBuffer}s with a fixed width per column instead of one wrapper
+ * object per value, strings are dictionary encoded (only the distinct values
+ * are kept) and null values are tracked in an off-heap bitmap. Only values of
+ * unknown types and string columns with more than {@link #MAX_DICTIONARY_SIZE}
+ * distinct values are kept as objects on the heap.<br>
+ * This is meant for large results that are kept in memory for a long time, so
+ * that the bulk of the data is not scanned by the garbage collector. While
+ * reading, the values are collected in growing heap buffers. When all rows were
+ * read, each column is copied once into a direct buffer of the exact size. The
+ * direct buffers are released when this object is garbage collected.<br>
+ * Instances are filled by {@link DBExecutor#queryAllColumnar(String)} and are
+ * read-only afterwards, so they can be shared between threads, e.g. in a
+ * cache. Use {@link #createCursor()} or
+ * {@link #forEachRow(IResultSetRowCallback)} to access the rows in a
+ * {@link DBResultRow} compatible way.
+ * 
+ * @author Philip Helger
+ */
+@ThreadSafe
+public final class DBColumnarResult
+{
+  /** The initial number of rows to allocate space for */
+  private static final int INITIAL_ROW_CAPACITY = 256;
+
+  /**
+   * The maximum number of distinct values per string column. If a column has
+   * more distinct values, dictionary encoding does not pay off and the column
+   * is switched to object storage.
+   */
+  public static final int MAX_DICTIONARY_SIZE = 64 * 1024;
+
+  /**
+   * The physical storage type of a column. It is determined by the Java type
+   * of the first non-null value of the column.
+   */
+  private static enum EStorage
+  {
+    /** Only null values so far */
+    PENDING (0),
+    INT (4),
+    LONG (8),
+    SHORT (2),
+    BYTE (1),
+    DOUBLE (8),
+    FLOAT (4),
+    BOOLEAN (1),
+    /** Dictionary index */
+    STRING (4),
+    /** Milliseconds and nanoseconds */
+    TIMESTAMP (12),
+    DATE (8),
+    TIME (8),
+    /** Anything else - stored on the heap */
+    OBJECT (0);
+
+    private final int m_nWidth;
+
+    private EStorage (@Nonnegative final int nWidth)
+    {
+      m_nWidth = nWidth;
+    }
+
+    @Nonnull
+    static EStorage getFromValue (@Nonnull final Object aValue)
+    {
+      if (aValue instanceof Integer)
+        return INT;
+      if (aValue instanceof Long)
+        return LONG;
+      if (aValue instanceof Short)
+        return SHORT;
+      if (aValue instanceof Byte)
+        return BYTE;
+      if (aValue instanceof Double)
+        return DOUBLE;
+      if (aValue instanceof Float)
+        return FLOAT;
+      if (aValue instanceof Boolean)
+        return BOOLEAN;
+      if (aValue instanceof String)
+        return STRING;
+      if (aValue instanceof Timestamp)
+        return TIMESTAMP;
+      if (aValue instanceof java.sql.Date)
+        return DATE;
+      if (aValue instanceof Time)
+        return TIME;
+      return OBJECT;
+    }
+  }
+
+  private static final class Column
+  {
+    private final String m_sName;
+    private final int m_nType;
+    private EStorage m_eStorage = EStorage.PENDING;
+    private ByteBuffer m_aData;
+    private ByteBuffer m_aNulls = ByteBuffer.allocate (INITIAL_ROW_CAPACITY / 8);
+    // For strings
+    private Map <String, Integer> m_aDictionaryIndex;
+    private ArrayList <String> m_aDictionary;
+    // For other objects
+    private ArrayList <Object> m_aObjects;
+
+    Column (@Nonnull final String sName, final int nType)
+    {
+      m_sName = sName;
+      m_nType = nType;
+    }
+
+    @Nonnull
+    private static ByteBuffer _ensureCapacity (@Nullable final ByteBuffer aBuffer, @Nonnegative final int nBytes)
+    {
+      if (aBuffer != null && aBuffer.capacity () >= nBytes)
+        return aBuffer;
+
+      final int nOldCapacity = aBuffer == null ? 0 : aBuffer.capacity ();
+      final ByteBuffer ret = ByteBuffer.allocate (Math.max (nBytes, nOldCapacity * 2));
+      if (aBuffer != null)
+      {
+        final ByteBuffer aSrc = aBuffer.duplicate ();
+        aSrc.clear ();
+        ret.put (aSrc);
+        ret.clear ();
+      }
+      return ret;
+    }
+
+    private void _initStorage (@Nonnull final EStorage eStorage, @Nonnegative final int nRowCapacity)
+    {
+      m_eStorage = eStorage;
+      if (eStorage == EStorage.STRING)
+      {
+        m_aDictionaryIndex = new HashMap <String, Integer> ();
+        m_aDictionary = new ArrayList <String> ();
+      }
+      if (eStorage == EStorage.OBJECT)
+      {
+        // Previous rows are all null
+        m_aObjects = new ArrayList <Object> (nRowCapacity);
+        for (int i = 0; i < nRowCapacity - 1; ++i)
+          m_aObjects.add (null);
+      }
+      else
+        m_aData = _ensureCapacity (null, Math.max (nRowCapacity, INITIAL_ROW_CAPACITY) * eStorage.m_nWidth);
+    }
+
+    /**
+     * Switch a string column to object storage because the dictionary
+     * overflowed.
+     * 
+     * @param nRowCount
+     *        The number of rows already stored.
+     */
+    private void _switchToObjectStorage (@Nonnegative final int nRowCount)
+    {
+      final ArrayList <Object> aObjects = new ArrayList <Object> (nRowCount * 2);
+      for (int i = 0; i < nRowCount; ++i)
+        aObjects.add (get (i));
+      m_eStorage = EStorage.OBJECT;
+      m_aObjects = aObjects;
+      m_aData = null;
+      m_aDictionary = null;
+      m_aDictionaryIndex = null;
+    }
+
+    void add (@Nonnegative final int nRow, @Nullable final Object aValue)
+    {
+      m_aNulls = _ensureCapacity (m_aNulls, nRow / 8 + 1);
+      if (aValue == null)
+      {
+        final int nByteIndex = nRow / 8;
+        m_aNulls.put (nByteIndex, (byte) (m_aNulls.get (nByteIndex) | (1 << (nRow % 8))));
+        if (m_eStorage == EStorage.OBJECT)
+          m_aObjects.add (null);
+        return;
+      }
+
+      if (m_eStorage == EStorage.PENDING)
+        _initStorage (EStorage.getFromValue (aValue), nRow + 1);
+      else
+        if (m_eStorage != EStorage.OBJECT && EStorage.getFromValue (aValue) != m_eStorage)
+          throw new IllegalStateException ("Column '" +
+                                           m_sName +
+                                           "' contains values of different types: " +
+                                           m_eStorage +
+                                           " and " +
+                                           aValue.getClass ().getName ());
+
+      if (m_eStorage == EStorage.OBJECT)
+      {
+        m_aObjects.add (aValue);
+        return;
+      }
+
+      m_aData = _ensureCapacity (m_aData, (nRow + 1) * m_eStorage.m_nWidth);
+      final int nOfs = nRow * m_eStorage.m_nWidth;
+      switch (m_eStorage)
+      {
+        case INT:
+          m_aData.putInt (nOfs, ((Integer) aValue).intValue ());
+          break;
+        case LONG:
+          m_aData.putLong (nOfs, ((Long) aValue).longValue ());
+          break;
+        case SHORT:
+          m_aData.putShort (nOfs, ((Short) aValue).shortValue ());
+          break;
+        case BYTE:
+          m_aData.put (nOfs, ((Byte) aValue).byteValue ());
+          break;
+        case DOUBLE:
+          m_aData.putDouble (nOfs, ((Double) aValue).doubleValue ());
+          break;
+        case FLOAT:
+          m_aData.putFloat (nOfs, ((Float) aValue).floatValue ());
+          break;
+        case BOOLEAN:
+          m_aData.put (nOfs, ((Boolean) aValue).booleanValue () ? (byte) 1 : (byte) 0);
+          break;
+        case STRING:
+        {
+          final String sValue = (String) aValue;
+          Integer aIndex = m_aDictionaryIndex.get (sValue);
+          if (aIndex == null)
+          {
+            if (m_aDictionary.size () >= MAX_DICTIONARY_SIZE)
+            {
+              _switchToObjectStorage (nRow);
+              m_aObjects.add (aValue);
+              return;
+            }
+            aIndex = Integer.valueOf (m_aDictionary.size ());
+            m_aDictionary.add (sValue);
+            m_aDictionaryIndex.put (sValue, aIndex);
+          }
+          m_aData.putInt (nOfs, aIndex.intValue ());
+          break;
+        }
+        case TIMESTAMP:
+          m_aData.putLong (nOfs, ((Timestamp) aValue).getTime ());
+          m_aData.putInt (nOfs + 8, ((Timestamp) aValue).getNanos ());
+          break;
+        case DATE:
+        case TIME:
+          m_aData.putLong (nOfs, ((java.util.Date) aValue).getTime ());
+          break;
+        default:
+          throw new IllegalStateException ("Unexpected storage " + m_eStorage);
+      }
+    }
+
+    @Nonnull
+    private static ByteBuffer _toDirect (@Nonnull final ByteBuffer aBuffer, @Nonnegative final int nBytes)
+    {
+      final ByteBuffer ret = ByteBuffer.allocateDirect (nBytes);
+      final ByteBuffer aSrc = aBuffer.duplicate ();
+      aSrc.clear ();
+      // Trailing null values may not have been allocated
+      aSrc.limit (Math.min (nBytes, aSrc.capacity ()));
+      ret.put (aSrc);
+      ret.clear ();
+      return ret;
+    }
+
+    /**
+     * Called after the last row was added. Copies the heap buffers into direct
+     * buffers of the exact size.
+     * 
+     * @param nRowCount
+     *        The total number of rows.
+     */
+    void finish (@Nonnegative final int nRowCount)
+    {
+      m_aNulls = _toDirect (m_aNulls, (nRowCount + 7) / 8);
+      if (m_aData != null)
+        m_aData = _toDirect (m_aData, nRowCount * m_eStorage.m_nWidth);
+      // The lookup map is only needed while filling
+      m_aDictionaryIndex = null;
+      if (m_aDictionary != null)
+        m_aDictionary.trimToSize ();
+      if (m_aObjects != null)
+        m_aObjects.trimToSize ();
+    }
+
+    boolean isNull (@Nonnegative final int nRow)
+    {
+      return (m_aNulls.get (nRow / 8) & (1 << (nRow % 8))) != 0;
+    }
+
+    @Nullable
+    Object get (@Nonnegative final int nRow)
+    {
+      if (isNull (nRow))
+        return null;
+
+      final int nOfs = nRow * m_eStorage.m_nWidth;
+      switch (m_eStorage)
+      {
+        case INT:
+          return Integer.valueOf (m_aData.getInt (nOfs));
+        case LONG:
+          return Long.valueOf (m_aData.getLong (nOfs));
+        case SHORT:
+          return Short.valueOf (m_aData.getShort (nOfs));
+        case BYTE:
+          return Byte.valueOf (m_aData.get (nOfs));
+        case DOUBLE:
+          return Double.valueOf (m_aData.getDouble (nOfs));
+        case FLOAT:
+          return Float.valueOf (m_aData.getFloat (nOfs));
+        case BOOLEAN:
+          return Boolean.valueOf (m_aData.get (nOfs) != 0);
+        case STRING:
+          return m_aDictionary.get (m_aData.getInt (nOfs));
+        case TIMESTAMP:
+        {
+          final Timestamp ret = new Timestamp (m_aData.getLong (nOfs));
+          ret.setNanos (m_aData.getInt (nOfs + 8));
+          return ret;
+        }
+        case DATE:
+          return new java.sql.Date (m_aData.getLong (nOfs));
+        case TIME:
+          return new Time (m_aData.getLong (nOfs));
+        case OBJECT:
+          return m_aObjects.get (nRow);
+        default:
+          // PENDING cannot occur, as all values are null
+          throw new IllegalStateException ("Unexpected storage " + m_eStorage);
+      }
+    }
+
+    long getAsLong (@Nonnegative final int nRow, final long nDefault)
+    {
+      if (isNull (nRow))
+        return nDefault;
+
+      final int nOfs = nRow * m_eStorage.m_nWidth;
+      switch (m_eStorage)
+      {
+        case INT:
+          return m_aData.getInt (nOfs);
+        case LONG:
+          return m_aData.getLong (nOfs);
+        case SHORT:
+          return m_aData.getShort (nOfs);
+        case BYTE:
+          return m_aData.get (nOfs);
+        case DOUBLE:
+          return (long) m_aData.getDouble (nOfs);
+        case FLOAT:
+          return (long) m_aData.getFloat (nOfs);
+        default:
+        {
+          final Object aValue = get (nRow);
+          if (aValue instanceof Number)
+            return ((Number) aValue).longValue ();
+          throw new IllegalStateException ("Column '" + m_sName + "' is not numeric");
+        }
+      }
+    }
+
+    double getAsDouble (@Nonnegative final int nRow, final double dDefault)
+    {
+      if (isNull (nRow))
+        return dDefault;
+
+      final int nOfs = nRow * m_eStorage.m_nWidth;
+      switch (m_eStorage)
+      {
+        case DOUBLE:
+          return m_aData.getDouble (nOfs);
+        case FLOAT:
+          return m_aData.getFloat (nOfs);
+        case INT:
+        case LONG:
+        case SHORT:
+        case BYTE:
+          return getAsLong (nRow, 0);
+        default:
+        {
+          final Object aValue = get (nRow);
+          if (aValue instanceof Number)
+            return ((Number) aValue).doubleValue ();
+          throw new IllegalStateException ("Column '" + m_sName + "' is not numeric");
+        }
+      }
+    }
+
+    boolean isDictionaryEncoded ()
+    {
+      return m_eStorage == EStorage.STRING;
+    }
+
+    @Nonnegative
+    long getOffHeapBytes ()
+    {
+      return m_aNulls.capacity () + (m_aData == null ? 0 : m_aData.capacity ());
+    }
+  }
+
+  // Assigned once after all rows were read - volatile for safe publication
+  private volatile Column [] m_aColumns = new Column [0];
+  private volatile int m_nRowCount = 0;
+
+  DBColumnarResult ()
+  {}
+
+  /**
+   * Read all rows of the passed result set into this object.
+   * 
+   * @param aRS
+   *        The result set to read. Is closed afterwards.
+   * @throws SQLException
+   *         On error
+   */
+  void readResultSet (@WillClose final ResultSet aRS) throws SQLException
+  {
+    try
+    {
+      final ResultSetMetaData aRSMD = aRS.getMetaData ();
+      final int nCols = aRSMD.getColumnCount ();
+      final Column [] aColumns = new Column [nCols];
+      for (int i = 1; i <= nCols; ++i)
+        aColumns[i - 1] = new Column (aRSMD.getColumnName (i).intern (), aRSMD.getColumnType (i));
+
+      int nRowCount = 0;
+      while (aRS.next ())
+      {
+        for (int i = 0; i < nCols; ++i)
+          aColumns[i].add (nRowCount, aRS.getObject (i + 1));
+        nRowCount++;
+      }
+
+      for (final Column aColumn : aColumns)
+        aColumn.finish (nRowCount);
+      m_nRowCount = nRowCount;
+      m_aColumns = aColumns;
+    }
+    finally
+    {
+      aRS.close ();
+    }
+  }
+
+  @Nonnegative
+  public int getRowCount ()
+  {
+    return m_nRowCount;
+  }
+
+  @Nonnegative
+  public int getColumnCount ()
+  {
+    return m_aColumns.length;
+  }
+
+  @Nonnull
+  @Nonempty
+  public String getColumnName (@Nonnegative final int nColumn)
+  {
+    return m_aColumns[nColumn].m_sName;
+  }
+
+  public int getColumnType (@Nonnegative final int nColumn)
+  {
+    return m_aColumns[nColumn].m_nType;
+  }
+
+  private void _checkRow (final int nRow)
+  {
+    if (nRow < 0 || nRow >= m_nRowCount)
+      throw new IndexOutOfBoundsException ("Row " + nRow + " is invalid for " + m_nRowCount + " rows");
+  }
+
+  public boolean isNull (@Nonnegative final int nRow, @Nonnegative final int nColumn)
+  {
+    _checkRow (nRow);
+    return m_aColumns[nColumn].isNull (nRow);
+  }
+
+  /**
+   * Get a single value. For primitive columns a new wrapper object is created.
+   * 
+   * @param nRow
+   *        0-based row index.
+   * @param nColumn
+   *        0-based column index.
+   * @return The value. May be <code>null</code>.
+   */
+  @Nullable
+  public Object getValue (@Nonnegative final int nRow, @Nonnegative final int nColumn)
+  {
+    _checkRow (nRow);
+    return m_aColumns[nColumn].get (nRow);
+  }
+
+  /**
+   * Get a numeric value without creating a wrapper object.
+   * 
+   * @param nRow
+   *        0-based row index.
+   * @param nColumn
+   *        0-based column index.
+   * @param nDefault
+   *        The value to be returned for SQL NULL.
+   * @return The value as long.
+   */
+  public long getAsLong (@Nonnegative final int nRow, @Nonnegative final int nColumn, final long nDefault)
+  {
+    _checkRow (nRow);
+    return m_aColumns[nColumn].getAsLong (nRow, nDefault);
+  }
+
+  /**
+   * Get a numeric value without creating a wrapper object.
+   * 
+   * @param nRow
+   *        0-based row index.
+   * @param nColumn
+   *        0-based column index.
+   * @param dDefault
+   *        The value to be returned for SQL NULL.
+   * @return The value as double.
+   */
+  public double getAsDouble (@Nonnegative final int nRow, @Nonnegative final int nColumn, final double dDefault)
+  {
+    _checkRow (nRow);
+    return m_aColumns[nColumn].getAsDouble (nRow, dDefault);
+  }
+
+  /**
+   * Fill the passed row object with the values of the specified row.
+   * 
+   * @param nRow
+   *        0-based row index.
+   * @param aTarget
+   *        The row to fill. Must have the same number of columns.
+   */
+  void fillRow (@Nonnegative final int nRow, @Nonnull final DBResultRow aTarget)
+  {
+    _checkRow (nRow);
+    aTarget.clear ();
+    for (final Column aColumn : m_aColumns)
+      aTarget.add (new DBResultField (aColumn.m_sName, aColumn.m_nType, aColumn.get (nRow)));
+  }
+
+  /**
+   * Get the specified row as a new {@link DBResultRow} object.
+   * 
+   * @param nRow
+   *        0-based row index.
+   * @return Never <code>null</code>.
+   */
+  @Nonnull
+  public DBResultRow getRow (@Nonnegative final int nRow)
+  {
+    final DBResultRow ret = new DBResultRow (m_aColumns.length);
+    fillRow (nRow, ret);
+    return ret;
+  }
+
+  /**
+   * @return A new cursor positioned before the first row. Never
+   *         <code>null</code>.
+   */
+  @Nonnull
+  public DBColumnarResultCursor createCursor ()
+  {
+    return new DBColumnarResultCursor (this);
+  }
+
+  /**
+   * Invoke the passed callback for each row. As in
+   * {@link DBExecutor#queryAll(String, IResultSetRowCallback)} the same row
+   * object is reused for all rows.
+   * 
+   * @param aCallback
+   *        The callback to invoke. May not be <code>null</code>.
+   */
+  public void forEachRow (@Nonnull final IResultSetRowCallback aCallback)
+  {
+    if (aCallback == null)
+      throw new NullPointerException ("callback");
+
+    final DBColumnarResultCursor aCursor = createCursor ();
+    while (aCursor.next ())
+      aCallback.run (aCursor.getRow ());
+  }
+
+  /**
+   * @param nColumn
+   *        0-based column index.
+   * @return <code>true</code> if the column is stored dictionary encoded,
+   *         <code>false</code> if it is not a string column or if it has more
+   *         than {@link #MAX_DICTIONARY_SIZE} distinct values.
+   */
+  public boolean isDictionaryEncoded (@Nonnegative final int nColumn)
+  {
+    return m_aColumns[nColumn].isDictionaryEncoded ();
+  }
+
+  /**
+   * @return The number of off-heap bytes allocated for the packed value buffers
+   *         and null bitmaps of this object. Dictionaries and object columns
+   *         are not included.
+   */
+  @Nonnegative
+  public long getOffHeapBytes ()
+  {
+    long ret = 0;
+    for (final Column aColumn : m_aColumns)
+      ret += aColumn.getOffHeapBytes ();
+    return ret;
+  }
+
+  @Override
+  public String toString ()
+  {
+    return new ToStringGenerator (this).append ("columnCount", m_aColumns.length)
+                                       .append ("rowCount", m_nRowCount)
+                                       .append ("offHeapBytes", getOffHeapBytes ())
+                                       .toString ();
+  }
+}
@@ -0,0 +1,120 @@
+/**
+ * Copyright (C) 2006-2015 phloc systems
+ * http://www.phloc.com
+ * office[at]phloc[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.phloc.db.jdbc.executor;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.NotThreadSafe;
+
+import com.phloc.commons.string.ToStringGenerator;
+
+/**
+ * A forward cursor over a {@link DBColumnarResult}. The row object returned by
+ * {@link #getRow()} is reused for all rows, so it must be cloned if it should
+ * be kept. For numeric columns {@link #getAsLong(int, long)} and
+ * {@link #getAsDouble(int, double)} can be used to avoid any object creation.
+ * 
+ * @author Philip Helger
+ */
+@NotThreadSafe
+public final class DBColumnarResultCursor
+{
+  private final DBColumnarResult m_aResult;
+  private final DBResultRow m_aRow;
+  private int m_nRow = -1;
+  private boolean m_bRowFilled = false;
+
+  DBColumnarResultCursor (@Nonnull final DBColumnarResult aResult)
+  {
+    m_aResult = aResult;
+    m_aRow = new DBResultRow (aResult.getColumnCount ());
+  }
+
+  /**
+   * Move to the next row.
+   * 
+   * @return <code>true</code> if the cursor is positioned on a valid row,
+   *         <code>false</code> if the end was reached.
+   */
+  public boolean next ()
+  {
+    if (m_nRow < m_aResult.getRowCount ())
+      m_nRow++;
+    m_bRowFilled = false;
+    return m_nRow < m_aResult.getRowCount ();
+  }
+
+  /**
+   * Position the cursor before the first row again.
+   */
+  public void reset ()
+  {
+    m_nRow = -1;
+    m_bRowFilled = false;
+  }
+
+  /**
+   * @return The 0-based index of the current row.
+   */
+  public int getRowIndex ()
+  {
+    return m_nRow;
+  }
+
+  /**
+   * @return The current row. The returned object is reused for all rows.
+   */
+  @Nonnull
+  public DBResultRow getRow ()
+  {
+    if (!m_bRowFilled)
+    {
+      m_aResult.fillRow (m_nRow, m_aRow);
+      m_bRowFilled = true;
+    }
+    return m_aRow;
+  }
+
+  public boolean isNull (@Nonnegative final int nColumn)
+  {
+    return m_aResult.isNull (m_nRow, nColumn);
+  }
+
+  @Nullable
+  public Object getValue (@Nonnegative final int nColumn)
+  {
+    return m_aResult.getValue (m_nRow, nColumn);
+  }
+
+  public long getAsLong (@Nonnegative final int nColumn, final long nDefault)
+  {
+    return m_aResult.getAsLong (m_nRow, nColumn, nDefault);
+  }
+
+  public double getAsDouble (@Nonnegative final int nColumn, final double dDefault)
+  {
+    return m_aResult.getAsDouble (m_nRow, nColumn, dDefault);
+  }
+
+  @Override
+  public String toString ()
+  {
+    return new ToStringGenerator (this).append ("result", m_aResult).append ("row", m_nRow).toString ();
+  }
+}
@@ -17,18 +17,29 @@
  */
 package com.phloc.db.jdbc.executor;
 
+import java.io.IOException;
 import java.sql.Connection;
+import java.sql.DatabaseMetaData;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.sql.Types;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import javax.annotation.CheckForSigned;
+import javax.annotation.Nonnegative;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import javax.annotation.WillClose;
@@ -41,23 +52,33 @@ import com.phloc.commons.CGlobal;
 import com.phloc.commons.GlobalDebug;
 import com.phloc.commons.annotations.CodingStyleguideUnaware;
 import com.phloc.commons.annotations.Nonempty;
+import com.phloc.commons.annotations.ReturnsMutableCopy;
 import com.phloc.commons.callback.IExceptionHandler;
+import com.phloc.commons.callback.INonThrowingRunnableWithParameter;
 import com.phloc.commons.callback.LoggingExceptionHandler;
 import com.phloc.commons.collections.ContainerHelper;
 import com.phloc.commons.collections.pair.IReadonlyPair;
 import com.phloc.commons.collections.pair.ReadonlyPair;
+import com.phloc.commons.convert.IUnidirectionalConverter;
+import com.phloc.commons.state.EChange;
 import com.phloc.commons.state.ESuccess;
+import com.phloc.commons.string.StringHelper;
 import com.phloc.commons.string.ToStringGenerator;
 import com.phloc.db.api.jdbc.JDBCHelper;
+import com.phloc.db.jdbc.AbstractConnector;
 import com.phloc.db.jdbc.ConnectionFromDataSourceProvider;
+import com.phloc.db.jdbc.EDatabaseDialect;
 import com.phloc.db.jdbc.IConnectionProvider;
 import com.phloc.db.jdbc.IDataSourceProvider;
 import com.phloc.db.jdbc.callback.GetSingleGeneratedKeyCallback;
 import com.phloc.db.jdbc.callback.IGeneratedKeysCallback;
+import com.phloc.db.jdbc.callback.INamedParameterSource;
 import com.phloc.db.jdbc.callback.IPreparedStatementDataProvider;
 import com.phloc.db.jdbc.callback.IResultSetRowCallback;
+import com.phloc.db.jdbc.callback.IStreamingResultSetRowCallback;
 import com.phloc.db.jdbc.callback.IUpdatedRowCountCallback;
 import com.phloc.db.jdbc.callback.UpdatedRowCountCallback;
+import com.phloc.db.jdbc.catalog.DBSchemaCatalog;
 
 /**
  * Simple wrapper around common JDBC functionality.
@@ -82,15 +103,47 @@ public class DBExecutor
     void run (@Nonnull PreparedStatement aPreparedStatement) throws SQLException;
   }
 
+  /** The default number of rows per JDBC batch */
+  public static final int DEFAULT_BATCH_SIZE = 1000;
+  /**
+   * The number of rows per block reported to {@link IDBExecutorListener} if
+   * the result set has no fetch size
+   */
+  public static final int DEFAULT_LISTENER_ROW_BLOCK_SIZE = 100;
+
+  private static final IDBExecutorListener [] NO_LISTENERS = new IDBExecutorListener [0];
+
   private static final Logger s_aLogger = LoggerFactory.getLogger (DBExecutor.class);
 
   private final ReadWriteLock m_aRWLock = new ReentrantReadWriteLock ();
+  private final Object m_aListenerLock = new Object ();
   private final IConnectionProvider m_aConnectionProvider;
   private IExceptionHandler <? super SQLException> m_aExceptionHdl = new LoggingExceptionHandler ();
+  private volatile EDatabaseDialect m_eDialect;
+  private volatile int m_nMaxInListSize = DBNamedParameterSQL.DEFAULT_MAX_IN_LIST_SIZE;
+  private volatile DBFetchSizeAdvisor m_aFetchSizeAdvisor = new DBFetchSizeAdvisor ();
+  private volatile DBSchemaCatalog m_aSchemaCatalog;
+  // Was a schema changing statement executed in the current transaction? Only
+  // accessed while holding the monitor
+  private boolean m_bSchemaChanged = false;
+  // Read lock of the connector - may be null
+  private volatile Lock m_aOperationLock;
+  // Copy on write - replaced as a whole on each modification
+  private volatile IDBExecutorListener [] m_aListeners = NO_LISTENERS;
+  private volatile ThreadFactory m_aPrefetchingThreadFactory = DBPrefetchingCursor.DEFAULT_THREAD_FACTORY;
+  // The last cursor created by queryPrefetching - may be null
+  private volatile DBPrefetchingCursor m_aPrefetchingCursor;
 
   public DBExecutor (@Nonnull final IDataSourceProvider aDataSourceProvider)
   {
     this (new ConnectionFromDataSourceProvider (aDataSourceProvider));
+    if (aDataSourceProvider instanceof AbstractConnector)
+    {
+      final AbstractConnector aConnector = (AbstractConnector) aDataSourceProvider;
+      m_eDialect = aConnector.getDialect ();
+      m_aSchemaCatalog = aConnector.getSchemaCatalog ();
+      m_aOperationLock = aConnector.getOperationLock ().readLock ();
+    }
   }
 
   public DBExecutor (@Nonnull final IConnectionProvider aConnectionProvider)
@@ -130,21 +183,299 @@ public class DBExecutor
     }
   }
 
+  /**
+   * Add a new listener that is notified about all subsequent operations.
+   * 
+   * @param aListener
+   *        The listener to add. May not be <code>null</code>.
+   * @return {@link EChange#UNCHANGED} if the listener is already registered.
+   */
+  @Nonnull
+  public EChange addListener (@Nonnull final IDBExecutorListener aListener)
+  {
+    if (aListener == null)
+      throw new NullPointerException ("listener");
+
+    synchronized (m_aListenerLock)
+    {
+      final IDBExecutorListener [] aOld = m_aListeners;
+      for (final IDBExecutorListener aCur : aOld)
+        if (aCur == aListener)
+          return EChange.UNCHANGED;
+      final IDBExecutorListener [] aNew = new IDBExecutorListener [aOld.length + 1];
+      System.arraycopy (aOld, 0, aNew, 0, aOld.length);
+      aNew[aOld.length] = aListener;
+      m_aListeners = aNew;
+    }
+    return EChange.CHANGED;
+  }
+
+  /**
+   * Remove a previously added listener.
+   * 
+   * @param aListener
+   *        The listener to remove. May be <code>null</code>.
+   * @return {@link EChange#UNCHANGED} if the listener is not registered.
+   */
+  @Nonnull
+  public EChange removeListener (@Nullable final IDBExecutorListener aListener)
+  {
+    synchronized (m_aListenerLock)
+    {
+      final IDBExecutorListener [] aOld = m_aListeners;
+      for (int i = 0; i < aOld.length; ++i)
+        if (aOld[i] == aListener)
+        {
+          if (aOld.length == 1)
+            m_aListeners = NO_LISTENERS;
+          else
+          {
+            final IDBExecutorListener [] aNew = new IDBExecutorListener [aOld.length - 1];
+            System.arraycopy (aOld, 0, aNew, 0, i);
+            System.arraycopy (aOld, i + 1, aNew, i, aOld.length - i - 1);
+            m_aListeners = aNew;
+          }
+          return EChange.CHANGED;
+        }
+    }
+    return EChange.UNCHANGED;
+  }
+
+  /**
+   * @return A copy of all registered listeners. Never <code>null</code>.
+   */
+  @Nonnull
+  @ReturnsMutableCopy
+  public List <IDBExecutorListener> getAllListeners ()
+  {
+    return ContainerHelper.newList (m_aListeners);
+  }
+
+  private void _onListenerException (@Nonnull final IDBExecutorListener aListener, @Nonnull final RuntimeException ex)
+  {
+    s_aLogger.error ("Failed to invoke DB executor listener " + aListener, ex);
+  }
+
+  /**
+   * Notify all listeners that a statement is about to be executed.
+   * 
+   * @param sSQL
+   *        The SQL to be executed. May be <code>null</code>.
+   * @return The start time in nano seconds or 0 if no listener is present.
+   */
+  private long _beforeExecute (@Nullable final String sSQL)
+  {
+    final IDBExecutorListener [] aListeners = m_aListeners;
+    if (aListeners.length == 0)
+      return 0;
+    for (final IDBExecutorListener aListener : aListeners)
+      try
+      {
+        aListener.beforeExecute (this, sSQL);
+      }
+      catch (final RuntimeException ex)
+      {
+        _onListenerException (aListener, ex);
+      }
+    return System.nanoTime ();
+  }
+
+  private void _afterExecute (@Nullable final String sSQL, final long nStartNanos, final boolean bSuccess)
+  {
+    // The catalog is invalidated when the transaction ends, so that it is not
+    // reloaded with the old schema in between
+    if (bSuccess && DBSchemaCatalog.isSchemaChangingStatement (sSQL))
+      m_bSchemaChanged = true;
+
+    final IDBExecutorListener [] aListeners = m_aListeners;
+    if (aListeners.length == 0)
+      return;
+    final long nDuration = nStartNanos == 0 ? 0 : System.nanoTime () - nStartNanos;
+    for (final IDBExecutorListener aListener : aListeners)
+      try
+      {
+        aListener.afterExecute (this, sSQL, nDuration, bSuccess);
+      }
+      catch (final RuntimeException ex)
+      {
+        _onListenerException (aListener, ex);
+      }
+  }
+
+  /**
+   * @return The SQL dialect to be used. May be <code>null</code> if it was
+   *         neither set explicitly nor determined yet.
+   */
+  @Nullable
+  public EDatabaseDialect getDialect ()
+  {
+    return m_eDialect;
+  }
+
+  /**
+   * Explicitly set the SQL dialect to use. By default it is determined from
+   * the connector or from the meta data of the first connection that needs
+   * it.
+   * 
+   * @param eDialect
+   *        The dialect to use. May be <code>null</code> to determine it
+   *        automatically again.
+   */
+  public void setDialect (@Nullable final EDatabaseDialect eDialect)
+  {
+    m_eDialect = eDialect;
+  }
+
+  /**
+   * @return The maximum number of values in a single IN list created from a
+   *         named collection parameter. Always &gt; 0.
+   */
+  @Nonnegative
+  public int getMaxInListSize ()
+  {
+    return m_nMaxInListSize;
+  }
+
+  /**
+   * Set the maximum number of values in a single IN list created from a named
+   * collection parameter. Larger collections are rejected, use a
+   * {@link DBArrayParameter} for them. Values should be a power of two so that
+   * all IN list sizes are powers of two.
+   * 
+   * @param nMaxInListSize
+   *        The maximum IN list size. Must be &gt; 0.
+   */
+  public void setMaxInListSize (@Nonnegative final int nMaxInListSize)
+  {
+    if (nMaxInListSize <= 0)
+      throw new IllegalArgumentException ("MaxInListSize must be > 0: " + nMaxInListSize);
+    m_nMaxInListSize = nMaxInListSize;
+  }
+
+  /**
+   * @return The advisor used to determine the fetch size of queries. May be
+   *         <code>null</code> if the fetch size is not set and the driver
+   *         default is used.
+   */
+  @Nullable
+  public DBFetchSizeAdvisor getFetchSizeAdvisor ()
+  {
+    return m_aFetchSizeAdvisor;
+  }
+
+  /**
+   * Set the advisor used to determine the fetch size of queries. By default a
+   * {@link DBFetchSizeAdvisor} with the default settings is used.
+   * 
+   * @param aFetchSizeAdvisor
+   *        The advisor to use. May be <code>null</code> to not set the fetch
+   *        size at all and use the driver default.
+   */
+  public void setFetchSizeAdvisor (@Nullable final DBFetchSizeAdvisor aFetchSizeAdvisor)
+  {
+    m_aFetchSizeAdvisor = aFetchSizeAdvisor;
+  }
+
+  /**
+   * @return The schema catalog that is invalidated when a transaction that
+   *         executed a DDL statement ends. May be <code>null</code>.
+   */
+  @Nullable
+  public DBSchemaCatalog getSchemaCatalog ()
+  {
+    return m_aSchemaCatalog;
+  }
+
+  /**
+   * Set the schema catalog that is invalidated when a transaction that executed
+   * a DDL statement ends. It is not invalidated before, so that it cannot be
+   * reloaded with the old schema while the transaction is running. By default the catalog of the connector is used if this executor
+   * was created for an {@link AbstractConnector}.
+   * 
+   * @param aSchemaCatalog
+   *        The schema catalog to use. May be <code>null</code>.
+   */
+  public void setSchemaCatalog (@Nullable final DBSchemaCatalog aSchemaCatalog)
+  {
+    m_aSchemaCatalog = aSchemaCatalog;
+  }
+
+  /**
+   * Get the SQL dialect, determining it from the passed connection if not yet
+   * known.
+   * 
+   * @param aConnection
+   *        The connection to use. May not be <code>null</code>.
+   * @return The dialect to use. Never <code>null</code>.
+   */
+  @Nonnull
+  protected final EDatabaseDialect getDialect (@Nonnull final Connection aConnection)
+  {
+    EDatabaseDialect ret = m_eDialect;
+    if (ret == null)
+    {
+      ret = EDatabaseDialect.getFromConnection (aConnection);
+      m_eDialect = ret;
+    }
+    return ret;
+  }
+
+  /**
+   * While a prefetching cursor runs its query, all other statements would wait
+   * for the fetcher thread, which in turn may wait for the caller to consume
+   * the next block. So fail fast instead of deadlocking.
+   */
+  private void _checkNotPrefetching ()
+  {
+    final DBPrefetchingCursor aCursor = m_aPrefetchingCursor;
+    if (aCursor != null && aCursor.isFetching () && !aCursor.isFetcherThread ())
+      throw new IllegalStateException ("The executor is in use by an open prefetching cursor. Exhaust or close the cursor before executing other statements.");
+  }
+
+  @Nonnull
+  private ESuccess _withConnectionDo (@Nonnull final IWithConnectionCallback aCB)
+  {
+    _checkNotPrefetching ();
+    return _withConnectionDoSynchronized (aCB);
+  }
+
   // ESCA-JAVA0143:
   @CodingStyleguideUnaware ("Needs to be synchronized!")
   @Nonnull
-  private synchronized ESuccess _withConnectionDo (@Nonnull final IWithConnectionCallback aCB)
+  private synchronized ESuccess _withConnectionDoSynchronized (@Nonnull final IWithConnectionCallback aCB)
+  {
+    // Wait for running maintenance operations of the connector
+    final Lock aOperationLock = m_aOperationLock;
+    if (aOperationLock == null)
+      return _withConnectionDoUnlocked (aCB);
+
+    aOperationLock.lock ();
+    try
+    {
+      return _withConnectionDoUnlocked (aCB);
+    }
+    finally
+    {
+      aOperationLock.unlock ();
+    }
+  }
+
+  @Nonnull
+  private ESuccess _withConnectionDoUnlocked (@Nonnull final IWithConnectionCallback aCB)
   {
+    // A nested call runs its own transaction
+    final boolean bOuterSchemaChanged = m_bSchemaChanged;
+    m_bSchemaChanged = false;
     Connection aConnection = null;
     ESuccess eCommited = ESuccess.FAILURE;
     try
     {
-      aConnection = m_aConnectionProvider.getConnection ();
+      aConnection = _acquireConnection ();
       if (aConnection == null)
         throw new IllegalStateException ("Failed to get a connection");
 
       aCB.run (aConnection);
-      eCommited = JDBCHelper.commit (aConnection);
+      eCommited = _commit (aConnection);
     }
     catch (final SQLException ex)
     {
@@ -161,7 +492,17 @@ public class DBExecutor
     finally
     {
       if (eCommited.isFailure ())
-        JDBCHelper.rollback (aConnection);
+        _rollback (aConnection);
+
+      // Invalidate after the rollback as well, as many databases commit DDL
+      // statements implicitly
+      if (m_bSchemaChanged)
+      {
+        final DBSchemaCatalog aSchemaCatalog = m_aSchemaCatalog;
+        if (aSchemaCatalog != null)
+          aSchemaCatalog.invalidate ();
+      }
+      m_bSchemaChanged = bOuterSchemaChanged;
 
       if (m_aConnectionProvider.shouldCloseConnection ())
         JDBCHelper.close (aConnection);
@@ -169,311 +510,1739 @@ public class DBExecutor
     return ESuccess.SUCCESS;
   }
 
-  protected static void handleGeneratedKeys (@Nonnull final ResultSet aGeneratedKeysRS,
-                                             @Nonnull final IGeneratedKeysCallback aGeneratedKeysCB) throws SQLException
+  @Nullable
+  private Connection _acquireConnection ()
   {
-    final int nCols = aGeneratedKeysRS.getMetaData ().getColumnCount ();
-    final List <List <Object>> aValues = new ArrayList <List <Object>> ();
-    while (aGeneratedKeysRS.next ())
+    final IDBExecutorListener [] aListeners = m_aListeners;
+    if (aListeners.length == 0)
+      return m_aConnectionProvider.getConnection ();
+
+    for (final IDBExecutorListener aListener : aListeners)
+      try
+      {
+        aListener.beforeConnectionAcquire (this);
+      }
+      catch (final RuntimeException ex)
+      {
+        _onListenerException (aListener, ex);
+      }
+    final long nStart = System.nanoTime ();
+    Connection ret = null;
+    try
     {
-      final List <Object> aRow = new ArrayList <Object> (nCols);
-      for (int i = 1; i <= nCols; ++i)
-        aRow.add (aGeneratedKeysRS.getObject (i));
-      aValues.add (aRow);
+      ret = m_aConnectionProvider.getConnection ();
+      return ret;
     }
-    aGeneratedKeysCB.onGeneratedKeys (aValues);
-  }
-
-  @Nonnull
-  protected final ESuccess withStatementDo (@Nonnull final IWithStatementCallback aCB,
-                                            @Nullable final IGeneratedKeysCallback aGeneratedKeysCB)
-  {
-    return _withConnectionDo (new IWithConnectionCallback ()
+    finally
     {
-      public void run (@Nonnull final Connection aConnection) throws SQLException
-      {
-        Statement aStatement = null;
+      final long nDuration = System.nanoTime () - nStart;
+      for (final IDBExecutorListener aListener : aListeners)
         try
         {
-          aStatement = aConnection.createStatement ();
-          aCB.run (aStatement);
-
-          if (aGeneratedKeysCB != null)
-            handleGeneratedKeys (aStatement.getGeneratedKeys (), aGeneratedKeysCB);
+          aListener.afterConnectionAcquire (this, nDuration, ret != null);
         }
-        finally
+        catch (final RuntimeException ex)
         {
-          JDBCHelper.close (aStatement);
+          _onListenerException (aListener, ex);
         }
-      }
-    });
+    }
   }
 
   @Nonnull
-  protected final ESuccess withPreparedStatementDo (@Nonnull final String sSQL,
-                                                    @Nonnull final IPreparedStatementDataProvider aPSDP,
-                                                    @Nonnull final IWithPreparedStatementCallback aPSCallback,
-                                                    @Nullable final IUpdatedRowCountCallback aUpdatedRowCountCB,
-                                                    @Nullable final IGeneratedKeysCallback aGeneratedKeysCB)
+  private ESuccess _commit (@Nonnull final Connection aConnection)
   {
-    return _withConnectionDo (new IWithConnectionCallback ()
-    {
-      public void run (@Nonnull final Connection aConnection) throws SQLException
+    final IDBExecutorListener [] aListeners = m_aListeners;
+    if (aListeners.length == 0)
+      return JDBCHelper.commit (aConnection);
+
+    for (final IDBExecutorListener aListener : aListeners)
+      try
       {
-        final PreparedStatement aPS = aConnection.prepareStatement (sSQL, Statement.RETURN_GENERATED_KEYS);
-        try
-        {
-          if (aPS.getParameterMetaData ().getParameterCount () != aPSDP.getValueCount ())
-            throw new IllegalArgumentException ("parameter count (" +
-                                                aPS.getParameterMetaData ().getParameterCount () +
-                                                ") does not match passed column name count (" +
-                                                aPSDP.getValueCount () +
-                                                ")");
+        aListener.beforeCommit (this);
+      }
+      catch (final RuntimeException ex)
+      {
+        _onListenerException (aListener, ex);
+      }
+    final long nStart = System.nanoTime ();
+    final ESuccess ret = JDBCHelper.commit (aConnection);
+    final long nDuration = System.nanoTime () - nStart;
+    for (final IDBExecutorListener aListener : aListeners)
+      try
+      {
+        aListener.afterCommit (this, nDuration, ret.isSuccess ());
+      }
+      catch (final RuntimeException ex)
+      {
+        _onListenerException (aListener, ex);
+      }
+    return ret;
+  }
 
-          // assign values
-          int nIndex = 1;
-          for (final Object aArg : aPSDP.getObjectValues ())
-            aPS.setObject (nIndex++, aArg);
+  private void _rollback (@Nullable final Connection aConnection)
+  {
+    final IDBExecutorListener [] aListeners = m_aListeners;
+    if (aListeners.length == 0 || aConnection == null)
+    {
+      JDBCHelper.rollback (aConnection);
+      return;
+    }
 
-          if (GlobalDebug.isDebugMode ())
-            s_aLogger.info ("Executing prepared statement: " + sSQL);
+    for (final IDBExecutorListener aListener : aListeners)
+      try
+      {
+        aListener.beforeRollback (this);
+      }
+      catch (final RuntimeException ex)
+      {
+        _onListenerException (aListener, ex);
+      }
+    final long nStart = System.nanoTime ();
+    JDBCHelper.rollback (aConnection);
+    final long nDuration = System.nanoTime () - nStart;
+    for (final IDBExecutorListener aListener : aListeners)
+      try
+      {
+        aListener.afterRollback (this, nDuration);
+      }
+      catch (final RuntimeException ex)
+      {
+        _onListenerException (aListener, ex);
+      }
+  }
 
-          // call callback
-          aPSCallback.run (aPS);
+  @Nonnull
+  private PreparedStatement _prepareStatement (@Nonnull final Connection aConnection, @Nonnull final String sSQL) throws SQLException
+  {
+    return _prepareStatement (aConnection, sSQL, Statement.NO_GENERATED_KEYS);
+  }
 
-          // Updated row count callback present?
-          if (aUpdatedRowCountCB != null)
-            aUpdatedRowCountCB.setUpdatedRowCount (aPS.getUpdateCount ());
+  @Nonnull
+  private PreparedStatement _prepareStatement (@Nonnull final Connection aConnection,
+                                               @Nonnull final String sSQL,
+                                               final int nAutoGeneratedKeys) throws SQLException
+  {
+    final IDBExecutorListener [] aListeners = m_aListeners;
+    if (aListeners.length == 0)
+      return aConnection.prepareStatement (sSQL, nAutoGeneratedKeys);
 
-          // retrieve generated keys?
-          if (aGeneratedKeysCB != null)
-            handleGeneratedKeys (aPS.getGeneratedKeys (), aGeneratedKeysCB);
+    for (final IDBExecutorListener aListener : aListeners)
+      try
+      {
+        aListener.beforePrepare (this, sSQL);
+      }
+      catch (final RuntimeException ex)
+      {
+        _onListenerException (aListener, ex);
+      }
+    final long nStart = System.nanoTime ();
+    PreparedStatement ret = null;
+    try
+    {
+      ret = aConnection.prepareStatement (sSQL, nAutoGeneratedKeys);
+      return ret;
+    }
+    finally
+    {
+      final long nDuration = System.nanoTime () - nStart;
+      for (final IDBExecutorListener aListener : aListeners)
+        try
+        {
+          aListener.afterPrepare (this, sSQL, nDuration, ret != null);
         }
-        finally
+        catch (final RuntimeException ex)
+        {
+          _onListenerException (aListener, ex);
+        }
+    }
+  }
+
+  private int _executeUpdate (@Nonnull final PreparedStatement aPS, @Nonnull final String sSQL) throws SQLException
+  {
+    final long nStart = _beforeExecute (sSQL);
+    boolean bSuccess = false;
+    try
+    {
+      final int ret = aPS.executeUpdate ();
+      bSuccess = true;
+      return ret;
+    }
+    finally
+    {
+      _afterExecute (sSQL, nStart, bSuccess);
+    }
+  }
+
+  @Nonnull
+  private int [] _executeBatchRaw (@Nonnull final PreparedStatement aPS, @Nonnull final String sSQL) throws SQLException
+  {
+    final long nStart = _beforeExecute (sSQL);
+    boolean bSuccess = false;
+    try
+    {
+      final int [] ret = aPS.executeBatch ();
+      bSuccess = true;
+      return ret;
+    }
+    finally
+    {
+      _afterExecute (sSQL, nStart, bSuccess);
+    }
+  }
+
+  private void _execute (@Nonnull final Statement aStatement, @Nonnull final String sSQL) throws SQLException
+  {
+    final long nStart = _beforeExecute (sSQL);
+    boolean bSuccess = false;
+    try
+    {
+      aStatement.execute (sSQL);
+      bSuccess = true;
+    }
+    finally
+    {
+      _afterExecute (sSQL, nStart, bSuccess);
+    }
+  }
+
+  /**
+   * Execute a DDL statement for a temporary table. Temporary tables are not
+   * part of the schema catalog, so the catalog is not invalidated.
+   */
+  private void _executeTemporaryTableStatement (@Nonnull final Statement aStatement, @Nonnull final String sSQL) throws SQLException
+  {
+    final boolean bSchemaChanged = m_bSchemaChanged;
+    _execute (aStatement, sSQL);
+    m_bSchemaChanged = bSchemaChanged;
+  }
+
+  /**
+   * Set the fetch size determined by the fetch size advisor on the passed
+   * statement. Must be called before the query is executed.
+   */
+  private void _applyFetchSize (@Nonnull final Statement aStatement, @Nonnull final String sSQL) throws SQLException
+  {
+    final DBFetchSizeAdvisor aAdvisor = m_aFetchSizeAdvisor;
+    if (aAdvisor != null)
+    {
+      final int nFetchSize = aAdvisor.getFetchSize (sSQL, getDialect (aStatement.getConnection ()));
+      if (nFetchSize > 0)
+        aStatement.setFetchSize (nFetchSize);
+    }
+  }
+
+  /**
+   * Execute the passed query and iterate the result set, notifying the
+   * listeners about the execution and about each fetched block of rows.
+   */
+  private void _executeQueryAndIterate (@Nonnull final PreparedStatement aPS,
+                                        @Nonnull final String sSQL,
+                                        @Nonnull final IResultSetRowCallback aCallback) throws SQLException
+  {
+    _applyFetchSize (aPS, sSQL);
+    final long nStart = _beforeExecute (sSQL);
+    boolean bSuccess = false;
+    try
+    {
+      _iterateResultSet (aPS.executeQuery (), sSQL, aCallback);
+      bSuccess = true;
+    }
+    finally
+    {
+      _afterExecute (sSQL, nStart, bSuccess);
+    }
+  }
+
+  private void _onRowBlockFetched (@Nonnull final IDBExecutorListener [] aListeners,
+                                   @Nullable final String sSQL,
+                                   final int nRowCount,
+                                   final long nDuration)
+  {
+    for (final IDBExecutorListener aListener : aListeners)
+      try
+      {
+        aListener.onRowBlockFetched (this, sSQL, nRowCount, nDuration);
+      }
+      catch (final RuntimeException ex)
+      {
+        _onListenerException (aListener, ex);
+      }
+  }
+
+  /**
+   * Like {@link #iterateResultSet(ResultSet, IResultSetRowCallback)} but
+   * notifies the listeners about each fetched block of rows and samples the
+   * row width for the fetch size advisor.
+   */
+  private void _iterateResultSet (@WillClose final ResultSet aRS,
+                                  @Nullable final String sSQL,
+                                  @Nonnull final IResultSetRowCallback aCallback) throws SQLException
+  {
+    final IDBExecutorListener [] aListeners = m_aListeners;
+    final DBFetchSizeAdvisor aAdvisor = sSQL == null ? null : m_aFetchSizeAdvisor;
+    if (aListeners.length == 0 && aAdvisor == null)
+    {
+      iterateResultSet (aRS, aCallback);
+      return;
+    }
+
+    final int nFetchSize = aRS.getFetchSize ();
+    final int nBlockSize = nFetchSize > 0 ? nFetchSize : DEFAULT_LISTENER_ROW_BLOCK_SIZE;
+    final long [] aBlockStart = { System.nanoTime () };
+    final int [] aBlockRows = new int [1];
+    final int [] aSampledRows = new int [1];
+    final long [] aSampledBytes = new long [1];
+    iterateResultSet (aRS, new IResultSetRowCallback ()
+    {
+      public void run (@Nullable final DBResultRow aCurrentObject)
+      {
+        // Only the first rows are sampled to keep the overhead low
+        if (aAdvisor != null &&
+            aCurrentObject != null &&
+            aSampledRows[0] < DBFetchSizeAdvisor.DEFAULT_SAMPLE_ROW_COUNT)
+        {
+          aSampledBytes[0] += DBSpillableResultRowList.getEstimatedRowBytes (aCurrentObject);
+          aSampledRows[0]++;
+        }
+        aCallback.run (aCurrentObject);
+        if (aListeners.length > 0 && ++aBlockRows[0] == nBlockSize)
+        {
+          final long nNow = System.nanoTime ();
+          _onRowBlockFetched (aListeners, sSQL, aBlockRows[0], nNow - aBlockStart[0]);
+          aBlockStart[0] = nNow;
+          aBlockRows[0] = 0;
+        }
+      }
+    });
+    if (aBlockRows[0] > 0)
+      _onRowBlockFetched (aListeners, sSQL, aBlockRows[0], System.nanoTime () - aBlockStart[0]);
+    if (aAdvisor != null)
+      aAdvisor.onRowsSampled (sSQL, aSampledRows[0], aSampledBytes[0]);
+  }
+
+  protected static void handleGeneratedKeys (@Nonnull final ResultSet aGeneratedKeysRS,
+                                             @Nonnull final IGeneratedKeysCallback aGeneratedKeysCB) throws SQLException
+  {
+    final int nCols = aGeneratedKeysRS.getMetaData ().getColumnCount ();
+    final List <List <Object>> aValues = new ArrayList <List <Object>> ();
+    while (aGeneratedKeysRS.next ())
+    {
+      final List <Object> aRow = new ArrayList <Object> (nCols);
+      for (int i = 1; i <= nCols; ++i)
+        aRow.add (aGeneratedKeysRS.getObject (i));
+      aValues.add (aRow);
+    }
+    aGeneratedKeysCB.onGeneratedKeys (aValues);
+  }
+
+  /**
+   * Run the passed callback with a connection within a transaction. The
+   * transaction is committed if the callback succeeds and rolled back
+   * otherwise.
+   * 
+   * @param aCB
+   *        The callback to run. May not be <code>null</code>.
+   * @return {@link ESuccess#FAILURE} if an {@link SQLException} occurred.
+   */
+  @Nonnull
+  protected final ESuccess withConnectionDo (@Nonnull final IWithConnectionCallback aCB)
+  {
+    return _withConnectionDo (aCB);
+  }
+
+  @Nonnull
+  protected final ESuccess withStatementDo (@Nonnull final IWithStatementCallback aCB,
+                                            @Nullable final IGeneratedKeysCallback aGeneratedKeysCB)
+  {
+    return withStatementDo (null, aCB, aGeneratedKeysCB);
+  }
+
+  /**
+   * Run the passed callback with a new statement within a transaction.
+   * 
+   * @param sSQL
+   *        The SQL executed by the callback. Only used to notify the
+   *        listeners. May be <code>null</code>.
+   * @param aCB
+   *        The callback to run. May not be <code>null</code>.
+   * @param aGeneratedKeysCB
+   *        An optional callback to retrieve generated keys. May be
+   *        <code>null</code>.
+   * @return {@link ESuccess#FAILURE} if an {@link SQLException} occurred.
+   */
+  @Nonnull
+  protected final ESuccess withStatementDo (@Nullable final String sSQL,
+                                            @Nonnull final IWithStatementCallback aCB,
+                                            @Nullable final IGeneratedKeysCallback aGeneratedKeysCB)
+  {
+    return _withConnectionDo (new IWithConnectionCallback ()
+    {
+      public void run (@Nonnull final Connection aConnection) throws SQLException
+      {
+        Statement aStatement = null;
+        try
+        {
+          aStatement = aConnection.createStatement ();
+          final long nStart = _beforeExecute (sSQL);
+          boolean bSuccess = false;
+          try
+          {
+            aCB.run (aStatement);
+            bSuccess = true;
+          }
+          finally
+          {
+            _afterExecute (sSQL, nStart, bSuccess);
+          }
+
+          if (aGeneratedKeysCB != null)
+            handleGeneratedKeys (aStatement.getGeneratedKeys (), aGeneratedKeysCB);
+        }
+        finally
+        {
+          JDBCHelper.close (aStatement);
+        }
+      }
+    });
+  }
+
+  @Nonnull
+  protected final ESuccess withPreparedStatementDo (@Nonnull final String sSQL,
+                                                    @Nonnull final IPreparedStatementDataProvider aPSDP,
+                                                    @Nonnull final IWithPreparedStatementCallback aPSCallback,
+                                                    @Nullable final IUpdatedRowCountCallback aUpdatedRowCountCB,
+                                                    @Nullable final IGeneratedKeysCallback aGeneratedKeysCB)
+  {
+    return _withConnectionDo (new IWithConnectionCallback ()
+    {
+      public void run (@Nonnull final Connection aConnection) throws SQLException
+      {
+        final PreparedStatement aPS = _prepareStatement (aConnection, sSQL, Statement.RETURN_GENERATED_KEYS);
+        try
+        {
+          if (aPS.getParameterMetaData ().getParameterCount () != aPSDP.getValueCount ())
+            throw new IllegalArgumentException ("parameter count (" +
+                                                aPS.getParameterMetaData ().getParameterCount () +
+                                                ") does not match passed column name count (" +
+                                                aPSDP.getValueCount () +
+                                                ")");
+
+          // assign values
+          int nIndex = 1;
+          for (final Object aArg : aPSDP.getObjectValues ())
+            aPS.setObject (nIndex++, aArg);
+
+          if (GlobalDebug.isDebugMode ())
+            s_aLogger.info ("Executing prepared statement: " + sSQL);
+
+          // call callback
+          final long nStart = _beforeExecute (sSQL);
+          boolean bSuccess = false;
+          try
+          {
+            aPSCallback.run (aPS);
+            bSuccess = true;
+          }
+          finally
+          {
+            _afterExecute (sSQL, nStart, bSuccess);
+          }
+
+          // Updated row count callback present?
+          if (aUpdatedRowCountCB != null)
+            aUpdatedRowCountCB.setUpdatedRowCount (aPS.getUpdateCount ());
+
+          // retrieve generated keys?
+          if (aGeneratedKeysCB != null)
+            handleGeneratedKeys (aPS.getGeneratedKeys (), aGeneratedKeysCB);
+        }
+        finally
+        {
+          aPS.close ();
+        }
+      }
+    });
+  }
+
+  @Nonnull
+  public ESuccess executeStatement (@Nonnull final String sSQL)
+  {
+    return executeStatement (sSQL, null);
+  }
+
+  @Nonnull
+  public ESuccess executeStatement (@Nonnull final String sSQL, @Nullable final IGeneratedKeysCallback aGeneratedKeysCB)
+  {
+    return withStatementDo (sSQL, new IWithStatementCallback ()
+    {
+      public void run (@Nonnull final Statement aStatement) throws SQLException
+      {
+        if (GlobalDebug.isDebugMode ())
+          s_aLogger.info ("Executing statement: " + sSQL);
+        aStatement.execute (sSQL);
+      }
+    }, aGeneratedKeysCB);
+  }
+
+  @Nonnull
+  public ESuccess executePreparedStatement (@Nonnull final String sSQL,
+                                            @Nonnull final IPreparedStatementDataProvider aPSDP)
+  {
+    return executePreparedStatement (sSQL, aPSDP, null, null);
+  }
+
+  @Nonnull
+  public ESuccess executePreparedStatement (@Nonnull final String sSQL,
+                                            @Nonnull final IPreparedStatementDataProvider aPSDP,
+                                            @Nullable final IUpdatedRowCountCallback aURWCC,
+                                            @Nullable final IGeneratedKeysCallback aGeneratedKeysCB)
+  {
+    return withPreparedStatementDo (sSQL, aPSDP, new IWithPreparedStatementCallback ()
+    {
+      public void run (@Nonnull final PreparedStatement aPS) throws SQLException
+      {
+        aPS.execute ();
+      }
+    }, aURWCC, aGeneratedKeysCB);
+  }
+
+  @Nullable
+  public Object executePreparedStatementAndGetGeneratedKey (@Nonnull final String sSQL,
+                                                            @Nonnull final IPreparedStatementDataProvider aPSDP)
+  {
+    final GetSingleGeneratedKeyCallback aCB = new GetSingleGeneratedKeyCallback ();
+    return executePreparedStatement (sSQL, aPSDP, null, aCB).isSuccess () ? aCB.getGeneratedKey () : null;
+  }
+
+  /**
+   * Perform an INSERT or UPDATE statement.
+   * 
+   * @param sSQL
+   *        SQL to execute.
+   * @param aPSDP
+   *        The prepared statement provider.
+   * @return The number of modified/inserted rows.
+   */
+  public int insertOrUpdateOrDelete (@Nonnull final String sSQL, @Nonnull final IPreparedStatementDataProvider aPSDP)
+  {
+    return insertOrUpdateOrDelete (sSQL, aPSDP, null);
+  }
+
+  /**
+   * Perform an INSERT or UPDATE statement.
+   * 
+   * @param sSQL
+   *        SQL to execute.
+   * @param aPSDP
+   *        The prepared statement provider.
+   * @param aGeneratedKeysCB
+   *        An optional callback to retrieve eventually generated values. May be
+   *        <code>null</code>.
+   * @return The number of modified/inserted rows.
+   */
+  public int insertOrUpdateOrDelete (@Nonnull final String sSQL,
+                                     @Nonnull final IPreparedStatementDataProvider aPSDP,
+                                     @Nullable final IGeneratedKeysCallback aGeneratedKeysCB)
+  {
+    // We need this wrapper because the anonymous inner class cannot change
+    // variables in outer scope.
+    final IUpdatedRowCountCallback aURCCB = new UpdatedRowCountCallback ();
+    withPreparedStatementDo (sSQL, aPSDP, new IWithPreparedStatementCallback ()
+    {
+      public void run (@Nonnull final PreparedStatement aPS) throws SQLException
+      {
+        aPS.execute ();
+      }
+    }, aURCCB, aGeneratedKeysCB);
+    return aURCCB.getUpdatedRowCount ();
+  }
+
+  @Nonnull
+  public IReadonlyPair <Integer, Object> insertOrUpdateAndGetGeneratedKey (@Nonnull final String sSQL,
+                                                                           @Nonnull final IPreparedStatementDataProvider aPSDP)
+  {
+    final GetSingleGeneratedKeyCallback aCB = new GetSingleGeneratedKeyCallback ();
+    final int nUpdateCount = insertOrUpdateOrDelete (sSQL, aPSDP, aCB);
+    return ReadonlyPair.create (Integer.valueOf (nUpdateCount),
+                                nUpdateCount != IUpdatedRowCountCallback.NOT_INITIALIZED ? aCB.getGeneratedKey ()
+                                                                                        : null);
+  }
+
+  private int _executeMultiRow (@Nonnull final PreparedStatement aPS,
+                                @Nonnull final String sSQL,
+                                @Nonnull final List <List <Object>> aRows) throws SQLException
+  {
+    int nIndex = 1;
+    for (final List <Object> aRow : aRows)
+      for (final Object aValue : aRow)
+        aPS.setObject (nIndex++, aValue);
+    return _executeUpdate (aPS, sSQL);
+  }
+
+  private int _executeBatch (@Nonnull final PreparedStatement aPS, @Nonnull final String sSQL) throws SQLException
+  {
+    int ret = 0;
+    for (final int nCount : _executeBatchRaw (aPS, sSQL))
+      if (nCount == Statement.SUCCESS_NO_INFO)
+        ret++;
+      else
+        if (nCount > 0)
+          ret += nCount;
+    return ret;
+  }
+
+  private int _insertMultiRow (@Nonnull final Connection aConnection,
+                               @Nonnull final DBMultiRowInsert aInsert,
+                               @Nonnull final Iterable <? extends IPreparedStatementDataProvider> aRows) throws SQLException
+  {
+    final EDatabaseDialect eDialect = getDialect (aConnection);
+    final int nCols = aInsert.getColumnCount ();
+    final int nRowsPerStatement = aInsert.getRowsPerStatement (eDialect);
+    int nTotal = 0;
+
+    if (nRowsPerStatement == 1)
+    {
+      // No multi-row support - use regular JDBC batching
+      final String sSQL = aInsert.getSQL (eDialect, 1);
+      if (GlobalDebug.isDebugMode ())
+        s_aLogger.info ("Executing batched insert: " + sSQL);
+      final PreparedStatement aPS = _prepareStatement (aConnection, sSQL);
+      try
+      {
+        int nBatchRows = 0;
+        for (final IPreparedStatementDataProvider aRow : aRows)
+        {
+          if (aRow.getValueCount () != nCols)
+            throw new IllegalArgumentException ("row value count (" +
+                                                aRow.getValueCount () +
+                                                ") does not match column count (" +
+                                                nCols +
+                                                ")");
+          _setValues (aPS, aRow.getObjectValues ());
+          aPS.addBatch ();
+          if (++nBatchRows == DEFAULT_BATCH_SIZE)
+          {
+            nTotal += _executeBatch (aPS, sSQL);
+            nBatchRows = 0;
+          }
+        }
+        if (nBatchRows > 0)
+          nTotal += _executeBatch (aPS, sSQL);
+      }
+      finally
+      {
+        JDBCHelper.close (aPS);
+      }
+      return nTotal;
+    }
+
+    // Collect rows until a statement is full
+    final List <List <Object>> aPendingRows = new ArrayList <List <Object>> (nRowsPerStatement);
+    PreparedStatement aFullPS = null;
+    final String sFullSQL = aInsert.getSQL (eDialect, nRowsPerStatement);
+    try
+    {
+      for (final IPreparedStatementDataProvider aRow : aRows)
+      {
+        if (aRow.getValueCount () != nCols)
+          throw new IllegalArgumentException ("row value count (" +
+                                              aRow.getValueCount () +
+                                              ") does not match column count (" +
+                                              nCols +
+                                              ")");
+        aPendingRows.add (aRow.getObjectValues ());
+        if (aPendingRows.size () == nRowsPerStatement)
+        {
+          if (aFullPS == null)
+          {
+            // Prepare only once and reuse it for all full chunks
+            if (GlobalDebug.isDebugMode ())
+              s_aLogger.info ("Executing multi-row insert with " +
+                              nRowsPerStatement +
+                              " rows into " +
+                              aInsert.getTableName ());
+            aFullPS = _prepareStatement (aConnection, sFullSQL);
+          }
+          nTotal += _executeMultiRow (aFullPS, sFullSQL, aPendingRows);
+          aPendingRows.clear ();
+        }
+      }
+    }
+    finally
+    {
+      JDBCHelper.close (aFullPS);
+    }
+
+    if (!aPendingRows.isEmpty ())
+    {
+      // Remaining rows
+      final String sRestSQL = aInsert.getSQL (eDialect, aPendingRows.size ());
+      final PreparedStatement aRestPS = _prepareStatement (aConnection, sRestSQL);
+      try
+      {
+        nTotal += _executeMultiRow (aRestPS, sRestSQL, aPendingRows);
+      }
+      finally
+      {
+        JDBCHelper.close (aRestPS);
+      }
+    }
+    return nTotal;
+  }
+
+  /**
+   * Insert many rows into a table by using multi-row INSERT statements. The
+   * number of rows per statement depends on the dialect. All rows are inserted
+   * within a single transaction.
+   * 
+   * @param sTableName
+   *        The table to insert into. May neither be <code>null</code> nor
+   *        empty.
+   * @param aColumnNames
+   *        The columns to fill. May neither be <code>null</code> nor empty.
+   * @param aRows
+   *        The rows to insert. Each row must provide exactly one value per
+   *        column. May not be <code>null</code>.
+   * @return The number of inserted rows or
+   *         {@link IUpdatedRowCountCallback#NOT_INITIALIZED} in case of an
+   *         error.
+   */
+  @CheckForSigned
+  public int insertMultiRow (@Nonnull @Nonempty final String sTableName,
+                             @Nonnull @Nonempty final List <String> aColumnNames,
+                             @Nonnull final Iterable <? extends IPreparedStatementDataProvider> aRows)
+  {
+    return insertMultiRow (new DBMultiRowInsert (sTableName, aColumnNames), aRows);
+  }
+
+  /**
+   * Insert many rows into a table by using multi-row INSERT statements. The
+   * number of rows per statement depends on the dialect and the passed insert
+   * definition. All rows are inserted within a single transaction.
+   * 
+   * @param aInsert
+   *        The insert definition. May not be <code>null</code>.
+   * @param aRows
+   *        The rows to insert. Each row must provide exactly one value per
+   *        column. May not be <code>null</code>.
+   * @return The number of inserted rows or
+   *         {@link IUpdatedRowCountCallback#NOT_INITIALIZED} in case of an
+   *         error.
+   */
+  @CheckForSigned
+  public int insertMultiRow (@Nonnull final DBMultiRowInsert aInsert,
+                             @Nonnull final Iterable <? extends IPreparedStatementDataProvider> aRows)
+  {
+    if (aInsert == null)
+      throw new NullPointerException ("insert");
+    if (aRows == null)
+      throw new NullPointerException ("rows");
+
+    final IUpdatedRowCountCallback aURCCB = new UpdatedRowCountCallback ();
+    _withConnectionDo (new IWithConnectionCallback ()
+    {
+      public void run (@Nonnull final Connection aConnection) throws SQLException
+      {
+        aURCCB.setUpdatedRowCount (_insertMultiRow (aConnection, aInsert, aRows));
+      }
+    });
+    return aURCCB.getUpdatedRowCount ();
+  }
+
+  private static void _setValues (@Nonnull final PreparedStatement aPS, @Nonnull final List <Object> aValues) throws SQLException
+  {
+    int nIndex = 1;
+    for (final Object aValue : aValues)
+      aPS.setObject (nIndex++, aValue);
+  }
+
+  /**
+   * Read the SQL types of all upsert columns from the database meta data, as
+   * required for the typed parameter markers of DB2.
+   * 
+   * @param aConnection
+   *        The connection to use. May not be <code>null</code>.
+   * @param aUpsert
+   *        The upsert to read the column types for. May not be
+   *        <code>null</code>.
+   * @return The column types in the order of the upsert columns, e.g.
+   *         <code>VARCHAR(20)</code>. Never <code>null</code>.
+   * @throws SQLException
+   *         If the meta data cannot be read or a column does not exist
+   */
+  @Nonnull
+  static List <String> readColumnTypes (@Nonnull final Connection aConnection, @Nonnull final DBUpsert aUpsert) throws SQLException
+  {
+    String sSchemaName = null;
+    String sTableName = aUpsert.getTableName ();
+    final int nDot = sTableName.lastIndexOf ('.');
+    if (nDot >= 0)
+    {
+      sSchemaName = sTableName.substring (0, nDot);
+      sTableName = sTableName.substring (nDot + 1);
+    }
+
+    final DatabaseMetaData aMetaData = aConnection.getMetaData ();
+    Map <String, String> aTypes = _readColumnTypes (aMetaData, sSchemaName, sTableName);
+    if (aTypes.isEmpty ())
+    {
+      // Unquoted identifiers are stored in upper case
+      aTypes = _readColumnTypes (aMetaData,
+                                 sSchemaName == null ? null : sSchemaName.toUpperCase (Locale.US),
+                                 sTableName.toUpperCase (Locale.US));
+    }
+
+    final List <String> ret = new ArrayList <String> ();
+    for (final String sColumnName : aUpsert.getAllColumnNames ())
+    {
+      final String sType = aTypes.get (sColumnName.toUpperCase (Locale.US));
+      if (sType == null)
+        throw new SQLException ("Failed to determine the type of column '" +
+                                sColumnName +
+                                "' of table '" +
+                                aUpsert.getTableName () +
+                                "'");
+      ret.add (sType);
+    }
+    return ret;
+  }
+
+  @Nonnull
+  private static Map <String, String> _readColumnTypes (@Nonnull final DatabaseMetaData aMetaData,
+                                                        @Nullable final String sSchemaName,
+                                                        @Nonnull final String sTableName) throws SQLException
+  {
+    final Map <String, String> ret = new HashMap <String, String> ();
+    final ResultSet aRS = aMetaData.getColumns (null, sSchemaName, sTableName, null);
+    try
+    {
+      while (aRS.next ())
+      {
+        final String sColumnName = aRS.getString ("COLUMN_NAME");
+        String sType = aRS.getString ("TYPE_NAME");
+        switch (aRS.getInt ("DATA_TYPE"))
+        {
+          case Types.CHAR:
+          case Types.VARCHAR:
+          case Types.NCHAR:
+          case Types.NVARCHAR:
+          case Types.BINARY:
+          case Types.VARBINARY:
+          {
+            final String sSize = "(" + aRS.getInt ("COLUMN_SIZE") + ")";
+            // DB2 reports e.g. "VARCHAR () FOR BIT DATA"
+            sType = sType.contains ("()") ? StringHelper.replaceAll (sType, "()", sSize) : sType + sSize;
+            break;
+          }
+          case Types.DECIMAL:
+          case Types.NUMERIC:
+            sType += "(" + aRS.getInt ("COLUMN_SIZE") + ", " + aRS.getInt ("DECIMAL_DIGITS") + ")";
+            break;
+        }
+        ret.put (sColumnName.toUpperCase (Locale.US), sType);
+      }
+    }
+    finally
+    {
+      aRS.close ();
+    }
+    return ret;
+  }
+
+  /**
+   * Upsert a chunk of rows without a native upsert statement: all rows are
+   * updated in a batch, and all rows that were not updated are inserted in a
+   * batch afterwards. Rows having the same key as a row inserted in the same
+   * batch are updated afterwards, so that the last row for a key wins.
+   */
+  private void _upsertFallbackChunk (@Nonnull final DBUpsert aUpsert,
+                                     @Nonnull final List <List <Object>> aChunk,
+                                     @Nonnull final PreparedStatement aUpdatePS,
+                                     @Nonnull final String sUpdateSQL,
+                                     @Nonnull final PreparedStatement aInsertPS,
+                                     @Nonnull final String sInsertSQL) throws SQLException
+  {
+    List <List <Object>> aRows = aChunk;
+    while (!aRows.isEmpty ())
+    {
+      for (final List <Object> aValues : aRows)
+      {
+        _setValues (aUpdatePS, aUpsert.getFallbackUpdateValues (aValues));
+        aUpdatePS.addBatch ();
+      }
+      final int [] aUpdateCounts = _executeBatchRaw (aUpdatePS, sUpdateSQL);
+
+      final Set <List <Object>> aInsertedKeys = new HashSet <List <Object>> ();
+      final List <List <Object>> aDeferredRows = new ArrayList <List <Object>> ();
+      for (int i = 0; i < aRows.size (); ++i)
+      {
+        final List <Object> aValues = aRows.get (i);
+        int nUpdateCount = aUpdateCounts[i];
+        if (nUpdateCount == Statement.SUCCESS_NO_INFO)
+        {
+          // The driver does not tell whether a row was updated - update again
+          // individually
+          _setValues (aUpdatePS, aUpsert.getFallbackUpdateValues (aValues));
+          nUpdateCount = _executeUpdate (aUpdatePS, sUpdateSQL);
+        }
+        if (nUpdateCount == 0)
+        {
+          if (aInsertedKeys.add (aUpsert.getKeyValues (aValues)))
+          {
+            _setValues (aInsertPS, aValues);
+            aInsertPS.addBatch ();
+          }
+          else
+            aDeferredRows.add (aValues);
+        }
+      }
+      if (!aInsertedKeys.isEmpty ())
+        _executeBatchRaw (aInsertPS, sInsertSQL);
+      aRows = aDeferredRows;
+    }
+  }
+
+  private int _upsert (@Nonnull final Connection aConnection,
+                       @Nonnull final DBUpsert aUpsert,
+                       @Nonnull final Iterable <? extends IPreparedStatementDataProvider> aRows) throws SQLException
+  {
+    final EDatabaseDialect eDialect = getDialect (aConnection);
+    final int nCols = aUpsert.getColumnCount ();
+    int nTotal = 0;
+
+    if (eDialect.isUpsertSupported ())
+    {
+      // DB2 requires typed parameter markers
+      List <String> aColumnTypes = aUpsert.getAllColumnTypes ();
+      if (aColumnTypes == null && eDialect.isUpsertRequiringColumnTypes ())
+        aColumnTypes = readColumnTypes (aConnection, aUpsert);
+      final String sSQL = aUpsert.getSQL (eDialect, aColumnTypes);
+      if (GlobalDebug.isDebugMode ())
+        s_aLogger.info ("Executing batched upsert: " + sSQL);
+      final PreparedStatement aPS = _prepareStatement (aConnection, sSQL);
+      try
+      {
+        int nBatchRows = 0;
+        for (final IPreparedStatementDataProvider aRow : aRows)
+        {
+          if (aRow.getValueCount () != nCols)
+            throw new IllegalArgumentException ("row value count (" +
+                                                aRow.getValueCount () +
+                                                ") does not match column count (" +
+                                                nCols +
+                                                ")");
+          _setValues (aPS, aRow.getObjectValues ());
+          aPS.addBatch ();
+          if (++nBatchRows == DEFAULT_BATCH_SIZE)
+          {
+            _executeBatchRaw (aPS, sSQL);
+            nTotal += nBatchRows;
+            nBatchRows = 0;
+          }
+        }
+        if (nBatchRows > 0)
+        {
+          _executeBatchRaw (aPS, sSQL);
+          nTotal += nBatchRows;
+        }
+      }
+      finally
+      {
+        JDBCHelper.close (aPS);
+      }
+      return nTotal;
+    }
+
+    // No native upsert - batched UPDATEs and batched INSERTs of all rows that
+    // were not updated
+    if (GlobalDebug.isDebugMode ())
+      s_aLogger.info ("Executing upsert fallback into " + aUpsert.getTableName ());
+    final String sUpdateSQL = aUpsert.getFallbackUpdateSQL ();
+    final String sInsertSQL = aUpsert.getFallbackInsertSQL ();
+    final PreparedStatement aUpdatePS = _prepareStatement (aConnection, sUpdateSQL);
+    try
+    {
+      final PreparedStatement aInsertPS = _prepareStatement (aConnection, sInsertSQL);
+      try
+      {
+        final List <List <Object>> aChunk = new ArrayList <List <Object>> ();
+        for (final IPreparedStatementDataProvider aRow : aRows)
+        {
+          if (aRow.getValueCount () != nCols)
+            throw new IllegalArgumentException ("row value count (" +
+                                                aRow.getValueCount () +
+                                                ") does not match column count (" +
+                                                nCols +
+                                                ")");
+          aChunk.add (aRow.getObjectValues ());
+          if (aChunk.size () == DEFAULT_BATCH_SIZE)
+          {
+            _upsertFallbackChunk (aUpsert, aChunk, aUpdatePS, sUpdateSQL, aInsertPS, sInsertSQL);
+            nTotal += aChunk.size ();
+            aChunk.clear ();
+          }
+        }
+        if (!aChunk.isEmpty ())
+        {
+          _upsertFallbackChunk (aUpsert, aChunk, aUpdatePS, sUpdateSQL, aInsertPS, sInsertSQL);
+          nTotal += aChunk.size ();
+        }
+      }
+      finally
+      {
+        JDBCHelper.close (aInsertPS);
+      }
+    }
+    finally
+    {
+      JDBCHelper.close (aUpdatePS);
+    }
+    return nTotal;
+  }
+
+  /**
+   * Insert or update many rows at once. Depending on the dialect a MERGE or
+   * INSERT ... ON DUPLICATE KEY UPDATE statement is executed in JDBC batches of
+   * {@link #DEFAULT_BATCH_SIZE} rows. All rows are processed within a single
+   * transaction.
+   * 
+   * @param aUpsert
+   *        The upsert definition. May not be <code>null</code>.
+   * @param aRows
+   *        The rows to upsert. Each row must provide exactly one value per
+   *        column. May not be <code>null</code>.
+   * @return The number of processed rows or
+   *         {@link IUpdatedRowCountCallback#NOT_INITIALIZED} in case of an
+   *         error. Note: this is not the number of affected rows as reported by
+   *         the driver, as this number is dialect specific for upserts.
+   */
+  @CheckForSigned
+  public int upsert (@Nonnull final DBUpsert aUpsert,
+                     @Nonnull final Iterable <? extends IPreparedStatementDataProvider> aRows)
+  {
+    if (aUpsert == null)
+      throw new NullPointerException ("upsert");
+    if (aRows == null)
+      throw new NullPointerException ("rows");
+
+    final IUpdatedRowCountCallback aURCCB = new UpdatedRowCountCallback ();
+    _withConnectionDo (new IWithConnectionCallback ()
+    {
+      public void run (@Nonnull final Connection aConnection) throws SQLException
+      {
+        aURCCB.setUpdatedRowCount (_upsert (aConnection, aUpsert, aRows));
+      }
+    });
+    return aURCCB.getUpdatedRowCount ();
+  }
+
+  /**
+   * Iterate the passed result set, collect all values of a single result row,
+   * and call the callback for each row of result objects.
+   * 
+   * @param aRS
+   *        The result set to iterate.
+   * @param aCallback
+   *        The callback to be invoked for each row.
+   * @throws SQLException
+   *         on error
+   */
+  protected static final void iterateResultSet (@WillClose final ResultSet aRS,
+                                                @Nonnull final IResultSetRowCallback aCallback) throws SQLException
+  {
+    try
+    {
+      // Get column names
+      final ResultSetMetaData aRSMD = aRS.getMetaData ();
+      final int nCols = aRSMD.getColumnCount ();
+      final String [] aColumnNames = new String [nCols];
+      final int [] aColumnTypes = new int [nCols];
+      for (int i = 1; i <= nCols; ++i)
+      {
+        aColumnNames[i - 1] = aRSMD.getColumnName (i).intern ();
+        aColumnTypes[i - 1] = aRSMD.getColumnType (i);
+      }
+
+      // create object once for all rows
+      final DBResultRow aRow = new DBResultRow (nCols);
+
+      // for all result set elements
+      while (aRS.next ())
+      {
+        // fill map
+        aRow.clear ();
+        for (int i = 1; i <= nCols; ++i)
+        {
+          final Object aColumnValue = aRS.getObject (i);
+          aRow.add (new DBResultField (aColumnNames[i - 1], aColumnTypes[i - 1], aColumnValue));
+        }
+
+        // add result object
+        aCallback.run (aRow);
+      }
+    }
+    finally
+    {
+      aRS.close ();
+    }
+  }
+
+  @Nonnull
+  public ESuccess queryAll (@Nonnull @Nonempty final String sSQL,
+                            @Nonnull final IResultSetRowCallback aResultItemCallback)
+  {
+    return withStatementDo (sSQL, new IWithStatementCallback ()
+    {
+      public void run (@Nonnull final Statement aStatement) throws SQLException
+      {
+        _applyFetchSize (aStatement, sSQL);
+        final ResultSet aResultSet = aStatement.executeQuery (sSQL);
+        _iterateResultSet (aResultSet, sSQL, aResultItemCallback);
+      }
+    }, null);
+  }
+
+  @Nonnull
+  public ESuccess queryAll (@Nonnull final String sSQL,
+                            @Nonnull final IPreparedStatementDataProvider aPSDP,
+                            @Nonnull final IResultSetRowCallback aResultItemCallback)
+  {
+    return withPreparedStatementDo (sSQL, aPSDP, new IWithPreparedStatementCallback ()
+    {
+      public void run (@Nonnull final PreparedStatement aPreparedStatement) throws SQLException
+      {
+        _applyFetchSize (aPreparedStatement, sSQL);
+        final ResultSet aResultSet = aPreparedStatement.executeQuery ();
+        _iterateResultSet (aResultSet, sSQL, aResultItemCallback);
+      }
+    }, null, null);
+  }
+
+  /**
+   * Iterate the passed result set and call the callback for each row while
+   * the cursor is positioned on it. No column values are read in advance, so
+   * large binary and character values can be streamed.
+   * 
+   * @param aRS
+   *        The result set to iterate.
+   * @param aCallback
+   *        The callback to be invoked for each row.
+   * @throws SQLException
+   *         on error. IO errors from the callback are wrapped in an
+   *         {@link SQLException}.
+   */
+  protected static final void iterateResultSetStreaming (@WillClose final ResultSet aRS,
+                                                         @Nonnull final IStreamingResultSetRowCallback aCallback) throws SQLException
+  {
+    try
+    {
+      // create object once for all rows
+      final DBStreamingResultRow aRow = new DBStreamingResultRow (aRS);
+
+      // for all result set elements
+      while (aRS.next ())
+      {
+        aRow.setValid (true);
+        try
+        {
+          aCallback.run (aRow);
+        }
+        catch (final IOException ex)
+        {
+          throw new SQLException ("Failed to stream column value", ex);
+        }
+        finally
+        {
+          aRow.setValid (false);
+        }
+      }
+    }
+    finally
+    {
+      aRS.close ();
+    }
+  }
+
+  /**
+   * Execute the passed query and invoke the callback for each result row with
+   * streamed access to the column values. Use this for queries returning large
+   * BLOB or CLOB values.
+   * 
+   * @param sSQL
+   *        The SQL query to execute. May neither be <code>null</code> nor
+   *        empty.
+   * @param aResultItemCallback
+   *        The callback to be invoked for each row. May not be
+   *        <code>null</code>.
+   * @return {@link ESuccess}
+   */
+  @Nonnull
+  public ESuccess queryAllStreaming (@Nonnull @Nonempty final String sSQL,
+                                     @Nonnull final IStreamingResultSetRowCallback aResultItemCallback)
+  {
+    return withStatementDo (sSQL, new IWithStatementCallback ()
+    {
+      public void run (@Nonnull final Statement aStatement) throws SQLException
+      {
+        _applyFetchSize (aStatement, sSQL);
+        final ResultSet aResultSet = aStatement.executeQuery (sSQL);
+        iterateResultSetStreaming (aResultSet, aResultItemCallback);
+      }
+    }, null);
+  }
+
+  /**
+   * Execute the passed prepared query and invoke the callback for each result
+   * row with streamed access to the column values. Use this for queries
+   * returning large BLOB or CLOB values.
+   * 
+   * @param sSQL
+   *        The SQL query to execute. May neither be <code>null</code> nor
+   *        empty.
+   * @param aPSDP
+   *        The prepared statement parameters. May not be <code>null</code>.
+   * @param aResultItemCallback
+   *        The callback to be invoked for each row. May not be
+   *        <code>null</code>.
+   * @return {@link ESuccess}
+   */
+  @Nonnull
+  public ESuccess queryAllStreaming (@Nonnull @Nonempty final String sSQL,
+                                     @Nonnull final IPreparedStatementDataProvider aPSDP,
+                                     @Nonnull final IStreamingResultSetRowCallback aResultItemCallback)
+  {
+    return withPreparedStatementDo (sSQL, aPSDP, new IWithPreparedStatementCallback ()
+    {
+      public void run (@Nonnull final PreparedStatement aPreparedStatement) throws SQLException
+      {
+        _applyFetchSize (aPreparedStatement, sSQL);
+        final ResultSet aResultSet = aPreparedStatement.executeQuery ();
+        iterateResultSetStreaming (aResultSet, aResultItemCallback);
+      }
+    }, null, null);
+  }
+
+  @Nullable
+  public List <DBResultRow> queryAll (@Nonnull @Nonempty final String sSQL)
+  {
+    final List <DBResultRow> aAllResultRows = new ArrayList <DBResultRow> ();
+    return queryAll (sSQL, new IResultSetRowCallback ()
+    {
+      public void run (@Nullable final DBResultRow aCurrentObject)
+      {
+        if (aCurrentObject != null)
+        {
+          // We need to clone the object!
+          aAllResultRows.add (aCurrentObject.getClone ());
+        }
+      }
+    }).isFailure () ? null : aAllResultRows;
+  }
+
+  @Nullable
+  public List <DBResultRow> queryAll (@Nonnull @Nonempty final String sSQL,
+                                      @Nonnull final IPreparedStatementDataProvider aPSDP)
+  {
+    final List <DBResultRow> aAllResultRows = new ArrayList <DBResultRow> ();
+    return queryAll (sSQL, aPSDP, new IResultSetRowCallback ()
+    {
+      public void run (@Nullable final DBResultRow aCurrentObject)
+      {
+        if (aCurrentObject != null)
+        {
+          // We need to clone the object!
+          aAllResultRows.add (aCurrentObject.getClone ());
+        }
+      }
+    }).isFailure () ? null : aAllResultRows;
+  }
+
+  /**
+   * Execute a query that references a whole set of keys via
+   * {@link DBArrayParameter#PLACEHOLDER}. If the dialect supports array
+   * parameters, the keys are bound as a single parameter. Otherwise they are
+   * inserted into a session specific temporary table in batches which is
+   * dropped afterwards. In both cases the query is executed only once.
+   * 
+   * @param sSQL
+   *        The SQL containing {@link DBArrayParameter#PLACEHOLDER} exactly once,
+   *        e.g. <code>SELECT * FROM t WHERE id IN {keys}</code>. May neither be
+   *        <code>null</code> nor empty.
+   * @param aArray
+   *        The keys to bind. May not be <code>null</code>.
+   * @param aPSDP
+   *        The values of all other positional parameters. May be
+   *        <code>null</code> if there are none.
+   * @param aResultItemCallback
+   *        The callback to invoke for each row. May not be <code>null</code>.
+   * @return {@link ESuccess}
+   */
+  @Nonnull
+  public ESuccess queryAllWithArray (@Nonnull @Nonempty final String sSQL,
+                                     @Nonnull final DBArrayParameter aArray,
+                                     @Nullable final IPreparedStatementDataProvider aPSDP,
+                                     @Nonnull final IResultSetRowCallback aResultItemCallback)
+  {
+    if (aArray == null)
+      throw new NullPointerException ("array");
+    if (aResultItemCallback == null)
+      throw new NullPointerException ("resultItemCallback");
+
+    final List <Object> aOtherValues = aPSDP == null ? new ArrayList <Object> () : aPSDP.getObjectValues ();
+    return _withConnectionDo (new IWithConnectionCallback ()
+    {
+      public void run (@Nonnull final Connection aConnection) throws SQLException
+      {
+        final EDatabaseDialect eDialect = getDialect (aConnection);
+        if (eDialect.isArrayParameterSupported ())
+        {
+          // Bind the array as a single parameter
+          final String sTableSQL = eDialect.getArrayParameterTableSQL (DBArrayParameter.COLUMN_NAME,
+                                                                       aArray.getColumnType ());
+          final List <Object> aValues = new ArrayList <Object> (aOtherValues);
+          aValues.add (DBArrayParameter.getParameterCountBeforePlaceholder (sSQL), aArray.directGetAllValues ());
+          _queryWithValues (aConnection,
+                            DBArrayParameter.getReplacedSQL (sSQL, sTableSQL),
+                            aValues,
+                            aResultItemCallback);
+        }
+        else
+        {
+          // Fill a temporary table
+          final String sTableName = eDialect.getTemporaryTableName (DBArrayParameter.TEMPORARY_TABLE_NAME);
+          final Statement aStatement = aConnection.createStatement ();
+          try
+          {
+            _executeTemporaryTableStatement (aStatement,
+                                             eDialect.getCreateTemporaryTableSQL (sTableName,
+                                                                                  DBArrayParameter.COLUMN_NAME +
+                                                                                      " " +
+                                                                                      aArray.getColumnType ()));
+            try
+            {
+              final String sInsertSQL = "INSERT INTO " +
+                                        sTableName +
+                                        " (" +
+                                        DBArrayParameter.COLUMN_NAME +
+                                        ") VALUES (?)";
+              final PreparedStatement aInsertPS = _prepareStatement (aConnection, sInsertSQL);
+              try
+              {
+                int nInBatch = 0;
+                for (final Object aValue : aArray.directGetAllValues ())
+                {
+                  aInsertPS.setObject (1, aValue);
+                  aInsertPS.addBatch ();
+                  if (++nInBatch == DEFAULT_BATCH_SIZE)
+                  {
+                    _executeBatchRaw (aInsertPS, sInsertSQL);
+                    nInBatch = 0;
+                  }
+                }
+                if (nInBatch > 0)
+                  _executeBatchRaw (aInsertPS, sInsertSQL);
+              }
+              finally
+              {
+                aInsertPS.close ();
+              }
+
+              _queryWithValues (aConnection,
+                                DBArrayParameter.getReplacedSQL (sSQL, sTableName),
+                                aOtherValues,
+                                aResultItemCallback);
+            }
+            finally
+            {
+              final String sDropSQL = eDialect.getDropTemporaryTableSQL (sTableName);
+              if (sDropSQL != null)
+                _executeTemporaryTableStatement (aStatement, sDropSQL);
+            }
+          }
+          finally
+          {
+            aStatement.close ();
+          }
+        }
+      }
+    });
+  }
+
+  @Nullable
+  public List <DBResultRow> queryAllWithArray (@Nonnull @Nonempty final String sSQL,
+                                               @Nonnull final DBArrayParameter aArray)
+  {
+    return queryAllWithArray (sSQL, aArray, null);
+  }
+
+  @Nullable
+  public List <DBResultRow> queryAllWithArray (@Nonnull @Nonempty final String sSQL,
+                                               @Nonnull final DBArrayParameter aArray,
+                                               @Nullable final IPreparedStatementDataProvider aPSDP)
+  {
+    final List <DBResultRow> aAllResultRows = new ArrayList <DBResultRow> ();
+    return queryAllWithArray (sSQL, aArray, aPSDP, new IResultSetRowCallback ()
+    {
+      public void run (@Nullable final DBResultRow aCurrentObject)
+      {
+        if (aCurrentObject != null)
         {
-          aPS.close ();
+          // We need to clone the object!
+          aAllResultRows.add (aCurrentObject.getClone ());
         }
       }
-    });
+    }).isFailure () ? null : aAllResultRows;
   }
 
-  @Nonnull
-  public ESuccess executeStatement (@Nonnull final String sSQL)
+  private void _queryWithValues (@Nonnull final Connection aConnection,
+                                 @Nonnull final String sSQL,
+                                 @Nonnull final List <Object> aValues,
+                                 @Nonnull final IResultSetRowCallback aResultItemCallback) throws SQLException
   {
-    return executeStatement (sSQL, null);
-  }
+    if (GlobalDebug.isDebugMode ())
+      s_aLogger.info ("Executing prepared statement: " + sSQL);
 
-  @Nonnull
-  public ESuccess executeStatement (@Nonnull final String sSQL, @Nullable final IGeneratedKeysCallback aGeneratedKeysCB)
-  {
-    return withStatementDo (new IWithStatementCallback ()
+    final PreparedStatement aPS = _prepareStatement (aConnection, sSQL);
+    try
     {
-      public void run (@Nonnull final Statement aStatement) throws SQLException
-      {
-        if (GlobalDebug.isDebugMode ())
-          s_aLogger.info ("Executing statement: " + sSQL);
-        aStatement.execute (sSQL);
-      }
-    }, aGeneratedKeysCB);
+      _setValues (aPS, aValues);
+      _executeQueryAndIterate (aPS, sSQL, aResultItemCallback);
+    }
+    finally
+    {
+      aPS.close ();
+    }
   }
 
+  /**
+   * @return The factory used to create the fetcher threads of
+   *         {@link #queryPrefetching(String, int)}. Never <code>null</code>.
+   */
   @Nonnull
-  public ESuccess executePreparedStatement (@Nonnull final String sSQL,
-                                            @Nonnull final IPreparedStatementDataProvider aPSDP)
+  public ThreadFactory getPrefetchingThreadFactory ()
   {
-    return executePreparedStatement (sSQL, aPSDP, null, null);
+    return m_aPrefetchingThreadFactory;
   }
 
-  @Nonnull
-  public ESuccess executePreparedStatement (@Nonnull final String sSQL,
-                                            @Nonnull final IPreparedStatementDataProvider aPSDP,
-                                            @Nullable final IUpdatedRowCountCallback aURWCC,
-                                            @Nullable final IGeneratedKeysCallback aGeneratedKeysCB)
+  /**
+   * Set the factory used to create the fetcher threads of
+   * {@link #queryPrefetching(String, int)}, e.g. a managed thread factory of
+   * an application server. By default unmanaged daemon threads are used.
+   * 
+   * @param aThreadFactory
+   *        The thread factory to use. May not be <code>null</code>.
+   */
+  public void setPrefetchingThreadFactory (@Nonnull final ThreadFactory aThreadFactory)
   {
-    return withPreparedStatementDo (sSQL, aPSDP, new IWithPreparedStatementCallback ()
-    {
-      public void run (@Nonnull final PreparedStatement aPS) throws SQLException
-      {
-        aPS.execute ();
-      }
-    }, aURWCC, aGeneratedKeysCB);
+    if (aThreadFactory == null)
+      throw new NullPointerException ("threadFactory");
+    m_aPrefetchingThreadFactory = aThreadFactory;
   }
 
-  @Nullable
-  public Object executePreparedStatementAndGetGeneratedKey (@Nonnull final String sSQL,
-                                                            @Nonnull final IPreparedStatementDataProvider aPSDP)
+  @Nonnull
+  private DBPrefetchingCursor _startPrefetching (@Nonnull final DBPrefetchingCursor.IQueryRunner aQueryRunner,
+                                                 @Nonnegative final int nBlockSize)
   {
-    final GetSingleGeneratedKeyCallback aCB = new GetSingleGeneratedKeyCallback ();
-    return executePreparedStatement (sSQL, aPSDP, null, aCB).isSuccess () ? aCB.getGeneratedKey () : null;
+    _checkNotPrefetching ();
+    final DBPrefetchingCursor ret = new DBPrefetchingCursor (aQueryRunner, nBlockSize, m_aPrefetchingThreadFactory);
+    m_aPrefetchingCursor = ret;
+    ret.start ();
+    return ret;
   }
 
   /**
-   * Perform an INSERT or UPDATE statement.
+   * Execute the passed query and return a cursor that fetches the rows in
+   * blocks of the passed size in a background thread, while the caller
+   * processes the previous block. The returned cursor must be closed.<br>
+   * Until all rows were fetched or the cursor was closed, all other
+   * statements on this executor throw an {@link IllegalStateException},
+   * because they would wait for the fetcher thread that waits for the caller.
    * 
    * @param sSQL
-   *        SQL to execute.
-   * @param aPSDP
-   *        The prepared statement provider.
-   * @return The number of modified/inserted rows.
+   *        The SQL query to execute. May neither be <code>null</code> nor
+   *        empty.
+   * @param nBlockSize
+   *        The number of rows per block. Must be &gt; 0.
+   * @return The cursor. Never <code>null</code>.
+   * @throws IllegalStateException
+   *         If another prefetching cursor of this executor is still fetching
    */
-  public int insertOrUpdateOrDelete (@Nonnull final String sSQL, @Nonnull final IPreparedStatementDataProvider aPSDP)
+  @Nonnull
+  public DBPrefetchingCursor queryPrefetching (@Nonnull @Nonempty final String sSQL, @Nonnegative final int nBlockSize)
   {
-    return insertOrUpdateOrDelete (sSQL, aPSDP, null);
+    return _startPrefetching (new DBPrefetchingCursor.IQueryRunner ()
+    {
+      @Nonnull
+      public ESuccess runQuery (@Nonnull final IResultSetRowCallback aCallback)
+      {
+        return queryAll (sSQL, aCallback);
+      }
+    }, nBlockSize);
   }
 
   /**
-   * Perform an INSERT or UPDATE statement.
+   * Execute the passed query and return a cursor that fetches the rows in
+   * blocks of the passed size in a background thread, while the caller
+   * processes the previous block. The returned cursor must be closed. See
+   * {@link #queryPrefetching(String, int)} for the restrictions while the
+   * cursor is open.
    * 
    * @param sSQL
-   *        SQL to execute.
+   *        The SQL query to execute. May neither be <code>null</code> nor
+   *        empty.
    * @param aPSDP
-   *        The prepared statement provider.
-   * @param aGeneratedKeysCB
-   *        An optional callback to retrieve eventually generated values. May be
-   *        <code>null</code>.
-   * @return The number of modified/inserted rows.
+   *        The prepared statement parameters. May not be <code>null</code>.
+   * @param nBlockSize
+   *        The number of rows per block. Must be &gt; 0.
+   * @return The cursor. Never <code>null</code>.
+   * @throws IllegalStateException
+   *         If another prefetching cursor of this executor is still fetching
    */
-  public int insertOrUpdateOrDelete (@Nonnull final String sSQL,
-                                     @Nonnull final IPreparedStatementDataProvider aPSDP,
-                                     @Nullable final IGeneratedKeysCallback aGeneratedKeysCB)
+  @Nonnull
+  public DBPrefetchingCursor queryPrefetching (@Nonnull @Nonempty final String sSQL,
+                                               @Nonnull final IPreparedStatementDataProvider aPSDP,
+                                               @Nonnegative final int nBlockSize)
   {
-    // We need this wrapper because the anonymous inner class cannot change
-    // variables in outer scope.
-    final IUpdatedRowCountCallback aURCCB = new UpdatedRowCountCallback ();
-    withPreparedStatementDo (sSQL, aPSDP, new IWithPreparedStatementCallback ()
+    return _startPrefetching (new DBPrefetchingCursor.IQueryRunner ()
     {
-      public void run (@Nonnull final PreparedStatement aPS) throws SQLException
+      @Nonnull
+      public ESuccess runQuery (@Nonnull final IResultSetRowCallback aCallback)
       {
-        aPS.execute ();
+        return queryAll (sSQL, aPSDP, aCallback);
       }
-    }, aURCCB, aGeneratedKeysCB);
-    return aURCCB.getUpdatedRowCount ();
+    }, nBlockSize);
   }
 
+  /**
+   * Query all rows and convert them in parallel. The calling thread fetches
+   * the rows and hands them in batches to a pool of worker threads that run
+   * the converter. If too many batches are pending, fetching blocks
+   * (backpressure). The converted objects are passed to the sink in the
+   * calling thread, either in row order or in completion order. The connection
+   * is released as soon as all rows are fetched, before the last results are
+   * delivered.
+   * 
+   * @param sSQL
+   *        The SQL query to execute. May neither be <code>null</code> nor
+   *        empty.
+   * @param aConverter
+   *        The converter to be run in parallel for each row. Must be
+   *        thread-safe. May not be <code>null</code>. If it returns
+   *        <code>null</code> the row is skipped.
+   * @param aSink
+   *        The sink receiving all converted objects. Does not need to be
+   *        thread-safe. May not be <code>null</code>.
+   * @param aSettings
+   *        The parallel processing settings. May not be <code>null</code>.
+   * @return {@link ESuccess}
+   */
   @Nonnull
-  public IReadonlyPair <Integer, Object> insertOrUpdateAndGetGeneratedKey (@Nonnull final String sSQL,
-                                                                           @Nonnull final IPreparedStatementDataProvider aPSDP)
+  public <T> ESuccess queryAllParallel (@Nonnull @Nonempty final String sSQL,
+                                        @Nonnull final IUnidirectionalConverter <? super DBResultRow, ? extends T> aConverter,
+                                        @Nonnull final INonThrowingRunnableWithParameter <? super T> aSink,
+                                        @Nonnull final DBParallelProcessingSettings aSettings)
   {
-    final GetSingleGeneratedKeyCallback aCB = new GetSingleGeneratedKeyCallback ();
-    final int nUpdateCount = insertOrUpdateOrDelete (sSQL, aPSDP, aCB);
-    return ReadonlyPair.create (Integer.valueOf (nUpdateCount),
-                                nUpdateCount != IUpdatedRowCountCallback.NOT_INITIALIZED ? aCB.getGeneratedKey ()
-                                                                                        : null);
+    final DBParallelRowProcessor <T> aProcessor = new DBParallelRowProcessor <T> (aConverter, aSink, aSettings);
+    boolean bSuccess = false;
+    try
+    {
+      if (queryAll (sSQL, aProcessor).isFailure ())
+        return ESuccess.FAILURE;
+      aProcessor.finish ();
+      bSuccess = true;
+      return ESuccess.SUCCESS;
+    }
+    finally
+    {
+      if (!bSuccess)
+        aProcessor.cancel ();
+    }
   }
 
   /**
-   * Iterate the passed result set, collect all values of a single result row,
-   * and call the callback for each row of result objects.
+   * Query all rows and convert them in parallel. See
+   * {@link #queryAllParallel(String, IUnidirectionalConverter, INonThrowingRunnableWithParameter, DBParallelProcessingSettings)}
+   * for details.
    * 
-   * @param aRS
-   *        The result set to iterate.
-   * @param aCallback
-   *        The callback to be invoked for each row.
-   * @throws SQLException
-   *         on error
+   * @param sSQL
+   *        The SQL query to execute. May neither be <code>null</code> nor
+   *        empty.
+   * @param aPSDP
+   *        The prepared statement parameters. May not be <code>null</code>.
+   * @param aConverter
+   *        The converter to be run in parallel for each row. Must be
+   *        thread-safe. May not be <code>null</code>.
+   * @param aSink
+   *        The sink receiving all converted objects. May not be
+   *        <code>null</code>.
+   * @param aSettings
+   *        The parallel processing settings. May not be <code>null</code>.
+   * @return {@link ESuccess}
    */
-  protected static final void iterateResultSet (@WillClose final ResultSet aRS,
-                                                @Nonnull final IResultSetRowCallback aCallback) throws SQLException
+  @Nonnull
+  public <T> ESuccess queryAllParallel (@Nonnull @Nonempty final String sSQL,
+                                        @Nonnull final IPreparedStatementDataProvider aPSDP,
+                                        @Nonnull final IUnidirectionalConverter <? super DBResultRow, ? extends T> aConverter,
+                                        @Nonnull final INonThrowingRunnableWithParameter <? super T> aSink,
+                                        @Nonnull final DBParallelProcessingSettings aSettings)
   {
+    final DBParallelRowProcessor <T> aProcessor = new DBParallelRowProcessor <T> (aConverter, aSink, aSettings);
+    boolean bSuccess = false;
     try
     {
-      // Get column names
-      final ResultSetMetaData aRSMD = aRS.getMetaData ();
-      final int nCols = aRSMD.getColumnCount ();
-      final String [] aColumnNames = new String [nCols];
-      final int [] aColumnTypes = new int [nCols];
-      for (int i = 1; i <= nCols; ++i)
-      {
-        aColumnNames[i - 1] = aRSMD.getColumnName (i).intern ();
-        aColumnTypes[i - 1] = aRSMD.getColumnType (i);
-      }
-
-      // create object once for all rows
-      final DBResultRow aRow = new DBResultRow (nCols);
-
-      // for all result set elements
-      while (aRS.next ())
-      {
-        // fill map
-        aRow.clear ();
-        for (int i = 1; i <= nCols; ++i)
-        {
-          final Object aColumnValue = aRS.getObject (i);
-          aRow.add (new DBResultField (aColumnNames[i - 1], aColumnTypes[i - 1], aColumnValue));
-        }
-
-        // add result object
-        aCallback.run (aRow);
-      }
+      if (queryAll (sSQL, aPSDP, aProcessor).isFailure ())
+        return ESuccess.FAILURE;
+      aProcessor.finish ();
+      bSuccess = true;
+      return ESuccess.SUCCESS;
     }
     finally
     {
-      aRS.close ();
+      if (!bSuccess)
+        aProcessor.cancel ();
     }
   }
 
-  @Nonnull
-  public ESuccess queryAll (@Nonnull @Nonempty final String sSQL,
-                            @Nonnull final IResultSetRowCallback aResultItemCallback)
+  /**
+   * Query all rows and store them in a compact, column oriented off-heap
+   * structure. Use this for large results that are kept in memory for a long
+   * time.
+   * 
+   * @param sSQL
+   *        The SQL query to execute. May neither be <code>null</code> nor
+   *        empty.
+   * @return <code>null</code> if the query failed.
+   */
+  @Nullable
+  public DBColumnarResult queryAllColumnar (@Nonnull @Nonempty final String sSQL)
   {
-    return withStatementDo (new IWithStatementCallback ()
+    final DBColumnarResult ret = new DBColumnarResult ();
+    return withStatementDo (sSQL, new IWithStatementCallback ()
     {
       public void run (@Nonnull final Statement aStatement) throws SQLException
       {
-        final ResultSet aResultSet = aStatement.executeQuery (sSQL);
-        iterateResultSet (aResultSet, aResultItemCallback);
+        _applyFetchSize (aStatement, sSQL);
+        ret.readResultSet (aStatement.executeQuery (sSQL));
       }
-    }, null);
+    }, null).isFailure () ? null : ret;
   }
 
-  @Nonnull
-  public ESuccess queryAll (@Nonnull final String sSQL,
-                            @Nonnull final IPreparedStatementDataProvider aPSDP,
-                            @Nonnull final IResultSetRowCallback aResultItemCallback)
+  /**
+   * Query all rows and store them in a compact, column oriented off-heap
+   * structure. Use this for large results that are kept in memory for a long
+   * time.
+   * 
+   * @param sSQL
+   *        The SQL query to execute. May neither be <code>null</code> nor
+   *        empty.
+   * @param aPSDP
+   *        The prepared statement parameters. May not be <code>null</code>.
+   * @return <code>null</code> if the query failed.
+   */
+  @Nullable
+  public DBColumnarResult queryAllColumnar (@Nonnull @Nonempty final String sSQL,
+                                            @Nonnull final IPreparedStatementDataProvider aPSDP)
   {
+    final DBColumnarResult ret = new DBColumnarResult ();
     return withPreparedStatementDo (sSQL, aPSDP, new IWithPreparedStatementCallback ()
     {
       public void run (@Nonnull final PreparedStatement aPreparedStatement) throws SQLException
       {
-        final ResultSet aResultSet = aPreparedStatement.executeQuery ();
-        iterateResultSet (aResultSet, aResultItemCallback);
+        _applyFetchSize (aPreparedStatement, sSQL);
+        ret.readResultSet (aPreparedStatement.executeQuery ());
       }
-    }, null, null);
+    }, null, null).isFailure () ? null : ret;
   }
 
-  @Nullable
-  public List <DBResultRow> queryAll (@Nonnull @Nonempty final String sSQL)
+  @Nonnull
+  private static IResultSetRowCallback _createMaterializingCallback (@Nonnull final DBSpillableResultRowList aAllResultRows)
   {
-    final List <DBResultRow> aAllResultRows = new ArrayList <DBResultRow> ();
-    return queryAll (sSQL, new IResultSetRowCallback ()
+    return new IResultSetRowCallback ()
     {
       public void run (@Nullable final DBResultRow aCurrentObject)
       {
         if (aCurrentObject != null)
-        {
-          // We need to clone the object!
-          aAllResultRows.add (aCurrentObject.getClone ());
-        }
+          try
+          {
+            aAllResultRows.addRow (aCurrentObject);
+          }
+          catch (final IOException ex)
+          {
+            throw new IllegalStateException ("Failed to spill result row to disk", ex);
+          }
       }
-    }).isFailure () ? null : aAllResultRows;
+    };
   }
 
+  /**
+   * Query all rows but limit the memory used for materializing them. If the
+   * limit is exceeded, the remaining rows are either written to a temporary
+   * file or the query is aborted, depending on the passed limit.
+   * 
+   * @param sSQL
+   *        The SQL query to execute. May neither be <code>null</code> nor
+   *        empty.
+   * @param aLimit
+   *        The memory limit to apply. May not be <code>null</code>.
+   * @return <code>null</code> if the query failed. The returned list must be
+   *         closed by the caller to delete a potential spill file.
+   * @throws DBResultSizeLimitExceededException
+   *         If the limit was exceeded in
+   *         {@link EResultMaterializationMode#FAIL_FAST} mode.
+   */
   @Nullable
-  public List <DBResultRow> queryAll (@Nonnull @Nonempty final String sSQL,
-                                      @Nonnull final IPreparedStatementDataProvider aPSDP)
+  public DBSpillableResultRowList queryAll (@Nonnull @Nonempty final String sSQL,
+                                            @Nonnull final DBResultMaterializationLimit aLimit)
   {
-    final List <DBResultRow> aAllResultRows = new ArrayList <DBResultRow> ();
-    return queryAll (sSQL, aPSDP, new IResultSetRowCallback ()
+    final DBSpillableResultRowList aAllResultRows = new DBSpillableResultRowList (aLimit);
+    boolean bSuccess = false;
+    try
     {
-      public void run (@Nullable final DBResultRow aCurrentObject)
-      {
-        if (aCurrentObject != null)
-        {
-          // We need to clone the object!
-          aAllResultRows.add (aCurrentObject.getClone ());
-        }
-      }
-    }).isFailure () ? null : aAllResultRows;
+      bSuccess = queryAll (sSQL, _createMaterializingCallback (aAllResultRows)).isSuccess ();
+      return bSuccess ? aAllResultRows : null;
+    }
+    finally
+    {
+      if (!bSuccess)
+        aAllResultRows.close ();
+    }
+  }
+
+  /**
+   * Query all rows but limit the memory used for materializing them. If the
+   * limit is exceeded, the remaining rows are either written to a temporary
+   * file or the query is aborted, depending on the passed limit.
+   * 
+   * @param sSQL
+   *        The SQL query to execute. May neither be <code>null</code> nor
+   *        empty.
+   * @param aPSDP
+   *        The prepared statement parameters. May not be <code>null</code>.
+   * @param aLimit
+   *        The memory limit to apply. May not be <code>null</code>.
+   * @return <code>null</code> if the query failed. The returned list must be
+   *         closed by the caller to delete a potential spill file.
+   * @throws DBResultSizeLimitExceededException
+   *         If the limit was exceeded in
+   *         {@link EResultMaterializationMode#FAIL_FAST} mode.
+   */
+  @Nullable
+  public DBSpillableResultRowList queryAll (@Nonnull @Nonempty final String sSQL,
+                                            @Nonnull final IPreparedStatementDataProvider aPSDP,
+                                            @Nonnull final DBResultMaterializationLimit aLimit)
+  {
+    final DBSpillableResultRowList aAllResultRows = new DBSpillableResultRowList (aLimit);
+    boolean bSuccess = false;
+    try
+    {
+      bSuccess = queryAll (sSQL, aPSDP, _createMaterializingCallback (aAllResultRows)).isSuccess ();
+      return bSuccess ? aAllResultRows : null;
+    }
+    finally
+    {
+      if (!bSuccess)
+        aAllResultRows.close ();
+    }
   }
 
   @Nullable
@@ -513,6 +2282,103 @@ public class DBExecutor
     return aResult == null ? CGlobal.ILLEGAL_UINT : ((Number) aResult.getValue (0)).intValue ();
   }
 
+  /**
+   * Perform an INSERT, UPDATE or DELETE statement with named parameters.
+   * {@link java.util.Collection} values are expanded to IN lists.
+   * 
+   * @param sNamedSQL
+   *        The SQL template with named parameters like <code>:id</code>. May
+   *        neither be <code>null</code> nor empty.
+   * @param aSource
+   *        The source of the parameter values. May not be <code>null</code>.
+   * @return The number of modified/inserted rows or
+   *         {@link IUpdatedRowCountCallback#NOT_INITIALIZED} on failure.
+   * @throws IllegalArgumentException
+   *         If an IN list exceeds the maximum IN list size
+   * @see DBNamedParameterSQL
+   */
+  @CheckForSigned
+  public int insertOrUpdateOrDeleteNamed (@Nonnull @Nonempty final String sNamedSQL,
+                                          @Nonnull final INamedParameterSource aSource)
+  {
+    final DBBoundSQL aStatement = DBNamedParameterSQL.getParsed (sNamedSQL).bind (aSource, getMaxInListSize ());
+    return insertOrUpdateOrDelete (aStatement.getSQL (), aStatement.getDataProvider ());
+  }
+
+  /**
+   * Execute a query with named parameters and pass each result row to the
+   * callback. {@link java.util.Collection} values are expanded to IN lists.
+   * 
+   * @param sNamedSQL
+   *        The SQL template with named parameters like <code>:id</code>. May
+   *        neither be <code>null</code> nor empty.
+   * @param aSource
+   *        The source of the parameter values. May not be <code>null</code>.
+   * @param aResultItemCallback
+   *        The callback to invoke for each row. May not be <code>null</code>.
+   * @return {@link ESuccess}
+   * @throws IllegalArgumentException
+   *         If an IN list exceeds the maximum IN list size
+   * @see DBNamedParameterSQL
+   */
+  @Nonnull
+  public ESuccess queryAllNamed (@Nonnull @Nonempty final String sNamedSQL,
+                                 @Nonnull final INamedParameterSource aSource,
+                                 @Nonnull final IResultSetRowCallback aResultItemCallback)
+  {
+    final DBBoundSQL aStatement = DBNamedParameterSQL.getParsed (sNamedSQL).bind (aSource, getMaxInListSize ());
+    return queryAll (aStatement.getSQL (), aStatement.getDataProvider (), aResultItemCallback);
+  }
+
+  @Nullable
+  public List <DBResultRow> queryAllNamed (@Nonnull @Nonempty final String sNamedSQL,
+                                           @Nonnull final INamedParameterSource aSource)
+  {
+    final List <DBResultRow> aAllResultRows = new ArrayList <DBResultRow> ();
+    return queryAllNamed (sNamedSQL, aSource, new IResultSetRowCallback ()
+    {
+      public void run (@Nullable final DBResultRow aCurrentObject)
+      {
+        if (aCurrentObject != null)
+        {
+          // We need to clone the object!
+          aAllResultRows.add (aCurrentObject.getClone ());
+        }
+      }
+    }).isFailure () ? null : aAllResultRows;
+  }
+
+  @Nullable
+  public DBResultRow querySingleNamed (@Nonnull @Nonempty final String sNamedSQL,
+                                       @Nonnull final INamedParameterSource aSource)
+  {
+    final List <DBResultRow> aAllResultRows = queryAllNamed (sNamedSQL, aSource);
+    if (aAllResultRows == null)
+      return null;
+    if (aAllResultRows.size () > 1)
+      throw new IllegalStateException ("Found more than 1 result row!");
+    return ContainerHelper.getFirstElement (aAllResultRows);
+  }
+
+  /**
+   * Execute a count query with named parameters.
+   * 
+   * @param sNamedSQL
+   *        The SQL template with named parameters like <code>:id</code>. May
+   *        neither be <code>null</code> nor empty.
+   * @param aSource
+   *        The source of the parameter values. May not be <code>null</code>.
+   * @return The count or {@link CGlobal#ILLEGAL_UINT} on failure.
+   * @throws IllegalArgumentException
+   *         If an IN list exceeds the maximum IN list size
+   */
+  @CheckForSigned
+  public int queryCountNamed (@Nonnull @Nonempty final String sNamedSQL, @Nonnull final INamedParameterSource aSource)
+  {
+    final DBBoundSQL aStatement = DBNamedParameterSQL.getParsed (sNamedSQL).bind (aSource, getMaxInListSize ());
+    return queryCount (aStatement.getSQL (), aStatement.getDataProvider ());
+  }
+
   @Override
   public String toString ()
   {
@@ -0,0 +1,269 @@
+/**
+ * Copyright (C) 2006-2015 phloc systems
+ * http://www.phloc.com
+ * office[at]phloc[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.phloc.db.jdbc.executor;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.CheckForSigned;
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+
+import com.phloc.commons.string.ToStringGenerator;
+import com.phloc.db.api.sql.SQLNormalizer;
+import com.phloc.db.jdbc.EDatabaseDialect;
+
+/**
+ * Determines the JDBC fetch size to use for a query. Initially the default
+ * fetch size of the database dialect is used. While iterating a result set
+ * the average width of the rows is estimated, and all subsequent executions
+ * of the same statement (identified by its {@link SQLNormalizer} fingerprint)
+ * use a fetch size so that each round trip transfers approximately
+ * {@link #getTargetBytesPerRoundTrip()} bytes.
+ * 
+ * @author Philip Helger
+ */
+@ThreadSafe
+public class DBFetchSizeAdvisor
+{
+  /** Default number of bytes to be transferred per round trip */
+  public static final int DEFAULT_TARGET_BYTES_PER_ROUND_TRIP = 128 * 1024;
+  /** Default minimum fetch size */
+  public static final int DEFAULT_MIN_FETCH_SIZE = 10;
+  /** Default maximum fetch size */
+  public static final int DEFAULT_MAX_FETCH_SIZE = 5000;
+  /** Default number of rows per execution used to estimate the row width */
+  public static final int DEFAULT_SAMPLE_ROW_COUNT = 64;
+  /**
+   * The maximum number of statements for which the row width is remembered.
+   * The least recently used statements are evicted first.
+   */
+  public static final int MAX_ENTRIES = 1000;
+
+  private final int m_nTargetBytesPerRoundTrip;
+  private final int m_nMinFetchSize;
+  private final int m_nMaxFetchSize;
+  private final Map <String, Long> m_aFingerprintCache = _createLRUMap ();
+  // Fingerprint to average row width in bytes
+  private final Map <Long, AtomicLong> m_aRowWidths = _createLRUMap ();
+
+  @Nonnull
+  @SuppressWarnings ("serial")
+  private static <K, V> Map <K, V> _createLRUMap ()
+  {
+    return new LinkedHashMap <K, V> (16, 0.75f, true)
+    {
+      @Override
+      protected boolean removeEldestEntry (final Map.Entry <K, V> aEldest)
+      {
+        return size () > MAX_ENTRIES;
+      }
+    };
+  }
+
+  public DBFetchSizeAdvisor ()
+  {
+    this (DEFAULT_TARGET_BYTES_PER_ROUND_TRIP, DEFAULT_MIN_FETCH_SIZE, DEFAULT_MAX_FETCH_SIZE);
+  }
+
+  /**
+   * Constructor
+   * 
+   * @param nTargetBytesPerRoundTrip
+   *        The number of bytes to be transferred per round trip. Must be &gt;
+   *        0.
+   * @param nMinFetchSize
+   *        The minimum fetch size to use. Must be &gt; 0.
+   * @param nMaxFetchSize
+   *        The maximum fetch size to use. Must be &ge; the minimum fetch size.
+   */
+  public DBFetchSizeAdvisor (@Nonnegative final int nTargetBytesPerRoundTrip,
+                             @Nonnegative final int nMinFetchSize,
+                             @Nonnegative final int nMaxFetchSize)
+  {
+    if (nTargetBytesPerRoundTrip <= 0)
+      throw new IllegalArgumentException ("TargetBytesPerRoundTrip must be > 0: " + nTargetBytesPerRoundTrip);
+    if (nMinFetchSize <= 0)
+      throw new IllegalArgumentException ("MinFetchSize must be > 0: " + nMinFetchSize);
+    if (nMaxFetchSize < nMinFetchSize)
+      throw new IllegalArgumentException ("MaxFetchSize must be >= " + nMinFetchSize + ": " + nMaxFetchSize);
+    m_nTargetBytesPerRoundTrip = nTargetBytesPerRoundTrip;
+    m_nMinFetchSize = nMinFetchSize;
+    m_nMaxFetchSize = nMaxFetchSize;
+  }
+
+  /**
+   * @return The number of bytes to be transferred per round trip.
+   */
+  @Nonnegative
+  public int getTargetBytesPerRoundTrip ()
+  {
+    return m_nTargetBytesPerRoundTrip;
+  }
+
+  /**
+   * @return The minimum fetch size to use.
+   */
+  @Nonnegative
+  public int getMinFetchSize ()
+  {
+    return m_nMinFetchSize;
+  }
+
+  /**
+   * @return The maximum fetch size to use.
+   */
+  @Nonnegative
+  public int getMaxFetchSize ()
+  {
+    return m_nMaxFetchSize;
+  }
+
+  @Nonnull
+  private Long _getFingerprint (@Nonnull final String sSQL)
+  {
+    Long ret;
+    synchronized (m_aFingerprintCache)
+    {
+      ret = m_aFingerprintCache.get (sSQL);
+    }
+    if (ret == null)
+    {
+      ret = Long.valueOf (SQLNormalizer.getFingerprint (sSQL));
+      // Statements with inlined values may be unique - so the cache is limited
+      synchronized (m_aFingerprintCache)
+      {
+        m_aFingerprintCache.put (sSQL, ret);
+      }
+    }
+    return ret;
+  }
+
+  /**
+   * Get the estimated average row width of the passed statement.
+   * 
+   * @param sSQL
+   *        The SQL statement. May not be <code>null</code>.
+   * @return -1 if no row width was observed so far.
+   */
+  @CheckForSigned
+  public long getAverageRowWidth (@Nonnull final String sSQL)
+  {
+    final Long aKey = _getFingerprint (sSQL);
+    final AtomicLong aWidth;
+    synchronized (m_aRowWidths)
+    {
+      aWidth = m_aRowWidths.get (aKey);
+    }
+    return aWidth == null ? -1 : aWidth.get ();
+  }
+
+  /**
+   * Get the fetch size to use for the passed statement.
+   * 
+   * @param sSQL
+   *        The SQL statement to be executed. May not be <code>null</code>.
+   * @param eDialect
+   *        The dialect of the database. Used for the initial fetch size. May be
+   *        <code>null</code> if unknown.
+   * @return The fetch size to use or 0 if the driver default should be used.
+   */
+  @Nonnegative
+  public int getFetchSize (@Nonnull final String sSQL, @Nullable final EDatabaseDialect eDialect)
+  {
+    final long nRowWidth = getAverageRowWidth (sSQL);
+    if (nRowWidth <= 0)
+      return eDialect == null ? 0 : eDialect.getDefaultFetchSize ();
+
+    final long nFetchSize = m_nTargetBytesPerRoundTrip / nRowWidth;
+    return (int) Math.max (m_nMinFetchSize, Math.min (m_nMaxFetchSize, nFetchSize));
+  }
+
+  /**
+   * Remember the row width observed while iterating the result of the passed
+   * statement. The new width is averaged with the previously observed width,
+   * so that the fetch size moves gradually.
+   * 
+   * @param sSQL
+   *        The executed SQL statement. May not be <code>null</code>.
+   * @param nRowCount
+   *        The number of sampled rows.
+   * @param nTotalBytes
+   *        The estimated number of bytes of all sampled rows.
+   */
+  public void onRowsSampled (@Nonnull final String sSQL,
+                             @Nonnegative final int nRowCount,
+                             @Nonnegative final long nTotalBytes)
+  {
+    if (nRowCount <= 0)
+      return;
+
+    final long nRowWidth = Math.max (1, nTotalBytes / nRowCount);
+    final Long aKey = _getFingerprint (sSQL);
+    AtomicLong aWidth;
+    synchronized (m_aRowWidths)
+    {
+      aWidth = m_aRowWidths.get (aKey);
+      if (aWidth == null)
+      {
+        aWidth = new AtomicLong (-1);
+        m_aRowWidths.put (aKey, aWidth);
+      }
+    }
+
+    long nOld;
+    long nNew;
+    do
+    {
+      nOld = aWidth.get ();
+      nNew = nOld <= 0 ? nRowWidth : (nOld + nRowWidth) / 2;
+    } while (!aWidth.compareAndSet (nOld, nNew));
+  }
+
+  /**
+   * Forget all observed row widths.
+   */
+  public void clear ()
+  {
+    synchronized (m_aRowWidths)
+    {
+      m_aRowWidths.clear ();
+    }
+  }
+
+  private int _getStatementCount ()
+  {
+    synchronized (m_aRowWidths)
+    {
+      return m_aRowWidths.size ();
+    }
+  }
+
+  @Override
+  public String toString ()
+  {
+    return new ToStringGenerator (this).append ("targetBytesPerRoundTrip", m_nTargetBytesPerRoundTrip)
+                                       .append ("minFetchSize", m_nMinFetchSize)
+                                       .append ("maxFetchSize", m_nMaxFetchSize)
+                                       .append ("statements", _getStatementCount ())
+                                       .toString ();
+  }
+}
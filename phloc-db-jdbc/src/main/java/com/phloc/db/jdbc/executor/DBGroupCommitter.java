@@ -0,0 +1,438 @@
+/**
+ * Copyright (C) 2006-2015 phloc systems
+ * http://www.phloc.com
+ * office[at]phloc[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.phloc.db.jdbc.executor;
+
+import java.io.Closeable;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.CheckForSigned;
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.phloc.commons.annotations.Nonempty;
+import com.phloc.commons.state.ESuccess;
+import com.phloc.commons.string.ToStringGenerator;
+import com.phloc.db.api.jdbc.JDBCHelper;
+import com.phloc.db.jdbc.callback.IPreparedStatementDataProvider;
+import com.phloc.db.jdbc.callback.IUpdatedRowCountCallback;
+
+/**
+ * Group commit for many small concurrent write operations. Callers submit
+ * operations from any thread and block until the operation was committed. A
+ * coordinator thread collects the operations for a short time window (or until
+ * a maximum group size is reached) and executes them together on one
+ * connection within one transaction, so that only one commit is needed for the
+ * whole group.<br>
+ * If an operation of a group fails, the transaction is rolled back, the failed
+ * operation is reported as failed and all other operations of the group are
+ * executed again in a new transaction. So each caller gets its own result.
+ * This requires a transaction, so auto-commit is disabled on the connection
+ * used for a group and the connection is left that way - the executor commits
+ * or rolls back each operation explicitly anyway.<br>
+ * The operations are executed in the coordinator thread, which has no request
+ * scope. So the executor must not use a
+ * {@link com.phloc.db.jdbc.scope.PerRequestConnectionProvider}.
+ * 
+ * @author Philip Helger
+ */
+@ThreadSafe
+public class DBGroupCommitter implements Closeable
+{
+  /** Default maximum number of operations per group */
+  public static final int DEFAULT_MAX_GROUP_SIZE = 100;
+  /** Default time window to collect operations in milliseconds */
+  public static final long DEFAULT_MAX_WAIT_MILLIS = 5;
+
+  private static final Logger s_aLogger = LoggerFactory.getLogger (DBGroupCommitter.class);
+  private static final AtomicInteger s_aThreadIndex = new AtomicInteger (0);
+
+  private static final class Member
+  {
+    private final IGroupCommitOperation m_aOperation;
+    private final CountDownLatch m_aDone = new CountDownLatch (1);
+    private int m_nResult = IUpdatedRowCountCallback.NOT_INITIALIZED;
+    private boolean m_bCommitted = false;
+
+    Member (@Nonnull final IGroupCommitOperation aOperation)
+    {
+      m_aOperation = aOperation;
+    }
+
+    void finish ()
+    {
+      m_aDone.countDown ();
+    }
+
+    /**
+     * Wait until the coordinator finished this operation. The wait is bounded
+     * by the lifetime of the coordinator thread: if it terminated without
+     * finishing this operation, the operation is treated as failed.
+     * 
+     * @param aCoordinator
+     *        The coordinator thread. May not be <code>null</code>.
+     * @return <code>true</code> if the operation was finished by the
+     *         coordinator.
+     */
+    boolean waitForResult (@Nonnull final Thread aCoordinator)
+    {
+      boolean bInterrupted = false;
+      boolean bFinished = false;
+      while (!bFinished)
+      {
+        try
+        {
+          bFinished = m_aDone.await (100, TimeUnit.MILLISECONDS);
+        }
+        catch (final InterruptedException ex)
+        {
+          // The operation may be committed anyway, so keep waiting
+          bInterrupted = true;
+        }
+        if (!bFinished && !aCoordinator.isAlive ())
+        {
+          // Check once more, as the coordinator may have finished it just
+          // before terminating
+          bFinished = m_aDone.getCount () == 0;
+          if (!bFinished)
+          {
+            s_aLogger.error ("The group commit coordinator terminated without executing the operation");
+            break;
+          }
+        }
+      }
+      if (bInterrupted)
+        Thread.currentThread ().interrupt ();
+      return bFinished;
+    }
+  }
+
+  private final DBExecutor m_aExecutor;
+  private final int m_nMaxGroupSize;
+  private final long m_nMaxWaitMillis;
+  private final BlockingQueue <Member> m_aQueue = new LinkedBlockingQueue <Member> ();
+  private final Thread m_aCoordinator;
+  // Makes checking for closed and enqueuing atomic with respect to close
+  private final Object m_aSubmitLock = new Object ();
+  private volatile boolean m_bClosed = false;
+  private final AtomicLong m_aGroupCount = new AtomicLong ();
+  private final AtomicLong m_aOperationCount = new AtomicLong ();
+  private final AtomicLong m_aFailedOperationCount = new AtomicLong ();
+
+  public DBGroupCommitter (@Nonnull final DBExecutor aExecutor)
+  {
+    this (aExecutor, DEFAULT_MAX_GROUP_SIZE, DEFAULT_MAX_WAIT_MILLIS);
+  }
+
+  /**
+   * Constructor
+   * 
+   * @param aExecutor
+   *        The executor to use. Its SQL exception handler is informed about
+   *        all failed operations. May not be <code>null</code>.
+   * @param nMaxGroupSize
+   *        The maximum number of operations per transaction. Must be &gt; 0.
+   * @param nMaxWaitMillis
+   *        The maximum time in milliseconds to wait for further operations
+   *        after the first operation of a group arrived. Must be &ge; 0.
+   */
+  public DBGroupCommitter (@Nonnull final DBExecutor aExecutor,
+                           @Nonnegative final int nMaxGroupSize,
+                           @Nonnegative final long nMaxWaitMillis)
+  {
+    if (aExecutor == null)
+      throw new NullPointerException ("executor");
+    if (nMaxGroupSize <= 0)
+      throw new IllegalArgumentException ("MaxGroupSize must be > 0: " + nMaxGroupSize);
+    if (nMaxWaitMillis < 0)
+      throw new IllegalArgumentException ("MaxWaitMillis may not be negative: " + nMaxWaitMillis);
+    m_aExecutor = aExecutor;
+    m_nMaxGroupSize = nMaxGroupSize;
+    m_nMaxWaitMillis = nMaxWaitMillis;
+    m_aCoordinator = new Thread (new Runnable ()
+    {
+      public void run ()
+      {
+        _runCoordinator ();
+      }
+    }, "phloc-db-groupcommit-" + s_aThreadIndex.incrementAndGet ());
+    m_aCoordinator.setDaemon (true);
+    m_aCoordinator.start ();
+  }
+
+  @Nonnegative
+  public final int getMaxGroupSize ()
+  {
+    return m_nMaxGroupSize;
+  }
+
+  @Nonnegative
+  public final long getMaxWaitMillis ()
+  {
+    return m_nMaxWaitMillis;
+  }
+
+  /**
+   * @return The number of executed groups (transactions) so far.
+   */
+  @Nonnegative
+  public final long getGroupCount ()
+  {
+    return m_aGroupCount.get ();
+  }
+
+  /**
+   * @return The number of successfully committed operations so far.
+   */
+  @Nonnegative
+  public final long getOperationCount ()
+  {
+    return m_aOperationCount.get ();
+  }
+
+  /**
+   * @return The number of failed operations so far.
+   */
+  @Nonnegative
+  public final long getFailedOperationCount ()
+  {
+    return m_aFailedOperationCount.get ();
+  }
+
+  private void _runCoordinator ()
+  {
+    final List <Member> aGroup = new ArrayList <Member> (m_nMaxGroupSize);
+    while (!m_bClosed || !m_aQueue.isEmpty ())
+    {
+      try
+      {
+        final Member aFirst = m_aQueue.poll (100, TimeUnit.MILLISECONDS);
+        if (aFirst == null)
+          continue;
+
+        // Collect further operations within the time window
+        aGroup.add (aFirst);
+        final long nEnd = System.nanoTime () + TimeUnit.MILLISECONDS.toNanos (m_nMaxWaitMillis);
+        while (aGroup.size () < m_nMaxGroupSize)
+        {
+          final long nRemaining = nEnd - System.nanoTime ();
+          final Member aNext = nRemaining > 0 ? m_aQueue.poll (nRemaining, TimeUnit.NANOSECONDS) : m_aQueue.poll ();
+          if (aNext == null)
+            break;
+          aGroup.add (aNext);
+        }
+
+        _executeGroup (aGroup);
+      }
+      catch (final InterruptedException ex)
+      {
+        s_aLogger.warn ("Group commit coordinator was interrupted");
+        close ();
+      }
+      catch (final Throwable t)
+      {
+        s_aLogger.error ("Failed to execute group of " + aGroup.size () + " operations", t);
+      }
+      finally
+      {
+        // Never leave a caller waiting
+        for (final Member aMember : aGroup)
+          aMember.finish ();
+        aGroup.clear ();
+      }
+    }
+
+    // Fail all operations that were submitted after the shutdown
+    Member aMember;
+    while ((aMember = m_aQueue.poll ()) != null)
+      aMember.finish ();
+  }
+
+  private void _executeGroup (@Nonnull final List <Member> aGroup)
+  {
+    final List <Member> aPending = new ArrayList <Member> (aGroup);
+    while (!aPending.isEmpty ())
+    {
+      final Member [] aFailed = new Member [1];
+      final ESuccess eSuccess = m_aExecutor.withConnectionDo (new DBExecutor.IWithConnectionCallback ()
+      {
+        public void run (@Nonnull final Connection aConnection) throws SQLException
+        {
+          // With auto-commit the operations before a failed one would be
+          // committed already and executed again on retry
+          if (aConnection.getAutoCommit ())
+            aConnection.setAutoCommit (false);
+
+          for (final Member aMember : aPending)
+          {
+            try
+            {
+              aMember.m_nResult = aMember.m_aOperation.execute (aConnection);
+            }
+            catch (final SQLException ex)
+            {
+              // Remember the culprit and roll back everything
+              aFailed[0] = aMember;
+              throw ex;
+            }
+            catch (final RuntimeException ex)
+            {
+              aFailed[0] = aMember;
+              throw new SQLException ("Group commit operation failed", ex);
+            }
+          }
+          // Committed by the executor
+        }
+      });
+      m_aGroupCount.incrementAndGet ();
+
+      if (eSuccess.isSuccess ())
+      {
+        for (final Member aMember : aPending)
+          aMember.m_bCommitted = true;
+        m_aOperationCount.addAndGet (aPending.size ());
+        return;
+      }
+
+      if (aFailed[0] == null)
+      {
+        // Failed to get a connection or to commit - all fail
+        for (final Member aMember : aPending)
+          _markFailed (aMember);
+        return;
+      }
+
+      // Isolate the failed operation and retry the others
+      _markFailed (aFailed[0]);
+      aPending.remove (aFailed[0]);
+      for (final Member aMember : aPending)
+        aMember.m_nResult = IUpdatedRowCountCallback.NOT_INITIALIZED;
+    }
+  }
+
+  private void _markFailed (@Nonnull final Member aMember)
+  {
+    aMember.m_nResult = IUpdatedRowCountCallback.NOT_INITIALIZED;
+    m_aFailedOperationCount.incrementAndGet ();
+  }
+
+  /**
+   * Submit an operation and wait until it is committed.
+   * 
+   * @param aOperation
+   *        The operation to execute. May not be <code>null</code>.
+   * @return The number of modified rows or
+   *         {@link IUpdatedRowCountCallback#NOT_INITIALIZED} if the operation
+   *         failed.
+   */
+  @CheckForSigned
+  public int execute (@Nonnull final IGroupCommitOperation aOperation)
+  {
+    if (aOperation == null)
+      throw new NullPointerException ("operation");
+
+    final Member aMember = new Member (aOperation);
+    synchronized (m_aSubmitLock)
+    {
+      // Check under the lock, so that the coordinator is guaranteed to see
+      // the operation before it terminates
+      if (m_bClosed)
+        throw new IllegalStateException ("The group committer is already closed");
+      m_aQueue.add (aMember);
+    }
+    if (!aMember.waitForResult (m_aCoordinator))
+      return IUpdatedRowCountCallback.NOT_INITIALIZED;
+    return aMember.m_bCommitted ? aMember.m_nResult : IUpdatedRowCountCallback.NOT_INITIALIZED;
+  }
+
+  /**
+   * Submit an INSERT, UPDATE or DELETE statement and wait until it is
+   * committed.
+   * 
+   * @param sSQL
+   *        The SQL statement to execute. May neither be <code>null</code> nor
+   *        empty.
+   * @param aPSDP
+   *        The prepared statement parameters. May not be <code>null</code>.
+   * @return The number of modified rows or
+   *         {@link IUpdatedRowCountCallback#NOT_INITIALIZED} if the statement
+   *         failed.
+   */
+  @CheckForSigned
+  public int executeUpdate (@Nonnull @Nonempty final String sSQL, @Nonnull final IPreparedStatementDataProvider aPSDP)
+  {
+    if (sSQL == null)
+      throw new NullPointerException ("SQL");
+    if (aPSDP == null)
+      throw new NullPointerException ("PSDP");
+
+    return execute (new IGroupCommitOperation ()
+    {
+      public int execute (@Nonnull final Connection aConnection) throws SQLException
+      {
+        final PreparedStatement aPS = aConnection.prepareStatement (sSQL);
+        try
+        {
+          int nIndex = 1;
+          for (final Object aArg : aPSDP.getObjectValues ())
+            aPS.setObject (nIndex++, aArg);
+          return aPS.executeUpdate ();
+        }
+        finally
+        {
+          JDBCHelper.close (aPS);
+        }
+      }
+    });
+  }
+
+  /**
+   * Stop accepting new operations. All operations submitted so far are still
+   * executed.
+   */
+  public void close ()
+  {
+    synchronized (m_aSubmitLock)
+    {
+      m_bClosed = true;
+    }
+  }
+
+  @Override
+  public String toString ()
+  {
+    return new ToStringGenerator (this).append ("executor", m_aExecutor)
+                                       .append ("maxGroupSize", m_nMaxGroupSize)
+                                       .append ("maxWaitMillis", m_nMaxWaitMillis)
+                                       .append ("closed", m_bClosed)
+                                       .toString ();
+  }
+}
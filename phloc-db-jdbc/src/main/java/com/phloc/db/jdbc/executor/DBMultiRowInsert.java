@@ -0,0 +1,216 @@
+/**
+ * Copyright (C) 2006-2015 phloc systems
+ * http://www.phloc.com
+ * office[at]phloc[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.phloc.db.jdbc.executor;
+
+import java.util.List;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.NotThreadSafe;
+
+import com.phloc.commons.annotations.Nonempty;
+import com.phloc.commons.annotations.ReturnsMutableCopy;
+import com.phloc.commons.collections.ContainerHelper;
+import com.phloc.commons.string.StringHelper;
+import com.phloc.commons.string.ToStringGenerator;
+import com.phloc.db.jdbc.EDatabaseDialect;
+
+/**
+ * Builder for multi-row INSERT statements. Instead of executing one
+ * <code>INSERT ... VALUES (?,?)</code> per row, multiple rows are combined
+ * into a single <code>INSERT ... VALUES (?,?),(?,?),...</code> statement (or
+ * <code>INSERT ALL</code> for Oracle). The number of rows per statement is
+ * limited by the dialect specific maximum number of rows and bind parameters.
+ * <br>
+ * Note: table and column names are used as they are, so they must not stem
+ * from user input!
+ * 
+ * @author Philip Helger
+ */
+@NotThreadSafe
+public class DBMultiRowInsert
+{
+  private final String m_sTableName;
+  private final List <String> m_aColumnNames;
+  private int m_nMaxRowsPerStatement = 0;
+
+  public DBMultiRowInsert (@Nonnull @Nonempty final String sTableName, @Nonnull @Nonempty final String... aColumnNames)
+  {
+    this (sTableName, ContainerHelper.newList (aColumnNames));
+  }
+
+  public DBMultiRowInsert (@Nonnull @Nonempty final String sTableName,
+                           @Nonnull @Nonempty final List <String> aColumnNames)
+  {
+    if (StringHelper.hasNoText (sTableName))
+      throw new IllegalArgumentException ("tableName");
+    if (ContainerHelper.isEmpty (aColumnNames))
+      throw new IllegalArgumentException ("columnNames may not be empty");
+    for (final String sColumnName : aColumnNames)
+      if (StringHelper.hasNoText (sColumnName))
+        throw new IllegalArgumentException ("columnNames may not contain empty names: " + aColumnNames);
+    m_sTableName = sTableName;
+    m_aColumnNames = ContainerHelper.newList (aColumnNames);
+  }
+
+  @Nonnull
+  @Nonempty
+  public String getTableName ()
+  {
+    return m_sTableName;
+  }
+
+  @Nonnull
+  @ReturnsMutableCopy
+  public List <String> getAllColumnNames ()
+  {
+    return ContainerHelper.newList (m_aColumnNames);
+  }
+
+  @Nonnegative
+  public int getColumnCount ()
+  {
+    return m_aColumnNames.size ();
+  }
+
+  /**
+   * @return The explicit maximum number of rows per statement or 0 if the
+   *         dialect specific default should be used.
+   */
+  @Nonnegative
+  public int getMaxRowsPerStatement ()
+  {
+    return m_nMaxRowsPerStatement;
+  }
+
+  /**
+   * Set an explicit upper limit for the number of rows per statement. The
+   * dialect specific limits are still applied.
+   * 
+   * @param nMaxRowsPerStatement
+   *        The maximum number of rows per statement. Must be &ge; 0. 0 means
+   *        use the dialect specific default.
+   * @return this
+   */
+  @Nonnull
+  public DBMultiRowInsert setMaxRowsPerStatement (@Nonnegative final int nMaxRowsPerStatement)
+  {
+    if (nMaxRowsPerStatement < 0)
+      throw new IllegalArgumentException ("MaxRowsPerStatement may not be negative: " + nMaxRowsPerStatement);
+    m_nMaxRowsPerStatement = nMaxRowsPerStatement;
+    return this;
+  }
+
+  /**
+   * Get the number of rows to be inserted per statement for the passed
+   * dialect.
+   * 
+   * @param eDialect
+   *        The dialect to use. May not be <code>null</code>.
+   * @return A value &ge; 1.
+   */
+  @Nonnegative
+  public int getRowsPerStatement (@Nonnull final EDatabaseDialect eDialect)
+  {
+    int ret = Math.min (eDialect.getMaxRowsPerInsert (), eDialect.getMaxParametersPerStatement () / getColumnCount ());
+    if (m_nMaxRowsPerStatement > 0)
+      ret = Math.min (ret, m_nMaxRowsPerStatement);
+    return Math.max (1, ret);
+  }
+
+  private void _appendColumnList (@Nonnull final StringBuilder aSB)
+  {
+    aSB.append (m_sTableName).append (" (");
+    int nIndex = 0;
+    for (final String sColumnName : m_aColumnNames)
+    {
+      if (nIndex++ > 0)
+        aSB.append (", ");
+      aSB.append (sColumnName);
+    }
+    aSB.append (')');
+  }
+
+  private void _appendPlaceholders (@Nonnull final StringBuilder aSB)
+  {
+    aSB.append ('(');
+    for (int i = 0; i < m_aColumnNames.size (); ++i)
+    {
+      if (i > 0)
+        aSB.append (", ");
+      aSB.append ('?');
+    }
+    aSB.append (')');
+  }
+
+  /**
+   * Create the SQL statement for inserting the passed number of rows.
+   * 
+   * @param eDialect
+   *        The dialect to use. May not be <code>null</code>.
+   * @param nRows
+   *        The number of rows to insert. Must be &gt; 0.
+   * @return The SQL string with all placeholders. Never <code>null</code>.
+   */
+  @Nonnull
+  @Nonempty
+  public String getSQL (@Nonnull final EDatabaseDialect eDialect, @Nonnegative final int nRows)
+  {
+    if (eDialect == null)
+      throw new NullPointerException ("dialect");
+    if (nRows <= 0)
+      throw new IllegalArgumentException ("Rows must be > 0: " + nRows);
+
+    final StringBuilder aSB = new StringBuilder ();
+    if (eDialect == EDatabaseDialect.ORACLE && nRows > 1)
+    {
+      // Oracle does not support multi-row VALUES
+      aSB.append ("INSERT ALL");
+      for (int nRow = 0; nRow < nRows; ++nRow)
+      {
+        aSB.append (" INTO ");
+        _appendColumnList (aSB);
+        aSB.append (" VALUES ");
+        _appendPlaceholders (aSB);
+      }
+      aSB.append (" SELECT 1 FROM DUAL");
+    }
+    else
+    {
+      aSB.append ("INSERT INTO ");
+      _appendColumnList (aSB);
+      aSB.append (" VALUES ");
+      for (int nRow = 0; nRow < nRows; ++nRow)
+      {
+        if (nRow > 0)
+          aSB.append (", ");
+        _appendPlaceholders (aSB);
+      }
+    }
+    return aSB.toString ();
+  }
+
+  @Override
+  public String toString ()
+  {
+    return new ToStringGenerator (this).append ("tableName", m_sTableName)
+                                       .append ("columnNames", m_aColumnNames)
+                                       .append ("maxRowsPerStatement", m_nMaxRowsPerStatement)
+                                       .toString ();
+  }
+}
@@ -0,0 +1,440 @@
+/**
+ * Copyright (C) 2006-2015 phloc systems
+ * http://www.phloc.com
+ * office[at]phloc[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.phloc.db.jdbc.executor;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.Immutable;
+
+import com.phloc.commons.annotations.Nonempty;
+import com.phloc.commons.annotations.ReturnsMutableCopy;
+import com.phloc.commons.collections.ContainerHelper;
+import com.phloc.commons.string.StringHelper;
+import com.phloc.commons.string.ToStringGenerator;
+import com.phloc.db.jdbc.callback.ConstantPreparedStatementDataProvider;
+import com.phloc.db.jdbc.callback.INamedParameterSource;
+import com.phloc.db.jdbc.callback.IPreparedStatementDataProvider;
+
+/**
+ * An SQL template with named parameters like
+ * <code>WHERE id = :id AND status = :status</code>, parsed into the positional
+ * form with <code>?</code> placeholders. A parameter may be used more than once.
+ * Colons inside string literals, quoted identifiers and comments as well as
+ * the PostgreSQL style cast operator <code>::</code> are left untouched.<br>
+ * Parsed templates are cached, so that the same template always results in
+ * the same positional SQL string and can be reused by the statement cache of
+ * the driver.<br>
+ * When binding with {@link #bind(INamedParameterSource, int)}, parameters
+ * with a {@link Collection} value are expanded to a list of placeholders, e.g.
+ * for <code>WHERE id IN (:ids)</code>. To limit the number of distinct SQL
+ * strings, the number of placeholders is rounded up to the next power of two
+ * and the remaining placeholders are filled with the last value of the
+ * collection. Collections larger than the maximum IN list size are rejected,
+ * as splitting the statement changes the result of e.g. <code>NOT IN</code>,
+ * aggregates, <code>DISTINCT</code>, <code>ORDER BY</code> or limits - use a
+ * {@link DBArrayParameter} for large key sets instead. Note that an empty
+ * collection results in <code>IN (NULL)</code>, so <code>NOT IN</code> with an
+ * empty collection matches no rows either. Arrays are not expanded but bound
+ * as a single parameter.
+ * 
+ * @author Philip Helger
+ */
+@Immutable
+public final class DBNamedParameterSQL
+{
+  /** The maximum number of parsed templates kept in the cache */
+  public static final int MAX_CACHE_SIZE = 1000;
+  /** The default maximum number of values of a single expanded IN list */
+  public static final int DEFAULT_MAX_IN_LIST_SIZE = 512;
+
+  @SuppressWarnings ("serial")
+  private static final Map <String, DBNamedParameterSQL> s_aCache = new LinkedHashMap <String, DBNamedParameterSQL> (16,
+                                                                                                                     0.75f,
+                                                                                                                     true)
+  {
+    @Override
+    protected boolean removeEldestEntry (final Map.Entry <String, DBNamedParameterSQL> aEldest)
+    {
+      return size () > MAX_CACHE_SIZE;
+    }
+  };
+
+  private final String m_sNamedSQL;
+  private final String m_sPositionalSQL;
+  private final List <String> m_aParameterNames;
+  // Index of each '?' in the positional SQL
+  private final int [] m_aPlaceholderIndices;
+
+  private DBNamedParameterSQL (@Nonnull final String sNamedSQL,
+                               @Nonnull final String sPositionalSQL,
+                               @Nonnull final List <String> aParameterNames,
+                               @Nonnull final int [] aPlaceholderIndices)
+  {
+    m_sNamedSQL = sNamedSQL;
+    m_sPositionalSQL = sPositionalSQL;
+    m_aParameterNames = aParameterNames;
+    m_aPlaceholderIndices = aPlaceholderIndices;
+  }
+
+  /**
+   * @return The original SQL template with named parameters.
+   */
+  @Nonnull
+  @Nonempty
+  public String getNamedSQL ()
+  {
+    return m_sNamedSQL;
+  }
+
+  /**
+   * @return The SQL with positional <code>?</code> parameters.
+   */
+  @Nonnull
+  @Nonempty
+  public String getPositionalSQL ()
+  {
+    return m_sPositionalSQL;
+  }
+
+  /**
+   * @return The number of positional parameters.
+   */
+  @Nonnegative
+  public int getPositionalParameterCount ()
+  {
+    return m_aParameterNames.size ();
+  }
+
+  /**
+   * @return The parameter name of each positional parameter in order.
+   *         Parameters used more than once are contained more than once.
+   */
+  @Nonnull
+  @ReturnsMutableCopy
+  public List <String> getAllPositionalParameterNames ()
+  {
+    return ContainerHelper.newList (m_aParameterNames);
+  }
+
+  /**
+   * @return The distinct parameter names in order of first occurrence.
+   */
+  @Nonnull
+  @ReturnsMutableCopy
+  public Set <String> getAllParameterNames ()
+  {
+    return new LinkedHashSet <String> (m_aParameterNames);
+  }
+
+  /**
+   * Create the positional parameter values from the passed source. All values
+   * are bound as they are, so {@link Collection} values are not expanded.
+   * 
+   * @param aSource
+   *        The source of the named parameter values. May not be
+   *        <code>null</code>.
+   * @return The data provider for {@link #getPositionalSQL()}. Never
+   *         <code>null</code>.
+   * @throws IllegalArgumentException
+   *         If a parameter is not contained in the source
+   */
+  @Nonnull
+  public IPreparedStatementDataProvider createDataProvider (@Nonnull final INamedParameterSource aSource)
+  {
+    if (aSource == null)
+      throw new NullPointerException ("source");
+
+    final ConstantPreparedStatementDataProvider ret = new ConstantPreparedStatementDataProvider ();
+    for (final String sName : m_aParameterNames)
+    {
+      if (!aSource.containsParameter (sName))
+        throw new IllegalArgumentException ("No value for parameter '" + sName + "' in SQL: " + m_sNamedSQL);
+      ret.addValue (aSource.getParameterValue (sName));
+    }
+    return ret;
+  }
+
+  /**
+   * Get the number of placeholders used for an IN list with the passed number
+   * of values.
+   * 
+   * @param nValueCount
+   *        The number of values. Must be &ge; 0.
+   * @param nMaxInListSize
+   *        The maximum IN list size. Must be &gt; 0.
+   * @return The smallest power of two that is &ge; the value count (at least
+   *         1), but at most the maximum IN list size.
+   */
+  @Nonnegative
+  public static int getInListBucketSize (@Nonnegative final int nValueCount, @Nonnegative final int nMaxInListSize)
+  {
+    if (nValueCount < 0)
+      throw new IllegalArgumentException ("ValueCount may not be negative: " + nValueCount);
+    if (nMaxInListSize <= 0)
+      throw new IllegalArgumentException ("MaxInListSize must be > 0: " + nMaxInListSize);
+    if (nValueCount <= 1)
+      return 1;
+    final int nBucket = Integer.highestOneBit (nValueCount - 1) << 1;
+    return nBucket <= 0 ? nMaxInListSize : Math.min (nBucket, nMaxInListSize);
+  }
+
+  /**
+   * Bind the passed parameters, expanding all {@link Collection} values to
+   * bucketed IN lists.
+   * 
+   * @param aSource
+   *        The source of the named parameter values. May not be
+   *        <code>null</code>.
+   * @param nMaxInListSize
+   *        The maximum number of values per IN list. Must be &gt; 0.
+   * @return The statement to execute. Never <code>null</code>.
+   * @throws IllegalArgumentException
+   *         If a parameter is not contained in the source or if a collection
+   *         contains more than the maximum number of values
+   */
+  @Nonnull
+  public DBBoundSQL bind (@Nonnull final INamedParameterSource aSource, @Nonnegative final int nMaxInListSize)
+  {
+    if (aSource == null)
+      throw new NullPointerException ("source");
+    if (nMaxInListSize <= 0)
+      throw new IllegalArgumentException ("MaxInListSize must be > 0: " + nMaxInListSize);
+
+    // Resolve each distinct parameter only once
+    final Map <String, Object> aValues = new HashMap <String, Object> ();
+    for (final String sName : m_aParameterNames)
+      if (!aValues.containsKey (sName))
+      {
+        if (!aSource.containsParameter (sName))
+          throw new IllegalArgumentException ("No value for parameter '" + sName + "' in SQL: " + m_sNamedSQL);
+        final Object aValue = aSource.getParameterValue (sName);
+        if (aValue instanceof Collection <?> && ((Collection <?>) aValue).size () > nMaxInListSize)
+          throw new IllegalArgumentException ("Parameter '" +
+                                              sName +
+                                              "' has " +
+                                              ((Collection <?>) aValue).size () +
+                                              " values, but an IN list may contain at most " +
+                                              nMaxInListSize +
+                                              " values. Use a DBArrayParameter instead. SQL: " +
+                                              m_sNamedSQL);
+        aValues.put (sName, aValue);
+      }
+
+    final StringBuilder aSB = new StringBuilder (m_sPositionalSQL.length () + 16);
+    final ConstantPreparedStatementDataProvider aPSDP = new ConstantPreparedStatementDataProvider ();
+    int nLast = 0;
+    for (int i = 0; i < m_aPlaceholderIndices.length; ++i)
+    {
+      final int nIndex = m_aPlaceholderIndices[i];
+      aSB.append (m_sPositionalSQL, nLast, nIndex);
+      nLast = nIndex + 1;
+
+      final Object aValue = aValues.get (m_aParameterNames.get (i));
+      if (aValue instanceof Collection <?>)
+      {
+        final Collection <?> aCollection = (Collection <?>) aValue;
+        final int nBucket = getInListBucketSize (aCollection.size (), nMaxInListSize);
+        Object aLast = null;
+        for (final Object aElement : aCollection)
+        {
+          aPSDP.addValue (aElement);
+          aLast = aElement;
+        }
+        // Pad by repeating the last value. An empty list results in a single
+        // NULL which never matches.
+        for (int j = aCollection.size (); j < nBucket; ++j)
+          aPSDP.addValue (aLast);
+        aSB.append ('?');
+        for (int j = 1; j < nBucket; ++j)
+          aSB.append (", ?");
+      }
+      else
+      {
+        aPSDP.addValue (aValue);
+        aSB.append ('?');
+      }
+    }
+    aSB.append (m_sPositionalSQL, nLast, m_sPositionalSQL.length ());
+    return new DBBoundSQL (aSB.toString (), aPSDP);
+  }
+
+  private static boolean _isParameterNameStart (final char c)
+  {
+    return Character.isLetter (c) || c == '_';
+  }
+
+  private static boolean _isParameterNamePart (final char c)
+  {
+    return Character.isLetterOrDigit (c) || c == '_';
+  }
+
+  /**
+   * Parse the passed SQL template without using the cache.
+   * 
+   * @param sNamedSQL
+   *        The SQL template. May neither be <code>null</code> nor empty.
+   * @return The parsed template. Never <code>null</code>.
+   * @throws IllegalArgumentException
+   *         If the template mixes named and positional parameters or if a
+   *         literal or comment is not terminated
+   */
+  @Nonnull
+  public static DBNamedParameterSQL parse (@Nonnull @Nonempty final String sNamedSQL)
+  {
+    if (StringHelper.hasNoText (sNamedSQL))
+      throw new IllegalArgumentException ("SQL");
+
+    final int nLen = sNamedSQL.length ();
+    final StringBuilder aSB = new StringBuilder (nLen);
+    final List <String> aNames = new ArrayList <String> ();
+    final List <Integer> aIndices = new ArrayList <Integer> ();
+    boolean bHasPositional = false;
+    int i = 0;
+    while (i < nLen)
+    {
+      final char c = sNamedSQL.charAt (i);
+      if (c == '\'' || c == '"')
+      {
+        // String literal or quoted identifier - doubled quotes are escapes and
+        // are handled as two consecutive literals
+        final int nEnd = sNamedSQL.indexOf (c, i + 1);
+        if (nEnd < 0)
+          throw new IllegalArgumentException ("Unterminated quote at index " + i + " in SQL: " + sNamedSQL);
+        aSB.append (sNamedSQL, i, nEnd + 1);
+        i = nEnd + 1;
+      }
+      else
+        if (c == '-' && i + 1 < nLen && sNamedSQL.charAt (i + 1) == '-')
+        {
+          // Line comment
+          int nEnd = sNamedSQL.indexOf ('\n', i + 2);
+          if (nEnd < 0)
+            nEnd = nLen;
+          aSB.append (sNamedSQL, i, nEnd);
+          i = nEnd;
+        }
+        else
+          if (c == '/' && i + 1 < nLen && sNamedSQL.charAt (i + 1) == '*')
+          {
+            // Block comment
+            final int nEnd = sNamedSQL.indexOf ("*/", i + 2);
+            if (nEnd < 0)
+              throw new IllegalArgumentException ("Unterminated comment at index " + i + " in SQL: " + sNamedSQL);
+            aSB.append (sNamedSQL, i, nEnd + 2);
+            i = nEnd + 2;
+          }
+          else
+            if (c == ':' && i + 1 < nLen && sNamedSQL.charAt (i + 1) == ':')
+            {
+              // Cast operator
+              aSB.append ("::");
+              i += 2;
+            }
+            else
+              if (c == ':' && i + 1 < nLen && _isParameterNameStart (sNamedSQL.charAt (i + 1)))
+              {
+                int nEnd = i + 2;
+                while (nEnd < nLen && _isParameterNamePart (sNamedSQL.charAt (nEnd)))
+                  ++nEnd;
+                aNames.add (sNamedSQL.substring (i + 1, nEnd));
+                aIndices.add (Integer.valueOf (aSB.length ()));
+                aSB.append ('?');
+                i = nEnd;
+              }
+              else
+              {
+                if (c == '?')
+                  bHasPositional = true;
+                aSB.append (c);
+                ++i;
+              }
+    }
+
+    if (bHasPositional && !aNames.isEmpty ())
+      throw new IllegalArgumentException ("Named and positional parameters may not be mixed in SQL: " + sNamedSQL);
+    final int [] aPlaceholderIndices = new int [aIndices.size ()];
+    for (int j = 0; j < aPlaceholderIndices.length; ++j)
+      aPlaceholderIndices[j] = aIndices.get (j).intValue ();
+    return new DBNamedParameterSQL (sNamedSQL, aSB.toString (), aNames, aPlaceholderIndices);
+  }
+
+  /**
+   * Get the parsed version of the passed SQL template. Each template is parsed
+   * only once and cached afterwards.
+   * 
+   * @param sNamedSQL
+   *        The SQL template. May neither be <code>null</code> nor empty.
+   * @return The parsed template. Never <code>null</code>.
+   * @see #parse(String)
+   */
+  @Nonnull
+  public static DBNamedParameterSQL getParsed (@Nonnull @Nonempty final String sNamedSQL)
+  {
+    synchronized (s_aCache)
+    {
+      DBNamedParameterSQL ret = s_aCache.get (sNamedSQL);
+      if (ret == null)
+      {
+        ret = parse (sNamedSQL);
+        s_aCache.put (sNamedSQL, ret);
+      }
+      return ret;
+    }
+  }
+
+  /**
+   * @return The number of currently cached templates.
+   */
+  @Nonnegative
+  public static int getCacheSize ()
+  {
+    synchronized (s_aCache)
+    {
+      return s_aCache.size ();
+    }
+  }
+
+  /**
+   * Remove all parsed templates from the cache.
+   */
+  public static void clearCache ()
+  {
+    synchronized (s_aCache)
+    {
+      s_aCache.clear ();
+    }
+  }
+
+  @Override
+  public String toString ()
+  {
+    return new ToStringGenerator (this).append ("namedSQL", m_sNamedSQL)
+                                       .append ("positionalSQL", m_sPositionalSQL)
+                                       .append ("parameterNames", m_aParameterNames)
+                                       .toString ();
+  }
+}
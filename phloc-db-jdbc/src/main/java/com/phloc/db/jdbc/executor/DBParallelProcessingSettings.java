@@ -0,0 +1,163 @@
+/**
+ * Copyright (C) 2006-2015 phloc systems
+ * http://www.phloc.com
+ * office[at]phloc[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.phloc.db.jdbc.executor;
+
+import java.util.concurrent.ExecutorService;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.NotThreadSafe;
+
+import com.phloc.commons.string.ToStringGenerator;
+
+/**
+ * Settings for parallel row processing with
+ * {@link DBExecutor#queryAllParallel(String, com.phloc.commons.convert.IUnidirectionalConverter, com.phloc.commons.callback.INonThrowingRunnableWithParameter, DBParallelProcessingSettings)}
+ * .
+ * 
+ * @author Philip Helger
+ */
+@NotThreadSafe
+public class DBParallelProcessingSettings
+{
+  /** Default number of rows per batch handed to a worker */
+  public static final int DEFAULT_BATCH_SIZE = 100;
+  /** By default results are delivered in row order */
+  public static final boolean DEFAULT_ORDERED = true;
+
+  private int m_nThreadCount = Runtime.getRuntime ().availableProcessors ();
+  private int m_nBatchSize = DEFAULT_BATCH_SIZE;
+  private int m_nMaxPendingBatches = 0;
+  private boolean m_bOrdered = DEFAULT_ORDERED;
+  private ExecutorService m_aExecutor;
+
+  public DBParallelProcessingSettings ()
+  {}
+
+  /**
+   * @return The number of worker threads. Defaults to the number of available
+   *         processors. If an executor is set, this is only used to determine
+   *         the default maximum number of pending batches.
+   */
+  @Nonnegative
+  public int getThreadCount ()
+  {
+    return m_nThreadCount;
+  }
+
+  @Nonnull
+  public DBParallelProcessingSettings setThreadCount (@Nonnegative final int nThreadCount)
+  {
+    if (nThreadCount <= 0)
+      throw new IllegalArgumentException ("ThreadCount must be > 0: " + nThreadCount);
+    m_nThreadCount = nThreadCount;
+    return this;
+  }
+
+  @Nonnegative
+  public int getBatchSize ()
+  {
+    return m_nBatchSize;
+  }
+
+  @Nonnull
+  public DBParallelProcessingSettings setBatchSize (@Nonnegative final int nBatchSize)
+  {
+    if (nBatchSize <= 0)
+      throw new IllegalArgumentException ("BatchSize must be > 0: " + nBatchSize);
+    m_nBatchSize = nBatchSize;
+    return this;
+  }
+
+  /**
+   * @return The maximum number of batches that are fetched but not yet
+   *         delivered. If this number is reached, fetching blocks until a batch
+   *         is done. If no value was set, twice the thread count is used.
+   */
+  @Nonnegative
+  public int getMaxPendingBatches ()
+  {
+    return m_nMaxPendingBatches > 0 ? m_nMaxPendingBatches : 2 * m_nThreadCount;
+  }
+
+  @Nonnull
+  public DBParallelProcessingSettings setMaxPendingBatches (@Nonnegative final int nMaxPendingBatches)
+  {
+    if (nMaxPendingBatches <= 0)
+      throw new IllegalArgumentException ("MaxPendingBatches must be > 0: " + nMaxPendingBatches);
+    m_nMaxPendingBatches = nMaxPendingBatches;
+    return this;
+  }
+
+  /**
+   * @return <code>true</code> if the results are delivered in the order of
+   *         the rows, <code>false</code> if they are delivered as soon as a
+   *         batch is done.
+   */
+  public boolean isOrdered ()
+  {
+    return m_bOrdered;
+  }
+
+  @Nonnull
+  public DBParallelProcessingSettings setOrdered (final boolean bOrdered)
+  {
+    m_bOrdered = bOrdered;
+    return this;
+  }
+
+  /**
+   * @return The executor to run the workers in or <code>null</code> if a new
+   *         thread pool should be created for each query.
+   */
+  @Nullable
+  public ExecutorService getExecutor ()
+  {
+    return m_aExecutor;
+  }
+
+  /**
+   * Set an executor that is shared between queries, so that no thread pool
+   * needs to be created for each query. The executor is not shut down after
+   * processing - this is the responsibility of the caller. Note: the workers
+   * run without a request scope.
+   * 
+   * @param aExecutor
+   *        The executor to use. May be <code>null</code> to create a new
+   *        thread pool for each query.
+   * @return this
+   */
+  @Nonnull
+  public DBParallelProcessingSettings setExecutor (@Nullable final ExecutorService aExecutor)
+  {
+    m_aExecutor = aExecutor;
+    return this;
+  }
+
+  @Override
+  public String toString ()
+  {
+    return new ToStringGenerator (this).append ("threadCount", m_nThreadCount)
+                                       .append ("batchSize", m_nBatchSize)
+                                       .append ("maxPendingBatches", m_nMaxPendingBatches)
+                                       .append ("ordered", m_bOrdered)
+                                       .appendIfNotNull ("executor", m_aExecutor)
+                                       .toString ();
+  }
+}
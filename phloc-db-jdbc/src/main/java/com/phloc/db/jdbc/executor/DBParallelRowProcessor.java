@@ -0,0 +1,261 @@
+/**
+ * Copyright (C) 2006-2015 phloc systems
+ * http://www.phloc.com
+ * office[at]phloc[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.phloc.db.jdbc.executor;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.NotThreadSafe;
+
+import com.phloc.commons.callback.INonThrowingRunnableWithParameter;
+import com.phloc.commons.convert.IUnidirectionalConverter;
+import com.phloc.commons.string.ToStringGenerator;
+import com.phloc.db.jdbc.callback.IResultSetRowCallback;
+
+/**
+ * A row callback that collects the fetched rows in batches and converts them
+ * in a pool of worker threads. The number of pending batches is limited, so
+ * that fetching blocks if the workers cannot keep up. The converted objects
+ * are always delivered to the sink in the fetching thread, so the sink does
+ * not need to be thread-safe. By default a new thread pool is created for each
+ * instance. Use {@link DBParallelProcessingSettings#setExecutor(ExecutorService)}
+ * to share an executor between queries.<br>
+ * Usually this class is used via
+ * {@link DBExecutor#queryAllParallel(String, IUnidirectionalConverter, INonThrowingRunnableWithParameter, DBParallelProcessingSettings)}
+ * .
+ * 
+ * @author Philip Helger
+ * @param <DATATYPE>
+ *        The result type of the conversion
+ */
+@NotThreadSafe
+public final class DBParallelRowProcessor <DATATYPE> implements IResultSetRowCallback
+{
+  private static final AtomicInteger s_aPoolIndex = new AtomicInteger (0);
+
+  private final IUnidirectionalConverter <? super DBResultRow, ? extends DATATYPE> m_aConverter;
+  private final INonThrowingRunnableWithParameter <? super DATATYPE> m_aSink;
+  private final int m_nBatchSize;
+  private final int m_nMaxPendingBatches;
+  private final boolean m_bOrdered;
+  private final ExecutorService m_aExecutor;
+  private final boolean m_bOwnExecutor;
+  // Only used in unordered mode
+  private final CompletionService <List <DATATYPE>> m_aCompletionService;
+  private final Set <Future <List <DATATYPE>>> m_aPendingUnordered = new HashSet <Future <List <DATATYPE>>> ();
+  // Only used in ordered mode
+  private final LinkedList <Future <List <DATATYPE>>> m_aPendingInOrder = new LinkedList <Future <List <DATATYPE>>> ();
+  private List <DBResultRow> m_aCurrentBatch;
+  private int m_nPendingBatches = 0;
+  private boolean m_bFinished = false;
+
+  public DBParallelRowProcessor (@Nonnull final IUnidirectionalConverter <? super DBResultRow, ? extends DATATYPE> aConverter,
+                                 @Nonnull final INonThrowingRunnableWithParameter <? super DATATYPE> aSink,
+                                 @Nonnull final DBParallelProcessingSettings aSettings)
+  {
+    if (aConverter == null)
+      throw new NullPointerException ("converter");
+    if (aSink == null)
+      throw new NullPointerException ("sink");
+    if (aSettings == null)
+      throw new NullPointerException ("settings");
+
+    m_aConverter = aConverter;
+    m_aSink = aSink;
+    m_nBatchSize = aSettings.getBatchSize ();
+    m_nMaxPendingBatches = aSettings.getMaxPendingBatches ();
+    m_bOrdered = aSettings.isOrdered ();
+
+    if (aSettings.getExecutor () != null)
+    {
+      m_aExecutor = aSettings.getExecutor ();
+      m_bOwnExecutor = false;
+    }
+    else
+    {
+      final String sPoolName = "phloc-db-parallel-" + s_aPoolIndex.incrementAndGet () + "-";
+      m_aExecutor = Executors.newFixedThreadPool (aSettings.getThreadCount (), new ThreadFactory ()
+      {
+        private final AtomicInteger m_aThreadIndex = new AtomicInteger (0);
+
+        public Thread newThread (@Nonnull final Runnable aRunnable)
+        {
+          final Thread ret = new Thread (aRunnable, sPoolName + m_aThreadIndex.incrementAndGet ());
+          ret.setDaemon (true);
+          return ret;
+        }
+      });
+      m_bOwnExecutor = true;
+    }
+    m_aCompletionService = new ExecutorCompletionService <List <DATATYPE>> (m_aExecutor);
+    m_aCurrentBatch = new ArrayList <DBResultRow> (m_nBatchSize);
+  }
+
+  private void _deliver (@Nonnull final Future <List <DATATYPE>> aFuture)
+  {
+    m_aPendingUnordered.remove (aFuture);
+    final List <DATATYPE> aResults;
+    try
+    {
+      aResults = aFuture.get ();
+    }
+    catch (final InterruptedException ex)
+    {
+      Thread.currentThread ().interrupt ();
+      throw new IllegalStateException ("Interrupted while waiting for row processing", ex);
+    }
+    catch (final ExecutionException ex)
+    {
+      final Throwable aCause = ex.getCause ();
+      if (aCause instanceof RuntimeException)
+        throw (RuntimeException) aCause;
+      throw new IllegalStateException ("Failed to process rows", aCause);
+    }
+
+    m_nPendingBatches--;
+    for (final DATATYPE aResult : aResults)
+      m_aSink.run (aResult);
+  }
+
+  private void _deliverNext ()
+  {
+    try
+    {
+      _deliver (m_bOrdered ? m_aPendingInOrder.removeFirst () : m_aCompletionService.take ());
+    }
+    catch (final InterruptedException ex)
+    {
+      Thread.currentThread ().interrupt ();
+      throw new IllegalStateException ("Interrupted while waiting for row processing", ex);
+    }
+  }
+
+  private void _submitCurrentBatch ()
+  {
+    // Backpressure: wait until a slot is free
+    while (m_nPendingBatches >= m_nMaxPendingBatches)
+      _deliverNext ();
+
+    final List <DBResultRow> aBatch = m_aCurrentBatch;
+    m_aCurrentBatch = new ArrayList <DBResultRow> (m_nBatchSize);
+    final Callable <List <DATATYPE>> aTask = new Callable <List <DATATYPE>> ()
+    {
+      @Nonnull
+      public List <DATATYPE> call ()
+      {
+        final List <DATATYPE> ret = new ArrayList <DATATYPE> (aBatch.size ());
+        for (final DBResultRow aRow : aBatch)
+        {
+          final DATATYPE aResult = m_aConverter.convert (aRow);
+          if (aResult != null)
+            ret.add (aResult);
+        }
+        return ret;
+      }
+    };
+    if (m_bOrdered)
+    {
+      // Remember the submission order
+      m_aPendingInOrder.add (m_aExecutor.submit (aTask));
+    }
+    else
+      m_aPendingUnordered.add (m_aCompletionService.submit (aTask));
+    m_nPendingBatches++;
+  }
+
+  public void run (@Nullable final DBResultRow aCurrentObject)
+  {
+    if (m_bFinished)
+      throw new IllegalStateException ("Processing was already finished");
+    if (aCurrentObject != null)
+    {
+      // We need to clone the object!
+      m_aCurrentBatch.add (aCurrentObject.getClone ());
+      if (m_aCurrentBatch.size () >= m_nBatchSize)
+        _submitCurrentBatch ();
+    }
+  }
+
+  /**
+   * Process the remaining rows, wait until all results are delivered and shut
+   * down the worker threads. Must be called exactly once after all rows were
+   * passed.
+   */
+  public void finish ()
+  {
+    if (m_bFinished)
+      return;
+    try
+    {
+      if (!m_aCurrentBatch.isEmpty ())
+        _submitCurrentBatch ();
+      while (m_nPendingBatches > 0)
+        _deliverNext ();
+    }
+    finally
+    {
+      cancel ();
+    }
+  }
+
+  /**
+   * Stop all processing without delivering pending results. A thread pool
+   * created by this object is shut down, a shared executor is left running.
+   */
+  public void cancel ()
+  {
+    m_bFinished = true;
+    if (m_bOwnExecutor)
+      m_aExecutor.shutdownNow ();
+    else
+    {
+      // Only cancel our own tasks
+      for (final Future <List <DATATYPE>> aFuture : m_aPendingInOrder)
+        aFuture.cancel (true);
+      for (final Future <List <DATATYPE>> aFuture : m_aPendingUnordered)
+        aFuture.cancel (true);
+    }
+    m_aPendingInOrder.clear ();
+    m_aPendingUnordered.clear ();
+    m_aCurrentBatch.clear ();
+  }
+
+  @Override
+  public String toString ()
+  {
+    return new ToStringGenerator (this).append ("batchSize", m_nBatchSize)
+                                       .append ("maxPendingBatches", m_nMaxPendingBatches)
+                                       .append ("ordered", m_bOrdered)
+                                       .append ("pendingBatches", m_nPendingBatches)
+                                       .toString ();
+  }
+}
@@ -0,0 +1,322 @@
+/**
+ * Copyright (C) 2006-2015 phloc systems
+ * http://www.phloc.com
+ * office[at]phloc[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.phloc.db.jdbc.executor;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.NotThreadSafe;
+
+import com.phloc.commons.state.ESuccess;
+import com.phloc.commons.string.ToStringGenerator;
+import com.phloc.db.jdbc.callback.IResultSetRowCallback;
+
+/**
+ * A cursor over a query result that fetches the next block of rows in a
+ * background thread while the caller processes the current block (double
+ * buffering). At most one block is fetched in advance, so the memory used is
+ * bounded by two blocks. The background thread holds the database connection
+ * until all rows were fetched or until the cursor is closed, so the cursor
+ * must always be closed.<br>
+ * As the executor is blocked while fetching, it may not be used for other
+ * statements before all rows were fetched or the cursor was closed. Such
+ * statements would wait for the fetcher thread, which in turn waits for the
+ * caller to consume the next block, so instead the executor throws an
+ * {@link IllegalStateException}. Use a separate executor if statements need to
+ * be run while iterating. The fetcher thread has no request scope.<br>
+ * Instances are created via {@link DBExecutor#queryPrefetching(String, int)}.
+ * 
+ * @author Philip Helger
+ */
+@NotThreadSafe
+public final class DBPrefetchingCursor implements Iterator <DBResultRow>, Iterable <DBResultRow>, Closeable
+{
+  /** Default number of rows per block */
+  public static final int DEFAULT_BLOCK_SIZE = 500;
+
+  /** Special marker for the end of the result */
+  private static final List <DBResultRow> END_MARKER = new ArrayList <DBResultRow> (0);
+
+  /** The default factory creating named daemon threads */
+  static final ThreadFactory DEFAULT_THREAD_FACTORY = new ThreadFactory ()
+  {
+    private final AtomicInteger m_aThreadIndex = new AtomicInteger (0);
+
+    public Thread newThread (@Nonnull final Runnable aRunnable)
+    {
+      final Thread ret = new Thread (aRunnable, "phloc-db-prefetch-" + m_aThreadIndex.incrementAndGet ());
+      ret.setDaemon (true);
+      return ret;
+    }
+  };
+
+  /** Thrown in the fetcher thread to abort the query */
+  private static final class AbortException extends RuntimeException
+  {
+    private static final long serialVersionUID = 1L;
+
+    AbortException ()
+    {
+      super ("Prefetching cursor was closed");
+    }
+  }
+
+  /**
+   * Callback to execute the query in the fetcher thread.
+   */
+  interface IQueryRunner
+  {
+    @Nonnull
+    ESuccess runQuery (@Nonnull IResultSetRowCallback aCallback);
+  }
+
+  private final int m_nBlockSize;
+  private final BlockingQueue <List <DBResultRow>> m_aQueue = new ArrayBlockingQueue <List <DBResultRow>> (1);
+  private final Thread m_aFetcher;
+  private volatile boolean m_bClosed = false;
+  private volatile boolean m_bFetching = false;
+  private volatile ESuccess m_eQueryResult;
+  private volatile RuntimeException m_aQueryException;
+  private List <DBResultRow> m_aCurrentBlock;
+  private int m_nCurrentIndex = 0;
+  private boolean m_bEndReached = false;
+
+  DBPrefetchingCursor (@Nonnull final IQueryRunner aQueryRunner,
+                       @Nonnegative final int nBlockSize,
+                       @Nonnull final ThreadFactory aThreadFactory)
+  {
+    if (nBlockSize <= 0)
+      throw new IllegalArgumentException ("BlockSize must be > 0: " + nBlockSize);
+    m_nBlockSize = nBlockSize;
+    m_aFetcher = aThreadFactory.newThread (new Runnable ()
+    {
+      public void run ()
+      {
+        _fetch (aQueryRunner);
+      }
+    });
+    if (m_aFetcher == null)
+      throw new IllegalStateException ("Thread factory " + aThreadFactory + " did not create a thread");
+  }
+
+  /**
+   * Start the fetcher thread. Must be called exactly once.
+   */
+  void start ()
+  {
+    m_bFetching = true;
+    m_aFetcher.start ();
+  }
+
+  /**
+   * @return <code>true</code> if the fetcher thread is still executing the
+   *         query and therefore holds the executor.
+   */
+  boolean isFetching ()
+  {
+    return m_bFetching;
+  }
+
+  /**
+   * @return <code>true</code> if the calling thread is the fetcher thread.
+   */
+  boolean isFetcherThread ()
+  {
+    return Thread.currentThread () == m_aFetcher;
+  }
+
+  private void _put (@Nonnull final List <DBResultRow> aBlock)
+  {
+    try
+    {
+      while (!m_aQueue.offer (aBlock, 100, TimeUnit.MILLISECONDS))
+        if (m_bClosed)
+          throw new AbortException ();
+    }
+    catch (final InterruptedException ex)
+    {
+      Thread.currentThread ().interrupt ();
+      throw new AbortException ();
+    }
+  }
+
+  private void _fetch (@Nonnull final IQueryRunner aQueryRunner)
+  {
+    try
+    {
+      final List <List <DBResultRow>> aBlockHolder = new ArrayList <List <DBResultRow>> (1);
+      aBlockHolder.add (new ArrayList <DBResultRow> (m_nBlockSize));
+      m_eQueryResult = aQueryRunner.runQuery (new IResultSetRowCallback ()
+      {
+        public void run (@Nullable final DBResultRow aCurrentObject)
+        {
+          if (m_bClosed)
+            throw new AbortException ();
+          if (aCurrentObject != null)
+          {
+            final List <DBResultRow> aBlock = aBlockHolder.get (0);
+            // We need to clone the object!
+            aBlock.add (aCurrentObject.getClone ());
+            if (aBlock.size () >= m_nBlockSize)
+            {
+              _put (aBlock);
+              aBlockHolder.set (0, new ArrayList <DBResultRow> (m_nBlockSize));
+            }
+          }
+        }
+      });
+      // The executor was released, so the caller may use it while the last
+      // block is handed over
+      m_bFetching = false;
+      if (m_eQueryResult.isSuccess () && !aBlockHolder.get (0).isEmpty ())
+        _put (aBlockHolder.get (0));
+    }
+    catch (final AbortException ex)
+    {
+      // Closed by the caller
+      return;
+    }
+    catch (final RuntimeException ex)
+    {
+      m_aQueryException = ex;
+    }
+    finally
+    {
+      // The executor may be used again
+      m_bFetching = false;
+    }
+
+    try
+    {
+      _put (END_MARKER);
+    }
+    catch (final AbortException ex)
+    {
+      // Closed by the caller
+    }
+  }
+
+  @Nonnegative
+  public int getBlockSize ()
+  {
+    return m_nBlockSize;
+  }
+
+  public boolean hasNext ()
+  {
+    if (m_bClosed)
+      return false;
+
+    while (m_aCurrentBlock == null || m_nCurrentIndex >= m_aCurrentBlock.size ())
+    {
+      if (m_bEndReached)
+        return false;
+
+      // Wait for the next block
+      try
+      {
+        m_aCurrentBlock = m_aQueue.take ();
+      }
+      catch (final InterruptedException ex)
+      {
+        Thread.currentThread ().interrupt ();
+        throw new IllegalStateException ("Interrupted while waiting for the next block", ex);
+      }
+      m_nCurrentIndex = 0;
+
+      if (m_aCurrentBlock == END_MARKER)
+      {
+        m_bEndReached = true;
+        if (m_aQueryException != null)
+          throw new IllegalStateException ("Failed to fetch rows", m_aQueryException);
+        if (m_eQueryResult != null && m_eQueryResult.isFailure ())
+          throw new IllegalStateException ("Failed to execute query");
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * @return The next row. Each row is a separate object that may be stored.
+   */
+  @Nonnull
+  public DBResultRow next ()
+  {
+    if (!hasNext ())
+      throw new NoSuchElementException ();
+    return m_aCurrentBlock.get (m_nCurrentIndex++);
+  }
+
+  public void remove ()
+  {
+    throw new UnsupportedOperationException ();
+  }
+
+  @Nonnull
+  public Iterator <DBResultRow> iterator ()
+  {
+    return this;
+  }
+
+  /**
+   * Stop fetching and release the connection. Remaining rows are discarded.
+   * Waits until the fetcher thread has released the executor.
+   */
+  public void close ()
+  {
+    if (!m_bClosed)
+    {
+      m_bClosed = true;
+      // Free a potentially waiting fetcher
+      m_aQueue.clear ();
+      m_aCurrentBlock = null;
+      if (m_aFetcher.isAlive () && !isFetcherThread ())
+        try
+        {
+          // The fetcher aborts with the next row or when it next tries to
+          // hand over a block
+          m_aFetcher.join ();
+        }
+        catch (final InterruptedException ex)
+        {
+          Thread.currentThread ().interrupt ();
+        }
+    }
+  }
+
+  @Override
+  public String toString ()
+  {
+    return new ToStringGenerator (this).append ("blockSize", m_nBlockSize)
+                                       .append ("closed", m_bClosed)
+                                       .append ("endReached", m_bEndReached)
+                                       .toString ();
+  }
+}
@@ -0,0 +1,129 @@
+/**
+ * Copyright (C) 2006-2015 phloc systems
+ * http://www.phloc.com
+ * office[at]phloc[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.phloc.db.jdbc.executor;
+
+import java.io.File;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+
+import com.phloc.commons.string.ToStringGenerator;
+
+/**
+ * Defines the upper memory limit for materializing query results together with
+ * the action to take if the limit is exceeded.
+ * 
+ * @author Philip Helger
+ */
+@Immutable
+public final class DBResultMaterializationLimit
+{
+  /** Default limit: 64 MB */
+  public static final long DEFAULT_MAX_BYTES = 64L * 1024 * 1024;
+
+  private final long m_nMaxBytes;
+  private final EResultMaterializationMode m_eMode;
+  private final File m_aTempDirectory;
+
+  public DBResultMaterializationLimit (@Nonnegative final long nMaxBytes, @Nonnull final EResultMaterializationMode eMode)
+  {
+    this (nMaxBytes, eMode, null);
+  }
+
+  /**
+   * Constructor
+   * 
+   * @param nMaxBytes
+   *        The maximum number of bytes the materialized rows of a single query
+   *        may occupy in memory. This is an estimation only. Must be &ge; 0.
+   * @param eMode
+   *        The action to take if the limit is exceeded. May not be
+   *        <code>null</code>.
+   * @param aTempDirectory
+   *        The directory where spill files are created. May be
+   *        <code>null</code> to use the default temporary directory.
+   */
+  public DBResultMaterializationLimit (@Nonnegative final long nMaxBytes,
+                                       @Nonnull final EResultMaterializationMode eMode,
+                                       @Nullable final File aTempDirectory)
+  {
+    if (nMaxBytes < 0)
+      throw new IllegalArgumentException ("MaxBytes may not be negative: " + nMaxBytes);
+    if (eMode == null)
+      throw new NullPointerException ("mode");
+    m_nMaxBytes = nMaxBytes;
+    m_eMode = eMode;
+    m_aTempDirectory = aTempDirectory;
+  }
+
+  @Nonnegative
+  public long getMaxBytes ()
+  {
+    return m_nMaxBytes;
+  }
+
+  @Nonnull
+  public EResultMaterializationMode getMode ()
+  {
+    return m_eMode;
+  }
+
+  @Nullable
+  public File getTempDirectory ()
+  {
+    return m_aTempDirectory;
+  }
+
+  @Override
+  public String toString ()
+  {
+    return new ToStringGenerator (this).append ("maxBytes", m_nMaxBytes)
+                                       .append ("mode", m_eMode)
+                                       .append ("tempDirectory", m_aTempDirectory)
+                                       .toString ();
+  }
+
+  /**
+   * Create a limit that aborts the query if the limit is exceeded.
+   * 
+   * @param nMaxBytes
+   *        The maximum number of bytes. Must be &ge; 0.
+   * @return Never <code>null</code>.
+   */
+  @Nonnull
+  public static DBResultMaterializationLimit createFailFast (@Nonnegative final long nMaxBytes)
+  {
+    return new DBResultMaterializationLimit (nMaxBytes, EResultMaterializationMode.FAIL_FAST);
+  }
+
+  /**
+   * Create a limit that writes all rows exceeding the limit to a temporary
+   * file.
+   * 
+   * @param nMaxBytes
+   *        The maximum number of bytes. Must be &ge; 0.
+   * @return Never <code>null</code>.
+   */
+  @Nonnull
+  public static DBResultMaterializationLimit createSpillToDisk (@Nonnegative final long nMaxBytes)
+  {
+    return new DBResultMaterializationLimit (nMaxBytes, EResultMaterializationMode.SPILL_TO_DISK);
+  }
+}
@@ -0,0 +1,60 @@
+/**
+ * Copyright (C) 2006-2015 phloc systems
+ * http://www.phloc.com
+ * office[at]phloc[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.phloc.db.jdbc.executor;
+
+import javax.annotation.Nonnegative;
+
+/**
+ * Exception thrown if the materialized rows of a query exceed the configured
+ * memory limit and {@link EResultMaterializationMode#FAIL_FAST} is used.
+ * 
+ * @author Philip Helger
+ */
+public class DBResultSizeLimitExceededException extends IllegalStateException
+{
+  private static final long serialVersionUID = 1L;
+
+  private final long m_nMaxBytes;
+  private final int m_nRowCount;
+
+  public DBResultSizeLimitExceededException (@Nonnegative final long nMaxBytes, @Nonnegative final int nRowCount)
+  {
+    super ("The query result exceeded the limit of " + nMaxBytes + " bytes after " + nRowCount + " rows");
+    m_nMaxBytes = nMaxBytes;
+    m_nRowCount = nRowCount;
+  }
+
+  /**
+   * @return The memory limit in bytes that was exceeded.
+   */
+  @Nonnegative
+  public long getMaxBytes ()
+  {
+    return m_nMaxBytes;
+  }
+
+  /**
+   * @return The number of rows that were materialized before the limit was
+   *         exceeded.
+   */
+  @Nonnegative
+  public int getRowCount ()
+  {
+    return m_nRowCount;
+  }
+}
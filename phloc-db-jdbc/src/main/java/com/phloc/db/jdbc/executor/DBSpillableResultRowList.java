@@ -0,0 +1,686 @@
+/**
+ * Copyright (C) 2006-2015 phloc systems
+ * http://www.phloc.com
+ * office[at]phloc[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.phloc.db.jdbc.executor;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.Blob;
+import java.sql.Clob;
+import java.sql.SQLException;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.NotThreadSafe;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.phloc.commons.charset.CCharset;
+import com.phloc.commons.io.file.FileOperations;
+import com.phloc.commons.io.streams.NonBlockingByteArrayInputStream;
+import com.phloc.commons.io.streams.NonBlockingByteArrayOutputStream;
+import com.phloc.commons.io.streams.StreamUtils;
+import com.phloc.commons.string.ToStringGenerator;
+
+/**
+ * A read-only list of {@link DBResultRow} objects with an upper memory limit.
+ * Rows are kept in memory until the estimated size exceeds the limit defined
+ * in {@link DBResultMaterializationLimit}. Afterwards all further rows are
+ * either written to a temporary file in a compact binary format or the
+ * materialization is aborted. Spilled rows are read back transparently upon
+ * access. Iterating the list reads the spill file sequentially, whereas
+ * {@link #get(int)} seeks to the requested row.<br>
+ * Call {@link #close()} when done to delete the temporary file.
+ * 
+ * @author Philip Helger
+ */
+@NotThreadSafe
+public final class DBSpillableResultRowList extends AbstractList <DBResultRow> implements Closeable
+{
+  // Value type tags of the binary row format
+  private static final byte TYPE_NULL = 0;
+  private static final byte TYPE_STRING = 1;
+  private static final byte TYPE_INT = 2;
+  private static final byte TYPE_LONG = 3;
+  private static final byte TYPE_SHORT = 4;
+  private static final byte TYPE_BYTE = 5;
+  private static final byte TYPE_BOOLEAN = 6;
+  private static final byte TYPE_DOUBLE = 7;
+  private static final byte TYPE_FLOAT = 8;
+  private static final byte TYPE_BIGDECIMAL = 9;
+  private static final byte TYPE_BIGINTEGER = 10;
+  private static final byte TYPE_BYTES = 11;
+  private static final byte TYPE_TIMESTAMP = 12;
+  private static final byte TYPE_DATE = 13;
+  private static final byte TYPE_TIME = 14;
+  private static final byte TYPE_SERIALIZABLE = 15;
+
+  private static final Logger s_aLogger = LoggerFactory.getLogger (DBSpillableResultRowList.class);
+
+  /**
+   * Output stream counting the written bytes to determine the row offsets
+   * without querying the file.
+   */
+  private static final class CountingOutputStream extends FilterOutputStream
+  {
+    private long m_nCount = 0;
+
+    CountingOutputStream (@Nonnull final OutputStream aOS)
+    {
+      super (aOS);
+    }
+
+    @Override
+    public void write (final int b) throws IOException
+    {
+      out.write (b);
+      m_nCount++;
+    }
+
+    @Override
+    public void write (final byte [] aBuf, final int nOfs, final int nLen) throws IOException
+    {
+      out.write (aBuf, nOfs, nLen);
+      m_nCount += nLen;
+    }
+
+    long getCount ()
+    {
+      return m_nCount;
+    }
+  }
+
+  /**
+   * Iterator over all rows, reading the spilled rows sequentially through a
+   * buffered stream.
+   */
+  private final class RowIterator implements Iterator <DBResultRow>
+  {
+    private int m_nIndex = 0;
+    private DataInputStream m_aDIS;
+
+    public boolean hasNext ()
+    {
+      return m_nIndex < size ();
+    }
+
+    @Nonnull
+    public DBResultRow next ()
+    {
+      if (!hasNext ())
+        throw new NoSuchElementException ();
+
+      final int nInMemory = m_aInMemoryRows.size ();
+      if (m_nIndex < nInMemory)
+        return m_aInMemoryRows.get (m_nIndex++);
+
+      final int nSpillIndex = m_nIndex - nInMemory;
+      try
+      {
+        if (m_aDIS == null)
+        {
+          m_aDIS = new DataInputStream (new BufferedInputStream (new FileInputStream (_getReadableSpillFile ())));
+          m_aOpenReaders.add (m_aDIS);
+        }
+        final DBResultRow ret = _readRow (m_aDIS);
+        m_nIndex++;
+        if (m_nIndex == size ())
+        {
+          // Last row read
+          m_aOpenReaders.remove (m_aDIS);
+          StreamUtils.close (m_aDIS);
+          m_aDIS = null;
+        }
+        return ret;
+      }
+      catch (final IOException ex)
+      {
+        throw new IllegalStateException ("Failed to read spilled row " + nSpillIndex + " from " + m_aSpillFile, ex);
+      }
+    }
+
+    public void remove ()
+    {
+      throw new UnsupportedOperationException ();
+    }
+  }
+
+  private final DBResultMaterializationLimit m_aLimit;
+  private final List <DBResultRow> m_aInMemoryRows = new ArrayList <DBResultRow> ();
+  private long m_nEstimatedMemoryBytes = 0;
+
+  // Spill file state
+  private File m_aSpillFile;
+  private CountingOutputStream m_aSpillCOS;
+  private DataOutputStream m_aSpillDOS;
+  private RandomAccessFile m_aSpillRAF;
+  private final List <Closeable> m_aOpenReaders = new ArrayList <Closeable> ();
+  private long [] m_aSpillOffsets = new long [0];
+  private int m_nSpilledRowCount = 0;
+  private String [] m_aColumnNames;
+  private int [] m_aColumnTypes;
+
+  public DBSpillableResultRowList (@Nonnull final DBResultMaterializationLimit aLimit)
+  {
+    if (aLimit == null)
+      throw new NullPointerException ("limit");
+    m_aLimit = aLimit;
+  }
+
+  @Nonnull
+  public DBResultMaterializationLimit getLimit ()
+  {
+    return m_aLimit;
+  }
+
+  /**
+   * @return The estimated number of bytes occupied by the rows held in memory.
+   */
+  @Nonnegative
+  public long getEstimatedMemoryBytes ()
+  {
+    return m_nEstimatedMemoryBytes;
+  }
+
+  /**
+   * @return <code>true</code> if at least one row was written to disk.
+   */
+  public boolean isSpilled ()
+  {
+    return m_nSpilledRowCount > 0;
+  }
+
+  @Nonnegative
+  public int getInMemoryRowCount ()
+  {
+    return m_aInMemoryRows.size ();
+  }
+
+  @Nonnegative
+  public int getSpilledRowCount ()
+  {
+    return m_nSpilledRowCount;
+  }
+
+  /**
+   * @return The temporary file holding the spilled rows. May be
+   *         <code>null</code> if no row was spilled or if this list was
+   *         already closed.
+   */
+  @Nullable
+  public File getSpillFile ()
+  {
+    return m_aSpillFile;
+  }
+
+  /**
+   * Estimate the number of bytes a single value occupies on the heap.
+   * 
+   * @param aValue
+   *        The value to be estimated. May be <code>null</code>.
+   * @return The estimated number of bytes.
+   */
+  @Nonnegative
+  public static long getEstimatedValueBytes (@Nullable final Object aValue)
+  {
+    if (aValue == null)
+      return 0;
+    if (aValue instanceof String)
+      return 40 + 2L * ((String) aValue).length ();
+    if (aValue instanceof byte [])
+      return 16 + ((byte []) aValue).length;
+    if (aValue instanceof BigDecimal || aValue instanceof BigInteger)
+      return 64;
+    if (aValue instanceof java.util.Date)
+      return 32;
+    if (aValue instanceof Long || aValue instanceof Double)
+      return 24;
+    // Other numbers, Boolean, Character and all unknown objects
+    return 16;
+  }
+
+  /**
+   * Estimate the number of bytes a single row occupies on the heap.
+   * 
+   * @param aRow
+   *        The row to be estimated. May not be <code>null</code>.
+   * @return The estimated number of bytes.
+   */
+  @Nonnegative
+  public static long getEstimatedRowBytes (@Nonnull final DBResultRow aRow)
+  {
+    // Row object and field array
+    long ret = 32 + 4L * aRow.getColumnCount ();
+    for (int i = 0; i < aRow.getColumnCount (); ++i)
+    {
+      final DBResultField aField = aRow.get (i);
+      if (aField != null)
+      {
+        // Field object - column names are interned
+        ret += 24 + getEstimatedValueBytes (aField.getValue ());
+      }
+    }
+    return ret;
+  }
+
+  private static void _writeValue (@Nonnull final DataOutputStream aDOS, @Nullable final Object aValue) throws IOException
+  {
+    if (aValue == null)
+    {
+      aDOS.writeByte (TYPE_NULL);
+      return;
+    }
+    if (aValue instanceof String)
+    {
+      final byte [] aBytes = ((String) aValue).getBytes (CCharset.CHARSET_UTF_8_OBJ);
+      aDOS.writeByte (TYPE_STRING);
+      aDOS.writeInt (aBytes.length);
+      aDOS.write (aBytes);
+      return;
+    }
+    if (aValue instanceof Integer)
+    {
+      aDOS.writeByte (TYPE_INT);
+      aDOS.writeInt (((Integer) aValue).intValue ());
+      return;
+    }
+    if (aValue instanceof Long)
+    {
+      aDOS.writeByte (TYPE_LONG);
+      aDOS.writeLong (((Long) aValue).longValue ());
+      return;
+    }
+    if (aValue instanceof Short)
+    {
+      aDOS.writeByte (TYPE_SHORT);
+      aDOS.writeShort (((Short) aValue).shortValue ());
+      return;
+    }
+    if (aValue instanceof Byte)
+    {
+      aDOS.writeByte (TYPE_BYTE);
+      aDOS.writeByte (((Byte) aValue).byteValue ());
+      return;
+    }
+    if (aValue instanceof Boolean)
+    {
+      aDOS.writeByte (TYPE_BOOLEAN);
+      aDOS.writeBoolean (((Boolean) aValue).booleanValue ());
+      return;
+    }
+    if (aValue instanceof Double)
+    {
+      aDOS.writeByte (TYPE_DOUBLE);
+      aDOS.writeDouble (((Double) aValue).doubleValue ());
+      return;
+    }
+    if (aValue instanceof Float)
+    {
+      aDOS.writeByte (TYPE_FLOAT);
+      aDOS.writeFloat (((Float) aValue).floatValue ());
+      return;
+    }
+    if (aValue instanceof BigDecimal)
+    {
+      aDOS.writeByte (TYPE_BIGDECIMAL);
+      aDOS.writeUTF (aValue.toString ());
+      return;
+    }
+    if (aValue instanceof BigInteger)
+    {
+      aDOS.writeByte (TYPE_BIGINTEGER);
+      aDOS.writeUTF (aValue.toString ());
+      return;
+    }
+    if (aValue instanceof byte [])
+    {
+      final byte [] aBytes = (byte []) aValue;
+      aDOS.writeByte (TYPE_BYTES);
+      aDOS.writeInt (aBytes.length);
+      aDOS.write (aBytes);
+      return;
+    }
+    if (aValue instanceof Timestamp)
+    {
+      aDOS.writeByte (TYPE_TIMESTAMP);
+      aDOS.writeLong (((Timestamp) aValue).getTime ());
+      aDOS.writeInt (((Timestamp) aValue).getNanos ());
+      return;
+    }
+    if (aValue instanceof java.sql.Date)
+    {
+      aDOS.writeByte (TYPE_DATE);
+      aDOS.writeLong (((java.sql.Date) aValue).getTime ());
+      return;
+    }
+    if (aValue instanceof Time)
+    {
+      aDOS.writeByte (TYPE_TIME);
+      aDOS.writeLong (((Time) aValue).getTime ());
+      return;
+    }
+
+    try
+    {
+      // Materialize LOBs while the connection is still open
+      if (aValue instanceof Blob)
+      {
+        final Blob aBlob = (Blob) aValue;
+        _writeValue (aDOS, aBlob.getBytes (1, (int) aBlob.length ()));
+        return;
+      }
+      if (aValue instanceof Clob)
+      {
+        final Clob aClob = (Clob) aValue;
+        _writeValue (aDOS, aClob.getSubString (1, (int) aClob.length ()));
+        return;
+      }
+    }
+    catch (final SQLException ex)
+    {
+      throw new IOException ("Failed to read LOB value", ex);
+    }
+
+    if (!(aValue instanceof Serializable))
+      throw new IOException ("Cannot spill value of type " + aValue.getClass ().getName ());
+
+    final NonBlockingByteArrayOutputStream aBAOS = new NonBlockingByteArrayOutputStream ();
+    final ObjectOutputStream aOOS = new ObjectOutputStream (aBAOS);
+    aOOS.writeObject (aValue);
+    aOOS.close ();
+    aDOS.writeByte (TYPE_SERIALIZABLE);
+    aDOS.writeInt (aBAOS.size ());
+    aBAOS.writeTo (aDOS);
+  }
+
+  @Nullable
+  private static Object _readValue (@Nonnull final DataInputStream aDIS) throws IOException
+  {
+    final byte nType = aDIS.readByte ();
+    switch (nType)
+    {
+      case TYPE_NULL:
+        return null;
+      case TYPE_STRING:
+      {
+        final byte [] aBytes = new byte [aDIS.readInt ()];
+        aDIS.readFully (aBytes);
+        return new String (aBytes, CCharset.CHARSET_UTF_8_OBJ);
+      }
+      case TYPE_INT:
+        return Integer.valueOf (aDIS.readInt ());
+      case TYPE_LONG:
+        return Long.valueOf (aDIS.readLong ());
+      case TYPE_SHORT:
+        return Short.valueOf (aDIS.readShort ());
+      case TYPE_BYTE:
+        return Byte.valueOf (aDIS.readByte ());
+      case TYPE_BOOLEAN:
+        return Boolean.valueOf (aDIS.readBoolean ());
+      case TYPE_DOUBLE:
+        return Double.valueOf (aDIS.readDouble ());
+      case TYPE_FLOAT:
+        return Float.valueOf (aDIS.readFloat ());
+      case TYPE_BIGDECIMAL:
+        return new BigDecimal (aDIS.readUTF ());
+      case TYPE_BIGINTEGER:
+        return new BigInteger (aDIS.readUTF ());
+      case TYPE_BYTES:
+      {
+        final byte [] aBytes = new byte [aDIS.readInt ()];
+        aDIS.readFully (aBytes);
+        return aBytes;
+      }
+      case TYPE_TIMESTAMP:
+      {
+        final Timestamp ret = new Timestamp (aDIS.readLong ());
+        ret.setNanos (aDIS.readInt ());
+        return ret;
+      }
+      case TYPE_DATE:
+        return new java.sql.Date (aDIS.readLong ());
+      case TYPE_TIME:
+        return new Time (aDIS.readLong ());
+      case TYPE_SERIALIZABLE:
+      {
+        final byte [] aBytes = new byte [aDIS.readInt ()];
+        aDIS.readFully (aBytes);
+        final ObjectInputStream aOIS = new ObjectInputStream (new NonBlockingByteArrayInputStream (aBytes));
+        try
+        {
+          return aOIS.readObject ();
+        }
+        catch (final ClassNotFoundException ex)
+        {
+          throw new IOException ("Failed to read serialized value", ex);
+        }
+        finally
+        {
+          StreamUtils.close (aOIS);
+        }
+      }
+      default:
+        throw new IOException ("Unsupported spilled value type " + nType);
+    }
+  }
+
+  private void _spill (@Nonnull final DBResultRow aRow) throws IOException
+  {
+    if (m_aSpillDOS == null)
+    {
+      // First spilled row - remember the row layout
+      final int nCols = aRow.getColumnCount ();
+      m_aColumnNames = new String [nCols];
+      m_aColumnTypes = new int [nCols];
+      for (int i = 0; i < nCols; ++i)
+      {
+        m_aColumnNames[i] = aRow.getColumnName (i);
+        m_aColumnTypes[i] = aRow.getColumnType (i);
+      }
+
+      m_aSpillFile = File.createTempFile ("phloc-db-spill", ".bin", m_aLimit.getTempDirectory ());
+      m_aSpillCOS = new CountingOutputStream (new BufferedOutputStream (new FileOutputStream (m_aSpillFile)));
+      m_aSpillDOS = new DataOutputStream (m_aSpillCOS);
+      s_aLogger.info ("Query result exceeded " +
+                      m_aLimit.getMaxBytes () +
+                      " bytes after " +
+                      m_aInMemoryRows.size () +
+                      " rows - spilling to " +
+                      m_aSpillFile);
+    }
+
+    // Remember the offset of the row
+    if (m_nSpilledRowCount == m_aSpillOffsets.length)
+    {
+      final long [] aNewOffsets = new long [Math.max (16, m_aSpillOffsets.length * 2)];
+      System.arraycopy (m_aSpillOffsets, 0, aNewOffsets, 0, m_nSpilledRowCount);
+      m_aSpillOffsets = aNewOffsets;
+    }
+    m_aSpillOffsets[m_nSpilledRowCount] = m_aSpillCOS.getCount ();
+
+    for (int i = 0; i < aRow.getColumnCount (); ++i)
+      _writeValue (m_aSpillDOS, aRow.getValue (i));
+    m_nSpilledRowCount++;
+  }
+
+  /**
+   * Add a new row. The passed row object is not modified and may be reused by
+   * the caller afterwards.
+   * 
+   * @param aRow
+   *        The row to add. May not be <code>null</code>.
+   * @throws DBResultSizeLimitExceededException
+   *         if the limit is exceeded and {@link EResultMaterializationMode}
+   *         FAIL_FAST is used.
+   * @throws IOException
+   *         If spilling fails
+   */
+  void addRow (@Nonnull final DBResultRow aRow) throws IOException
+  {
+    if (m_aSpillDOS == null)
+    {
+      final long nRowBytes = getEstimatedRowBytes (aRow);
+      if (m_nEstimatedMemoryBytes + nRowBytes <= m_aLimit.getMaxBytes ())
+      {
+        // We need to clone the object!
+        m_aInMemoryRows.add (aRow.getClone ());
+        m_nEstimatedMemoryBytes += nRowBytes;
+        return;
+      }
+
+      if (m_aLimit.getMode () == EResultMaterializationMode.FAIL_FAST)
+        throw new DBResultSizeLimitExceededException (m_aLimit.getMaxBytes (), m_aInMemoryRows.size ());
+    }
+    _spill (aRow);
+  }
+
+  /**
+   * @return The spill file with all rows written so far flushed.
+   */
+  @Nonnull
+  private File _getReadableSpillFile () throws IOException
+  {
+    if (m_aSpillDOS == null)
+      throw new IllegalStateException ("This list was already closed!");
+    m_aSpillDOS.flush ();
+    return m_aSpillFile;
+  }
+
+  @Nonnull
+  private DBResultRow _readRow (@Nonnull final DataInputStream aDIS) throws IOException
+  {
+    final DBResultRow ret = new DBResultRow (m_aColumnNames.length);
+    for (int i = 0; i < m_aColumnNames.length; ++i)
+      ret.add (new DBResultField (m_aColumnNames[i], m_aColumnTypes[i], _readValue (aDIS)));
+    return ret;
+  }
+
+  @Nonnull
+  private DBResultRow _readSpilledRow (@Nonnegative final int nSpillIndex)
+  {
+    try
+    {
+      final File aSpillFile = _getReadableSpillFile ();
+      if (m_aSpillRAF == null)
+        m_aSpillRAF = new RandomAccessFile (aSpillFile, "r");
+
+      final long nOffset = m_aSpillOffsets[nSpillIndex];
+      final long nEnd = nSpillIndex + 1 < m_nSpilledRowCount ? m_aSpillOffsets[nSpillIndex + 1]
+                                                             : m_aSpillCOS.getCount ();
+      final byte [] aBytes = new byte [(int) (nEnd - nOffset)];
+      m_aSpillRAF.seek (nOffset);
+      m_aSpillRAF.readFully (aBytes);
+      return _readRow (new DataInputStream (new NonBlockingByteArrayInputStream (aBytes)));
+    }
+    catch (final IOException ex)
+    {
+      throw new IllegalStateException ("Failed to read spilled row " + nSpillIndex + " from " + m_aSpillFile, ex);
+    }
+  }
+
+  /**
+   * Get the row at the specified index. Spilled rows are read from disk and a
+   * new object is returned for each call. Use {@link #iterator()} to access
+   * all rows sequentially.
+   */
+  @Override
+  @Nonnull
+  public DBResultRow get (final int nIndex)
+  {
+    final int nInMemory = m_aInMemoryRows.size ();
+    if (nIndex < nInMemory)
+      return m_aInMemoryRows.get (nIndex);
+    if (nIndex >= nInMemory + m_nSpilledRowCount)
+      throw new IndexOutOfBoundsException ("Index " + nIndex + " is invalid for size " + size ());
+    return _readSpilledRow (nIndex - nInMemory);
+  }
+
+  /**
+   * @return An iterator over all rows, reading the spilled rows sequentially.
+   *         Spilled rows are read from disk and new objects are returned.
+   */
+  @Override
+  @Nonnull
+  public Iterator <DBResultRow> iterator ()
+  {
+    return new RowIterator ();
+  }
+
+  @Override
+  @Nonnegative
+  public int size ()
+  {
+    return m_aInMemoryRows.size () + m_nSpilledRowCount;
+  }
+
+  /**
+   * Close the spill file and delete it. Spilled rows cannot be accessed
+   * afterwards.
+   */
+  public void close ()
+  {
+    if (m_aSpillDOS != null)
+    {
+      for (final Closeable aReader : m_aOpenReaders)
+        StreamUtils.close (aReader);
+      m_aOpenReaders.clear ();
+      StreamUtils.close (m_aSpillRAF);
+      m_aSpillRAF = null;
+      StreamUtils.close (m_aSpillDOS);
+      m_aSpillDOS = null;
+      m_aSpillCOS = null;
+      if (FileOperations.deleteFileIfExisting (m_aSpillFile).isFailure ())
+        s_aLogger.warn ("Failed to delete spill file " + m_aSpillFile);
+      m_aSpillFile = null;
+    }
+  }
+
+  @Override
+  public String toString ()
+  {
+    return new ToStringGenerator (this).append ("limit", m_aLimit)
+                                       .append ("inMemoryRows", m_aInMemoryRows.size ())
+                                       .append ("estimatedMemoryBytes", m_nEstimatedMemoryBytes)
+                                       .append ("spilledRows", m_nSpilledRowCount)
+                                       .append ("spillFile", m_aSpillFile)
+                                       .toString ();
+  }
+}
@@ -0,0 +1,440 @@
+/**
+ * Copyright (C) 2006-2015 phloc systems
+ * http://www.phloc.com
+ * office[at]phloc[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.phloc.db.jdbc.executor;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.WillNotClose;
+import javax.annotation.concurrent.NotThreadSafe;
+
+import com.phloc.commons.annotations.Nonempty;
+import com.phloc.commons.io.file.FileUtils;
+import com.phloc.commons.io.streams.NonBlockingBufferedWriter;
+import com.phloc.commons.io.streams.StreamUtils;
+import com.phloc.commons.string.ToStringGenerator;
+
+/**
+ * Represents the current row of a {@link ResultSet} with streamed access to
+ * large binary and character columns. In contrast to {@link DBResultRow} no
+ * values are read in advance. An object of this class is only valid while the
+ * cursor is positioned on the row, so it may not be stored outside the
+ * callback.
+ * 
+ * @author Philip Helger
+ */
+@NotThreadSafe
+public final class DBStreamingResultRow
+{
+  /** The buffer size used for copying streamed column values */
+  public static final int COPY_BUFFER_SIZE = 64 * 1024;
+
+  private final ResultSet m_aRS;
+  private final String [] m_aColumnNames;
+  private final int [] m_aColumnTypes;
+  private boolean m_bValid = false;
+
+  DBStreamingResultRow (@Nonnull final ResultSet aRS) throws SQLException
+  {
+    m_aRS = aRS;
+    final ResultSetMetaData aRSMD = aRS.getMetaData ();
+    final int nCols = aRSMD.getColumnCount ();
+    m_aColumnNames = new String [nCols];
+    m_aColumnTypes = new int [nCols];
+    for (int i = 1; i <= nCols; ++i)
+    {
+      m_aColumnNames[i - 1] = aRSMD.getColumnName (i).intern ();
+      m_aColumnTypes[i - 1] = aRSMD.getColumnType (i);
+    }
+  }
+
+  void setValid (final boolean bValid)
+  {
+    m_bValid = bValid;
+  }
+
+  private void _checkValid ()
+  {
+    if (!m_bValid)
+      throw new IllegalStateException ("The streaming result row may only be used within the callback!");
+  }
+
+  private static long _copy (@Nonnull final InputStream aIS, @Nonnull final OutputStream aOS) throws IOException
+  {
+    try
+    {
+      final byte [] aBuffer = new byte [COPY_BUFFER_SIZE];
+      long nTotal = 0;
+      int nRead;
+      while ((nRead = aIS.read (aBuffer)) != -1)
+      {
+        aOS.write (aBuffer, 0, nRead);
+        nTotal += nRead;
+      }
+      return nTotal;
+    }
+    finally
+    {
+      StreamUtils.close (aIS);
+    }
+  }
+
+  private static long _copy (@Nonnull final Reader aReader, @Nonnull final Writer aWriter) throws IOException
+  {
+    try
+    {
+      final char [] aBuffer = new char [COPY_BUFFER_SIZE];
+      long nTotal = 0;
+      int nRead;
+      while ((nRead = aReader.read (aBuffer)) != -1)
+      {
+        aWriter.write (aBuffer, 0, nRead);
+        nTotal += nRead;
+      }
+      return nTotal;
+    }
+    finally
+    {
+      StreamUtils.close (aReader);
+    }
+  }
+
+  @Nonnegative
+  public int getColumnCount ()
+  {
+    return m_aColumnNames.length;
+  }
+
+  /**
+   * @param nIndex
+   *        The 0-based column index.
+   * @return The column name. Never <code>null</code>.
+   */
+  @Nonnull
+  @Nonempty
+  public String getColumnName (@Nonnegative final int nIndex)
+  {
+    return m_aColumnNames[nIndex];
+  }
+
+  /**
+   * @param nIndex
+   *        The 0-based column index.
+   * @return The column type as defined in {@link Types}.
+   */
+  public int getColumnType (@Nonnegative final int nIndex)
+  {
+    return m_aColumnTypes[nIndex];
+  }
+
+  /**
+   * @param nIndex
+   *        The 0-based column index.
+   * @return <code>true</code> if the column contains potentially large binary
+   *         data.
+   */
+  public boolean isBinaryLOBColumn (@Nonnegative final int nIndex)
+  {
+    switch (m_aColumnTypes[nIndex])
+    {
+      case Types.BLOB:
+      case Types.LONGVARBINARY:
+      case Types.VARBINARY:
+      case Types.BINARY:
+        return true;
+      default:
+        return false;
+    }
+  }
+
+  /**
+   * @param nIndex
+   *        The 0-based column index.
+   * @return <code>true</code> if the column contains potentially large
+   *         character data.
+   */
+  public boolean isCharacterLOBColumn (@Nonnegative final int nIndex)
+  {
+    switch (m_aColumnTypes[nIndex])
+    {
+      case Types.CLOB:
+      case Types.NCLOB:
+      case Types.LONGVARCHAR:
+      case Types.LONGNVARCHAR:
+        return true;
+      default:
+        return false;
+    }
+  }
+
+  /**
+   * Get the value of the column as an object. Note: for LOB columns this reads
+   * the whole value, so use the streaming methods instead.
+   * 
+   * @param nIndex
+   *        The 0-based column index.
+   * @return The value of the column. May be <code>null</code>.
+   * @throws SQLException
+   *         On error
+   */
+  @Nullable
+  public Object getValue (@Nonnegative final int nIndex) throws SQLException
+  {
+    _checkValid ();
+    return m_aRS.getObject (nIndex + 1);
+  }
+
+  /**
+   * Get a stream to the binary content of the column. The stream is only valid
+   * until the callback returns.
+   * 
+   * @param nIndex
+   *        The 0-based column index.
+   * @return <code>null</code> if the column value is SQL NULL.
+   * @throws SQLException
+   *         On error
+   */
+  @Nullable
+  public InputStream getBinaryStream (@Nonnegative final int nIndex) throws SQLException
+  {
+    _checkValid ();
+    return m_aRS.getBinaryStream (nIndex + 1);
+  }
+
+  /**
+   * Get a reader to the character content of the column. The reader is only
+   * valid until the callback returns.
+   * 
+   * @param nIndex
+   *        The 0-based column index.
+   * @return <code>null</code> if the column value is SQL NULL.
+   * @throws SQLException
+   *         On error
+   */
+  @Nullable
+  public Reader getCharacterStream (@Nonnegative final int nIndex) throws SQLException
+  {
+    _checkValid ();
+    return m_aRS.getCharacterStream (nIndex + 1);
+  }
+
+  /**
+   * Copy the binary content of the column to the passed output stream.
+   * 
+   * @param nIndex
+   *        The 0-based column index.
+   * @param aOS
+   *        The output stream to write to. May not be <code>null</code>. Is not
+   *        closed.
+   * @return The number of bytes copied or -1 if the column value is SQL NULL.
+   * @throws SQLException
+   *         On database error
+   * @throws IOException
+   *         On IO error
+   */
+  public long copyBinaryTo (@Nonnegative final int nIndex, @Nonnull @WillNotClose final OutputStream aOS) throws SQLException,
+                                                                                                          IOException
+  {
+    if (aOS == null)
+      throw new NullPointerException ("outputStream");
+
+    final InputStream aIS = getBinaryStream (nIndex);
+    return aIS == null ? -1 : _copy (aIS, aOS);
+  }
+
+  /**
+   * Copy the binary content of the column to the passed channel.
+   * 
+   * @param nIndex
+   *        The 0-based column index.
+   * @param aChannel
+   *        The channel to write to. May not be <code>null</code>. Is not
+   *        closed.
+   * @return The number of bytes copied or -1 if the column value is SQL NULL.
+   * @throws SQLException
+   *         On database error
+   * @throws IOException
+   *         On IO error
+   */
+  public long copyBinaryTo (@Nonnegative final int nIndex, @Nonnull @WillNotClose final WritableByteChannel aChannel) throws SQLException,
+                                                                                                                     IOException
+  {
+    if (aChannel == null)
+      throw new NullPointerException ("channel");
+
+    final InputStream aIS = getBinaryStream (nIndex);
+    if (aIS == null)
+      return -1;
+    try
+    {
+      final byte [] aBuffer = new byte [COPY_BUFFER_SIZE];
+      final ByteBuffer aBB = ByteBuffer.wrap (aBuffer);
+      long nTotal = 0;
+      int nRead;
+      while ((nRead = aIS.read (aBuffer)) != -1)
+      {
+        aBB.clear ().limit (nRead);
+        while (aBB.hasRemaining ())
+          aChannel.write (aBB);
+        nTotal += nRead;
+      }
+      return nTotal;
+    }
+    finally
+    {
+      StreamUtils.close (aIS);
+    }
+  }
+
+  /**
+   * Copy the binary content of the column to the passed file. An existing file
+   * is overwritten.
+   * 
+   * @param nIndex
+   *        The 0-based column index.
+   * @param aFile
+   *        The file to write to. May not be <code>null</code>.
+   * @return The number of bytes copied or -1 if the column value is SQL NULL
+   *         in which case no file is written.
+   * @throws SQLException
+   *         On database error
+   * @throws IOException
+   *         On IO error
+   */
+  public long copyBinaryTo (@Nonnegative final int nIndex, @Nonnull final File aFile) throws SQLException, IOException
+  {
+    if (aFile == null)
+      throw new NullPointerException ("file");
+
+    final InputStream aIS = getBinaryStream (nIndex);
+    if (aIS == null)
+      return -1;
+
+    final OutputStream aOS = FileUtils.getOutputStream (aFile);
+    if (aOS == null)
+    {
+      StreamUtils.close (aIS);
+      throw new IOException ("Failed to open " + aFile + " for writing");
+    }
+    try
+    {
+      return _copy (aIS, aOS);
+    }
+    finally
+    {
+      StreamUtils.close (aOS);
+    }
+  }
+
+  /**
+   * Copy the character content of the column to the passed writer.
+   * 
+   * @param nIndex
+   *        The 0-based column index.
+   * @param aWriter
+   *        The writer to write to. May not be <code>null</code>. Is not
+   *        closed.
+   * @return The number of characters copied or -1 if the column value is SQL
+   *         NULL.
+   * @throws SQLException
+   *         On database error
+   * @throws IOException
+   *         On IO error
+   */
+  public long copyCharactersTo (@Nonnegative final int nIndex, @Nonnull @WillNotClose final Writer aWriter) throws SQLException,
+                                                                                                             IOException
+  {
+    if (aWriter == null)
+      throw new NullPointerException ("writer");
+
+    final Reader aReader = getCharacterStream (nIndex);
+    return aReader == null ? -1 : _copy (aReader, aWriter);
+  }
+
+  /**
+   * Copy the character content of the column to the passed file. An existing
+   * file is overwritten.
+   * 
+   * @param nIndex
+   *        The 0-based column index.
+   * @param aFile
+   *        The file to write to. May not be <code>null</code>.
+   * @param aCharset
+   *        The charset to use for writing. May not be <code>null</code>.
+   * @return The number of characters copied or -1 if the column value is SQL
+   *         NULL in which case no file is written.
+   * @throws SQLException
+   *         On database error
+   * @throws IOException
+   *         On IO error
+   */
+  public long copyCharactersTo (@Nonnegative final int nIndex,
+                                @Nonnull final File aFile,
+                                @Nonnull final Charset aCharset) throws SQLException, IOException
+  {
+    if (aFile == null)
+      throw new NullPointerException ("file");
+    if (aCharset == null)
+      throw new NullPointerException ("charset");
+
+    final Reader aReader = getCharacterStream (nIndex);
+    if (aReader == null)
+      return -1;
+
+    final OutputStream aOS = FileUtils.getOutputStream (aFile);
+    if (aOS == null)
+    {
+      StreamUtils.close (aReader);
+      throw new IOException ("Failed to open " + aFile + " for writing");
+    }
+    final Writer aWriter = new NonBlockingBufferedWriter (StreamUtils.createWriter (aOS, aCharset));
+    try
+    {
+      final long ret = _copy (aReader, aWriter);
+      aWriter.flush ();
+      return ret;
+    }
+    finally
+    {
+      StreamUtils.close (aWriter);
+    }
+  }
+
+  @Override
+  public String toString ()
+  {
+    return new ToStringGenerator (this).append ("columnNames", m_aColumnNames)
+                                       .append ("columnTypes", m_aColumnTypes)
+                                       .append ("valid", m_bValid)
+                                       .toString ();
+  }
+}
@@ -0,0 +1,465 @@
+/**
+ * Copyright (C) 2006-2015 phloc systems
+ * http://www.phloc.com
+ * office[at]phloc[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.phloc.db.jdbc.executor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+
+import com.phloc.commons.annotations.Nonempty;
+import com.phloc.commons.annotations.ReturnsMutableCopy;
+import com.phloc.commons.collections.ContainerHelper;
+import com.phloc.commons.string.StringHelper;
+import com.phloc.commons.string.ToStringGenerator;
+import com.phloc.db.jdbc.EDatabaseDialect;
+
+/**
+ * Builder for "insert or update" statements. Depending on the dialect the
+ * following statements are created:
+ * <ul>
+ * <li>H2: <code>MERGE INTO ... KEY (...) VALUES (...)</code></li>
+ * <li>MySQL: <code>INSERT ... ON DUPLICATE KEY UPDATE ...</code></li>
+ * <li>Oracle and SQL Server: <code>MERGE INTO ... USING ...</code></li>
+ * <li>DB2: <code>MERGE INTO ... USING (VALUES (CAST(? AS type), ...))</code>
+ * - DB2 does not accept untyped parameter markers in a MERGE source, so the
+ * SQL type of each column is required. It can be passed in the constructor or
+ * it is read from the database meta data by {@link DBExecutor}.</li>
+ * </ul>
+ * For all other databases an UPDATE followed by an INSERT (if no row was
+ * updated) is used. The bind parameters are always all columns in the order
+ * passed in the constructor.<br>
+ * Note: table and column names are used as they are, so they must not stem
+ * from user input!
+ * 
+ * @author Philip Helger
+ */
+@Immutable
+public class DBUpsert
+{
+  private static final String SOURCE_ALIAS = "src";
+
+  private final String m_sTableName;
+  private final List <String> m_aColumnNames;
+  private final List <String> m_aKeyColumnNames;
+  private final List <String> m_aValueColumnNames;
+  private final List <String> m_aColumnTypes;
+
+  /**
+   * Constructor
+   * 
+   * @param sTableName
+   *        The table to upsert into. May neither be <code>null</code> nor
+   *        empty.
+   * @param aColumnNames
+   *        All columns to be written, including the key columns. May neither
+   *        be <code>null</code> nor empty.
+   * @param aKeyColumnNames
+   *        The columns identifying a row. Each key column must be contained in
+   *        the column names. May neither be <code>null</code> nor empty.
+   */
+  public DBUpsert (@Nonnull @Nonempty final String sTableName,
+                   @Nonnull @Nonempty final List <String> aColumnNames,
+                   @Nonnull @Nonempty final List <String> aKeyColumnNames)
+  {
+    this (sTableName, aColumnNames, aKeyColumnNames, null);
+  }
+
+  /**
+   * Constructor
+   * 
+   * @param sTableName
+   *        The table to upsert into. May neither be <code>null</code> nor
+   *        empty.
+   * @param aColumnNames
+   *        All columns to be written, including the key columns. May neither
+   *        be <code>null</code> nor empty.
+   * @param aKeyColumnNames
+   *        The columns identifying a row. Each key column must be contained in
+   *        the column names. May neither be <code>null</code> nor empty.
+   * @param aColumnTypes
+   *        The SQL types of all columns in the order of the column names (e.g.
+   *        <code>INTEGER</code> or <code>VARCHAR(20)</code>) as used for the
+   *        typed parameter markers of DB2. May be <code>null</code> in which
+   *        case the types are read from the database meta data if required.
+   */
+  public DBUpsert (@Nonnull @Nonempty final String sTableName,
+                   @Nonnull @Nonempty final List <String> aColumnNames,
+                   @Nonnull @Nonempty final List <String> aKeyColumnNames,
+                   @Nullable final List <String> aColumnTypes)
+  {
+    if (StringHelper.hasNoText (sTableName))
+      throw new IllegalArgumentException ("tableName");
+    if (ContainerHelper.isEmpty (aColumnNames))
+      throw new IllegalArgumentException ("columnNames may not be empty");
+    if (ContainerHelper.isEmpty (aKeyColumnNames))
+      throw new IllegalArgumentException ("keyColumnNames may not be empty");
+    for (final String sColumnName : aColumnNames)
+      if (StringHelper.hasNoText (sColumnName))
+        throw new IllegalArgumentException ("columnNames may not contain empty names: " + aColumnNames);
+    for (final String sKeyColumnName : aKeyColumnNames)
+      if (!aColumnNames.contains (sKeyColumnName))
+        throw new IllegalArgumentException ("Key column '" + sKeyColumnName + "' is not contained in " + aColumnNames);
+    m_sTableName = sTableName;
+    m_aColumnNames = ContainerHelper.newList (aColumnNames);
+    m_aKeyColumnNames = ContainerHelper.newList (aKeyColumnNames);
+    m_aValueColumnNames = ContainerHelper.newList (aColumnNames);
+    m_aValueColumnNames.removeAll (aKeyColumnNames);
+    if (aColumnTypes != null)
+      _checkColumnTypes (aColumnTypes);
+    m_aColumnTypes = aColumnTypes == null ? null : ContainerHelper.newList (aColumnTypes);
+  }
+
+  private void _checkColumnTypes (@Nonnull final List <String> aColumnTypes)
+  {
+    if (aColumnTypes.size () != m_aColumnNames.size ())
+      throw new IllegalArgumentException ("column type count (" +
+                                          aColumnTypes.size () +
+                                          ") does not match column count (" +
+                                          m_aColumnNames.size () +
+                                          ")");
+    for (final String sColumnType : aColumnTypes)
+      if (StringHelper.hasNoText (sColumnType))
+        throw new IllegalArgumentException ("columnTypes may not contain empty types: " + aColumnTypes);
+  }
+
+  @Nonnull
+  @Nonempty
+  public String getTableName ()
+  {
+    return m_sTableName;
+  }
+
+  @Nonnull
+  @ReturnsMutableCopy
+  public List <String> getAllColumnNames ()
+  {
+    return ContainerHelper.newList (m_aColumnNames);
+  }
+
+  @Nonnull
+  @ReturnsMutableCopy
+  public List <String> getAllKeyColumnNames ()
+  {
+    return ContainerHelper.newList (m_aKeyColumnNames);
+  }
+
+  /**
+   * @return <code>true</code> if the column types were passed in the
+   *         constructor.
+   */
+  public boolean hasColumnTypes ()
+  {
+    return m_aColumnTypes != null;
+  }
+
+  /**
+   * @return The column types passed in the constructor or <code>null</code>
+   *         if none were passed.
+   */
+  @Nullable
+  @ReturnsMutableCopy
+  public List <String> getAllColumnTypes ()
+  {
+    return m_aColumnTypes == null ? null : ContainerHelper.newList (m_aColumnTypes);
+  }
+
+  @Nonnegative
+  public int getColumnCount ()
+  {
+    return m_aColumnNames.size ();
+  }
+
+  private static void _appendList (@Nonnull final StringBuilder aSB,
+                                   @Nonnull final List <String> aNames,
+                                   @Nonnull final String sPrefix)
+  {
+    int nIndex = 0;
+    for (final String sName : aNames)
+    {
+      if (nIndex++ > 0)
+        aSB.append (", ");
+      aSB.append (sPrefix).append (sName);
+    }
+  }
+
+  private void _appendPlaceholders (@Nonnull final StringBuilder aSB)
+  {
+    for (int i = 0; i < m_aColumnNames.size (); ++i)
+    {
+      if (i > 0)
+        aSB.append (", ");
+      aSB.append ('?');
+    }
+  }
+
+  private void _appendMergeBody (@Nonnull final StringBuilder aSB)
+  {
+    // ON
+    aSB.append (" ON (");
+    int nIndex = 0;
+    for (final String sKeyColumnName : m_aKeyColumnNames)
+    {
+      if (nIndex++ > 0)
+        aSB.append (" AND ");
+      aSB.append (m_sTableName)
+         .append ('.')
+         .append (sKeyColumnName)
+         .append (" = ")
+         .append (SOURCE_ALIAS)
+         .append ('.')
+         .append (sKeyColumnName);
+    }
+    aSB.append (')');
+
+    // Update only if there is something to update
+    if (!m_aValueColumnNames.isEmpty ())
+    {
+      aSB.append (" WHEN MATCHED THEN UPDATE SET ");
+      nIndex = 0;
+      for (final String sValueColumnName : m_aValueColumnNames)
+      {
+        if (nIndex++ > 0)
+          aSB.append (", ");
+        aSB.append (sValueColumnName).append (" = ").append (SOURCE_ALIAS).append ('.').append (sValueColumnName);
+      }
+    }
+
+    aSB.append (" WHEN NOT MATCHED THEN INSERT (");
+    _appendList (aSB, m_aColumnNames, "");
+    aSB.append (") VALUES (");
+    _appendList (aSB, m_aColumnNames, SOURCE_ALIAS + ".");
+    aSB.append (')');
+  }
+
+  /**
+   * Create the single statement upsert SQL for the passed dialect using the
+   * column types passed in the constructor.
+   * 
+   * @param eDialect
+   *        The dialect to use. May not be <code>null</code>. Must support
+   *        upserts.
+   * @return The SQL string with one placeholder per column. Never
+   *         <code>null</code>.
+   * @see EDatabaseDialect#isUpsertSupported()
+   */
+  @Nonnull
+  @Nonempty
+  public String getSQL (@Nonnull final EDatabaseDialect eDialect)
+  {
+    return getSQL (eDialect, m_aColumnTypes);
+  }
+
+  /**
+   * Create the single statement upsert SQL for the passed dialect.
+   * 
+   * @param eDialect
+   *        The dialect to use. May not be <code>null</code>. Must support
+   *        upserts.
+   * @param aColumnTypes
+   *        The SQL types of all columns in the order of the column names. Only
+   *        required for DB2 and ignored for all other dialects. May be
+   *        <code>null</code>.
+   * @return The SQL string with one placeholder per column. Never
+   *         <code>null</code>.
+   * @see EDatabaseDialect#isUpsertSupported()
+   */
+  @Nonnull
+  @Nonempty
+  public String getSQL (@Nonnull final EDatabaseDialect eDialect, @Nullable final List <String> aColumnTypes)
+  {
+    if (eDialect == null)
+      throw new NullPointerException ("dialect");
+
+    final StringBuilder aSB = new StringBuilder ();
+    switch (eDialect)
+    {
+      case H2:
+        aSB.append ("MERGE INTO ").append (m_sTableName).append (" (");
+        _appendList (aSB, m_aColumnNames, "");
+        aSB.append (") KEY (");
+        _appendList (aSB, m_aKeyColumnNames, "");
+        aSB.append (") VALUES (");
+        _appendPlaceholders (aSB);
+        aSB.append (')');
+        break;
+      case MYSQL:
+        aSB.append ("INSERT INTO ").append (m_sTableName).append (" (");
+        _appendList (aSB, m_aColumnNames, "");
+        aSB.append (") VALUES (");
+        _appendPlaceholders (aSB);
+        aSB.append (") ON DUPLICATE KEY UPDATE ");
+        if (m_aValueColumnNames.isEmpty ())
+        {
+          // No-op update to ignore duplicates
+          final String sKeyColumnName = m_aKeyColumnNames.get (0);
+          aSB.append (sKeyColumnName).append (" = ").append (sKeyColumnName);
+        }
+        else
+        {
+          int nIndex = 0;
+          for (final String sValueColumnName : m_aValueColumnNames)
+          {
+            if (nIndex++ > 0)
+              aSB.append (", ");
+            aSB.append (sValueColumnName).append (" = VALUES(").append (sValueColumnName).append (')');
+          }
+        }
+        break;
+      case ORACLE:
+        aSB.append ("MERGE INTO ").append (m_sTableName).append (" USING (SELECT ");
+        int nIndex = 0;
+        for (final String sColumnName : m_aColumnNames)
+        {
+          if (nIndex++ > 0)
+            aSB.append (", ");
+          aSB.append ("? ").append (sColumnName);
+        }
+        aSB.append (" FROM DUAL) ").append (SOURCE_ALIAS);
+        _appendMergeBody (aSB);
+        break;
+      case MSSQL:
+        aSB.append ("MERGE INTO ").append (m_sTableName).append (" USING (VALUES (");
+        _appendPlaceholders (aSB);
+        aSB.append (")) AS ").append (SOURCE_ALIAS).append (" (");
+        _appendList (aSB, m_aColumnNames, "");
+        aSB.append (')');
+        _appendMergeBody (aSB);
+        // SQL Server requires MERGE to be terminated
+        aSB.append (';');
+        break;
+      case DB2:
+        if (aColumnTypes == null)
+          throw new IllegalArgumentException ("DB2 upserts require the column types");
+        _checkColumnTypes (aColumnTypes);
+        aSB.append ("MERGE INTO ").append (m_sTableName).append (" USING (VALUES (");
+        nIndex = 0;
+        for (final String sColumnType : aColumnTypes)
+        {
+          if (nIndex++ > 0)
+            aSB.append (", ");
+          aSB.append ("CAST(? AS ").append (sColumnType).append (')');
+        }
+        aSB.append (")) AS ").append (SOURCE_ALIAS).append (" (");
+        _appendList (aSB, m_aColumnNames, "");
+        aSB.append (')');
+        _appendMergeBody (aSB);
+        break;
+      default:
+        throw new IllegalArgumentException ("Dialect " + eDialect + " does not support upserts");
+    }
+    return aSB.toString ();
+  }
+
+  /**
+   * @return The UPDATE statement used as the fallback for dialects not
+   *         supporting upserts. The bind parameters are all value columns
+   *         followed by all key columns. If there are no value columns, the
+   *         key columns are updated with themselves.
+   */
+  @Nonnull
+  @Nonempty
+  public String getFallbackUpdateSQL ()
+  {
+    final StringBuilder aSB = new StringBuilder ("UPDATE ").append (m_sTableName).append (" SET ");
+    final List <String> aSetColumns = m_aValueColumnNames.isEmpty () ? m_aKeyColumnNames : m_aValueColumnNames;
+    int nIndex = 0;
+    for (final String sColumnName : aSetColumns)
+    {
+      if (nIndex++ > 0)
+        aSB.append (", ");
+      aSB.append (sColumnName).append (" = ?");
+    }
+    aSB.append (" WHERE ");
+    nIndex = 0;
+    for (final String sKeyColumnName : m_aKeyColumnNames)
+    {
+      if (nIndex++ > 0)
+        aSB.append (" AND ");
+      aSB.append (sKeyColumnName).append (" = ?");
+    }
+    return aSB.toString ();
+  }
+
+  /**
+   * Get the bind values for the fallback UPDATE statement.
+   * 
+   * @param aValues
+   *        All values in column order. May not be <code>null</code>.
+   * @return The values in the order required by
+   *         {@link #getFallbackUpdateSQL()}. Never <code>null</code>.
+   */
+  @Nonnull
+  @ReturnsMutableCopy
+  public List <Object> getFallbackUpdateValues (@Nonnull final List <Object> aValues)
+  {
+    final List <String> aSetColumns = m_aValueColumnNames.isEmpty () ? m_aKeyColumnNames : m_aValueColumnNames;
+    final List <Object> ret = new ArrayList <Object> (aSetColumns.size () + m_aKeyColumnNames.size ());
+    for (final String sColumnName : aSetColumns)
+      ret.add (aValues.get (m_aColumnNames.indexOf (sColumnName)));
+    for (final String sKeyColumnName : m_aKeyColumnNames)
+      ret.add (aValues.get (m_aColumnNames.indexOf (sKeyColumnName)));
+    return ret;
+  }
+
+  /**
+   * Get the key values of a row.
+   * 
+   * @param aValues
+   *        All values in column order. May not be <code>null</code>.
+   * @return The values of all key columns in key column order. Never
+   *         <code>null</code>.
+   */
+  @Nonnull
+  @ReturnsMutableCopy
+  public List <Object> getKeyValues (@Nonnull final List <Object> aValues)
+  {
+    final List <Object> ret = new ArrayList <Object> (m_aKeyColumnNames.size ());
+    for (final String sKeyColumnName : m_aKeyColumnNames)
+      ret.add (aValues.get (m_aColumnNames.indexOf (sKeyColumnName)));
+    return ret;
+  }
+
+  /**
+   * @return The INSERT statement used as the fallback for dialects not
+   *         supporting upserts. The bind parameters are all columns.
+   */
+  @Nonnull
+  @Nonempty
+  public String getFallbackInsertSQL ()
+  {
+    final StringBuilder aSB = new StringBuilder ("INSERT INTO ").append (m_sTableName).append (" (");
+    _appendList (aSB, m_aColumnNames, "");
+    aSB.append (") VALUES (");
+    _appendPlaceholders (aSB);
+    return aSB.append (')').toString ();
+  }
+
+  @Override
+  public String toString ()
+  {
+    return new ToStringGenerator (this).append ("tableName", m_sTableName)
+                                       .append ("columnNames", m_aColumnNames)
+                                       .append ("keyColumnNames", m_aKeyColumnNames)
+                                       .appendIfNotNull ("columnTypes", m_aColumnTypes)
+                                       .toString ();
+  }
+}
@@ -0,0 +1,171 @@
+/**
+ * Copyright (C) 2006-2015 phloc systems
+ * http://www.phloc.com
+ * office[at]phloc[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.phloc.db.jdbc.executor;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * Listener interface for the operations of a {@link DBExecutor}, e.g. for
+ * tracing, metrics or auditing. All methods are invoked synchronously in the
+ * thread performing the operation, so implementations must be fast and
+ * thread-safe. Exceptions thrown by a listener are logged and otherwise
+ * ignored. Durations are measured with {@link System#nanoTime()}.<br>
+ * Use {@link AbstractDBExecutorListener} as a base class if only some events
+ * are of interest.
+ * 
+ * @author Philip Helger
+ */
+public interface IDBExecutorListener
+{
+  /**
+   * Called before a connection is requested from the connection provider.
+   * 
+   * @param aExecutor
+   *        The source executor. Never <code>null</code>.
+   */
+  void beforeConnectionAcquire (@Nonnull DBExecutor aExecutor);
+
+  /**
+   * Called after a connection was requested from the connection provider.
+   * 
+   * @param aExecutor
+   *        The source executor. Never <code>null</code>.
+   * @param nDurationNanos
+   *        The time it took to get the connection.
+   * @param bSuccess
+   *        <code>true</code> if a connection was retrieved.
+   */
+  void afterConnectionAcquire (@Nonnull DBExecutor aExecutor, @Nonnegative long nDurationNanos, boolean bSuccess);
+
+  /**
+   * Called before a statement is prepared.
+   * 
+   * @param aExecutor
+   *        The source executor. Never <code>null</code>.
+   * @param sSQL
+   *        The SQL to be prepared.
+   */
+  void beforePrepare (@Nonnull DBExecutor aExecutor, @Nonnull String sSQL);
+
+  /**
+   * Called after a statement was prepared.
+   * 
+   * @param aExecutor
+   *        The source executor. Never <code>null</code>.
+   * @param sSQL
+   *        The prepared SQL.
+   * @param nDurationNanos
+   *        The time it took to prepare the statement.
+   * @param bSuccess
+   *        <code>true</code> if the statement was prepared successfully.
+   */
+  void afterPrepare (@Nonnull DBExecutor aExecutor,
+                     @Nonnull String sSQL,
+                     @Nonnegative long nDurationNanos,
+                     boolean bSuccess);
+
+  /**
+   * Called before a statement is executed.
+   * 
+   * @param aExecutor
+   *        The source executor. Never <code>null</code>.
+   * @param sSQL
+   *        The SQL to be executed. May be <code>null</code> if a custom
+   *        statement callback is used.
+   */
+  void beforeExecute (@Nonnull DBExecutor aExecutor, @Nullable String sSQL);
+
+  /**
+   * Called after a statement was executed. For queries the duration includes
+   * fetching and processing all rows.
+   * 
+   * @param aExecutor
+   *        The source executor. Never <code>null</code>.
+   * @param sSQL
+   *        The executed SQL. May be <code>null</code> if a custom statement
+   *        callback is used.
+   * @param nDurationNanos
+   *        The execution time.
+   * @param bSuccess
+   *        <code>true</code> if the statement was executed successfully.
+   */
+  void afterExecute (@Nonnull DBExecutor aExecutor,
+                     @Nullable String sSQL,
+                     @Nonnegative long nDurationNanos,
+                     boolean bSuccess);
+
+  /**
+   * Called after a block of rows of a query result was fetched and processed.
+   * The block size is the fetch size of the result set or
+   * {@link DBExecutor#DEFAULT_LISTENER_ROW_BLOCK_SIZE}. The last block may be
+   * smaller.
+   * 
+   * @param aExecutor
+   *        The source executor. Never <code>null</code>.
+   * @param sSQL
+   *        The executed query. May be <code>null</code> if unknown.
+   * @param nRowCount
+   *        The number of rows in this block.
+   * @param nDurationNanos
+   *        The time it took to fetch and process the rows of this block.
+   */
+  void onRowBlockFetched (@Nonnull DBExecutor aExecutor,
+                          @Nullable String sSQL,
+                          @Nonnegative int nRowCount,
+                          @Nonnegative long nDurationNanos);
+
+  /**
+   * Called before a transaction is committed.
+   * 
+   * @param aExecutor
+   *        The source executor. Never <code>null</code>.
+   */
+  void beforeCommit (@Nonnull DBExecutor aExecutor);
+
+  /**
+   * Called after a transaction was committed.
+   * 
+   * @param aExecutor
+   *        The source executor. Never <code>null</code>.
+   * @param nDurationNanos
+   *        The time it took to commit.
+   * @param bSuccess
+   *        <code>true</code> if the commit succeeded.
+   */
+  void afterCommit (@Nonnull DBExecutor aExecutor, @Nonnegative long nDurationNanos, boolean bSuccess);
+
+  /**
+   * Called before a transaction is rolled back.
+   * 
+   * @param aExecutor
+   *        The source executor. Never <code>null</code>.
+   */
+  void beforeRollback (@Nonnull DBExecutor aExecutor);
+
+  /**
+   * Called after a transaction was rolled back.
+   * 
+   * @param aExecutor
+   *        The source executor. Never <code>null</code>.
+   * @param nDurationNanos
+   *        The time it took to roll back.
+   */
+  void afterRollback (@Nonnull DBExecutor aExecutor, @Nonnegative long nDurationNanos);
+}
@@ -0,0 +1,45 @@
+/**
+ * Copyright (C) 2006-2015 phloc systems
+ * http://www.phloc.com
+ * office[at]phloc[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.phloc.db.jdbc.executor;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+import javax.annotation.Nonnull;
+
+/**
+ * A single write operation that is executed together with other operations
+ * by a {@link DBGroupCommitter}. The operation may be executed more than once
+ * if another operation of the same group fails, so it must not have side
+ * effects outside of the database.
+ * 
+ * @author Philip Helger
+ */
+public interface IGroupCommitOperation
+{
+  /**
+   * Execute the operation. Neither commit nor rollback may be called.
+   * 
+   * @param aConnection
+   *        The connection to use. Never <code>null</code>.
+   * @return The number of modified rows.
+   * @throws SQLException
+   *         On error
+   */
+  int execute (@Nonnull Connection aConnection) throws SQLException;
+}
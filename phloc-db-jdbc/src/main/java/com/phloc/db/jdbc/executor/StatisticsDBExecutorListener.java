@@ -0,0 +1,91 @@
+/**
+ * Copyright (C) 2006-2015 phloc systems
+ * http://www.phloc.com
+ * office[at]phloc[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.phloc.db.jdbc.executor;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+
+import com.phloc.commons.stats.IStatisticsHandlerKeyedCounter;
+import com.phloc.commons.stats.IStatisticsHandlerKeyedTimer;
+import com.phloc.commons.stats.StatisticsManager;
+import com.phloc.db.api.sql.SQLNormalizer;
+
+/**
+ * An {@link IDBExecutorListener} that records the execution time and the
+ * number of failures per statement in the {@link StatisticsManager}. The
+ * statements are keyed by their normalized SQL (see {@link SQLNormalizer}) so
+ * that statements differing only in literal values are aggregated.
+ * 
+ * @author Philip Helger
+ */
+@ThreadSafe
+public class StatisticsDBExecutorListener extends AbstractDBExecutorListener
+{
+  /** The maximum number of raw SQL strings for which the key is cached */
+  public static final int MAX_CACHED_KEYS = 1000;
+  /** The key used for statements without SQL */
+  public static final String KEY_UNKNOWN = "unknown";
+
+  private static final IStatisticsHandlerKeyedTimer s_aStatsTimerExecution = StatisticsManager.getKeyedTimerHandler (DBExecutor.class.getName () +
+                                                                                                                     "$execute");
+  private static final IStatisticsHandlerKeyedCounter s_aStatsCounterError = StatisticsManager.getKeyedCounterHandler (DBExecutor.class.getName () +
+                                                                                                                       "$error");
+
+  private final Map <String, String> m_aKeyCache = new ConcurrentHashMap <String, String> ();
+
+  /**
+   * Get the statistics key of the passed SQL.
+   * 
+   * @param sSQL
+   *        The raw SQL. May be <code>null</code>.
+   * @return The normalized SQL. Never <code>null</code>.
+   */
+  @Nonnull
+  protected String getKey (@Nullable final String sSQL)
+  {
+    if (sSQL == null)
+      return KEY_UNKNOWN;
+
+    String ret = m_aKeyCache.get (sSQL);
+    if (ret == null)
+    {
+      ret = SQLNormalizer.getNormalized (sSQL);
+      // Statements with inlined values may be unique - so limit the cache
+      if (m_aKeyCache.size () < MAX_CACHED_KEYS)
+        m_aKeyCache.put (sSQL, ret);
+    }
+    return ret;
+  }
+
+  @Override
+  public void afterExecute (@Nonnull final DBExecutor aExecutor,
+                            @Nullable final String sSQL,
+                            @Nonnegative final long nDurationNanos,
+                            final boolean bSuccess)
+  {
+    final String sKey = getKey (sSQL);
+    s_aStatsTimerExecution.addTime (sKey, nDurationNanos / 1000000);
+    if (!bSuccess)
+      s_aStatsCounterError.increment (sKey);
+  }
+}
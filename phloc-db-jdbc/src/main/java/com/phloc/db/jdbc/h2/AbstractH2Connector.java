@@ -18,27 +18,50 @@
 package com.phloc.db.jdbc.h2;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.PrintWriter;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.locks.Lock;
 
+import javax.annotation.Nonnegative;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import javax.annotation.WillClose;
 
 import org.h2.api.DatabaseEventListener;
+import org.h2.util.ScriptReader;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.phloc.commons.annotations.Nonempty;
+import com.phloc.commons.annotations.ReturnsMutableCopy;
+import com.phloc.commons.callback.INonThrowingRunnableWithParameter;
 import com.phloc.commons.charset.CCharset;
 import com.phloc.commons.io.file.FileUtils;
 import com.phloc.commons.io.streams.NonBlockingBufferedWriter;
 import com.phloc.commons.io.streams.StreamUtils;
 import com.phloc.commons.state.ESuccess;
 import com.phloc.db.api.CJDBC_H2;
+import com.phloc.db.api.h2.EH2ConnectionProperty;
+import com.phloc.db.api.h2.H2BulkLoadMode;
+import com.phloc.db.api.h2.H2ConnectionProperties;
 import com.phloc.db.api.h2.H2EventListener;
+import com.phloc.db.api.h2.H2Helper;
+import com.phloc.db.api.jdbc.JDBCHelper;
 import com.phloc.db.jdbc.AbstractConnector;
+import com.phloc.db.jdbc.IConnectionProvider;
 import com.phloc.db.jdbc.callback.IResultSetRowCallback;
 import com.phloc.db.jdbc.executor.DBExecutor;
 import com.phloc.db.jdbc.executor.DBResultRow;
@@ -51,12 +74,17 @@ public abstract class AbstractH2Connector extends AbstractConnector
   public static final int DEFAULT_TRACE_LEVEL_SYSOUT = 0;
   /** Default close on exit: true */
   public static final boolean DEFAULT_CLOSE_ON_EXIT = true;
+  /** Default number of statements per batch when restoring a dump */
+  public static final int DEFAULT_RESTORE_BATCH_SIZE = 1000;
+  /** Number of dumped statements after which the progress is reported */
+  public static final int DEFAULT_PROGRESS_INTERVAL = 1000;
   private static final Logger s_aLogger = LoggerFactory.getLogger (AbstractH2Connector.class);
 
   private int m_nTraceLevelFile = DEFAULT_TRACE_LEVEL_FILE;
   private int m_nTraceLevelSysOut = DEFAULT_TRACE_LEVEL_SYSOUT;
   private Class <? extends DatabaseEventListener> m_aEventListenerClass = H2EventListener.class;
   private boolean m_bCloseOnExit = DEFAULT_CLOSE_ON_EXIT;
+  private H2ConnectionProperties m_aConnectionProperties = new H2ConnectionProperties ();
 
   public AbstractH2Connector ()
   {}
@@ -174,27 +202,124 @@ public abstract class AbstractH2Connector extends AbstractConnector
     }
   }
 
+  /**
+   * @return A copy of the additional connection properties. Never
+   *         <code>null</code>.
+   */
+  @Nonnull
+  @ReturnsMutableCopy
+  public final H2ConnectionProperties getConnectionProperties ()
+  {
+    getLock ().lock ();
+    try
+    {
+      return new H2ConnectionProperties (m_aConnectionProperties);
+    }
+    finally
+    {
+      getLock ().unlock ();
+    }
+  }
+
+  /**
+   * Set additional connection properties, e.g. created from an
+   * {@link com.phloc.db.api.h2.EH2ConnectionPreset}. They take precedence over
+   * the other settings of this connector and only take effect for data sources
+   * created afterwards.
+   * 
+   * @param aConnectionProperties
+   *        The properties to use. Are copied. May be <code>null</code> to
+   *        remove all additional properties.
+   */
+  public final void setConnectionProperties (@Nullable final H2ConnectionProperties aConnectionProperties)
+  {
+    getLock ().lock ();
+    try
+    {
+      m_aConnectionProperties = aConnectionProperties == null ? new H2ConnectionProperties ()
+                                                              : new H2ConnectionProperties (aConnectionProperties);
+    }
+    finally
+    {
+      getLock ().unlock ();
+    }
+  }
+
   @Override
   @Nonnull
   public final String getConnectionUrl ()
   {
-    final StringBuilder ret = new StringBuilder (CJDBC_H2.CONNECTION_PREFIX);
-    ret.append (getDatabase ());
+    final Map <String, String> aProps = new LinkedHashMap <String, String> ();
     if (m_nTraceLevelFile != DEFAULT_TRACE_LEVEL_FILE)
-      ret.append (";TRACE_LEVEL_FILE=").append (m_nTraceLevelFile);
+      aProps.put (EH2ConnectionProperty.TRACE_LEVEL_FILE.getName (), Integer.toString (m_nTraceLevelFile));
     if (m_nTraceLevelSysOut != DEFAULT_TRACE_LEVEL_SYSOUT)
-      ret.append (";TRACE_LEVEL_SYSTEM_OUT=").append (m_nTraceLevelSysOut);
+      aProps.put (EH2ConnectionProperty.TRACE_LEVEL_SYSTEM_OUT.getName (), Integer.toString (m_nTraceLevelSysOut));
     if (m_aEventListenerClass != null)
-      ret.append (";DATABASE_EVENT_LISTENER='").append (m_aEventListenerClass.getName ()).append ("'");
+      aProps.put ("DATABASE_EVENT_LISTENER", "'" + m_aEventListenerClass.getName () + "'");
     if (m_bCloseOnExit != DEFAULT_CLOSE_ON_EXIT)
-      ret.append (";DB_CLOSE_ON_EXIT=").append (Boolean.toString (m_bCloseOnExit).toUpperCase (Locale.US));
-    return ret.toString ();
+      aProps.put (EH2ConnectionProperty.DB_CLOSE_ON_EXIT.getName (),
+                  Boolean.toString (m_bCloseOnExit).toUpperCase (Locale.US));
+    // Explicit connection properties take precedence
+    aProps.putAll (m_aConnectionProperties.getAsMap ());
+    return H2Helper.buildJDBCString (CJDBC_H2.CONNECTION_PREFIX + getDatabase (), aProps);
   }
 
   @Nonnull
   public final ESuccess dumpDatabase (@Nonnull final File aFile)
   {
-    return dumpDatabase (FileUtils.getOutputStream (aFile));
+    return dumpDatabase (aFile, EH2DumpCompression.NONE, null);
+  }
+
+  /**
+   * Dump the database to the passed file.
+   * 
+   * @param aFile
+   *        The file to dump the DB content to. May not be <code>null</code>.
+   * @param eCompression
+   *        The compression to use. May not be <code>null</code>.
+   * @param aProgressCallback
+   *        An optional callback to be notified about the progress. May be
+   *        <code>null</code>.
+   * @return {@link ESuccess}
+   */
+  @Nonnull
+  public final ESuccess dumpDatabase (@Nonnull final File aFile,
+                                      @Nonnull final EH2DumpCompression eCompression,
+                                      @Nullable final IH2ProgressCallback aProgressCallback)
+  {
+    if (aFile == null)
+      throw new NullPointerException ("file");
+
+    final OutputStream aOS = FileUtils.getOutputStream (aFile);
+    if (aOS == null)
+    {
+      s_aLogger.error ("Failed to open dump file " + aFile);
+      return ESuccess.FAILURE;
+    }
+    return dumpDatabase (aOS, eCompression, aProgressCallback);
+  }
+
+  /**
+   * Dump the database to the passed channel and close the channel.
+   * 
+   * @param aChannel
+   *        The channel to dump the DB content to. May not be <code>null</code>.
+   *        Automatically closed when done.
+   * @param eCompression
+   *        The compression to use. May not be <code>null</code>.
+   * @param aProgressCallback
+   *        An optional callback to be notified about the progress. May be
+   *        <code>null</code>.
+   * @return {@link ESuccess}
+   */
+  @Nonnull
+  public final ESuccess dumpDatabase (@Nonnull @WillClose final WritableByteChannel aChannel,
+                                      @Nonnull final EH2DumpCompression eCompression,
+                                      @Nullable final IH2ProgressCallback aProgressCallback)
+  {
+    if (aChannel == null)
+      throw new NullPointerException ("channel");
+    return dumpDatabase (Channels.newOutputStream (aChannel), eCompression, aProgressCallback);
   }
 
   /**
@@ -209,31 +334,72 @@ public abstract class AbstractH2Connector extends AbstractConnector
    */
   @Nonnull
   public final ESuccess dumpDatabase (@Nonnull @WillClose final OutputStream aOS)
+  {
+    return dumpDatabase (aOS, EH2DumpCompression.NONE, null);
+  }
+
+  /**
+   * Dump the database to the passed output stream and closed the passed output
+   * stream. The output of the "SCRIPT" command is streamed through the
+   * compression directly into the passed stream.
+   * 
+   * @param aOS
+   *        The output stream to dump the DB content to. May not be
+   *        <code>null</code>. Automatically closed when done.
+   * @param eCompression
+   *        The compression to use. May not be <code>null</code>.
+   * @param aProgressCallback
+   *        An optional callback to be notified about the progress. May be
+   *        <code>null</code>.
+   * @return {@link ESuccess}
+   */
+  @Nonnull
+  public final ESuccess dumpDatabase (@Nonnull @WillClose final OutputStream aOS,
+                                      @Nonnull final EH2DumpCompression eCompression,
+                                      @Nullable final IH2ProgressCallback aProgressCallback)
   {
     if (aOS == null)
       throw new NullPointerException ("outputStream");
+    if (eCompression == null)
+    {
+      StreamUtils.close (aOS);
+      throw new NullPointerException ("compression");
+    }
 
     // Save the DB data to an SQL file
     try
     {
-      s_aLogger.info ("Dumping database '" + getDatabase () + "' to OutputStream");
-      final PrintWriter aPrintWriter = new PrintWriter (new NonBlockingBufferedWriter (StreamUtils.createWriter (aOS,
+      s_aLogger.info ("Dumping database '" + getDatabase () + "' to OutputStream using compression " + eCompression);
+      final PrintWriter aPrintWriter = new PrintWriter (new NonBlockingBufferedWriter (StreamUtils.createWriter (eCompression.getCompressingOutputStream (aOS),
                                                                                                                  CCharset.CHARSET_UTF_8_OBJ)));
       try
       {
+        final long [] aCounts = new long [2];
         final DBExecutor aExecutor = new DBExecutor (this);
-        final ESuccess ret = aExecutor.queryAll ("SCRIPT SIMPLE", new IResultSetRowCallback ()
+        ESuccess ret = aExecutor.queryAll ("SCRIPT SIMPLE", new IResultSetRowCallback ()
         {
           public void run (@Nullable final DBResultRow aCurrentObject)
           {
             if (aCurrentObject != null)
             {
               // The value of the first column is the script line
-              aPrintWriter.println (aCurrentObject.get (0).getValue ());
+              final String sLine = aCurrentObject.get (0).getAsString ();
+              aPrintWriter.println (sLine);
+              aCounts[0]++;
+              aCounts[1] += sLine.length () + 1;
+              if (aProgressCallback != null && aCounts[0] % DEFAULT_PROGRESS_INTERVAL == 0)
+                aProgressCallback.onProgress (aCounts[0], aCounts[1]);
             }
           }
         });
         aPrintWriter.flush ();
+        if (aPrintWriter.checkError ())
+        {
+          s_aLogger.error ("Failed to write dump of database '" + getDatabase () + "'");
+          ret = ESuccess.FAILURE;
+        }
+        if (aProgressCallback != null)
+          aProgressCallback.onProgress (aCounts[0], aCounts[1]);
         return ret;
       }
       finally
@@ -241,12 +407,199 @@ public abstract class AbstractH2Connector extends AbstractConnector
         StreamUtils.close (aPrintWriter);
       }
     }
+    catch (final IOException ex)
+    {
+      s_aLogger.error ("Failed to create dump of database '" + getDatabase () + "'", ex);
+      return ESuccess.FAILURE;
+    }
     finally
     {
       StreamUtils.close (aOS);
     }
   }
 
+  /**
+   * Restore a database dump from the passed file into this database.
+   * 
+   * @param aFile
+   *        The file containing the dump. May not be <code>null</code>.
+   * @param eCompression
+   *        The compression of the dump. May not be <code>null</code>.
+   * @param nBatchSize
+   *        The number of statements to be executed in a single batch. After
+   *        each batch the transaction is committed. Must be &gt; 0.
+   * @param aProgressCallback
+   *        An optional callback to be notified about the progress. May be
+   *        <code>null</code>.
+   * @return {@link ESuccess}
+   */
+  @Nonnull
+  public final ESuccess restoreDatabase (@Nonnull final File aFile,
+                                         @Nonnull final EH2DumpCompression eCompression,
+                                         @Nonnegative final int nBatchSize,
+                                         @Nullable final IH2ProgressCallback aProgressCallback)
+  {
+    if (aFile == null)
+      throw new NullPointerException ("file");
+
+    final InputStream aIS = FileUtils.getInputStream (aFile);
+    if (aIS == null)
+    {
+      s_aLogger.error ("Failed to open dump file " + aFile);
+      return ESuccess.FAILURE;
+    }
+    return restoreDatabase (aIS, eCompression, nBatchSize, aProgressCallback);
+  }
+
+  /**
+   * Restore a database dump from the passed channel into this database and
+   * close the channel.
+   * 
+   * @param aChannel
+   *        The channel to read the dump from. May not be <code>null</code>.
+   *        Automatically closed when done.
+   * @param eCompression
+   *        The compression of the dump. May not be <code>null</code>.
+   * @param nBatchSize
+   *        The number of statements to be executed in a single batch. After
+   *        each batch the transaction is committed. Must be &gt; 0.
+   * @param aProgressCallback
+   *        An optional callback to be notified about the progress. May be
+   *        <code>null</code>.
+   * @return {@link ESuccess}
+   */
+  @Nonnull
+  public final ESuccess restoreDatabase (@Nonnull @WillClose final ReadableByteChannel aChannel,
+                                         @Nonnull final EH2DumpCompression eCompression,
+                                         @Nonnegative final int nBatchSize,
+                                         @Nullable final IH2ProgressCallback aProgressCallback)
+  {
+    if (aChannel == null)
+      throw new NullPointerException ("channel");
+    return restoreDatabase (Channels.newInputStream (aChannel), eCompression, nBatchSize, aProgressCallback);
+  }
+
+  /**
+   * Restore a database dump from the passed input stream into this database
+   * and close the input stream. The statements are read one by one from the
+   * stream and executed in batches, so that the dump is never held in memory
+   * or written to a temporary file.
+   * 
+   * @param aIS
+   *        The input stream to read the dump from. May not be
+   *        <code>null</code>. Automatically closed when done.
+   * @param eCompression
+   *        The compression of the dump. May not be <code>null</code>.
+   * @param nBatchSize
+   *        The number of statements to be executed in a single batch. After
+   *        each batch the transaction is committed. Must be &gt; 0.
+   * @param aProgressCallback
+   *        An optional callback to be notified about the progress. May be
+   *        <code>null</code>.
+   * @return {@link ESuccess}
+   */
+  @Nonnull
+  public final ESuccess restoreDatabase (@Nonnull @WillClose final InputStream aIS,
+                                         @Nonnull final EH2DumpCompression eCompression,
+                                         @Nonnegative final int nBatchSize,
+                                         @Nullable final IH2ProgressCallback aProgressCallback)
+  {
+    if (aIS == null)
+      throw new NullPointerException ("inputStream");
+    try
+    {
+      if (eCompression == null)
+        throw new NullPointerException ("compression");
+      if (nBatchSize <= 0)
+        throw new IllegalArgumentException ("BatchSize must be > 0: " + nBatchSize);
+
+      s_aLogger.info ("Restoring database '" + getDatabase () + "' from InputStream using compression " + eCompression);
+      final ScriptReader aReader = new ScriptReader (StreamUtils.createReader (eCompression.getDecompressingInputStream (aIS),
+                                                                               CCharset.CHARSET_UTF_8_OBJ));
+      try
+      {
+        final Connection aConnection = getDataSource ().getConnection ();
+        try
+        {
+          final Statement aStatement = aConnection.createStatement ();
+          try
+          {
+            long nStatementCount = 0;
+            long nCharCount = 0;
+            int nBatchCount = 0;
+            String sSQL;
+            while ((sSQL = aReader.readStatement ()) != null)
+            {
+              nCharCount += sSQL.length () + 1;
+              sSQL = sSQL.trim ();
+              if (sSQL.length () == 0)
+                continue;
+
+              aStatement.addBatch (sSQL);
+              nStatementCount++;
+              if (++nBatchCount == nBatchSize)
+              {
+                aStatement.executeBatch ();
+                aConnection.commit ();
+                nBatchCount = 0;
+                if (aProgressCallback != null)
+                  aProgressCallback.onProgress (nStatementCount, nCharCount);
+              }
+            }
+            if (nBatchCount > 0)
+            {
+              aStatement.executeBatch ();
+              aConnection.commit ();
+            }
+            if (aProgressCallback != null)
+              aProgressCallback.onProgress (nStatementCount, nCharCount);
+            s_aLogger.info ("Restored " + nStatementCount + " statements into database '" + getDatabase () + "'");
+            return ESuccess.SUCCESS;
+          }
+          finally
+          {
+            JDBCHelper.close (aStatement);
+          }
+        }
+        catch (final SQLException ex)
+        {
+          s_aLogger.error ("Failed to restore database '" + getDatabase () + "'", ex);
+          try
+          {
+            aConnection.rollback ();
+          }
+          catch (final SQLException ex2)
+          {
+            s_aLogger.warn ("Failed to rollback", ex2);
+          }
+          return ESuccess.FAILURE;
+        }
+        finally
+        {
+          JDBCHelper.close (aConnection);
+        }
+      }
+      finally
+      {
+        aReader.close ();
+      }
+    }
+    catch (final SQLException ex)
+    {
+      s_aLogger.error ("Failed to connect to database '" + getDatabase () + "'", ex);
+      return ESuccess.FAILURE;
+    }
+    catch (final IOException ex)
+    {
+      s_aLogger.error ("Failed to read dump for database '" + getDatabase () + "'", ex);
+      return ESuccess.FAILURE;
+    }
+    finally
+    {
+      StreamUtils.close (aIS);
+    }
+  }
+
   /**
    * Create a backup file. The file is a ZIP file.
    * 
@@ -264,4 +617,146 @@ public abstract class AbstractH2Connector extends AbstractConnector
     final DBExecutor aExecutor = new DBExecutor (this);
     return aExecutor.executeStatement ("BACKUP TO '" + fDestFile.getAbsolutePath () + "'");
   }
+
+  @Nonnull
+  private static Map <String, String> _readBulkLoadSettings (@Nonnull final Connection aConnection) throws SQLException
+  {
+    final Map <String, String> ret = new HashMap <String, String> ();
+    final Statement aStatement = aConnection.createStatement ();
+    try
+    {
+      final ResultSet aRS = aStatement.executeQuery (H2BulkLoadMode.SQL_READ_SETTINGS);
+      while (aRS.next ())
+        ret.put (aRS.getString (1), aRS.getString (2));
+    }
+    finally
+    {
+      JDBCHelper.close (aStatement);
+    }
+    return ret;
+  }
+
+  /**
+   * Run a bulk import with the default bulk load cache size.
+   * 
+   * @param aCallback
+   *        The callback performing the import. May not be <code>null</code>.
+   * @return {@link ESuccess}
+   * @see #doInBulkLoadMode(INonThrowingRunnableWithParameter, long)
+   */
+  @Nonnull
+  public final ESuccess doInBulkLoadMode (@Nonnull final INonThrowingRunnableWithParameter <DBExecutor> aCallback)
+  {
+    return doInBulkLoadMode (aCallback, H2BulkLoadMode.DEFAULT_CACHE_SIZE_KB);
+  }
+
+  /**
+   * Run a bulk import with the transaction log, the undo log and locking
+   * disabled and an enlarged cache. The current settings are recorded before
+   * and restored afterwards, followed by "ANALYZE" - even if the import fails.
+   * All other {@link DBExecutor} operations of this connector are blocked
+   * while the import is running. The passed executor works on a single
+   * connection and must only be used within the callback. Must not be called
+   * from within a {@link DBExecutor} callback of this connector.
+   * 
+   * @param aCallback
+   *        The callback performing the import. May not be <code>null</code>.
+   * @param nCacheSizeKB
+   *        The cache size in KB to use during the import. Must be &gt; 0.
+   * @return {@link ESuccess#FAILURE} if the import threw an exception or the
+   *         settings could not be changed.
+   */
+  @Nonnull
+  public final ESuccess doInBulkLoadMode (@Nonnull final INonThrowingRunnableWithParameter <DBExecutor> aCallback,
+                                          @Nonnegative final long nCacheSizeKB)
+  {
+    if (aCallback == null)
+      throw new NullPointerException ("callback");
+    if (nCacheSizeKB <= 0)
+      throw new IllegalArgumentException ("CacheSizeKB must be > 0: " + nCacheSizeKB);
+
+    // Wait for all running operations and block new ones
+    final Lock aWriteLock = getOperationLock ().writeLock ();
+    aWriteLock.lock ();
+    try
+    {
+      final Connection aConnection;
+      try
+      {
+        aConnection = getDataSource ().getConnection ();
+      }
+      catch (final SQLException ex)
+      {
+        s_aLogger.error ("Failed to get connection for bulk load into database '" + getDatabase () + "'", ex);
+        return ESuccess.FAILURE;
+      }
+
+      H2BulkLoadMode aMode = null;
+      try
+      {
+        aMode = new H2BulkLoadMode (_readBulkLoadSettings (aConnection), nCacheSizeKB);
+        s_aLogger.info ("Enabling bulk load mode for database '" + getDatabase () + "': " + aMode);
+        final Statement aStatement = aConnection.createStatement ();
+        try
+        {
+          for (final String sSQL : aMode.getAllEnableStatements ())
+            aStatement.execute (sSQL);
+        }
+        finally
+        {
+          JDBCHelper.close (aStatement);
+        }
+
+        // All operations of the callback use the prepared connection
+        aCallback.run (new DBExecutor (new IConnectionProvider ()
+        {
+          public Connection getConnection ()
+          {
+            return aConnection;
+          }
+
+          public boolean shouldCloseConnection ()
+          {
+            return false;
+          }
+        }));
+        return ESuccess.SUCCESS;
+      }
+      catch (final Exception ex)
+      {
+        s_aLogger.error ("Bulk load into database '" + getDatabase () + "' failed", ex);
+        return ESuccess.FAILURE;
+      }
+      finally
+      {
+        JDBCHelper.rollback (aConnection);
+        if (aMode != null)
+          for (final String sSQL : aMode.getAllRestoreStatements ())
+          {
+            Statement aStatement = null;
+            try
+            {
+              aStatement = aConnection.createStatement ();
+              aStatement.execute (sSQL);
+            }
+            catch (final SQLException ex)
+            {
+              s_aLogger.error ("Failed to execute '" + sSQL + "' after bulk load into database '" + getDatabase () + "'",
+                               ex);
+            }
+            finally
+            {
+              JDBCHelper.close (aStatement);
+            }
+          }
+        JDBCHelper.commit (aConnection);
+        JDBCHelper.close (aConnection);
+        s_aLogger.info ("Disabled bulk load mode for database '" + getDatabase () + "'");
+      }
+    }
+    finally
+    {
+      aWriteLock.unlock ();
+    }
+  }
 }
@@ -0,0 +1,37 @@
+/**
+ * Copyright (C) 2006-2015 phloc systems
+ * http://www.phloc.com
+ * office[at]phloc[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.phloc.db.jdbc.h2;
+
+/**
+ * The way an online compaction of an H2 database was performed.
+ * 
+ * @author Philip Helger
+ */
+public enum EH2CompactionMode
+{
+  /**
+   * The MVStore file was compacted while the database stayed open, limited by
+   * a maximum compaction time.
+   */
+  MVSTORE,
+  /**
+   * The database (page store) was compacted via "SHUTDOWN COMPACT" and the
+   * connection pool was re-created afterwards.
+   */
+  SHUTDOWN_COMPACT;
+}
@@ -0,0 +1,123 @@
+/**
+ * Copyright (C) 2006-2015 phloc systems
+ * http://www.phloc.com
+ * office[at]phloc[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.phloc.db.jdbc.h2;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import javax.annotation.Nonnull;
+
+import com.phloc.commons.annotations.Nonempty;
+import com.phloc.commons.io.streams.NonBlockingBufferedInputStream;
+import com.phloc.commons.io.streams.NonBlockingBufferedOutputStream;
+
+/**
+ * The compression to be used for H2 database dumps.
+ * 
+ * @author Philip Helger
+ * @see AbstractH2Connector#dumpDatabase(OutputStream, EH2DumpCompression,
+ *      IH2ProgressCallback)
+ * @see AbstractH2Connector#restoreDatabase(InputStream, EH2DumpCompression,
+ *      int, IH2ProgressCallback)
+ */
+public enum EH2DumpCompression
+{
+  /** Plain SQL text */
+  NONE (".sql"),
+  /** GZIP compressed SQL text */
+  GZIP (".sql.gz"),
+  /** Deflate (ZLIB) compressed SQL text */
+  DEFLATE (".sql.zz");
+
+  /** The buffer size used for compressing and decompressing */
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  private final String m_sFileExtension;
+
+  private EH2DumpCompression (@Nonnull @Nonempty final String sFileExtension)
+  {
+    m_sFileExtension = sFileExtension;
+  }
+
+  /**
+   * @return The file extension including the leading dot to be used for dump
+   *         files with this compression.
+   */
+  @Nonnull
+  @Nonempty
+  public String getFileExtension ()
+  {
+    return m_sFileExtension;
+  }
+
+  /**
+   * Wrap the passed output stream so that everything written is compressed.
+   * 
+   * @param aOS
+   *        The output stream to write the compressed data to. May not be
+   *        <code>null</code>.
+   * @return The output stream to write the uncompressed data to. Never
+   *         <code>null</code>.
+   * @throws IOException
+   *         If the compression header cannot be written
+   */
+  @Nonnull
+  public OutputStream getCompressingOutputStream (@Nonnull final OutputStream aOS) throws IOException
+  {
+    final OutputStream aBufferedOS = new NonBlockingBufferedOutputStream (aOS, BUFFER_SIZE);
+    switch (this)
+    {
+      case GZIP:
+        return new GZIPOutputStream (aBufferedOS, BUFFER_SIZE);
+      case DEFLATE:
+        return new DeflaterOutputStream (aBufferedOS);
+      default:
+        return aBufferedOS;
+    }
+  }
+
+  /**
+   * Wrap the passed input stream so that everything read is decompressed.
+   * 
+   * @param aIS
+   *        The input stream to read the compressed data from. May not be
+   *        <code>null</code>.
+   * @return The input stream to read the uncompressed data from. Never
+   *         <code>null</code>.
+   * @throws IOException
+   *         If the compression header cannot be read
+   */
+  @Nonnull
+  public InputStream getDecompressingInputStream (@Nonnull final InputStream aIS) throws IOException
+  {
+    switch (this)
+    {
+      case GZIP:
+        return new GZIPInputStream (aIS, BUFFER_SIZE);
+      case DEFLATE:
+        return new InflaterInputStream (new NonBlockingBufferedInputStream (aIS, BUFFER_SIZE));
+      default:
+        return new NonBlockingBufferedInputStream (aIS, BUFFER_SIZE);
+    }
+  }
+}
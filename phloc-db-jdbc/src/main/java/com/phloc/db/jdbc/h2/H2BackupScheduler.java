@@ -0,0 +1,398 @@
+/**
+ * Copyright (C) 2006-2015 phloc systems
+ * http://www.phloc.com
+ * office[at]phloc[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.phloc.db.jdbc.h2;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.h2.engine.Constants;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.phloc.commons.annotations.OverrideOnDemand;
+import com.phloc.commons.annotations.ReturnsMutableCopy;
+import com.phloc.commons.io.file.FileOperations;
+import com.phloc.commons.io.file.FileUtils;
+import com.phloc.commons.state.EChange;
+import com.phloc.commons.string.ToStringGenerator;
+import com.phloc.commons.timing.StopWatch;
+import com.phloc.datetime.PDTFactory;
+import com.phloc.db.jdbc.executor.DBExecutor;
+
+/**
+ * Periodically creates backups of an H2 database on a background thread. Each
+ * backup is a (compressed) SQL dump as created by
+ * {@link AbstractH2Connector#dumpDatabase(OutputStream, EH2DumpCompression, IH2ProgressCallback)}
+ * and can be restored with
+ * {@link AbstractH2Connector#restoreDatabase(java.io.InputStream, EH2DumpCompression, int, IH2ProgressCallback)}
+ * . The database stays in use during the backup, and the write rate can be
+ * limited so that the backup does not compete with foreground operations for
+ * I/O. After each backup old backups are deleted according to the configured
+ * maximum count and age. For {@link H2FileConnector} databases a run is
+ * skipped if the database files did not change since the last backup.
+ * 
+ * @author Philip Helger
+ */
+@ThreadSafe
+public class H2BackupScheduler implements Closeable
+{
+  private static final Logger s_aLogger = LoggerFactory.getLogger (H2BackupScheduler.class);
+
+  private final AbstractH2Connector m_aConnector;
+  private final File m_aBackupDirectory;
+  private final String m_sFilenamePrefix;
+  private final String m_sFilenameSuffix;
+  private final long m_nIntervalMillis;
+  private final int m_nMaxBackupCount;
+  private final long m_nMaxBackupAgeMillis;
+  private final long m_nMaxBytesPerSecond;
+  private final EH2DumpCompression m_eCompression;
+  private final boolean m_bSkipUnchanged;
+
+  private ScheduledExecutorService m_aExecutor;
+  private String m_sLastChangeMarker;
+  private File m_aLastBackupFile;
+
+  /**
+   * Constructor
+   * 
+   * @param aConnector
+   *        The connector of the database to back up. May not be
+   *        <code>null</code>.
+   * @param aSettings
+   *        The backup settings. The settings are copied, so later changes to
+   *        the object have no effect. May not be <code>null</code>.
+   */
+  public H2BackupScheduler (@Nonnull final AbstractH2Connector aConnector, @Nonnull final H2BackupSettings aSettings)
+  {
+    if (aConnector == null)
+      throw new NullPointerException ("connector");
+    if (aSettings == null)
+      throw new NullPointerException ("settings");
+    m_aConnector = aConnector;
+    m_aBackupDirectory = aSettings.getBackupDirectory ();
+    m_sFilenamePrefix = aSettings.getFilenamePrefix ();
+    m_sFilenameSuffix = aSettings.getCompression ().getFileExtension ();
+    m_nIntervalMillis = aSettings.getIntervalMillis ();
+    m_nMaxBackupCount = aSettings.getMaxBackupCount ();
+    m_nMaxBackupAgeMillis = aSettings.getMaxBackupAgeMillis ();
+    m_nMaxBytesPerSecond = aSettings.getMaxBytesPerSecond ();
+    m_eCompression = aSettings.getCompression ();
+    m_bSkipUnchanged = aSettings.isSkipUnchanged ();
+  }
+
+  @Nonnull
+  public final AbstractH2Connector getConnector ()
+  {
+    return m_aConnector;
+  }
+
+  /**
+   * @return <code>true</code> if the scheduler was started and not yet
+   *         stopped.
+   */
+  public final synchronized boolean isStarted ()
+  {
+    return m_aExecutor != null;
+  }
+
+  /**
+   * Start creating backups in the configured interval. The first backup is
+   * created immediately.
+   * 
+   * @return {@link EChange#UNCHANGED} if the scheduler was already started.
+   */
+  @Nonnull
+  public final synchronized EChange start ()
+  {
+    if (m_aExecutor != null)
+      return EChange.UNCHANGED;
+
+    final String sThreadName = "phloc-db-h2backup-";
+    m_aExecutor = Executors.newSingleThreadScheduledExecutor (new ThreadFactory ()
+    {
+      private final AtomicInteger m_aThreadIndex = new AtomicInteger (0);
+
+      @Nonnull
+      public Thread newThread (@Nonnull final Runnable aRunnable)
+      {
+        final Thread ret = new Thread (aRunnable, sThreadName + m_aThreadIndex.incrementAndGet ());
+        ret.setDaemon (true);
+        ret.setPriority (Thread.MIN_PRIORITY);
+        return ret;
+      }
+    });
+    m_aExecutor.scheduleWithFixedDelay (new Runnable ()
+    {
+      public void run ()
+      {
+        try
+        {
+          runBackup ();
+        }
+        catch (final RuntimeException ex)
+        {
+          // Don't let the exception cancel all future runs
+          s_aLogger.error ("Scheduled backup of database '" + m_aConnector.getConnectionUrl () + "' failed", ex);
+        }
+      }
+    }, 0, m_nIntervalMillis, TimeUnit.MILLISECONDS);
+    s_aLogger.info ("Started backups of database '" +
+                    m_aConnector.getConnectionUrl () +
+                    "' every " +
+                    m_nIntervalMillis +
+                    " ms to " +
+                    m_aBackupDirectory);
+    return EChange.CHANGED;
+  }
+
+  /**
+   * Stop creating backups. A backup that is currently running is completed,
+   * because interrupting H2 while it accesses its files closes the database.
+   * 
+   * @return {@link EChange#UNCHANGED} if the scheduler was not started.
+   */
+  @Nonnull
+  public final EChange stop ()
+  {
+    final ScheduledExecutorService aExecutor;
+    synchronized (this)
+    {
+      aExecutor = m_aExecutor;
+      m_aExecutor = null;
+    }
+    if (aExecutor == null)
+      return EChange.UNCHANGED;
+
+    aExecutor.shutdown ();
+    try
+    {
+      aExecutor.awaitTermination (Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+    }
+    catch (final InterruptedException ex)
+    {
+      Thread.currentThread ().interrupt ();
+    }
+    s_aLogger.info ("Stopped backups of database '" + m_aConnector.getConnectionUrl () + "'");
+    return EChange.CHANGED;
+  }
+
+  public void close ()
+  {
+    stop ();
+  }
+
+  /**
+   * Get a value that changes whenever the database content changes. The
+   * default implementation checkpoints {@link H2FileConnector} databases and
+   * uses the sizes and modification times of the database files.
+   * 
+   * @return <code>null</code> if changes cannot be detected, in which case a
+   *         backup is always created.
+   */
+  @Nullable
+  @OverrideOnDemand
+  protected String getChangeMarker ()
+  {
+    if (!(m_aConnector instanceof H2FileConnector))
+      return null;
+    final String sDatabase = ((H2FileConnector) m_aConnector).getDatabase ();
+
+    // Flush all pending changes to disk
+    if (new DBExecutor (m_aConnector).executeStatement ("CHECKPOINT").isFailure ())
+      return null;
+
+    final StringBuilder aSB = new StringBuilder ();
+    for (final String sSuffix : new String [] { Constants.SUFFIX_MV_FILE, Constants.SUFFIX_PAGE_FILE })
+    {
+      final File aFile = new File (sDatabase + sSuffix);
+      if (aFile.isFile ())
+        aSB.append (sSuffix).append (':').append (aFile.length ()).append (':').append (aFile.lastModified ()).append (';');
+    }
+    return aSB.toString ();
+  }
+
+  /**
+   * Create a backup now, independent of the schedule. Afterwards old backups
+   * are deleted.
+   * 
+   * @return The created backup file or <code>null</code> if the database did
+   *         not change since the last backup or if the backup failed.
+   */
+  @Nullable
+  public final synchronized File runBackup ()
+  {
+    final String sChangeMarker = getChangeMarker ();
+    if (m_bSkipUnchanged && sChangeMarker != null && sChangeMarker.equals (m_sLastChangeMarker))
+    {
+      if (s_aLogger.isDebugEnabled ())
+        s_aLogger.debug ("Database '" + m_aConnector.getConnectionUrl () + "' is unchanged - backup skipped");
+      return null;
+    }
+
+    if (FileOperations.createDirRecursiveIfNotExisting (m_aBackupDirectory).isFailure ())
+    {
+      s_aLogger.error ("Failed to create backup directory " + m_aBackupDirectory);
+      return null;
+    }
+
+    final File aFile = new File (m_aBackupDirectory, m_sFilenamePrefix +
+                                                     PDTFactory.getCurrentMillis () +
+                                                     m_sFilenameSuffix);
+    OutputStream aOS = FileUtils.getOutputStream (aFile);
+    if (aOS == null)
+    {
+      s_aLogger.error ("Failed to open backup file " + aFile);
+      return null;
+    }
+    if (m_nMaxBytesPerSecond > 0)
+      aOS = new ThrottledOutputStream (aOS, m_nMaxBytesPerSecond);
+
+    final StopWatch aSW = new StopWatch (true);
+    if (m_aConnector.dumpDatabase (aOS, m_eCompression, null).isFailure ())
+    {
+      s_aLogger.error ("Failed to back up database '" + m_aConnector.getConnectionUrl () + "' to " + aFile);
+      FileOperations.deleteFileIfExisting (aFile);
+      return null;
+    }
+
+    // Changes made during the dump lead to a different marker next time
+    m_sLastChangeMarker = sChangeMarker;
+    m_aLastBackupFile = aFile;
+    s_aLogger.info ("Backed up database '" +
+                    m_aConnector.getConnectionUrl () +
+                    "' to " +
+                    aFile +
+                    " (" +
+                    aFile.length () +
+                    " bytes) in " +
+                    aSW.stopAndGetMillis () +
+                    " ms");
+
+    _deleteOldBackups ();
+    return aFile;
+  }
+
+  private long _getTimestamp (@Nonnull final File aFile)
+  {
+    final String sName = aFile.getName ();
+    try
+    {
+      return Long.parseLong (sName.substring (m_sFilenamePrefix.length (), sName.length () -
+                                                                           m_sFilenameSuffix.length ()));
+    }
+    catch (final NumberFormatException ex)
+    {
+      return -1;
+    }
+  }
+
+  /**
+   * @return All existing backup files of this scheduler, newest first. Never
+   *         <code>null</code>.
+   */
+  @Nonnull
+  @ReturnsMutableCopy
+  public final List <File> getAllBackupFiles ()
+  {
+    final List <File> ret = new ArrayList <File> ();
+    final File [] aFiles = m_aBackupDirectory.listFiles (new FileFilter ()
+    {
+      public boolean accept (@Nonnull final File aFile)
+      {
+        final String sName = aFile.getName ();
+        return aFile.isFile () &&
+               sName.startsWith (m_sFilenamePrefix) &&
+               sName.endsWith (m_sFilenameSuffix) &&
+               _getTimestamp (aFile) >= 0;
+      }
+    });
+    if (aFiles != null)
+      for (final File aFile : aFiles)
+        ret.add (aFile);
+    Collections.sort (ret, new Comparator <File> ()
+    {
+      public int compare (@Nonnull final File aFile1, @Nonnull final File aFile2)
+      {
+        final long n1 = _getTimestamp (aFile1);
+        final long n2 = _getTimestamp (aFile2);
+        return n1 < n2 ? 1 : n1 == n2 ? 0 : -1;
+      }
+    });
+    return ret;
+  }
+
+  private void _deleteOldBackups ()
+  {
+    final long nMinTimestamp = m_nMaxBackupAgeMillis > 0 ? PDTFactory.getCurrentMillis () - m_nMaxBackupAgeMillis
+                                                         : Long.MIN_VALUE;
+    final List <File> aFiles = getAllBackupFiles ();
+    // The most recent backup is always kept
+    for (int i = 1; i < aFiles.size (); ++i)
+    {
+      final File aFile = aFiles.get (i);
+      if ((m_nMaxBackupCount > 0 && i >= m_nMaxBackupCount) || _getTimestamp (aFile) < nMinTimestamp)
+      {
+        if (FileOperations.deleteFile (aFile).isSuccess ())
+          s_aLogger.info ("Deleted old backup " + aFile);
+        else
+          s_aLogger.warn ("Failed to delete old backup " + aFile);
+      }
+    }
+  }
+
+  /**
+   * @return The file of the last backup created by this object. May be
+   *         <code>null</code>.
+   */
+  @Nullable
+  public final synchronized File getLastBackupFile ()
+  {
+    return m_aLastBackupFile;
+  }
+
+  @Override
+  public String toString ()
+  {
+    return new ToStringGenerator (this).append ("connector", m_aConnector)
+                                       .append ("backupDirectory", m_aBackupDirectory)
+                                       .append ("filenamePrefix", m_sFilenamePrefix)
+                                       .append ("intervalMillis", m_nIntervalMillis)
+                                       .append ("maxBackupCount", m_nMaxBackupCount)
+                                       .append ("maxBackupAgeMillis", m_nMaxBackupAgeMillis)
+                                       .append ("maxBytesPerSecond", m_nMaxBytesPerSecond)
+                                       .append ("compression", m_eCompression)
+                                       .append ("skipUnchanged", m_bSkipUnchanged)
+                                       .toString ();
+  }
+}
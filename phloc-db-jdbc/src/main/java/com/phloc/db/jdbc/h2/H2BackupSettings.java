@@ -0,0 +1,216 @@
+/**
+ * Copyright (C) 2006-2015 phloc systems
+ * http://www.phloc.com
+ * office[at]phloc[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.phloc.db.jdbc.h2;
+
+import java.io.File;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.NotThreadSafe;
+
+import com.phloc.commons.annotations.Nonempty;
+import com.phloc.commons.string.StringHelper;
+import com.phloc.commons.string.ToStringGenerator;
+
+/**
+ * Settings for the {@link H2BackupScheduler}.
+ * 
+ * @author Philip Helger
+ */
+@NotThreadSafe
+public class H2BackupSettings
+{
+  /** Default interval between two backups: 1 hour */
+  public static final long DEFAULT_INTERVAL_MILLIS = 60 * 60 * 1000L;
+  /** Default backup file name prefix */
+  public static final String DEFAULT_FILENAME_PREFIX = "backup-";
+  /** Default number of backups to keep */
+  public static final int DEFAULT_MAX_BACKUP_COUNT = 10;
+  /** Default maximum backup age: unlimited */
+  public static final long DEFAULT_MAX_BACKUP_AGE_MILLIS = 0;
+  /** Default maximum number of bytes written per second: 4 MB */
+  public static final long DEFAULT_MAX_BYTES_PER_SECOND = 4 * 1024 * 1024L;
+  /** By default unchanged databases are not backed up again */
+  public static final boolean DEFAULT_SKIP_UNCHANGED = true;
+
+  private final File m_aBackupDirectory;
+  private String m_sFilenamePrefix = DEFAULT_FILENAME_PREFIX;
+  private long m_nIntervalMillis = DEFAULT_INTERVAL_MILLIS;
+  private int m_nMaxBackupCount = DEFAULT_MAX_BACKUP_COUNT;
+  private long m_nMaxBackupAgeMillis = DEFAULT_MAX_BACKUP_AGE_MILLIS;
+  private long m_nMaxBytesPerSecond = DEFAULT_MAX_BYTES_PER_SECOND;
+  private EH2DumpCompression m_eCompression = EH2DumpCompression.GZIP;
+  private boolean m_bSkipUnchanged = DEFAULT_SKIP_UNCHANGED;
+
+  /**
+   * Constructor
+   * 
+   * @param aBackupDirectory
+   *        The directory where the backup files are stored. It is created if it
+   *        does not exist. May not be <code>null</code>.
+   */
+  public H2BackupSettings (@Nonnull final File aBackupDirectory)
+  {
+    if (aBackupDirectory == null)
+      throw new NullPointerException ("backupDirectory");
+    m_aBackupDirectory = aBackupDirectory;
+  }
+
+  @Nonnull
+  public File getBackupDirectory ()
+  {
+    return m_aBackupDirectory;
+  }
+
+  /**
+   * @return The prefix of all backup file names. The prefix is followed by the
+   *         creation time in milliseconds and the file extension of the
+   *         compression.
+   */
+  @Nonnull
+  @Nonempty
+  public String getFilenamePrefix ()
+  {
+    return m_sFilenamePrefix;
+  }
+
+  @Nonnull
+  public H2BackupSettings setFilenamePrefix (@Nonnull @Nonempty final String sFilenamePrefix)
+  {
+    if (StringHelper.hasNoText (sFilenamePrefix))
+      throw new IllegalArgumentException ("filenamePrefix");
+    m_sFilenamePrefix = sFilenamePrefix;
+    return this;
+  }
+
+  @Nonnegative
+  public long getIntervalMillis ()
+  {
+    return m_nIntervalMillis;
+  }
+
+  @Nonnull
+  public H2BackupSettings setIntervalMillis (@Nonnegative final long nIntervalMillis)
+  {
+    if (nIntervalMillis <= 0)
+      throw new IllegalArgumentException ("IntervalMillis must be > 0: " + nIntervalMillis);
+    m_nIntervalMillis = nIntervalMillis;
+    return this;
+  }
+
+  /**
+   * @return The maximum number of backups to keep. 0 means unlimited.
+   */
+  @Nonnegative
+  public int getMaxBackupCount ()
+  {
+    return m_nMaxBackupCount;
+  }
+
+  @Nonnull
+  public H2BackupSettings setMaxBackupCount (@Nonnegative final int nMaxBackupCount)
+  {
+    if (nMaxBackupCount < 0)
+      throw new IllegalArgumentException ("MaxBackupCount must be >= 0: " + nMaxBackupCount);
+    m_nMaxBackupCount = nMaxBackupCount;
+    return this;
+  }
+
+  /**
+   * @return The maximum age of a backup in milliseconds. Older backups are
+   *         deleted, except for the most recent one. 0 means unlimited.
+   */
+  @Nonnegative
+  public long getMaxBackupAgeMillis ()
+  {
+    return m_nMaxBackupAgeMillis;
+  }
+
+  @Nonnull
+  public H2BackupSettings setMaxBackupAgeMillis (@Nonnegative final long nMaxBackupAgeMillis)
+  {
+    if (nMaxBackupAgeMillis < 0)
+      throw new IllegalArgumentException ("MaxBackupAgeMillis must be >= 0: " + nMaxBackupAgeMillis);
+    m_nMaxBackupAgeMillis = nMaxBackupAgeMillis;
+    return this;
+  }
+
+  /**
+   * @return The maximum number of bytes per second written to the backup file.
+   *         0 means unlimited.
+   */
+  @Nonnegative
+  public long getMaxBytesPerSecond ()
+  {
+    return m_nMaxBytesPerSecond;
+  }
+
+  @Nonnull
+  public H2BackupSettings setMaxBytesPerSecond (@Nonnegative final long nMaxBytesPerSecond)
+  {
+    if (nMaxBytesPerSecond < 0)
+      throw new IllegalArgumentException ("MaxBytesPerSecond must be >= 0: " + nMaxBytesPerSecond);
+    m_nMaxBytesPerSecond = nMaxBytesPerSecond;
+    return this;
+  }
+
+  @Nonnull
+  public EH2DumpCompression getCompression ()
+  {
+    return m_eCompression;
+  }
+
+  @Nonnull
+  public H2BackupSettings setCompression (@Nonnull final EH2DumpCompression eCompression)
+  {
+    if (eCompression == null)
+      throw new NullPointerException ("compression");
+    m_eCompression = eCompression;
+    return this;
+  }
+
+  /**
+   * @return <code>true</code> if a scheduled backup is skipped when the
+   *         database files did not change since the last backup.
+   */
+  public boolean isSkipUnchanged ()
+  {
+    return m_bSkipUnchanged;
+  }
+
+  @Nonnull
+  public H2BackupSettings setSkipUnchanged (final boolean bSkipUnchanged)
+  {
+    m_bSkipUnchanged = bSkipUnchanged;
+    return this;
+  }
+
+  @Override
+  public String toString ()
+  {
+    return new ToStringGenerator (this).append ("backupDirectory", m_aBackupDirectory)
+                                       .append ("filenamePrefix", m_sFilenamePrefix)
+                                       .append ("intervalMillis", m_nIntervalMillis)
+                                       .append ("maxBackupCount", m_nMaxBackupCount)
+                                       .append ("maxBackupAgeMillis", m_nMaxBackupAgeMillis)
+                                       .append ("maxBytesPerSecond", m_nMaxBytesPerSecond)
+                                       .append ("compression", m_eCompression)
+                                       .append ("skipUnchanged", m_bSkipUnchanged)
+                                       .toString ();
+  }
+}
@@ -0,0 +1,128 @@
+/**
+ * Copyright (C) 2006-2015 phloc systems
+ * http://www.phloc.com
+ * office[at]phloc[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.phloc.db.jdbc.h2;
+
+import javax.annotation.CheckForSigned;
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+
+import com.phloc.commons.state.ESuccess;
+import com.phloc.commons.state.ISuccessIndicator;
+import com.phloc.commons.string.ToStringGenerator;
+
+/**
+ * The result of an online compaction of an H2 database.
+ * 
+ * @author Philip Helger
+ * @see H2FileConnector#compactDatabaseOnline(long, long)
+ */
+@Immutable
+public final class H2CompactionResult implements ISuccessIndicator
+{
+  private final ESuccess m_eSuccess;
+  private final EH2CompactionMode m_eMode;
+  private final long m_nBytesBefore;
+  private final long m_nBytesAfter;
+  private final long m_nDurationMillis;
+
+  public H2CompactionResult (@Nonnull final ESuccess eSuccess,
+                             @Nullable final EH2CompactionMode eMode,
+                             @Nonnegative final long nBytesBefore,
+                             @Nonnegative final long nBytesAfter,
+                             @Nonnegative final long nDurationMillis)
+  {
+    if (eSuccess == null)
+      throw new NullPointerException ("success");
+    m_eSuccess = eSuccess;
+    m_eMode = eMode;
+    m_nBytesBefore = nBytesBefore;
+    m_nBytesAfter = nBytesAfter;
+    m_nDurationMillis = nDurationMillis;
+  }
+
+  public boolean isSuccess ()
+  {
+    return m_eSuccess.isSuccess ();
+  }
+
+  public boolean isFailure ()
+  {
+    return m_eSuccess.isFailure ();
+  }
+
+  /**
+   * @return The compaction mode used. May be <code>null</code> if the
+   *         compaction failed before it was started.
+   */
+  @Nullable
+  public EH2CompactionMode getMode ()
+  {
+    return m_eMode;
+  }
+
+  /**
+   * @return The size of the database files in bytes before compaction.
+   */
+  @Nonnegative
+  public long getBytesBefore ()
+  {
+    return m_nBytesBefore;
+  }
+
+  /**
+   * @return The size of the database files in bytes after compaction.
+   */
+  @Nonnegative
+  public long getBytesAfter ()
+  {
+    return m_nBytesAfter;
+  }
+
+  /**
+   * @return The number of bytes reclaimed by the compaction. May be negative
+   *         if the database grew in the meantime.
+   */
+  @CheckForSigned
+  public long getBytesReclaimed ()
+  {
+    return m_nBytesBefore - m_nBytesAfter;
+  }
+
+  /**
+   * @return The total duration in milliseconds, including the time waiting
+   *         for running operations to finish.
+   */
+  @Nonnegative
+  public long getDurationMillis ()
+  {
+    return m_nDurationMillis;
+  }
+
+  @Override
+  public String toString ()
+  {
+    return new ToStringGenerator (this).append ("success", m_eSuccess)
+                                       .append ("mode", m_eMode)
+                                       .append ("bytesBefore", m_nBytesBefore)
+                                       .append ("bytesAfter", m_nBytesAfter)
+                                       .append ("durationMillis", m_nDurationMillis)
+                                       .toString ();
+  }
+}
@@ -0,0 +1,269 @@
+/**
+ * Copyright (C) 2006-2015 phloc systems
+ * http://www.phloc.com
+ * office[at]phloc[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.phloc.db.jdbc.h2;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Locale;
+import java.util.Properties;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+
+import org.h2.Driver;
+import org.h2.engine.Constants;
+import org.h2.tools.DeleteDbFiles;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.phloc.commons.io.file.FileOperations;
+import com.phloc.commons.io.streams.NonBlockingByteArrayInputStream;
+import com.phloc.commons.io.streams.NonBlockingByteArrayOutputStream;
+import com.phloc.commons.state.ESuccess;
+import com.phloc.commons.string.StringHelper;
+import com.phloc.commons.string.ToStringGenerator;
+import com.phloc.commons.timing.StopWatch;
+import com.phloc.db.api.jdbc.JDBCHelper;
+
+/**
+ * A snapshot of an H2 template database that can be cloned into any number of
+ * new databases. The snapshot always contains the SQL script of the template
+ * in memory, which is used to clone into in-memory databases. If the template
+ * is an {@link H2FileConnector} database, the closed database file is kept as
+ * well and clones into file databases are simple file copies. The user of the
+ * target database is added to such a copy, if it differs from the template
+ * user.
+ * 
+ * @author Philip Helger
+ */
+@Immutable
+public final class H2DatabaseSnapshot
+{
+  private static final Logger s_aLogger = LoggerFactory.getLogger (H2DatabaseSnapshot.class);
+
+  private final byte [] m_aScript;
+  private final File m_aTemplateFile;
+  private final String m_sTemplateFileSuffix;
+  private final String m_sTemplateUserName;
+  private final String m_sTemplatePassword;
+
+  private H2DatabaseSnapshot (@Nonnull final byte [] aScript,
+                              @Nullable final File aTemplateFile,
+                              @Nullable final String sTemplateFileSuffix,
+                              @Nullable final String sTemplateUserName,
+                              @Nullable final String sTemplatePassword)
+  {
+    m_aScript = aScript;
+    m_aTemplateFile = aTemplateFile;
+    m_sTemplateFileSuffix = sTemplateFileSuffix;
+    m_sTemplateUserName = sTemplateUserName;
+    m_sTemplatePassword = sTemplatePassword;
+  }
+
+  /**
+   * @return The size of the in-memory SQL script in bytes.
+   */
+  @Nonnegative
+  public int getScriptSize ()
+  {
+    return m_aScript.length;
+  }
+
+  /**
+   * @return The closed template database file used for file copies. May be
+   *         <code>null</code> if the template was an in-memory database.
+   */
+  @Nullable
+  public File getTemplateFile ()
+  {
+    return m_aTemplateFile;
+  }
+
+  @Nonnull
+  private static String _getQuotedUserName (@Nonnull final String sUserName)
+  {
+    // H2 uses upper case user names
+    return '"' + StringHelper.replaceAll (sUserName.toUpperCase (Locale.ENGLISH), "\"", "\"\"") + '"';
+  }
+
+  /**
+   * The copied file only contains the users of the template. Open it once with
+   * the template credentials and create or alter the user of the target, so
+   * that the target can open its copy.
+   */
+  @Nonnull
+  private ESuccess _addTargetUser (@Nonnull final H2FileConnector aFileTarget)
+  {
+    final String sUserName = StringHelper.getNotNull (aFileTarget.getUserName ());
+    final String sPassword = StringHelper.getNotNull (aFileTarget.getPassword ());
+    final String sTemplateUserName = StringHelper.getNotNull (m_sTemplateUserName);
+    if (sUserName.equalsIgnoreCase (sTemplateUserName) &&
+        sPassword.equals (StringHelper.getNotNull (m_sTemplatePassword)))
+      return ESuccess.SUCCESS;
+
+    final Properties aProps = new Properties ();
+    aProps.setProperty ("user", sTemplateUserName);
+    aProps.setProperty ("password", StringHelper.getNotNull (m_sTemplatePassword));
+    try
+    {
+      final Connection aConnection = new Driver ().connect (aFileTarget.getConnectionUrl (), aProps);
+      try
+      {
+        final String sUser = _getQuotedUserName (sUserName);
+        final String sQuotedPassword = "'" + StringHelper.replaceAll (sPassword, "'", "''") + "'";
+        final Statement aStatement = aConnection.createStatement ();
+        try
+        {
+          aStatement.execute ("CREATE USER IF NOT EXISTS " + sUser + " PASSWORD " + sQuotedPassword + " ADMIN");
+          aStatement.execute ("ALTER USER " + sUser + " SET PASSWORD " + sQuotedPassword);
+          aStatement.execute ("ALTER USER " + sUser + " ADMIN TRUE");
+        }
+        finally
+        {
+          JDBCHelper.close (aStatement);
+        }
+      }
+      finally
+      {
+        // Closing the only connection closes the database
+        JDBCHelper.close (aConnection);
+      }
+      return ESuccess.SUCCESS;
+    }
+    catch (final SQLException ex)
+    {
+      s_aLogger.error ("Failed to add user '" + sUserName + "' to " + aFileTarget.getConnectionUrl (), ex);
+      return ESuccess.FAILURE;
+    }
+  }
+
+  /**
+   * Clone this snapshot into the passed database. File databases are replaced
+   * by a copy of the template file, if available. All other databases are
+   * filled by running the SQL script, so they should be empty.
+   * 
+   * @param aTarget
+   *        The connector of the database to clone into. It is closed before
+   *        the clone is created. May not be <code>null</code>.
+   * @return {@link ESuccess}
+   */
+  @Nonnull
+  public ESuccess cloneInto (@Nonnull final AbstractH2Connector aTarget)
+  {
+    if (aTarget == null)
+      throw new NullPointerException ("target");
+
+    final StopWatch aSW = new StopWatch (true);
+    final ESuccess eSuccess;
+    if (m_aTemplateFile != null && aTarget instanceof H2FileConnector)
+    {
+      final H2FileConnector aFileTarget = (H2FileConnector) aTarget;
+      aFileTarget.close ();
+      DeleteDbFiles.execute (aFileTarget.getDirectory (), aFileTarget.getDatabaseName (), true);
+      final File aDestFile = new File (aFileTarget.getDatabase () + m_sTemplateFileSuffix);
+      if (FileOperations.createDirRecursiveIfNotExisting (aDestFile.getParentFile ()).isFailure ())
+        eSuccess = ESuccess.FAILURE;
+      else
+        if (FileOperations.copyFile (m_aTemplateFile, aDestFile).isFailure ())
+          eSuccess = ESuccess.FAILURE;
+        else
+          eSuccess = _addTargetUser (aFileTarget);
+    }
+    else
+    {
+      aTarget.close ();
+      eSuccess = aTarget.restoreDatabase (new NonBlockingByteArrayInputStream (m_aScript),
+                                          EH2DumpCompression.NONE,
+                                          AbstractH2Connector.DEFAULT_RESTORE_BATCH_SIZE,
+                                          null);
+    }
+
+    if (eSuccess.isSuccess ())
+    {
+      if (s_aLogger.isDebugEnabled ())
+        s_aLogger.debug ("Cloned snapshot into " + aTarget.getConnectionUrl () + " in " + aSW.stopAndGetMillis () + " ms");
+    }
+    else
+      s_aLogger.error ("Failed to clone snapshot into " + aTarget.getConnectionUrl ());
+    return eSuccess;
+  }
+
+  /**
+   * Create a snapshot of the passed template database. A file template is
+   * closed, so that its file can be copied. It must not be modified afterwards
+   * as long as the snapshot is used.
+   * 
+   * @param aTemplate
+   *        The template database. May not be <code>null</code>.
+   * @return <code>null</code> if the snapshot could not be created.
+   */
+  @Nullable
+  public static H2DatabaseSnapshot createFromTemplate (@Nonnull final AbstractH2Connector aTemplate)
+  {
+    if (aTemplate == null)
+      throw new NullPointerException ("template");
+
+    final NonBlockingByteArrayOutputStream aBAOS = new NonBlockingByteArrayOutputStream ();
+    if (aTemplate.dumpDatabase (aBAOS, EH2DumpCompression.NONE, null).isFailure ())
+    {
+      s_aLogger.error ("Failed to create snapshot of " + aTemplate.getConnectionUrl ());
+      return null;
+    }
+
+    File aTemplateFile = null;
+    String sTemplateFileSuffix = null;
+    String sTemplateUserName = null;
+    String sTemplatePassword = null;
+    if (aTemplate instanceof H2FileConnector)
+    {
+      final H2FileConnector aFileTemplate = (H2FileConnector) aTemplate;
+      sTemplateUserName = aFileTemplate.getUserName ();
+      sTemplatePassword = aFileTemplate.getPassword ();
+
+      // Closing the last connection closes the database
+      aTemplate.close ();
+      for (final String sSuffix : new String [] { Constants.SUFFIX_MV_FILE, Constants.SUFFIX_PAGE_FILE })
+      {
+        final File aFile = new File (((H2FileConnector) aTemplate).getDatabase () + sSuffix);
+        if (aFile.isFile ())
+        {
+          aTemplateFile = aFile;
+          sTemplateFileSuffix = sSuffix;
+          break;
+        }
+      }
+    }
+    return new H2DatabaseSnapshot (aBAOS.toByteArray (),
+                                   aTemplateFile,
+                                   sTemplateFileSuffix,
+                                   sTemplateUserName,
+                                   sTemplatePassword);
+  }
+
+  @Override
+  public String toString ()
+  {
+    return new ToStringGenerator (this).append ("scriptSize", m_aScript.length)
+                                       .append ("templateFile", m_aTemplateFile)
+                                       .toString ();
+  }
+}
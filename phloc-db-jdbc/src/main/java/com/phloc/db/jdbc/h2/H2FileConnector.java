@@ -18,13 +18,22 @@
 package com.phloc.db.jdbc.h2;
 
 import java.io.File;
+import java.sql.Connection;
 import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
 
+import javax.annotation.Nonnegative;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 
+import org.h2.engine.Constants;
+import org.h2.engine.Session;
+import org.h2.jdbc.JdbcConnection;
+import org.h2.mvstore.MVStore;
+import org.h2.mvstore.db.MVTableEngine;
 import org.h2.tools.DeleteDbFiles;
-import org.h2.tools.RunScript;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -32,6 +41,8 @@ import com.phloc.commons.annotations.Nonempty;
 import com.phloc.commons.io.file.FileOperations;
 import com.phloc.commons.state.ESuccess;
 import com.phloc.commons.string.StringHelper;
+import com.phloc.commons.timing.StopWatch;
+import com.phloc.db.api.jdbc.JDBCHelper;
 import com.phloc.datetime.PDTFactory;
 
 /**
@@ -41,6 +52,11 @@ import com.phloc.datetime.PDTFactory;
  */
 public class H2FileConnector extends H2MemConnector
 {
+  /** Default maximum time in milliseconds for compacting the MVStore */
+  public static final long DEFAULT_MAX_COMPACT_MILLIS = 10000;
+  /** Default maximum time in milliseconds to wait for running operations */
+  public static final long DEFAULT_DRAIN_TIMEOUT_MILLIS = 30000;
+
   private static final Logger s_aLogger = LoggerFactory.getLogger (H2FileConnector.class);
   private final String m_sDirectory;
 
@@ -55,6 +71,16 @@ public class H2FileConnector extends H2MemConnector
     m_sDirectory = sDirectory;
   }
 
+  /**
+   * @return The directory containing the database files.
+   */
+  @Nonnull
+  @Nonempty
+  public final String getDirectory ()
+  {
+    return m_sDirectory;
+  }
+
   @Override
   @Nonnull
   @Nonempty
@@ -63,17 +89,215 @@ public class H2FileConnector extends H2MemConnector
     return m_sDirectory + "/" + m_sDBName;
   }
 
+  /**
+   * @return The total size of the database files in bytes. 0 if no database
+   *         file exists.
+   */
+  @Nonnegative
+  public long getDatabaseFileSize ()
+  {
+    long ret = 0;
+    for (final String sSuffix : new String [] { Constants.SUFFIX_MV_FILE, Constants.SUFFIX_PAGE_FILE })
+    {
+      final File aFile = new File (getDatabase () + sSuffix);
+      if (aFile.isFile ())
+        ret += aFile.length ();
+    }
+    return ret;
+  }
+
+  /**
+   * @return The number of connections currently borrowed from the data source.
+   */
+  @Nonnegative
+  private int _getActiveConnectionCount ()
+  {
+    getLock ().lock ();
+    try
+    {
+      return m_aDataSource == null ? 0 : m_aDataSource.getNumActive ();
+    }
+    finally
+    {
+      getLock ().unlock ();
+    }
+  }
+
+  /**
+   * Compact the database while it stays in use, with the default settings.
+   * 
+   * @return The compaction result. Never <code>null</code>.
+   * @see #compactDatabaseOnline(long, long)
+   */
+  @Nonnull
+  public H2CompactionResult compactDatabaseOnline ()
+  {
+    return compactDatabaseOnline (DEFAULT_MAX_COMPACT_MILLIS, DEFAULT_DRAIN_TIMEOUT_MILLIS);
+  }
+
+  /**
+   * Compact the database while it stays in use. First all running operations
+   * of {@link com.phloc.db.jdbc.executor.DBExecutor} objects created with this
+   * connector as their data source provider are awaited and new ones are
+   * blocked. Connections borrowed in any other way (e.g. by an executor using
+   * a {@link com.phloc.db.jdbc.scope.PerRequestConnectionProvider} or directly
+   * from {@link #getDataSource()}) are neither awaited nor blocked. For MVStore
+   * databases the file is compacted in place for at most the passed compaction
+   * time. For page store databases "SHUTDOWN COMPACT" is executed and the data
+   * source is re-created transparently upon next access. As the shutdown closes
+   * all connections, it is refused while any such other connection is
+   * borrowed. Afterwards all blocked operations resume. Must not be called
+   * from within a {@link com.phloc.db.jdbc.executor.DBExecutor} callback of
+   * this connector.
+   * 
+   * @param nMaxCompactMillis
+   *        The maximum time in milliseconds to spend compacting an MVStore
+   *        database. Must be &gt; 0.
+   * @param nDrainTimeoutMillis
+   *        The maximum time in milliseconds to wait for running operations to
+   *        finish. If they don't finish in time, the compaction is not
+   *        performed. Must be &ge; 0.
+   * @return The compaction result. Never <code>null</code>.
+   */
+  @Nonnull
+  public H2CompactionResult compactDatabaseOnline (@Nonnegative final long nMaxCompactMillis,
+                                                   @Nonnegative final long nDrainTimeoutMillis)
+  {
+    if (nMaxCompactMillis <= 0)
+      throw new IllegalArgumentException ("MaxCompactMillis must be > 0: " + nMaxCompactMillis);
+    if (nDrainTimeoutMillis < 0)
+      throw new IllegalArgumentException ("DrainTimeoutMillis must be >= 0: " + nDrainTimeoutMillis);
+
+    final StopWatch aSW = new StopWatch (true);
+    final long nBytesBefore = getDatabaseFileSize ();
+
+    // Wait for all running operations
+    final Lock aWriteLock = getOperationLock ().writeLock ();
+    try
+    {
+      if (!aWriteLock.tryLock (nDrainTimeoutMillis, TimeUnit.MILLISECONDS))
+      {
+        s_aLogger.warn ("Running operations on database '" +
+                        getDatabase () +
+                        "' did not finish within " +
+                        nDrainTimeoutMillis +
+                        " ms - compaction skipped");
+        return new H2CompactionResult (ESuccess.FAILURE, null, nBytesBefore, nBytesBefore, aSW.stopAndGetMillis ());
+      }
+    }
+    catch (final InterruptedException ex)
+    {
+      Thread.currentThread ().interrupt ();
+      return new H2CompactionResult (ESuccess.FAILURE, null, nBytesBefore, nBytesBefore, aSW.stopAndGetMillis ());
+    }
+
+    EH2CompactionMode eMode = null;
+    ESuccess eSuccess = ESuccess.FAILURE;
+    try
+    {
+      final Connection aConnection = getDataSource ().getConnection ();
+      try
+      {
+        final Session aSession = (Session) aConnection.unwrap (JdbcConnection.class).getSession ();
+        final MVTableEngine.Store aStore = aSession.getDatabase ().getMvStore ();
+        if (aStore != null)
+        {
+          eMode = EH2CompactionMode.MVSTORE;
+          // compactFile sets the retention time to 0 and does not restore it
+          final MVStore aMVStore = aStore.getStore ();
+          final int nRetentionTime = aMVStore.getRetentionTime ();
+          try
+          {
+            aStore.compactFile (nMaxCompactMillis);
+          }
+          finally
+          {
+            aMVStore.setRetentionTime (nRetentionTime);
+          }
+          eSuccess = ESuccess.SUCCESS;
+        }
+        else
+        {
+          eMode = EH2CompactionMode.SHUTDOWN_COMPACT;
+          // The shutdown closes all connections - including the ones not
+          // borrowed by a DBExecutor of this connector
+          final int nOtherConnections = _getActiveConnectionCount () - 1;
+          if (nOtherConnections > 0)
+          {
+            s_aLogger.warn ("Database '" +
+                            getDatabase () +
+                            "' is still used by " +
+                            nOtherConnections +
+                            " other connection(s) - compaction skipped");
+          }
+          else
+          {
+            final Statement aStatement = aConnection.createStatement ();
+            try
+            {
+              aStatement.execute ("SHUTDOWN COMPACT");
+            }
+            finally
+            {
+              JDBCHelper.close (aStatement);
+            }
+            eSuccess = ESuccess.SUCCESS;
+          }
+        }
+      }
+      finally
+      {
+        JDBCHelper.close (aConnection);
+      }
+
+      // All pooled connections are invalid after a shutdown
+      if (eMode == EH2CompactionMode.SHUTDOWN_COMPACT && eSuccess.isSuccess ())
+        close ();
+    }
+    catch (final SQLException ex)
+    {
+      s_aLogger.error ("Failed to compact database '" + getDatabase () + "'", ex);
+    }
+    catch (final ClassCastException ex)
+    {
+      s_aLogger.error ("Failed to access the H2 session of database '" + getDatabase () + "'", ex);
+    }
+    finally
+    {
+      aWriteLock.unlock ();
+    }
+
+    final H2CompactionResult ret = new H2CompactionResult (eSuccess,
+                                                           eMode,
+                                                           nBytesBefore,
+                                                           getDatabaseFileSize (),
+                                                           aSW.stopAndGetMillis ());
+    if (eSuccess.isSuccess ())
+      s_aLogger.info ("Compacted database '" +
+                      getDatabase () +
+                      "' using " +
+                      eMode +
+                      ": " +
+                      ret.getBytesReclaimed () +
+                      " bytes reclaimed in " +
+                      ret.getDurationMillis () +
+                      " ms");
+    return ret;
+  }
+
   /**
    * Compact the database by exporting everything, resetting the DB and
    * importing it again. Before compacting process is started, <b>the data
-   * source is closed</b>!!!
+   * source is closed</b>!!! The export is written GZIP compressed and streamed
+   * back in batches.
    * 
    * @param bDeleteTemporarySQLFile
-   *        if <code>true</code> the temporary file (h2temp.sql) is deleted
+   *        if <code>true</code> the temporary file (h2dump$$.sql.gz) is deleted
    *        after successful compacting.
    * @return {@link ESuccess#SUCCESS} if everything went well,
    *         <code>false</code> if an error occurred. In case of an error, see
    *         the log file.
+   * @see #compactDatabaseOnline()
    */
   @Nonnull
   public ESuccess compactDatabase (final boolean bDeleteTemporarySQLFile)
@@ -85,34 +309,32 @@ public class H2FileConnector extends H2MemConnector
       close ();
 
       // Set temporary file name
-      final String sScriptFileName = "h2dump$$.sql";
+      final String sScriptFileName = "h2dump$$.sql.gz";
       final File aScriptFileName = new File (sScriptFileName);
-      try
-      {
-        if (dumpDatabase (aScriptFileName).isSuccess ())
-        {
-          // Delete all DB files
-          DeleteDbFiles.execute (m_sDirectory, m_sDBName, true);
+      if (dumpDatabase (aScriptFileName, EH2DumpCompression.GZIP, null).isFailure ())
+        return ESuccess.FAILURE;
 
-          // And re-execute the stuff from the file
-          RunScript.execute (getConnectionUrl (), m_sUser, m_sPassword, sScriptFileName, null, false);
+      // The dump re-opened the DB
+      close ();
 
-          // And delete temporary file
-          if (bDeleteTemporarySQLFile && FileOperations.deleteFile (aScriptFileName).isFailure ())
-            s_aLogger.error ("Failed to delete temporary export file '" + sScriptFileName + "'");
-          return ESuccess.SUCCESS;
-        }
-      }
-      catch (final SQLException ex)
+      // Delete all DB files
+      DeleteDbFiles.execute (m_sDirectory, m_sDBName, true);
+
+      // And re-execute the stuff from the file
+      if (restoreDatabase (aScriptFileName, EH2DumpCompression.GZIP, DEFAULT_RESTORE_BATCH_SIZE, null).isSuccess ())
       {
-        // Oops, we lost our data -> save file to avoid overwriting with another
-        // compact call
-        String sUniqueFileName = "h2dump-" + PDTFactory.getCurrentMillis () + ".sql";
-        if (FileOperations.renameFile (aScriptFileName, new File (sUniqueFileName)).isFailure ())
-          sUniqueFileName = sScriptFileName;
-        s_aLogger.error ("Failed to delete and refill database. Data is contained in file '" + sUniqueFileName + "'!",
-                         ex);
+        // And delete temporary file
+        if (bDeleteTemporarySQLFile && FileOperations.deleteFile (aScriptFileName).isFailure ())
+          s_aLogger.error ("Failed to delete temporary export file '" + sScriptFileName + "'");
+        return ESuccess.SUCCESS;
       }
+
+      // Oops, we lost our data -> save file to avoid overwriting with another
+      // compact call
+      String sUniqueFileName = "h2dump-" + PDTFactory.getCurrentMillis () + ".sql.gz";
+      if (FileOperations.renameFile (aScriptFileName, new File (sUniqueFileName)).isFailure ())
+        sUniqueFileName = sScriptFileName;
+      s_aLogger.error ("Failed to delete and refill database. Data is contained in file '" + sUniqueFileName + "'!");
       return ESuccess.FAILURE;
     }
     finally
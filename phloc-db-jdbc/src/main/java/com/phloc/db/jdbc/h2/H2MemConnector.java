@@ -52,6 +52,16 @@ public class H2MemConnector extends AbstractH2Connector
     m_sPassword = sPassword;
   }
 
+  /**
+   * @return The name of the database as passed in the constructor.
+   */
+  @Nonnull
+  @Nonempty
+  public final String getDatabaseName ()
+  {
+    return m_sDBName;
+  }
+
   @Override
   @Nonnull
   protected String getUserName ()
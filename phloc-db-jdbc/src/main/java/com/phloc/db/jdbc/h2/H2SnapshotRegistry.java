@@ -0,0 +1,281 @@
+/**
+ * Copyright (C) 2006-2015 phloc systems
+ * http://www.phloc.com
+ * office[at]phloc[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.phloc.db.jdbc.h2;
+
+import java.io.File;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.h2.tools.DeleteDbFiles;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.phloc.commons.annotations.Nonempty;
+import com.phloc.commons.callback.INonThrowingRunnableWithParameter;
+import com.phloc.commons.state.EChange;
+import com.phloc.commons.state.ESuccess;
+import com.phloc.commons.string.StringHelper;
+import com.phloc.commons.string.ToStringGenerator;
+import com.phloc.commons.timing.StopWatch;
+import com.phloc.db.jdbc.executor.DBExecutor;
+
+/**
+ * Keeps one {@link H2DatabaseSnapshot} per schema version. The template
+ * database of a version is built only once by running the passed initializer
+ * (e.g. DDL and seed data), and all databases requiring this version are
+ * cloned from the snapshot. If a template directory is provided, the templates
+ * are file databases, so that clones into {@link H2FileConnector} databases
+ * are file copies. Otherwise the templates are in-memory databases. Template
+ * databases are created with the user "sa" and an empty password. The user of
+ * the target database is added to each clone, so clones can be accessed with
+ * the credentials of the target as well.<br>
+ * Snapshots are not removed while {@link #cloneInto(String,
+ * INonThrowingRunnableWithParameter, AbstractH2Connector)} is using them.
+ * 
+ * @author Philip Helger
+ */
+@ThreadSafe
+public class H2SnapshotRegistry
+{
+  private static final Logger s_aLogger = LoggerFactory.getLogger (H2SnapshotRegistry.class);
+
+  private final Lock m_aCreationLock = new ReentrantLock ();
+  // Read lock while a snapshot is cloned, write lock while one is removed
+  private final ReadWriteLock m_aUsageLock = new ReentrantReadWriteLock ();
+  private final Map <String, H2DatabaseSnapshot> m_aSnapshots = new ConcurrentHashMap <String, H2DatabaseSnapshot> ();
+  private final File m_aTemplateDirectory;
+
+  /**
+   * Constructor using in-memory template databases.
+   */
+  public H2SnapshotRegistry ()
+  {
+    this (null);
+  }
+
+  /**
+   * Constructor
+   * 
+   * @param aTemplateDirectory
+   *        The directory for the file template databases. May be
+   *        <code>null</code> to use in-memory template databases.
+   */
+  public H2SnapshotRegistry (@Nullable final File aTemplateDirectory)
+  {
+    m_aTemplateDirectory = aTemplateDirectory;
+  }
+
+  @Nullable
+  public final File getTemplateDirectory ()
+  {
+    return m_aTemplateDirectory;
+  }
+
+  /**
+   * Get the database name of the template of the passed schema version. All
+   * characters except ASCII letters, digits and '-' are escaped as '_' followed
+   * by their 4 digit hex code, so that different schema versions never share a
+   * template database. The '.' is escaped as well, as H2 deletes all files
+   * starting with the database name and a dot.
+   * 
+   * @param sSchemaVersion
+   *        The schema version. May not be <code>null</code>.
+   * @return The template database name. Never <code>null</code>.
+   */
+  @Nonnull
+  @Nonempty
+  static String getTemplateName (@Nonnull final String sSchemaVersion)
+  {
+    final StringBuilder aSB = new StringBuilder ("template-");
+    for (final char c : sSchemaVersion.toCharArray ())
+      if ((c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z') || (c >= '0' && c <= '9') || c == '-')
+        aSB.append (c);
+      else
+      {
+        final String sHex = Integer.toHexString (c);
+        aSB.append ('_').append ("0000", sHex.length (), 4).append (sHex);
+      }
+    return aSB.toString ();
+  }
+
+  /**
+   * Get the snapshot of the passed schema version, building the template
+   * database if no snapshot exists yet.
+   * 
+   * @param sSchemaVersion
+   *        The schema version. May neither be <code>null</code> nor empty.
+   * @param aInitializer
+   *        The callback filling the template database. Only invoked if no
+   *        snapshot exists. May not be <code>null</code>.
+   * @return <code>null</code> if the snapshot could not be created.
+   *         {@link #removeSnapshot(String)} deletes the template file of the
+   *         returned snapshot, so prefer
+   *         {@link #cloneInto(String, INonThrowingRunnableWithParameter, AbstractH2Connector)}
+   *         if snapshots may be removed concurrently.
+   */
+  @Nullable
+  public H2DatabaseSnapshot getOrCreateSnapshot (@Nonnull @Nonempty final String sSchemaVersion,
+                                                 @Nonnull final INonThrowingRunnableWithParameter <DBExecutor> aInitializer)
+  {
+    if (StringHelper.hasNoText (sSchemaVersion))
+      throw new IllegalArgumentException ("schemaVersion");
+    if (aInitializer == null)
+      throw new NullPointerException ("initializer");
+
+    H2DatabaseSnapshot ret = m_aSnapshots.get (sSchemaVersion);
+    if (ret == null)
+    {
+      m_aCreationLock.lock ();
+      try
+      {
+        // Check again while holding the lock
+        ret = m_aSnapshots.get (sSchemaVersion);
+        if (ret == null)
+        {
+          final StopWatch aSW = new StopWatch (true);
+          final String sTemplateName = getTemplateName (sSchemaVersion);
+          final AbstractH2Connector aTemplate;
+          if (m_aTemplateDirectory != null)
+          {
+            DeleteDbFiles.execute (m_aTemplateDirectory.getPath (), sTemplateName, true);
+            aTemplate = new H2FileConnector (m_aTemplateDirectory.getPath (), sTemplateName, "sa", "");
+          }
+          else
+            aTemplate = new H2MemConnector ("phloc-" + sTemplateName, "sa", "");
+          try
+          {
+            aInitializer.run (new DBExecutor (aTemplate));
+            ret = H2DatabaseSnapshot.createFromTemplate (aTemplate);
+          }
+          finally
+          {
+            aTemplate.close ();
+          }
+          if (ret != null)
+          {
+            m_aSnapshots.put (sSchemaVersion, ret);
+            s_aLogger.info ("Created snapshot for schema version '" +
+                            sSchemaVersion +
+                            "' in " +
+                            aSW.stopAndGetMillis () +
+                            " ms: " +
+                            ret);
+          }
+        }
+      }
+      finally
+      {
+        m_aCreationLock.unlock ();
+      }
+    }
+    return ret;
+  }
+
+  /**
+   * Clone the snapshot of the passed schema version into the passed database,
+   * building the template database if no snapshot exists yet.
+   * 
+   * @param sSchemaVersion
+   *        The schema version. May neither be <code>null</code> nor empty.
+   * @param aInitializer
+   *        The callback filling the template database. Only invoked if no
+   *        snapshot exists. May not be <code>null</code>.
+   * @param aTarget
+   *        The database to clone into. May not be <code>null</code>.
+   * @return {@link ESuccess}
+   * @see H2DatabaseSnapshot#cloneInto(AbstractH2Connector)
+   */
+  @Nonnull
+  public ESuccess cloneInto (@Nonnull @Nonempty final String sSchemaVersion,
+                             @Nonnull final INonThrowingRunnableWithParameter <DBExecutor> aInitializer,
+                             @Nonnull final AbstractH2Connector aTarget)
+  {
+    // Don't remove the template files while they are copied
+    m_aUsageLock.readLock ().lock ();
+    try
+    {
+      final H2DatabaseSnapshot aSnapshot = getOrCreateSnapshot (sSchemaVersion, aInitializer);
+      if (aSnapshot == null)
+        return ESuccess.FAILURE;
+      return aSnapshot.cloneInto (aTarget);
+    }
+    finally
+    {
+      m_aUsageLock.readLock ().unlock ();
+    }
+  }
+
+  public boolean containsSnapshot (@Nullable final String sSchemaVersion)
+  {
+    return sSchemaVersion != null && m_aSnapshots.containsKey (sSchemaVersion);
+  }
+
+  /**
+   * Remove the snapshot of the passed schema version, e.g. because the
+   * initializer changed. A file template database is deleted. Waits until all
+   * running clone operations finished.
+   * 
+   * @param sSchemaVersion
+   *        The schema version. May be <code>null</code>.
+   * @return {@link EChange}
+   */
+  @Nonnull
+  public EChange removeSnapshot (@Nullable final String sSchemaVersion)
+  {
+    if (sSchemaVersion == null)
+      return EChange.UNCHANGED;
+
+    m_aUsageLock.writeLock ().lock ();
+    try
+    {
+      m_aCreationLock.lock ();
+      try
+      {
+        if (m_aSnapshots.remove (sSchemaVersion) == null)
+          return EChange.UNCHANGED;
+        if (m_aTemplateDirectory != null)
+          DeleteDbFiles.execute (m_aTemplateDirectory.getPath (), getTemplateName (sSchemaVersion), true);
+        return EChange.CHANGED;
+      }
+      finally
+      {
+        m_aCreationLock.unlock ();
+      }
+    }
+    finally
+    {
+      m_aUsageLock.writeLock ().unlock ();
+    }
+  }
+
+  @Override
+  public String toString ()
+  {
+    return new ToStringGenerator (this).append ("templateDirectory", m_aTemplateDirectory)
+                                       .append ("snapshots", m_aSnapshots)
+                                       .toString ();
+  }
+}
@@ -0,0 +1,40 @@
+/**
+ * Copyright (C) 2006-2015 phloc systems
+ * http://www.phloc.com
+ * office[at]phloc[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.phloc.db.jdbc.h2;
+
+import javax.annotation.Nonnegative;
+
+/**
+ * Callback interface to get notified about the progress of long running H2
+ * operations like dumping or restoring a database.
+ * 
+ * @author Philip Helger
+ */
+public interface IH2ProgressCallback
+{
+  /**
+   * Called periodically while the operation is running and once when it is
+   * done.
+   * 
+   * @param nStatementCount
+   *        The number of SQL statements processed so far.
+   * @param nCharCount
+   *        The number of uncompressed SQL characters processed so far.
+   */
+  void onProgress (@Nonnegative long nStatementCount, @Nonnegative long nCharCount);
+}
@@ -0,0 +1,81 @@
+/**
+ * Copyright (C) 2006-2015 phloc systems
+ * http://www.phloc.com
+ * office[at]phloc[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.phloc.db.jdbc.h2;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.NotThreadSafe;
+
+/**
+ * An output stream that limits the average number of bytes written per second
+ * by pausing the writing thread.
+ * 
+ * @author Philip Helger
+ */
+@NotThreadSafe
+final class ThrottledOutputStream extends FilterOutputStream
+{
+  private final long m_nMaxBytesPerSecond;
+  private final long m_nStartNanos = System.nanoTime ();
+  private long m_nBytesWritten = 0;
+
+  ThrottledOutputStream (@Nonnull final OutputStream aOS, @Nonnegative final long nMaxBytesPerSecond)
+  {
+    super (aOS);
+    if (nMaxBytesPerSecond <= 0)
+      throw new IllegalArgumentException ("MaxBytesPerSecond must be > 0: " + nMaxBytesPerSecond);
+    m_nMaxBytesPerSecond = nMaxBytesPerSecond;
+  }
+
+  private void _throttle (@Nonnegative final int nBytes) throws IOException
+  {
+    m_nBytesWritten += nBytes;
+    final long nExpectedNanos = m_nBytesWritten * 1000000000L / m_nMaxBytesPerSecond;
+    final long nElapsedNanos = System.nanoTime () - m_nStartNanos;
+    final long nWaitMillis = (nExpectedNanos - nElapsedNanos) / 1000000L;
+    if (nWaitMillis > 0)
+      try
+      {
+        Thread.sleep (nWaitMillis);
+      }
+      catch (final InterruptedException ex)
+      {
+        Thread.currentThread ().interrupt ();
+        throw new InterruptedIOException ("Interrupted while throttling");
+      }
+  }
+
+  @Override
+  public void write (final int b) throws IOException
+  {
+    out.write (b);
+    _throttle (1);
+  }
+
+  @Override
+  public void write (@Nonnull final byte [] aBuf, final int nOfs, final int nLen) throws IOException
+  {
+    out.write (aBuf, nOfs, nLen);
+    _throttle (nLen);
+  }
+}
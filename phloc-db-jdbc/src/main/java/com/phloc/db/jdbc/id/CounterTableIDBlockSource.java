@@ -0,0 +1,173 @@
+/**
+ * Copyright (C) 2006-2015 phloc systems
+ * http://www.phloc.com
+ * office[at]phloc[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.phloc.db.jdbc.id;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.phloc.commons.annotations.Nonempty;
+import com.phloc.commons.string.StringHelper;
+import com.phloc.commons.string.ToStringGenerator;
+import com.phloc.db.jdbc.callback.ConstantPreparedStatementDataProvider;
+import com.phloc.db.jdbc.executor.DBExecutor;
+import com.phloc.db.jdbc.executor.DBResultRow;
+
+/**
+ * An {@link IIDBlockSource} based on a counter table that holds the next free
+ * ID per name. This works with all databases. The table must exist and needs
+ * a character column for the name (the primary key) and a numeric column for
+ * the next free ID, e.g.
+ * <code>CREATE TABLE id_counter (name VARCHAR(100) PRIMARY KEY, next_id BIGINT NOT NULL)</code>
+ * . Missing rows are created automatically.<br>
+ * Blocks are reserved with an optimistic compare-and-set UPDATE, so no row
+ * lock is held between reading and writing the counter.
+ * 
+ * @author Philip Helger
+ */
+@ThreadSafe
+public class CounterTableIDBlockSource implements IIDBlockSource
+{
+  /** Default table name */
+  public static final String DEFAULT_TABLE_NAME = "id_counter";
+  /** Default name column */
+  public static final String DEFAULT_NAME_COLUMN = "name";
+  /** Default next ID column */
+  public static final String DEFAULT_VALUE_COLUMN = "next_id";
+  /** The first ID to be used for new counters */
+  public static final long INITIAL_ID = 1;
+  /** Maximum number of retries on concurrent modification */
+  public static final int MAX_RETRIES = 100;
+
+  private static final Logger s_aLogger = LoggerFactory.getLogger (CounterTableIDBlockSource.class);
+
+  private final DBExecutor m_aExecutor;
+  private final String m_sCounterName;
+  private final String m_sSelectSQL;
+  private final String m_sInsertSQL;
+  private final String m_sUpdateSQL;
+
+  public CounterTableIDBlockSource (@Nonnull final DBExecutor aExecutor, @Nonnull @Nonempty final String sCounterName)
+  {
+    this (aExecutor, DEFAULT_TABLE_NAME, DEFAULT_NAME_COLUMN, DEFAULT_VALUE_COLUMN, sCounterName);
+  }
+
+  /**
+   * Constructor
+   * 
+   * @param aExecutor
+   *        The executor to use. May not be <code>null</code>.
+   * @param sTableName
+   *        The name of the counter table. May neither be <code>null</code> nor
+   *        empty.
+   * @param sNameColumn
+   *        The column holding the counter name. May neither be
+   *        <code>null</code> nor empty.
+   * @param sValueColumn
+   *        The column holding the next free ID. May neither be
+   *        <code>null</code> nor empty.
+   * @param sCounterName
+   *        The name of the counter to use, usually the name of the table the
+   *        IDs are used for. May neither be <code>null</code> nor empty.
+   */
+  public CounterTableIDBlockSource (@Nonnull final DBExecutor aExecutor,
+                                    @Nonnull @Nonempty final String sTableName,
+                                    @Nonnull @Nonempty final String sNameColumn,
+                                    @Nonnull @Nonempty final String sValueColumn,
+                                    @Nonnull @Nonempty final String sCounterName)
+  {
+    if (aExecutor == null)
+      throw new NullPointerException ("executor");
+    if (StringHelper.hasNoText (sTableName))
+      throw new IllegalArgumentException ("tableName");
+    if (StringHelper.hasNoText (sNameColumn))
+      throw new IllegalArgumentException ("nameColumn");
+    if (StringHelper.hasNoText (sValueColumn))
+      throw new IllegalArgumentException ("valueColumn");
+    if (StringHelper.hasNoText (sCounterName))
+      throw new IllegalArgumentException ("counterName");
+    m_aExecutor = aExecutor;
+    m_sCounterName = sCounterName;
+    m_sSelectSQL = "SELECT " + sValueColumn + " FROM " + sTableName + " WHERE " + sNameColumn + " = ?";
+    m_sInsertSQL = "INSERT INTO " + sTableName + " (" + sNameColumn + ", " + sValueColumn + ") VALUES (?, ?)";
+    m_sUpdateSQL = "UPDATE " +
+                   sTableName +
+                   " SET " +
+                   sValueColumn +
+                   " = ? WHERE " +
+                   sNameColumn +
+                   " = ? AND " +
+                   sValueColumn +
+                   " = ?";
+  }
+
+  @Nonnull
+  @Nonempty
+  public String getCounterName ()
+  {
+    return m_sCounterName;
+  }
+
+  public long reserveBlock (@Nonnegative final int nBlockSize)
+  {
+    if (nBlockSize <= 0)
+      throw new IllegalArgumentException ("BlockSize must be > 0: " + nBlockSize);
+
+    for (int nRetry = 0; nRetry < MAX_RETRIES; ++nRetry)
+    {
+      final DBResultRow aRow = m_aExecutor.querySingle (m_sSelectSQL,
+                                                        new ConstantPreparedStatementDataProvider (m_sCounterName));
+      if (aRow == null)
+      {
+        // No such counter yet - create it. If a concurrent process created it
+        // in the meantime, the insert fails and we simply try again.
+        if (m_aExecutor.insertOrUpdateOrDelete (m_sInsertSQL,
+                                                new ConstantPreparedStatementDataProvider (m_sCounterName,
+                                                                                           Long.valueOf (INITIAL_ID))) < 0)
+          s_aLogger.info ("Failed to create counter '" + m_sCounterName + "' - retrying");
+        continue;
+      }
+
+      final long nFirstID = aRow.getAsLong (0);
+      final int nUpdated = m_aExecutor.insertOrUpdateOrDelete (m_sUpdateSQL,
+                                                               new ConstantPreparedStatementDataProvider (Long.valueOf (nFirstID +
+                                                                                                                        nBlockSize),
+                                                                                                          m_sCounterName,
+                                                                                                          Long.valueOf (nFirstID)));
+      if (nUpdated == 1)
+        return nFirstID;
+      // Modified concurrently - try again
+    }
+    throw new IllegalStateException ("Failed to reserve a block of IDs for counter '" +
+                                     m_sCounterName +
+                                     "' after " +
+                                     MAX_RETRIES +
+                                     " retries");
+  }
+
+  @Override
+  public String toString ()
+  {
+    return new ToStringGenerator (this).append ("counterName", m_sCounterName)
+                                       .append ("selectSQL", m_sSelectSQL)
+                                       .toString ();
+  }
+}
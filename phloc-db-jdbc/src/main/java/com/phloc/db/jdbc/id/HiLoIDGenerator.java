@@ -0,0 +1,142 @@
+/**
+ * Copyright (C) 2006-2015 phloc systems
+ * http://www.phloc.com
+ * office[at]phloc[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.phloc.db.jdbc.id;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.ThreadSafe;
+
+import com.phloc.commons.string.ToStringGenerator;
+
+/**
+ * An ID generator that reserves blocks of IDs from an {@link IIDBlockSource}
+ * and hands them out from memory. Getting an ID from the current block does
+ * not lock, only reserving the next block is synchronized. IDs that were
+ * reserved but not used (e.g. on shutdown) are lost, so the generated IDs are
+ * unique and increasing per block but may contain gaps.
+ * 
+ * @author Philip Helger
+ */
+@ThreadSafe
+public class HiLoIDGenerator
+{
+  /** Default number of IDs per block */
+  public static final int DEFAULT_BLOCK_SIZE = 50;
+
+  private static final class Block
+  {
+    private final AtomicLong m_aNext;
+    private final long m_nEnd;
+
+    Block (final long nFirst, final long nEnd)
+    {
+      m_aNext = new AtomicLong (nFirst);
+      m_nEnd = nEnd;
+    }
+  }
+
+  private final IIDBlockSource m_aSource;
+  private final int m_nBlockSize;
+  private final Object m_aRefillLock = new Object ();
+  // Initially an empty block
+  private volatile Block m_aBlock = new Block (0, 0);
+  private final AtomicLong m_aReservedBlockCount = new AtomicLong ();
+
+  public HiLoIDGenerator (@Nonnull final IIDBlockSource aSource)
+  {
+    this (aSource, DEFAULT_BLOCK_SIZE);
+  }
+
+  /**
+   * Constructor
+   * 
+   * @param aSource
+   *        The source to reserve the blocks from. May not be
+   *        <code>null</code>.
+   * @param nBlockSize
+   *        The number of IDs per block. Must be &gt; 0. For
+   *        {@link SequenceIDBlockSource} this must be equal to the increment of
+   *        the sequence.
+   */
+  public HiLoIDGenerator (@Nonnull final IIDBlockSource aSource, @Nonnegative final int nBlockSize)
+  {
+    if (aSource == null)
+      throw new NullPointerException ("source");
+    if (nBlockSize <= 0)
+      throw new IllegalArgumentException ("BlockSize must be > 0: " + nBlockSize);
+    m_aSource = aSource;
+    m_nBlockSize = nBlockSize;
+  }
+
+  @Nonnull
+  public final IIDBlockSource getSource ()
+  {
+    return m_aSource;
+  }
+
+  @Nonnegative
+  public final int getBlockSize ()
+  {
+    return m_nBlockSize;
+  }
+
+  /**
+   * @return The number of blocks reserved so far.
+   */
+  @Nonnegative
+  public final long getReservedBlockCount ()
+  {
+    return m_aReservedBlockCount.get ();
+  }
+
+  /**
+   * @return The next unique ID.
+   * @throws IllegalStateException
+   *         If a new block is needed but could not be reserved
+   */
+  public long getNextID ()
+  {
+    while (true)
+    {
+      // Hot path: no locking
+      final Block aBlock = m_aBlock;
+      final long nID = aBlock.m_aNext.getAndIncrement ();
+      if (nID < aBlock.m_nEnd)
+        return nID;
+
+      synchronized (m_aRefillLock)
+      {
+        // Was the block already replaced by another thread?
+        if (m_aBlock == aBlock)
+        {
+          final long nFirst = m_aSource.reserveBlock (m_nBlockSize);
+          m_aBlock = new Block (nFirst, nFirst + m_nBlockSize);
+          m_aReservedBlockCount.incrementAndGet ();
+        }
+      }
+    }
+  }
+
+  @Override
+  public String toString ()
+  {
+    return new ToStringGenerator (this).append ("source", m_aSource).append ("blockSize", m_nBlockSize).toString ();
+  }
+}
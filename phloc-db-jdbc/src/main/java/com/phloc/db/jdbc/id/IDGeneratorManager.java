@@ -0,0 +1,168 @@
+/**
+ * Copyright (C) 2006-2015 phloc systems
+ * http://www.phloc.com
+ * office[at]phloc[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.phloc.db.jdbc.id;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+
+import com.phloc.commons.annotations.Nonempty;
+import com.phloc.commons.annotations.ReturnsMutableCopy;
+import com.phloc.commons.collections.ContainerHelper;
+import com.phloc.commons.state.EChange;
+import com.phloc.commons.string.StringHelper;
+import com.phloc.commons.string.ToStringGenerator;
+import com.phloc.db.jdbc.executor.DBExecutor;
+
+/**
+ * Manages one {@link HiLoIDGenerator} per table. Each table can be configured
+ * with its own block source and block size. Tables that were not registered
+ * explicitly use a {@link CounterTableIDBlockSource} with the table name as
+ * counter name and the default block size.
+ * 
+ * @author Philip Helger
+ */
+@ThreadSafe
+public class IDGeneratorManager
+{
+  private final DBExecutor m_aExecutor;
+  private final Map <String, HiLoIDGenerator> m_aGenerators = new ConcurrentHashMap <String, HiLoIDGenerator> ();
+
+  /**
+   * Constructor
+   * 
+   * @param aExecutor
+   *        The executor used for the default counter table block source. May
+   *        not be <code>null</code>.
+   */
+  public IDGeneratorManager (@Nonnull final DBExecutor aExecutor)
+  {
+    if (aExecutor == null)
+      throw new NullPointerException ("executor");
+    m_aExecutor = aExecutor;
+  }
+
+  /**
+   * Register a specific ID generator for a table.
+   * 
+   * @param sTableName
+   *        The table name. May neither be <code>null</code> nor empty.
+   * @param aSource
+   *        The block source to use. May not be <code>null</code>.
+   * @param nBlockSize
+   *        The block size to use. Must be &gt; 0.
+   * @return {@link EChange#UNCHANGED} if a generator for this table is already
+   *         present.
+   */
+  @Nonnull
+  public EChange registerTable (@Nonnull @Nonempty final String sTableName,
+                                @Nonnull final IIDBlockSource aSource,
+                                @Nonnegative final int nBlockSize)
+  {
+    if (StringHelper.hasNoText (sTableName))
+      throw new IllegalArgumentException ("tableName");
+    final HiLoIDGenerator aGenerator = new HiLoIDGenerator (aSource, nBlockSize);
+    synchronized (m_aGenerators)
+    {
+      if (m_aGenerators.containsKey (sTableName))
+        return EChange.UNCHANGED;
+      m_aGenerators.put (sTableName, aGenerator);
+    }
+    return EChange.CHANGED;
+  }
+
+  /**
+   * Create the default generator for a table that was not registered. Can be
+   * overridden to use a different default source.
+   * 
+   * @param sTableName
+   *        The table name.
+   * @return The new generator. May not be <code>null</code>.
+   */
+  @Nonnull
+  protected HiLoIDGenerator createDefaultGenerator (@Nonnull @Nonempty final String sTableName)
+  {
+    return new HiLoIDGenerator (new CounterTableIDBlockSource (m_aExecutor, sTableName));
+  }
+
+  /**
+   * Get the generator for the passed table, creating the default generator if
+   * none is registered.
+   * 
+   * @param sTableName
+   *        The table name. May neither be <code>null</code> nor empty.
+   * @return The generator. Never <code>null</code>.
+   */
+  @Nonnull
+  public HiLoIDGenerator getGenerator (@Nonnull @Nonempty final String sTableName)
+  {
+    HiLoIDGenerator ret = m_aGenerators.get (sTableName);
+    if (ret == null)
+    {
+      if (StringHelper.hasNoText (sTableName))
+        throw new IllegalArgumentException ("tableName");
+      synchronized (m_aGenerators)
+      {
+        ret = m_aGenerators.get (sTableName);
+        if (ret == null)
+        {
+          ret = createDefaultGenerator (sTableName);
+          m_aGenerators.put (sTableName, ret);
+        }
+      }
+    }
+    return ret;
+  }
+
+  /**
+   * Get the next ID for the passed table.
+   * 
+   * @param sTableName
+   *        The table name. May neither be <code>null</code> nor empty.
+   * @return The next unique ID.
+   */
+  public long getNextID (@Nonnull @Nonempty final String sTableName)
+  {
+    return getGenerator (sTableName).getNextID ();
+  }
+
+  @Nullable
+  public HiLoIDGenerator getRegisteredGenerator (@Nullable final String sTableName)
+  {
+    return sTableName == null ? null : m_aGenerators.get (sTableName);
+  }
+
+  @Nonnull
+  @ReturnsMutableCopy
+  public Map <String, HiLoIDGenerator> getAllGenerators ()
+  {
+    return ContainerHelper.newMap (m_aGenerators);
+  }
+
+  @Override
+  public String toString ()
+  {
+    return new ToStringGenerator (this).append ("executor", m_aExecutor)
+                                       .append ("generators", m_aGenerators)
+                                       .toString ();
+  }
+}
@@ -0,0 +1,44 @@
+/**
+ * Copyright (C) 2006-2015 phloc systems
+ * http://www.phloc.com
+ * office[at]phloc[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.phloc.db.jdbc.id;
+
+import javax.annotation.Nonnegative;
+
+/**
+ * Base interface for sources of ID blocks used by {@link HiLoIDGenerator}.
+ * Each call reserves a new block of consecutive IDs that is not handed out
+ * again - neither to this process nor to any other process using the same
+ * source.
+ * 
+ * @author Philip Helger
+ */
+public interface IIDBlockSource
+{
+  /**
+   * Reserve a new block of IDs.
+   * 
+   * @param nBlockSize
+   *        The number of IDs to reserve. Must be &gt; 0.
+   * @return The first ID of the reserved block. The block contains all IDs
+   *         from the returned value (inclusive) to the returned value plus
+   *         block size (exclusive).
+   * @throws IllegalStateException
+   *         If no block could be reserved
+   */
+  long reserveBlock (@Nonnegative int nBlockSize);
+}
@@ -0,0 +1,136 @@
+/**
+ * Copyright (C) 2006-2015 phloc systems
+ * http://www.phloc.com
+ * office[at]phloc[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.phloc.db.jdbc.id;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+
+import com.phloc.commons.annotations.Nonempty;
+import com.phloc.commons.string.StringHelper;
+import com.phloc.commons.string.ToStringGenerator;
+import com.phloc.db.jdbc.EDatabaseDialect;
+import com.phloc.db.jdbc.callback.ConstantPreparedStatementDataProvider;
+import com.phloc.db.jdbc.executor.DBExecutor;
+import com.phloc.db.jdbc.executor.DBResultRow;
+
+/**
+ * An {@link IIDBlockSource} based on a database sequence. The sequence must be
+ * created with an increment that equals the block size, e.g.
+ * <code>CREATE SEQUENCE seq START WITH 1 INCREMENT BY 50</code>. Each value of
+ * the sequence is the first ID of a block. Before the first block of a certain
+ * size is reserved, the increment of the sequence is read from the system
+ * catalog and an {@link IllegalStateException} is thrown if it does not match,
+ * as the blocks of different generators would overlap otherwise.
+ * 
+ * @author Philip Helger
+ */
+@ThreadSafe
+public class SequenceIDBlockSource implements IIDBlockSource
+{
+  private final DBExecutor m_aExecutor;
+  private final String m_sSequenceName;
+  private final EDatabaseDialect m_eDialect;
+  // The last block size that matched the sequence increment
+  private volatile int m_nValidatedBlockSize = 0;
+
+  public SequenceIDBlockSource (@Nonnull final DBExecutor aExecutor, @Nonnull @Nonempty final String sSequenceName)
+  {
+    this (aExecutor, sSequenceName, null);
+  }
+
+  /**
+   * Constructor
+   * 
+   * @param aExecutor
+   *        The executor to use. May not be <code>null</code>.
+   * @param sSequenceName
+   *        The name of the sequence. May neither be <code>null</code> nor
+   *        empty.
+   * @param eDialect
+   *        The dialect to use. May be <code>null</code> to use the dialect of
+   *        the executor.
+   */
+  public SequenceIDBlockSource (@Nonnull final DBExecutor aExecutor,
+                                @Nonnull @Nonempty final String sSequenceName,
+                                @Nullable final EDatabaseDialect eDialect)
+  {
+    if (aExecutor == null)
+      throw new NullPointerException ("executor");
+    if (StringHelper.hasNoText (sSequenceName))
+      throw new IllegalArgumentException ("sequenceName");
+    if (eDialect != null && !eDialect.isSequenceSupported ())
+      throw new IllegalArgumentException ("Dialect " + eDialect + " does not support sequences");
+    m_aExecutor = aExecutor;
+    m_sSequenceName = sSequenceName;
+    m_eDialect = eDialect;
+  }
+
+  @Nonnull
+  @Nonempty
+  public String getSequenceName ()
+  {
+    return m_sSequenceName;
+  }
+
+  private void _validateIncrement (@Nonnull final EDatabaseDialect eDialect, @Nonnegative final int nBlockSize)
+  {
+    // The catalog contains the unqualified name
+    final String sUnqualifiedName = m_sSequenceName.substring (m_sSequenceName.lastIndexOf ('.') + 1);
+    final DBResultRow aRow = m_aExecutor.querySingle (eDialect.getSequenceIncrementSQL (),
+                                                      new ConstantPreparedStatementDataProvider (sUnqualifiedName));
+    if (aRow == null)
+      throw new IllegalStateException ("Failed to determine the increment of sequence " + m_sSequenceName);
+    final long nIncrement = aRow.getAsLong (0);
+    if (nIncrement != nBlockSize)
+      throw new IllegalStateException ("Sequence " +
+                                       m_sSequenceName +
+                                       " has an increment of " +
+                                       nIncrement +
+                                       " but the block size is " +
+                                       nBlockSize +
+                                       " - the sequence must be created with INCREMENT BY " +
+                                       nBlockSize);
+    m_nValidatedBlockSize = nBlockSize;
+  }
+
+  public long reserveBlock (@Nonnegative final int nBlockSize)
+  {
+    if (nBlockSize <= 0)
+      throw new IllegalArgumentException ("BlockSize must be > 0: " + nBlockSize);
+    final EDatabaseDialect eDialect = m_eDialect != null ? m_eDialect : m_aExecutor.getDialect ();
+    if (eDialect == null)
+      throw new IllegalStateException ("The database dialect is unknown - please set it explicitly");
+    if (nBlockSize != m_nValidatedBlockSize)
+      _validateIncrement (eDialect, nBlockSize);
+
+    final DBResultRow aRow = m_aExecutor.querySingle (eDialect.getNextSequenceValueSQL (m_sSequenceName));
+    if (aRow == null)
+      throw new IllegalStateException ("Failed to retrieve the next value of sequence " + m_sSequenceName);
+    return aRow.getAsLong (0);
+  }
+
+  @Override
+  public String toString ()
+  {
+    return new ToStringGenerator (this).append ("sequenceName", m_sSequenceName)
+                                       .append ("dialect", m_eDialect)
+                                       .toString ();
+  }
+}
@@ -0,0 +1,74 @@
+/**
+ * Copyright (C) 2006-2015 phloc systems
+ * http://www.phloc.com
+ * office[at]phloc[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.phloc.db.jdbc.mysql;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+import javax.annotation.Nonnull;
+
+import com.phloc.commons.annotations.Nonempty;
+import com.phloc.commons.annotations.OverrideOnDemand;
+import com.phloc.commons.annotations.ReturnsMutableCopy;
+import com.phloc.db.api.CJDBC_MySQL;
+import com.phloc.db.api.mysql.EMySQLConnectionProperty;
+import com.phloc.db.api.mysql.MySQLHelper;
+import com.phloc.db.jdbc.AbstractConnector;
+
+/**
+ * Abstract DB connector for MySQL. By default cursor based fetching is
+ * enabled, as Connector/J otherwise ignores the fetch size and reads the whole
+ * result of a query into memory.
+ * 
+ * @author Philip Helger
+ */
+public abstract class AbstractMySQLConnector extends AbstractConnector
+{
+  public AbstractMySQLConnector ()
+  {}
+
+  @Override
+  @Nonnull
+  @Nonempty
+  protected String getJDBCDriverClassName ()
+  {
+    return CJDBC_MySQL.DEFAULT_JDBC_DRIVER_CLASS_NAME;
+  }
+
+  /**
+   * @return The connection properties to be added to the connection URL. By
+   *         default only {@link EMySQLConnectionProperty#useCursorFetch} is
+   *         enabled. Never <code>null</code>.
+   */
+  @Nonnull
+  @ReturnsMutableCopy
+  @OverrideOnDemand
+  protected Map <EMySQLConnectionProperty, String> getConnectionProperties ()
+  {
+    final Map <EMySQLConnectionProperty, String> ret = new EnumMap <EMySQLConnectionProperty, String> (EMySQLConnectionProperty.class);
+    ret.put (EMySQLConnectionProperty.useCursorFetch, Boolean.TRUE.toString ());
+    return ret;
+  }
+
+  @Override
+  @Nonnull
+  public final String getConnectionUrl ()
+  {
+    return MySQLHelper.buildJDBCString (CJDBC_MySQL.CONNECTION_PREFIX + getDatabase (), getConnectionProperties ());
+  }
+}
@@ -0,0 +1,135 @@
+/**
+ * Copyright (C) 2006-2015 phloc systems
+ * http://www.phloc.com
+ * office[at]phloc[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.phloc.db.jdbc.pipeline;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.NotThreadSafe;
+
+import com.phloc.commons.string.ToStringGenerator;
+
+/**
+ * A primitive accumulator for count, sum, minimum and maximum of a series of
+ * values.
+ * 
+ * @author Philip Helger
+ */
+@NotThreadSafe
+public final class DBAggregate
+{
+  private long m_nCount = 0;
+  private double m_dSum = 0;
+  private double m_dMin = Double.NaN;
+  private double m_dMax = Double.NaN;
+
+  public DBAggregate ()
+  {}
+
+  /**
+   * Add a single value.
+   * 
+   * @param dValue
+   *        The value to add.
+   */
+  public void add (final double dValue)
+  {
+    if (m_nCount == 0)
+    {
+      m_dMin = dValue;
+      m_dMax = dValue;
+    }
+    else
+    {
+      if (dValue < m_dMin)
+        m_dMin = dValue;
+      if (dValue > m_dMax)
+        m_dMax = dValue;
+    }
+    m_dSum += dValue;
+    m_nCount++;
+  }
+
+  /**
+   * Merge another aggregate into this one.
+   * 
+   * @param aOther
+   *        The aggregate to merge. May not be <code>null</code>.
+   */
+  public void addAll (@Nonnull final DBAggregate aOther)
+  {
+    if (aOther.m_nCount == 0)
+      return;
+    if (m_nCount == 0)
+    {
+      m_dMin = aOther.m_dMin;
+      m_dMax = aOther.m_dMax;
+    }
+    else
+    {
+      m_dMin = Math.min (m_dMin, aOther.m_dMin);
+      m_dMax = Math.max (m_dMax, aOther.m_dMax);
+    }
+    m_dSum += aOther.m_dSum;
+    m_nCount += aOther.m_nCount;
+  }
+
+  @Nonnegative
+  public long getCount ()
+  {
+    return m_nCount;
+  }
+
+  public double getSum ()
+  {
+    return m_dSum;
+  }
+
+  /**
+   * @return The minimum value or {@link Double#NaN} if no value was added.
+   */
+  public double getMin ()
+  {
+    return m_dMin;
+  }
+
+  /**
+   * @return The maximum value or {@link Double#NaN} if no value was added.
+   */
+  public double getMax ()
+  {
+    return m_dMax;
+  }
+
+  /**
+   * @return The average value or {@link Double#NaN} if no value was added.
+   */
+  public double getAverage ()
+  {
+    return m_nCount == 0 ? Double.NaN : m_dSum / m_nCount;
+  }
+
+  @Override
+  public String toString ()
+  {
+    return new ToStringGenerator (this).append ("count", m_nCount)
+                                       .append ("sum", m_dSum)
+                                       .append ("min", m_dMin)
+                                       .append ("max", m_dMax)
+                                       .toString ();
+  }
+}
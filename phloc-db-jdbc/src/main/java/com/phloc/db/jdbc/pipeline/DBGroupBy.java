@@ -0,0 +1,137 @@
+/**
+ * Copyright (C) 2006-2015 phloc systems
+ * http://www.phloc.com
+ * office[at]phloc[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.phloc.db.jdbc.pipeline;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.NotThreadSafe;
+
+import com.phloc.commons.annotations.ReturnsMutableCopy;
+import com.phloc.commons.callback.INonThrowingRunnableWithParameter;
+import com.phloc.commons.convert.IUnidirectionalConverter;
+import com.phloc.commons.string.ToStringGenerator;
+
+/**
+ * A terminal pipeline operation that groups all passed objects by a key and
+ * aggregates a numeric value per group in a {@link DBAggregate}. The memory
+ * used depends only on the number of distinct keys, which can be limited.
+ * 
+ * @author Philip Helger
+ * @param <DATATYPE>
+ *        The type of objects to group
+ * @param <KEYTYPE>
+ *        The group key type
+ */
+@NotThreadSafe
+public final class DBGroupBy <DATATYPE, KEYTYPE> implements INonThrowingRunnableWithParameter <DATATYPE>
+{
+  /** Default maximum number of groups */
+  public static final int DEFAULT_MAX_GROUPS = 100000;
+
+  private final IUnidirectionalConverter <? super DATATYPE, ? extends KEYTYPE> m_aKeyExtractor;
+  private final IDoubleExtractor <? super DATATYPE> m_aValueExtractor;
+  private final int m_nMaxGroups;
+  private final Map <KEYTYPE, DBAggregate> m_aGroups = new LinkedHashMap <KEYTYPE, DBAggregate> ();
+
+  public DBGroupBy (@Nonnull final IUnidirectionalConverter <? super DATATYPE, ? extends KEYTYPE> aKeyExtractor,
+                    @Nullable final IDoubleExtractor <? super DATATYPE> aValueExtractor)
+  {
+    this (aKeyExtractor, aValueExtractor, DEFAULT_MAX_GROUPS);
+  }
+
+  /**
+   * Constructor
+   * 
+   * @param aKeyExtractor
+   *        Extracts the group key from each object. May not be
+   *        <code>null</code>. The key must be immutable and may be
+   *        <code>null</code>.
+   * @param aValueExtractor
+   *        Extracts the value to be aggregated from each object. May be
+   *        <code>null</code> to only count the objects per group.
+   * @param nMaxGroups
+   *        The maximum number of distinct groups. If more groups are found,
+   *        an {@link IllegalStateException} is thrown. Must be &gt; 0.
+   */
+  public DBGroupBy (@Nonnull final IUnidirectionalConverter <? super DATATYPE, ? extends KEYTYPE> aKeyExtractor,
+                    @Nullable final IDoubleExtractor <? super DATATYPE> aValueExtractor,
+                    @Nonnegative final int nMaxGroups)
+  {
+    if (aKeyExtractor == null)
+      throw new NullPointerException ("keyExtractor");
+    if (nMaxGroups <= 0)
+      throw new IllegalArgumentException ("MaxGroups must be > 0: " + nMaxGroups);
+    m_aKeyExtractor = aKeyExtractor;
+    m_aValueExtractor = aValueExtractor;
+    m_nMaxGroups = nMaxGroups;
+  }
+
+  public void run (@Nullable final DATATYPE aObject)
+  {
+    if (aObject == null)
+      return;
+
+    final KEYTYPE aKey = m_aKeyExtractor.convert (aObject);
+    DBAggregate aAggregate = m_aGroups.get (aKey);
+    if (aAggregate == null)
+    {
+      if (m_aGroups.size () >= m_nMaxGroups)
+        throw new IllegalStateException ("More than " + m_nMaxGroups + " groups found");
+      aAggregate = new DBAggregate ();
+      m_aGroups.put (aKey, aAggregate);
+    }
+    aAggregate.add (m_aValueExtractor == null ? 0 : m_aValueExtractor.extract (aObject));
+  }
+
+  @Nonnegative
+  public int getGroupCount ()
+  {
+    return m_aGroups.size ();
+  }
+
+  /**
+   * @param aKey
+   *        The group key.
+   * @return <code>null</code> if no such group exists.
+   */
+  @Nullable
+  public DBAggregate getGroup (@Nullable final KEYTYPE aKey)
+  {
+    return m_aGroups.get (aKey);
+  }
+
+  /**
+   * @return All groups in the order they were found. Never <code>null</code>.
+   */
+  @Nonnull
+  @ReturnsMutableCopy
+  public Map <KEYTYPE, DBAggregate> getAllGroups ()
+  {
+    return new LinkedHashMap <KEYTYPE, DBAggregate> (m_aGroups);
+  }
+
+  @Override
+  public String toString ()
+  {
+    return new ToStringGenerator (this).append ("maxGroups", m_nMaxGroups).append ("groups", m_aGroups).toString ();
+  }
+}
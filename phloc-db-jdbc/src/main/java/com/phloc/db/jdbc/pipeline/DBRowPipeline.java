@@ -0,0 +1,302 @@
+/**
+ * Copyright (C) 2006-2015 phloc systems
+ * http://www.phloc.com
+ * office[at]phloc[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.phloc.db.jdbc.pipeline;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+
+import com.phloc.commons.callback.INonThrowingRunnableWithParameter;
+import com.phloc.commons.convert.IUnidirectionalConverter;
+import com.phloc.commons.filter.IFilter;
+import com.phloc.db.jdbc.callback.IResultSetRowCallback;
+import com.phloc.db.jdbc.executor.DBResultRow;
+
+/**
+ * A composable pipeline of operations that is executed incrementally for each
+ * row delivered to an {@link IResultSetRowCallback}. The full result is never
+ * materialized. Example:
+ * 
+ * <pre>
+ * final DBGroupBy &lt;DBResultRow, String&gt; aGroupBy = new DBGroupBy &lt;DBResultRow, String&gt; (aKeyExtractor, aValueExtractor);
+ * aExecutor.queryAll (sSQL, DBRowPipeline.create ().filter (aFilter).into (aGroupBy));
+ * </pre>
+ * 
+ * Note: the {@link DBResultRow} passed to the callback is reused for all rows,
+ * so it should be converted with {@link #map(IUnidirectionalConverter)} before
+ * it is stored by an operation. {@link DBTopN} clones rows automatically and
+ * {@link #distinct()} compares rows by their column values.
+ * Pipelines are immutable, but the callbacks created by
+ * {@link #into(INonThrowingRunnableWithParameter)} hold the state of the
+ * operations, so they may be used only once.
+ * 
+ * @author Philip Helger
+ * @param <DATATYPE>
+ *        The type of objects delivered by this pipeline stage
+ */
+@Immutable
+public abstract class DBRowPipeline <DATATYPE>
+{
+  /** Default maximum number of distinct values */
+  public static final int DEFAULT_MAX_DISTINCT = 100000;
+
+  private static final class FilterSink <T> implements INonThrowingRunnableWithParameter <T>
+  {
+    private final IFilter <? super T> m_aFilter;
+    private final INonThrowingRunnableWithParameter <? super T> m_aDownstream;
+
+    FilterSink (@Nonnull final IFilter <? super T> aFilter,
+                @Nonnull final INonThrowingRunnableWithParameter <? super T> aDownstream)
+    {
+      m_aFilter = aFilter;
+      m_aDownstream = aDownstream;
+    }
+
+    public void run (@Nullable final T aObject)
+    {
+      if (aObject != null && m_aFilter.matchesFilter (aObject))
+        m_aDownstream.run (aObject);
+    }
+  }
+
+  private static final class MapSink <T, U> implements INonThrowingRunnableWithParameter <T>
+  {
+    private final IUnidirectionalConverter <? super T, ? extends U> m_aConverter;
+    private final INonThrowingRunnableWithParameter <? super U> m_aDownstream;
+
+    MapSink (@Nonnull final IUnidirectionalConverter <? super T, ? extends U> aConverter,
+             @Nonnull final INonThrowingRunnableWithParameter <? super U> aDownstream)
+    {
+      m_aConverter = aConverter;
+      m_aDownstream = aDownstream;
+    }
+
+    public void run (@Nullable final T aObject)
+    {
+      if (aObject != null)
+        m_aDownstream.run (m_aConverter.convert (aObject));
+    }
+  }
+
+  private static final class DistinctSink <T> implements INonThrowingRunnableWithParameter <T>
+  {
+    private final int m_nMaxDistinct;
+    private final INonThrowingRunnableWithParameter <? super T> m_aDownstream;
+    private final Set <Object> m_aSeen = new HashSet <Object> ();
+
+    DistinctSink (@Nonnegative final int nMaxDistinct, @Nonnull final INonThrowingRunnableWithParameter <? super T> aDownstream)
+    {
+      m_nMaxDistinct = nMaxDistinct;
+      m_aDownstream = aDownstream;
+    }
+
+    /**
+     * {@link DBResultRow} has no equals/hashCode and is reused for all rows,
+     * so rows are compared by a copy of their column values.
+     */
+    @Nonnull
+    private static Object _getKey (@Nonnull final Object aObject)
+    {
+      if (!(aObject instanceof DBResultRow))
+        return aObject;
+
+      final DBResultRow aRow = (DBResultRow) aObject;
+      final List <Object> ret = new ArrayList <Object> (aRow.getColumnCount ());
+      for (int i = 0; i < aRow.getColumnCount (); ++i)
+      {
+        final Object aValue = aRow.getValue (i);
+        // Arrays have no value based equals
+        ret.add (aValue instanceof byte [] ? ByteBuffer.wrap (((byte []) aValue).clone ()) : aValue);
+      }
+      return ret;
+    }
+
+    public void run (@Nullable final T aObject)
+    {
+      if (aObject != null)
+      {
+        final Object aKey = _getKey (aObject);
+        if (!m_aSeen.contains (aKey))
+        {
+          if (m_aSeen.size () >= m_nMaxDistinct)
+            throw new IllegalStateException ("More than " + m_nMaxDistinct + " distinct values found");
+          m_aSeen.add (aKey);
+          m_aDownstream.run (aObject);
+        }
+      }
+    }
+  }
+
+  protected DBRowPipeline ()
+  {}
+
+  /**
+   * Wrap the passed downstream operation with all operations of this pipeline
+   * stage and its predecessors.
+   * 
+   * @param aDownstream
+   *        The downstream operation. Never <code>null</code>.
+   * @return The operation consuming the source rows. Never <code>null</code>.
+   */
+  @Nonnull
+  protected abstract INonThrowingRunnableWithParameter <DBResultRow> wrap (@Nonnull INonThrowingRunnableWithParameter <? super DATATYPE> aDownstream);
+
+  /**
+   * Only pass objects matching the filter.
+   * 
+   * @param aFilter
+   *        The filter to apply. May not be <code>null</code>.
+   * @return The new pipeline stage. Never <code>null</code>.
+   */
+  @Nonnull
+  public final DBRowPipeline <DATATYPE> filter (@Nonnull final IFilter <? super DATATYPE> aFilter)
+  {
+    if (aFilter == null)
+      throw new NullPointerException ("filter");
+
+    final DBRowPipeline <DATATYPE> aUpstream = this;
+    return new DBRowPipeline <DATATYPE> ()
+    {
+      @Override
+      @Nonnull
+      protected INonThrowingRunnableWithParameter <DBResultRow> wrap (@Nonnull final INonThrowingRunnableWithParameter <? super DATATYPE> aDownstream)
+      {
+        return aUpstream.wrap (new FilterSink <DATATYPE> (aFilter, aDownstream));
+      }
+    };
+  }
+
+  /**
+   * Convert each object.
+   * 
+   * @param aConverter
+   *        The converter to apply. May not be <code>null</code>. If the
+   *        converter returns <code>null</code>, the object is skipped.
+   * @return The new pipeline stage. Never <code>null</code>.
+   */
+  @Nonnull
+  public final <NEWTYPE> DBRowPipeline <NEWTYPE> map (@Nonnull final IUnidirectionalConverter <? super DATATYPE, ? extends NEWTYPE> aConverter)
+  {
+    if (aConverter == null)
+      throw new NullPointerException ("converter");
+
+    final DBRowPipeline <DATATYPE> aUpstream = this;
+    return new DBRowPipeline <NEWTYPE> ()
+    {
+      @Override
+      @Nonnull
+      protected INonThrowingRunnableWithParameter <DBResultRow> wrap (@Nonnull final INonThrowingRunnableWithParameter <? super NEWTYPE> aDownstream)
+      {
+        return aUpstream.wrap (new MapSink <DATATYPE, NEWTYPE> (aConverter, aDownstream));
+      }
+    };
+  }
+
+  /**
+   * Only pass the first occurrence of each object. The objects must implement
+   * equals and hashCode. {@link DBResultRow} objects are compared by their
+   * column values.
+   * 
+   * @return The new pipeline stage. Never <code>null</code>.
+   */
+  @Nonnull
+  public final DBRowPipeline <DATATYPE> distinct ()
+  {
+    return distinct (DEFAULT_MAX_DISTINCT);
+  }
+
+  /**
+   * Only pass the first occurrence of each object. The objects must implement
+   * equals and hashCode. {@link DBResultRow} objects are compared by their
+   * column values.
+   * 
+   * @param nMaxDistinct
+   *        The maximum number of distinct objects to remember. If more are
+   *        found, an {@link IllegalStateException} is thrown. Must be &gt; 0.
+   * @return The new pipeline stage. Never <code>null</code>.
+   */
+  @Nonnull
+  public final DBRowPipeline <DATATYPE> distinct (@Nonnegative final int nMaxDistinct)
+  {
+    if (nMaxDistinct <= 0)
+      throw new IllegalArgumentException ("MaxDistinct must be > 0: " + nMaxDistinct);
+
+    final DBRowPipeline <DATATYPE> aUpstream = this;
+    return new DBRowPipeline <DATATYPE> ()
+    {
+      @Override
+      @Nonnull
+      protected INonThrowingRunnableWithParameter <DBResultRow> wrap (@Nonnull final INonThrowingRunnableWithParameter <? super DATATYPE> aDownstream)
+      {
+        return aUpstream.wrap (new DistinctSink <DATATYPE> (nMaxDistinct, aDownstream));
+      }
+    };
+  }
+
+  /**
+   * Create the row callback that runs all operations of this pipeline and
+   * passes the results to the passed terminal operation, e.g. a
+   * {@link DBGroupBy} or {@link DBTopN}.
+   * 
+   * @param aTerminal
+   *        The terminal operation. May not be <code>null</code>.
+   * @return A new callback to be passed to the executor. Never
+   *         <code>null</code>.
+   */
+  @Nonnull
+  public final IResultSetRowCallback into (@Nonnull final INonThrowingRunnableWithParameter <? super DATATYPE> aTerminal)
+  {
+    if (aTerminal == null)
+      throw new NullPointerException ("terminal");
+
+    final INonThrowingRunnableWithParameter <DBResultRow> aSource = wrap (aTerminal);
+    return new IResultSetRowCallback ()
+    {
+      public void run (@Nullable final DBResultRow aCurrentObject)
+      {
+        aSource.run (aCurrentObject);
+      }
+    };
+  }
+
+  /**
+   * @return A new pipeline that passes the rows unmodified. Never
+   *         <code>null</code>.
+   */
+  @Nonnull
+  public static DBRowPipeline <DBResultRow> create ()
+  {
+    return new DBRowPipeline <DBResultRow> ()
+    {
+      @Override
+      @SuppressWarnings ("unchecked")
+      @Nonnull
+      protected INonThrowingRunnableWithParameter <DBResultRow> wrap (@Nonnull final INonThrowingRunnableWithParameter <? super DBResultRow> aDownstream)
+      {
+        return (INonThrowingRunnableWithParameter <DBResultRow>) aDownstream;
+      }
+    };
+  }
+}
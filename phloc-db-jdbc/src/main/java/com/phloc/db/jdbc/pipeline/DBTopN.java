@@ -0,0 +1,107 @@
+/**
+ * Copyright (C) 2006-2015 phloc systems
+ * http://www.phloc.com
+ * office[at]phloc[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.phloc.db.jdbc.pipeline;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.NotThreadSafe;
+
+import com.phloc.commons.annotations.ReturnsMutableCopy;
+import com.phloc.commons.callback.INonThrowingRunnableWithParameter;
+import com.phloc.commons.string.ToStringGenerator;
+import com.phloc.db.jdbc.executor.DBResultRow;
+
+/**
+ * A terminal pipeline operation that keeps the N largest objects according to
+ * a comparator. At most N objects are kept in memory at any time. Passed
+ * {@link DBResultRow} objects are cloned automatically, as they are reused by
+ * the executor.
+ * 
+ * @author Philip Helger
+ * @param <DATATYPE>
+ *        The type of objects to collect
+ */
+@NotThreadSafe
+public final class DBTopN <DATATYPE> implements INonThrowingRunnableWithParameter <DATATYPE>
+{
+  private final int m_nN;
+  private final Comparator <? super DATATYPE> m_aComparator;
+  // The smallest element is the head
+  private final PriorityQueue <DATATYPE> m_aQueue;
+
+  /**
+   * Constructor
+   * 
+   * @param nN
+   *        The number of objects to keep. Must be &gt; 0.
+   * @param aComparator
+   *        The comparator defining the order. The objects that are "largest"
+   *        according to this comparator are kept. May not be <code>null</code>.
+   */
+  public DBTopN (@Nonnegative final int nN, @Nonnull final Comparator <? super DATATYPE> aComparator)
+  {
+    if (nN <= 0)
+      throw new IllegalArgumentException ("N must be > 0: " + nN);
+    if (aComparator == null)
+      throw new NullPointerException ("comparator");
+    m_nN = nN;
+    m_aComparator = aComparator;
+    m_aQueue = new PriorityQueue <DATATYPE> (nN + 1, aComparator);
+  }
+
+  @SuppressWarnings ("unchecked")
+  public void run (@Nullable final DATATYPE aObject)
+  {
+    if (aObject == null)
+      return;
+
+    // Only add if it is larger than the current smallest element
+    if (m_aQueue.size () < m_nN || m_aComparator.compare (aObject, m_aQueue.peek ()) > 0)
+    {
+      m_aQueue.add (aObject instanceof DBResultRow ? (DATATYPE) ((DBResultRow) aObject).getClone () : aObject);
+      if (m_aQueue.size () > m_nN)
+        m_aQueue.poll ();
+    }
+  }
+
+  /**
+   * @return The collected objects, sorted from the largest to the smallest.
+   *         Never <code>null</code>.
+   */
+  @Nonnull
+  @ReturnsMutableCopy
+  public List <DATATYPE> getResult ()
+  {
+    final List <DATATYPE> ret = new ArrayList <DATATYPE> (m_aQueue);
+    Collections.sort (ret, Collections.reverseOrder (m_aComparator));
+    return ret;
+  }
+
+  @Override
+  public String toString ()
+  {
+    return new ToStringGenerator (this).append ("N", m_nN).append ("size", m_aQueue.size ()).toString ();
+  }
+}
@@ -0,0 +1,37 @@
+/**
+ * Copyright (C) 2006-2015 phloc systems
+ * http://www.phloc.com
+ * office[at]phloc[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.phloc.db.jdbc.pipeline;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Extract a primitive numeric value from an object without boxing.
+ * 
+ * @author Philip Helger
+ * @param <DATATYPE>
+ *        The source data type
+ */
+public interface IDoubleExtractor <DATATYPE>
+{
+  /**
+   * @param aObject
+   *        The source object. Never <code>null</code>.
+   * @return The extracted value.
+   */
+  double extract (@Nonnull DATATYPE aObject);
+}
@@ -0,0 +1,161 @@
+/**
+ * Copyright (C) 2006-2015 phloc systems
+ * http://www.phloc.com
+ * office[at]phloc[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.phloc.db.jdbc.scope;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import javax.annotation.Nonnull;
+import javax.annotation.OverridingMethodsMustInvokeSuper;
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.phloc.commons.annotations.IsLocked;
+import com.phloc.commons.annotations.IsLocked.ELockType;
+import com.phloc.commons.annotations.UsedViaReflection;
+import com.phloc.db.api.jdbc.JDBCHelper;
+import com.phloc.scopes.singleton.RequestSingleton;
+
+/**
+ * Abstract request singleton to handle a single JDBC {@link Connection}. The
+ * connection is borrowed upon first access within a request and returned when
+ * the request scope is destroyed.<br>
+ * Note: this class does NOT implement
+ * {@link com.phloc.db.jdbc.IConnectionProvider} by purpose, as this class
+ * should not be used as a direct callback parameter, because than only the
+ * object of this particular request is used. Use
+ * {@link PerRequestConnectionProvider} instead.<br>
+ * The background threads of
+ * {@link com.phloc.db.jdbc.executor.DBGroupCommitter},
+ * {@link com.phloc.db.jdbc.executor.DBParallelRowProcessor} and
+ * {@link com.phloc.db.jdbc.executor.DBPrefetchingCursor} have no request
+ * scope, so this singleton cannot be accessed from there.
+ * 
+ * @author Philip Helger
+ */
+@ThreadSafe
+public abstract class AbstractPerRequestConnection extends RequestSingleton
+{
+  private static final Logger s_aLogger = LoggerFactory.getLogger (AbstractPerRequestConnection.class);
+
+  protected final ReadWriteLock m_aRWLock = new ReentrantReadWriteLock ();
+  private volatile Connection m_aConnection;
+  private boolean m_bDestroyed = false;
+
+  @Deprecated
+  @UsedViaReflection
+  public AbstractPerRequestConnection ()
+  {}
+
+  /**
+   * Create a new {@link Connection} when required. Usually the connection is
+   * borrowed from a pooled data source.
+   * 
+   * @return The created {@link Connection}. Never <code>null</code>.
+   */
+  @Nonnull
+  @IsLocked (ELockType.WRITE)
+  protected abstract Connection createConnection ();
+
+  /**
+   * @return The {@link Connection} to be used in this request. If it is the
+   *         first request to a {@link Connection} in this request it is
+   *         created via {@link #createConnection()}. Never <code>null</code>.
+   */
+  @Nonnull
+  public Connection getConnection ()
+  {
+    Connection ret;
+    m_aRWLock.readLock ().lock ();
+    try
+    {
+      if (m_bDestroyed)
+        throw new IllegalStateException ("This object was already destroyed and should not be re-used!");
+      ret = m_aConnection;
+    }
+    finally
+    {
+      m_aRWLock.readLock ().unlock ();
+    }
+
+    if (ret == null)
+    {
+      // No Connection present for this request
+      m_aRWLock.writeLock ().lock ();
+      try
+      {
+        // Try again in write lock
+        ret = m_aConnection;
+        if (ret == null)
+        {
+          ret = createConnection ();
+          if (ret == null)
+            throw new IllegalStateException ("Failed to create Connection!");
+          m_aConnection = ret;
+
+          if (s_aLogger.isDebugEnabled ())
+            s_aLogger.debug ("Connection created");
+        }
+      }
+      finally
+      {
+        m_aRWLock.writeLock ().unlock ();
+      }
+    }
+    return ret;
+  }
+
+  @Override
+  @OverridingMethodsMustInvokeSuper
+  protected void onDestroy ()
+  {
+    m_aRWLock.writeLock ().lock ();
+    try
+    {
+      // Close Connection, if present
+      final Connection aConnection = m_aConnection;
+      if (aConnection != null)
+      {
+        try
+        {
+          // Don't return pending changes to the pool
+          if (!aConnection.isClosed () && !aConnection.getAutoCommit ())
+            aConnection.rollback ();
+        }
+        catch (final SQLException ex)
+        {
+          s_aLogger.warn ("Failed to rollback Connection", ex);
+        }
+        JDBCHelper.close (aConnection);
+        m_aConnection = null;
+
+        if (s_aLogger.isDebugEnabled ())
+          s_aLogger.debug ("Connection destroyed");
+      }
+      m_bDestroyed = true;
+    }
+    finally
+    {
+      m_aRWLock.writeLock ().unlock ();
+    }
+  }
+}
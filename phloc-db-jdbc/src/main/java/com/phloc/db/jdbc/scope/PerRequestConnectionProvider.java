@@ -0,0 +1,96 @@
+/**
+ * Copyright (C) 2006-2015 phloc systems
+ * http://www.phloc.com
+ * office[at]phloc[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.phloc.db.jdbc.scope;
+
+import java.sql.Connection;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.Immutable;
+
+import com.phloc.commons.string.ToStringGenerator;
+import com.phloc.db.jdbc.IConnectionProvider;
+import com.phloc.scopes.singleton.RequestSingleton;
+
+/**
+ * Implementation of {@link IConnectionProvider} that returns the
+ * {@link Connection} of the passed {@link AbstractPerRequestConnection}
+ * implementation for the current request. All
+ * {@link com.phloc.db.jdbc.executor.DBExecutor} calls within the same request
+ * therefore share a single connection, which is returned when the request
+ * scope is destroyed. May only be used within a request scope, otherwise
+ * {@link #getConnection()} throws an {@link IllegalStateException}. This
+ * excludes executors used by a
+ * {@link com.phloc.db.jdbc.executor.DBGroupCommitter} and
+ * {@link com.phloc.db.jdbc.executor.DBExecutor#queryPrefetching(String, int)}
+ * queries, as they acquire the connection in a background thread that has no
+ * request scope. Maintenance operations of a connector (e.g.
+ * {@link com.phloc.db.jdbc.h2.H2FileConnector#compactDatabaseOnline()}) don't
+ * wait for requests using these connections.
+ * 
+ * @author Philip Helger
+ */
+@Immutable
+public class PerRequestConnectionProvider implements IConnectionProvider
+{
+  private final Class <? extends AbstractPerRequestConnection> m_aConnectionClass;
+
+  /**
+   * Constructor
+   * 
+   * @param aConnectionClass
+   *        The request singleton class providing the connection. May not be
+   *        <code>null</code>.
+   */
+  public PerRequestConnectionProvider (@Nonnull final Class <? extends AbstractPerRequestConnection> aConnectionClass)
+  {
+    if (aConnectionClass == null)
+      throw new NullPointerException ("connectionClass");
+    m_aConnectionClass = aConnectionClass;
+  }
+
+  /**
+   * @return The request singleton class providing the connection. Never
+   *         <code>null</code>.
+   */
+  @Nonnull
+  public Class <? extends AbstractPerRequestConnection> getConnectionClass ()
+  {
+    return m_aConnectionClass;
+  }
+
+  @Nonnull
+  public Connection getConnection ()
+  {
+    return RequestSingleton.getRequestSingleton (m_aConnectionClass).getConnection ();
+  }
+
+  /**
+   * @return Always <code>false</code>, as the connection is closed when the
+   *         request scope is destroyed.
+   */
+  public boolean shouldCloseConnection ()
+  {
+    return false;
+  }
+
+  @Override
+  public String toString ()
+  {
+    return new ToStringGenerator (this).append ("connectionClass", m_aConnectionClass).toString ();
+  }
+}
@@ -0,0 +1,112 @@
+/**
+ * Copyright (C) 2006-2015 phloc systems
+ * http://www.phloc.com
+ * office[at]phloc[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.phloc.db.jdbc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+import org.junit.Test;
+
+import com.phloc.db.jdbc.h2.H2MemConnector;
+
+/**
+ * Test class for class {@link ConnectionLeakDetector}.
+ * 
+ * @author Philip Helger
+ */
+public final class ConnectionLeakDetectorTest
+{
+  @Test
+  public void testBorrowAndReturn () throws SQLException
+  {
+    final H2MemConnector aConnector = new H2MemConnector ("leaktest1", "sa", "");
+    try
+    {
+      final ConnectionLeakDetector aDetector = new ConnectionLeakDetector ();
+      aDetector.setStackTraceSampleRate (1);
+      final ConnectionFromDataSourceProvider aCP = new ConnectionFromDataSourceProvider (aConnector, aDetector);
+
+      final Connection aConnection = aCP.getConnection ();
+      assertNotNull (aConnection);
+      assertEquals (1, aDetector.getBorrowedConnectionCount ());
+      assertTrue (aDetector.getAllBorrowedConnections ().get (0).hasBorrowSite ());
+
+      // Threshold not yet reached
+      assertEquals (0, aDetector.checkForLeaks ());
+
+      aConnection.close ();
+      assertTrue (aConnection.isClosed ());
+      assertEquals (0, aDetector.getBorrowedConnectionCount ());
+      assertEquals (1, aDetector.getTotalBorrowCount ());
+
+      // Close again - no error
+      aConnection.close ();
+    }
+    finally
+    {
+      aConnector.close ();
+    }
+  }
+
+  @Test
+  public void testLeakAndReclaim () throws SQLException
+  {
+    final H2MemConnector aConnector = new H2MemConnector ("leaktest2", "sa", "");
+    try
+    {
+      final ConnectionLeakDetector aDetector = new ConnectionLeakDetector ();
+      aDetector.setLeakThresholdMS (0);
+      aDetector.setStackTraceSampleRate (0);
+      final ConnectionFromDataSourceProvider aCP = new ConnectionFromDataSourceProvider (aConnector, aDetector);
+
+      final Connection aConnection = aCP.getConnection ();
+      assertFalse (aDetector.getAllBorrowedConnections ().get (0).hasBorrowSite ());
+      assertEquals (1, aDetector.checkForLeaks ());
+      // Reported only once
+      assertEquals (0, aDetector.checkForLeaks ());
+      assertEquals (1, aDetector.getTotalLeakCount ());
+      assertEquals (1, aDetector.getBorrowedConnectionCount ());
+
+      aDetector.setReclaimLeakedConnections (true);
+      aDetector.checkForLeaks ();
+      assertEquals (1, aDetector.getTotalReclaimCount ());
+      assertEquals (0, aDetector.getBorrowedConnectionCount ());
+      assertTrue (aConnection.isClosed ());
+      try
+      {
+        aConnection.createStatement ();
+        fail ();
+      }
+      catch (final SQLException ex)
+      {
+        // expected
+      }
+      aConnection.close ();
+    }
+    finally
+    {
+      aConnector.close ();
+    }
+  }
+}
@@ -0,0 +1,165 @@
+/**
+ * Copyright (C) 2006-2015 phloc systems
+ * http://www.phloc.com
+ * office[at]phloc[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.phloc.db.jdbc.catalog;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.annotation.Nonnull;
+
+import org.junit.Test;
+
+import com.phloc.commons.state.ESuccess;
+import com.phloc.db.jdbc.executor.AbstractDBExecutorListener;
+import com.phloc.db.jdbc.executor.DBExecutor;
+import com.phloc.db.jdbc.h2.H2MemConnector;
+
+/**
+ * Test class for class {@link DBSchemaCatalog}.
+ * 
+ * @author Philip Helger
+ */
+public final class DBSchemaCatalogTest
+{
+  @Test
+  public void testIsSchemaChangingStatement ()
+  {
+    assertTrue (DBSchemaCatalog.isSchemaChangingStatement ("CREATE TABLE t (id INT)"));
+    assertTrue (DBSchemaCatalog.isSchemaChangingStatement ("  drop table t"));
+    assertTrue (DBSchemaCatalog.isSchemaChangingStatement ("/* x */ -- y\n Alter TABLE t ADD c INT"));
+    assertTrue (DBSchemaCatalog.isSchemaChangingStatement ("RUNSCRIPT FROM 'a.sql'"));
+    assertFalse (DBSchemaCatalog.isSchemaChangingStatement (null));
+    assertFalse (DBSchemaCatalog.isSchemaChangingStatement (""));
+    assertFalse (DBSchemaCatalog.isSchemaChangingStatement ("SELECT * FROM created"));
+    assertFalse (DBSchemaCatalog.isSchemaChangingStatement ("CREATED"));
+    assertFalse (DBSchemaCatalog.isSchemaChangingStatement ("UPDATE t SET a = 'CREATE'"));
+  }
+
+  @Test
+  public void testCatalog ()
+  {
+    final H2MemConnector aConnector = new H2MemConnector ("catalogtest", "sa", "");
+    try
+    {
+      final DBExecutor aExecutor = new DBExecutor (aConnector);
+      final DBSchemaCatalog aCatalog = aConnector.getSchemaCatalog ();
+      assertEquals (ESuccess.SUCCESS,
+                    aExecutor.executeStatement ("CREATE TABLE parent (id INT NOT NULL, sub INT NOT NULL, name VARCHAR(50), PRIMARY KEY (sub, id))"));
+      assertEquals (ESuccess.SUCCESS,
+                    aExecutor.executeStatement ("CREATE TABLE child (id INT PRIMARY KEY, pid INT, psub INT, FOREIGN KEY (psub, pid) REFERENCES parent (sub, id))"));
+      assertEquals (ESuccess.SUCCESS, aExecutor.executeStatement ("CREATE UNIQUE INDEX idx_name ON parent (name)"));
+
+      assertFalse (aCatalog.isLoaded ());
+      assertTrue (aCatalog.containsTable ("parent"));
+      assertTrue (aCatalog.containsTable ("PARENT"));
+      assertFalse (aCatalog.containsTable ("TABLES"));
+      assertTrue (aCatalog.containsColumn ("child", "Pid"));
+      assertFalse (aCatalog.containsColumn ("child", "name"));
+
+      final DBCatalogTable aParent = aCatalog.getTable ("parent");
+      assertNotNull (aParent);
+      assertEquals (Arrays.asList ("ID", "SUB", "NAME"), aParent.getAllColumnNames ());
+      assertEquals (Arrays.asList ("SUB", "ID"), aParent.getAllPrimaryKeyColumnNames ());
+      assertFalse (aParent.getColumn ("id").isNullable ());
+      assertTrue (aParent.getColumn ("name").isNullable ());
+      assertEquals (50, aParent.getColumn ("name").getColumnSize ());
+      boolean bFound = false;
+      for (final DBCatalogIndex aIndex : aParent.getAllIndexes ())
+        if (aIndex.getName ().equals ("IDX_NAME"))
+        {
+          assertTrue (aIndex.isUnique ());
+          assertEquals (Arrays.asList ("NAME"), aIndex.getAllColumnNames ());
+          bFound = true;
+        }
+      assertTrue (bFound);
+      assertEquals (2, aCatalog.getTable ("child").getAllForeignKeys ().size ());
+      assertEquals ("PARENT", aCatalog.getTable ("child").getAllForeignKeys ().get (0).getReferencedTableName ());
+
+      // Answered from memory
+      assertTrue (aCatalog.containsTable ("child"));
+      assertEquals (1, aCatalog.getLoadCount ());
+
+      // DDL invalidates, but only when the transaction is committed
+      aExecutor.queryAll ("SELECT * FROM parent");
+      assertTrue (aCatalog.isLoaded ());
+      final AtomicBoolean aLoadedBeforeCommit = new AtomicBoolean (false);
+      aExecutor.addListener (new AbstractDBExecutorListener ()
+      {
+        @Override
+        public void beforeCommit (@Nonnull final DBExecutor aSource)
+        {
+          aLoadedBeforeCommit.set (aCatalog.isLoaded ());
+        }
+      });
+      assertEquals (ESuccess.SUCCESS, aExecutor.executeStatement ("DROP TABLE child"));
+      assertTrue (aLoadedBeforeCommit.get ());
+      assertFalse (aCatalog.isLoaded ());
+      assertFalse (aCatalog.containsTable ("child"));
+      assertEquals (2, aCatalog.getLoadCount ());
+
+      // Explicit invalidation
+      assertTrue (aCatalog.invalidate ().isChanged ());
+      assertTrue (aCatalog.invalidate ().isUnchanged ());
+    }
+    finally
+    {
+      aConnector.close ();
+    }
+  }
+
+  @Test
+  public void testClosedConnector ()
+  {
+    final H2MemConnector aConnector = new H2MemConnector ("catalogclosetest", "sa", "");
+    try
+    {
+      final DBExecutor aExecutor = new DBExecutor (aConnector);
+      final DBSchemaCatalog aCatalog = aConnector.getSchemaCatalog ();
+      assertEquals (ESuccess.SUCCESS, aExecutor.executeStatement ("CREATE TABLE t (id INT)"));
+      assertTrue (aCatalog.containsTable ("t"));
+
+      // The catalog does not re-open the closed connector
+      aConnector.close ();
+      assertFalse (aCatalog.isLoaded ());
+      try
+      {
+        aCatalog.containsTable ("t");
+        fail ();
+      }
+      catch (final IllegalStateException ex)
+      {
+        // expected
+      }
+
+      // Re-opened by the executor - a new in-memory database
+      assertEquals (ESuccess.SUCCESS, aExecutor.executeStatement ("CREATE TABLE u (id INT)"));
+      assertFalse (aCatalog.containsTable ("t"));
+      assertTrue (aCatalog.containsTable ("u"));
+    }
+    finally
+    {
+      aConnector.close ();
+    }
+  }
+}
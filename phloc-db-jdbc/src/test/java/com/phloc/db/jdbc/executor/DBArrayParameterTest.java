@@ -0,0 +1,96 @@
+/**
+ * Copyright (C) 2006-2015 phloc systems
+ * http://www.phloc.com
+ * office[at]phloc[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.phloc.db.jdbc.executor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import com.phloc.commons.state.ESuccess;
+import com.phloc.db.jdbc.EDatabaseDialect;
+import com.phloc.db.jdbc.callback.ConstantPreparedStatementDataProvider;
+import com.phloc.db.jdbc.catalog.DBSchemaCatalog;
+import com.phloc.db.jdbc.h2.H2MemConnector;
+
+/**
+ * Test class for class {@link DBArrayParameter}.
+ * 
+ * @author Philip Helger
+ */
+public final class DBArrayParameterTest
+{
+  private static void _testQueries (final DBExecutor aExecutor)
+  {
+    final long [] aIDs = new long [3000];
+    for (int i = 0; i < aIDs.length; ++i)
+      aIDs[i] = i * 2;
+
+    // Only even IDs < 2000 exist
+    List <DBResultRow> aRows = aExecutor.queryAllWithArray ("SELECT * FROM t WHERE id IN {keys}",
+                                                            DBArrayParameter.create (aIDs));
+    assertNotNull (aRows);
+    assertEquals (1000, aRows.size ());
+
+    // Additional parameters before and after the placeholder
+    aRows = aExecutor.queryAllWithArray ("SELECT t.* FROM t JOIN {keys} k ON k.key_value = t.txt WHERE t.id > ? AND t.txt <> '?' AND t.id < ?",
+                                         DBArrayParameter.create (new String [] { "v1", "v2", "v3", "v4", "v5" }),
+                                         new ConstantPreparedStatementDataProvider (Integer.valueOf (1),
+                                                                                    Integer.valueOf (5)));
+    assertNotNull (aRows);
+    assertEquals (3, aRows.size ());
+  }
+
+  @Test
+  public void testQuery ()
+  {
+    final H2MemConnector aConnector = new H2MemConnector ("arrayparamtest", "sa", "");
+    try
+    {
+      final DBExecutor aExecutor = new DBExecutor (aConnector);
+      assertEquals (ESuccess.SUCCESS, aExecutor.executeStatement ("CREATE TABLE t (id INT PRIMARY KEY, txt VARCHAR(20))"));
+      for (int i = 0; i < 2000; ++i)
+        assertEquals (1,
+                      aExecutor.insertOrUpdateOrDelete ("INSERT INTO t (id, txt) VALUES (?, ?)",
+                                                        new ConstantPreparedStatementDataProvider (Integer.valueOf (i),
+                                                                                                   "v" + i)));
+
+      // Native array parameter
+      _testQueries (aExecutor);
+
+      // Temporary table fallback
+      final DBSchemaCatalog aCatalog = aExecutor.getSchemaCatalog ();
+      assertNotNull (aCatalog.getTable ("T"));
+      final int nLoadCount = aCatalog.getLoadCount ();
+      aExecutor.setDialect (EDatabaseDialect.GENERIC);
+      _testQueries (aExecutor);
+      _testQueries (aExecutor);
+
+      // The temporary table does not invalidate the catalog
+      assertTrue (aCatalog.isLoaded ());
+      assertEquals (nLoadCount, aCatalog.getLoadCount ());
+    }
+    finally
+    {
+      aConnector.close ();
+    }
+  }
+}
@@ -0,0 +1,179 @@
+/**
+ * Copyright (C) 2006-2015 phloc systems
+ * http://www.phloc.com
+ * office[at]phloc[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.phloc.db.jdbc.executor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.phloc.commons.state.ESuccess;
+import com.phloc.db.jdbc.h2.H2MemConnector;
+
+/**
+ * Test class for class {@link DBColumnarResult}.
+ * 
+ * @author Philip Helger
+ */
+public final class DBColumnarResultTest
+{
+  @Test
+  public void testGrowthAndNulls ()
+  {
+    final H2MemConnector aConnector = new H2MemConnector ("columnartest1", "sa", "");
+    try
+    {
+      final DBExecutor aExecutor = new DBExecutor (aConnector);
+      // More rows than the initial capacity, every third value is NULL and
+      // the first rows are NULL in all columns
+      final int nRows = 1000;
+      final DBColumnarResult aResult = aExecutor.queryAllColumnar ("SELECT X," +
+                                                                   " CASEWHEN(MOD(X, 3) = 0 OR X < 5, NULL, CAST(X AS INT)) AS i," +
+                                                                   " CASEWHEN(MOD(X, 3) = 0 OR X < 5, NULL, X * 1.5) AS d," +
+                                                                   " CASEWHEN(MOD(X, 3) = 0 OR X < 5, NULL, 'v' || MOD(X, 7)) AS s" +
+                                                                   " FROM SYSTEM_RANGE(1, " +
+                                                                   nRows +
+                                                                   ") ORDER BY X");
+      assertNotNull (aResult);
+      assertEquals (nRows, aResult.getRowCount ());
+      assertEquals (4, aResult.getColumnCount ());
+      assertEquals ("S", aResult.getColumnName (3));
+      assertTrue (aResult.isDictionaryEncoded (3));
+      assertFalse (aResult.isDictionaryEncoded (1));
+      // Exactly sized: 4 null bitmaps, a LONG, an INT and a dictionary column
+      // - the DECIMAL column is stored as objects
+      assertEquals (4 * (nRows / 8) + nRows * (8 + 4 + 4), aResult.getOffHeapBytes ());
+
+      for (int nRow = 0; nRow < nRows; ++nRow)
+      {
+        final long nX = nRow + 1;
+        assertEquals (nX, aResult.getAsLong (nRow, 0, -1));
+        if (nX % 3 == 0 || nX < 5)
+        {
+          assertTrue (aResult.isNull (nRow, 1));
+          assertNull (aResult.getValue (nRow, 1));
+          assertNull (aResult.getValue (nRow, 2));
+          assertNull (aResult.getValue (nRow, 3));
+          assertEquals (-1, aResult.getAsLong (nRow, 1, -1));
+          assertEquals (-1.0, aResult.getAsDouble (nRow, 2, -1.0), 0);
+        }
+        else
+        {
+          assertFalse (aResult.isNull (nRow, 1));
+          assertEquals (Integer.valueOf ((int) nX), aResult.getValue (nRow, 1));
+          assertEquals (nX * 1.5, aResult.getAsDouble (nRow, 2, -1.0), 0.0001);
+          assertEquals ("v" + nX % 7, aResult.getValue (nRow, 3));
+        }
+      }
+
+      // Cursor access
+      final DBColumnarResultCursor aCursor = aResult.createCursor ();
+      int nCount = 0;
+      while (aCursor.next ())
+      {
+        assertEquals (4, aCursor.getRow ().getColumnCount ());
+        ++nCount;
+      }
+      assertEquals (nRows, nCount);
+    }
+    finally
+    {
+      aConnector.close ();
+    }
+  }
+
+  @Test
+  public void testConcurrentRead () throws InterruptedException
+  {
+    final H2MemConnector aConnector = new H2MemConnector ("columnartest3", "sa", "");
+    try
+    {
+      final int nRows = 5000;
+      final DBColumnarResult aResult = new DBExecutor (aConnector).queryAllColumnar ("SELECT X, 'v' || MOD(X, 10) AS s FROM SYSTEM_RANGE(1, " +
+                                                                                     nRows +
+                                                                                     ") ORDER BY X");
+      assertNotNull (aResult);
+      final AtomicInteger aErrors = new AtomicInteger (0);
+      final Thread [] aThreads = new Thread [4];
+      for (int i = 0; i < aThreads.length; ++i)
+      {
+        aThreads[i] = new Thread (new Runnable ()
+        {
+          public void run ()
+          {
+            for (int nRow = 0; nRow < nRows; ++nRow)
+              if (aResult.getAsLong (nRow, 0, -1) != nRow + 1 ||
+                  !("v" + (nRow + 1) % 10).equals (aResult.getValue (nRow, 1)))
+                aErrors.incrementAndGet ();
+          }
+        });
+        aThreads[i].start ();
+      }
+      for (final Thread aThread : aThreads)
+        aThread.join ();
+      assertEquals (0, aErrors.get ());
+    }
+    finally
+    {
+      aConnector.close ();
+    }
+  }
+
+  @Test
+  public void testDictionaryOverflow ()
+  {
+    final H2MemConnector aConnector = new H2MemConnector ("columnartest2", "sa", "");
+    try
+    {
+      final DBExecutor aExecutor = new DBExecutor (aConnector);
+      assertEquals (ESuccess.SUCCESS, aExecutor.executeStatement ("CREATE TABLE t (id INT PRIMARY KEY, s VARCHAR(20))"));
+      // Exceed the dictionary by some values and add a NULL value after the
+      // switch
+      final int nRows = DBColumnarResult.MAX_DICTIONARY_SIZE + 1000;
+      assertEquals (ESuccess.SUCCESS, aExecutor.executeStatement ("INSERT INTO t SELECT X, CASEWHEN(MOD(X, 1000) = 0, NULL, 'v' || X) FROM SYSTEM_RANGE(1, " +
+                                                                  nRows +
+                                                                  ")"));
+      assertEquals (ESuccess.SUCCESS, aExecutor.executeStatement ("INSERT INTO t VALUES (" + (nRows + 1) + ", NULL)"));
+
+      final DBColumnarResult aResult = aExecutor.queryAllColumnar ("SELECT id, s FROM t ORDER BY id");
+      assertNotNull (aResult);
+      assertEquals (nRows + 1, aResult.getRowCount ());
+      assertFalse (aResult.isDictionaryEncoded (1));
+
+      for (int nRow = 0; nRow < nRows; ++nRow)
+      {
+        final int nID = nRow + 1;
+        if (nID % 1000 == 0)
+          assertNull (aResult.getValue (nRow, 1));
+        else
+          assertEquals ("v" + nID, aResult.getValue (nRow, 1));
+      }
+      assertTrue (aResult.isNull (nRows, 1));
+      assertNull (aResult.getValue (nRows, 1));
+    }
+    finally
+    {
+      aConnector.close ();
+    }
+  }
+}
@@ -0,0 +1,150 @@
+/**
+ * Copyright (C) 2006-2015 phloc systems
+ * http://www.phloc.com
+ * office[at]phloc[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.phloc.db.jdbc.executor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.junit.Test;
+
+import com.phloc.commons.state.ESuccess;
+import com.phloc.db.jdbc.callback.ConstantPreparedStatementDataProvider;
+import com.phloc.db.jdbc.h2.H2MemConnector;
+
+/**
+ * Test class for interface {@link IDBExecutorListener}.
+ * 
+ * @author Philip Helger
+ */
+public final class DBExecutorListenerTest
+{
+  private static final class MockListener extends AbstractDBExecutorListener
+  {
+    private int m_nConnections;
+    private int m_nPrepares;
+    private final List <String> m_aExecuted = new ArrayList <String> ();
+    private final List <Integer> m_aBlocks = new ArrayList <Integer> ();
+    private int m_nCommits;
+    private int m_nRollbacks;
+
+    @Override
+    public void afterConnectionAcquire (@Nonnull final DBExecutor aExecutor,
+                                        final long nDurationNanos,
+                                        final boolean bSuccess)
+    {
+      m_nConnections++;
+    }
+
+    @Override
+    public void afterPrepare (@Nonnull final DBExecutor aExecutor,
+                              @Nonnull final String sSQL,
+                              final long nDurationNanos,
+                              final boolean bSuccess)
+    {
+      m_nPrepares++;
+    }
+
+    @Override
+    public void afterExecute (@Nonnull final DBExecutor aExecutor,
+                              @Nullable final String sSQL,
+                              final long nDurationNanos,
+                              final boolean bSuccess)
+    {
+      assertTrue (nDurationNanos >= 0);
+      m_aExecuted.add (sSQL + (bSuccess ? "" : " failed"));
+    }
+
+    @Override
+    public void onRowBlockFetched (@Nonnull final DBExecutor aExecutor,
+                                   @Nullable final String sSQL,
+                                   final int nRowCount,
+                                   final long nDurationNanos)
+    {
+      m_aBlocks.add (Integer.valueOf (nRowCount));
+    }
+
+    @Override
+    public void afterCommit (@Nonnull final DBExecutor aExecutor, final long nDurationNanos, final boolean bSuccess)
+    {
+      m_nCommits++;
+    }
+
+    @Override
+    public void afterRollback (@Nonnull final DBExecutor aExecutor, final long nDurationNanos)
+    {
+      m_nRollbacks++;
+    }
+  }
+
+  @Test
+  public void testEvents ()
+  {
+    final H2MemConnector aConnector = new H2MemConnector ("listenertest", "sa", "");
+    try
+    {
+      final DBExecutor aExecutor = new DBExecutor (aConnector);
+      final MockListener aListener = new MockListener ();
+      assertTrue (aExecutor.addListener (aListener).isChanged ());
+      assertTrue (aExecutor.addListener (aListener).isUnchanged ());
+
+      assertEquals (ESuccess.SUCCESS, aExecutor.executeStatement ("CREATE TABLE t (id INT PRIMARY KEY)"));
+      for (int i = 0; i < 250; ++i)
+        aExecutor.insertOrUpdateOrDelete ("INSERT INTO t (id) VALUES (?)",
+                                          new ConstantPreparedStatementDataProvider (Integer.valueOf (i)));
+      assertEquals (251, aListener.m_nConnections);
+      assertEquals (250, aListener.m_nPrepares);
+      assertEquals (251, aListener.m_nCommits);
+      assertEquals (0, aListener.m_nRollbacks);
+      assertEquals ("CREATE TABLE t (id INT PRIMARY KEY)", aListener.m_aExecuted.get (0));
+
+      // Row blocks
+      final List <DBResultRow> aRows = aExecutor.queryAll ("SELECT * FROM t");
+      assertNotNull (aRows);
+      assertEquals (250, aRows.size ());
+      int nTotal = 0;
+      for (final Integer aBlock : aListener.m_aBlocks)
+        nTotal += aBlock.intValue ();
+      assertEquals (250, nTotal);
+      assertTrue (aListener.m_aBlocks.size () > 1);
+
+      // Failure
+      assertEquals (-1,
+                    aExecutor.insertOrUpdateOrDelete ("INSERT INTO t (id) VALUES (?)",
+                                                      new ConstantPreparedStatementDataProvider (Integer.valueOf (1))));
+      assertEquals ("INSERT INTO t (id) VALUES (?) failed",
+                    aListener.m_aExecuted.get (aListener.m_aExecuted.size () - 1));
+      assertEquals (1, aListener.m_nRollbacks);
+
+      assertTrue (aExecutor.removeListener (aListener).isChanged ());
+      assertTrue (aExecutor.removeListener (aListener).isUnchanged ());
+      aExecutor.queryAll ("SELECT * FROM t");
+      assertEquals (253, aListener.m_nConnections);
+    }
+    finally
+    {
+      aConnector.close ();
+    }
+  }
+}
@@ -0,0 +1,111 @@
+/**
+ * Copyright (C) 2006-2015 phloc systems
+ * http://www.phloc.com
+ * office[at]phloc[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.phloc.db.jdbc.executor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import com.phloc.commons.state.ESuccess;
+import com.phloc.db.jdbc.EDatabaseDialect;
+import com.phloc.db.jdbc.h2.H2MemConnector;
+
+/**
+ * Test class for class {@link DBFetchSizeAdvisor}.
+ * 
+ * @author Philip Helger
+ */
+public final class DBFetchSizeAdvisorTest
+{
+  @Test
+  public void testFetchSize ()
+  {
+    final DBFetchSizeAdvisor aAdvisor = new DBFetchSizeAdvisor (10000, 10, 500);
+    final String sSQL = "SELECT * FROM t WHERE id = 5";
+    assertEquals (-1, aAdvisor.getAverageRowWidth (sSQL));
+    assertEquals (EDatabaseDialect.ORACLE.getDefaultFetchSize (), aAdvisor.getFetchSize (sSQL, EDatabaseDialect.ORACLE));
+    assertEquals (0, aAdvisor.getFetchSize (sSQL, null));
+
+    // 100 bytes per row
+    aAdvisor.onRowsSampled (sSQL, 10, 1000);
+    assertEquals (100, aAdvisor.getAverageRowWidth (sSQL));
+    assertEquals (100, aAdvisor.getFetchSize (sSQL, EDatabaseDialect.ORACLE));
+    // Same fingerprint
+    assertEquals (100, aAdvisor.getFetchSize ("select * from t where id=7", null));
+
+    // Moves gradually
+    aAdvisor.onRowsSampled (sSQL, 10, 3000);
+    assertEquals (200, aAdvisor.getAverageRowWidth (sSQL));
+    assertEquals (50, aAdvisor.getFetchSize (sSQL, null));
+
+    // Bounds
+    aAdvisor.onRowsSampled ("SELECT a FROM b", 1, 1);
+    assertEquals (500, aAdvisor.getFetchSize ("SELECT a FROM b", null));
+    aAdvisor.onRowsSampled ("SELECT c FROM d", 1, 1000000);
+    assertEquals (10, aAdvisor.getFetchSize ("SELECT c FROM d", null));
+
+    aAdvisor.clear ();
+    assertEquals (-1, aAdvisor.getAverageRowWidth (sSQL));
+  }
+
+  @Test
+  public void testLeastRecentlyUsed ()
+  {
+    final DBFetchSizeAdvisor aAdvisor = new DBFetchSizeAdvisor ();
+    final String sSQL = "SELECT * FROM t";
+    aAdvisor.onRowsSampled (sSQL, 1, 100);
+    for (int i = 1; i < DBFetchSizeAdvisor.MAX_ENTRIES; ++i)
+      aAdvisor.onRowsSampled ("SELECT c" + i + " FROM d", 1, 100);
+    assertEquals (100, aAdvisor.getAverageRowWidth (sSQL));
+
+    // A new statement is still remembered and evicts the least recently used
+    aAdvisor.onRowsSampled ("SELECT x FROM y", 1, 50);
+    assertEquals (50, aAdvisor.getAverageRowWidth ("SELECT x FROM y"));
+    assertEquals (100, aAdvisor.getAverageRowWidth (sSQL));
+    assertEquals (-1, aAdvisor.getAverageRowWidth ("SELECT c1 FROM d"));
+    assertEquals (100, aAdvisor.getAverageRowWidth ("SELECT c2 FROM d"));
+  }
+
+  @Test
+  public void testExecutor ()
+  {
+    final H2MemConnector aConnector = new H2MemConnector ("fetchsizetest", "sa", "");
+    try
+    {
+      final DBExecutor aExecutor = new DBExecutor (aConnector);
+      assertEquals (ESuccess.SUCCESS, aExecutor.executeStatement ("CREATE TABLE t (id INT PRIMARY KEY, v VARCHAR(200))"));
+      for (int i = 0; i < 20; ++i)
+        aExecutor.executeStatement ("INSERT INTO t VALUES (" + i + ", 'value " + i + "')");
+
+      final String sSQL = "SELECT * FROM t";
+      final List <DBResultRow> aRows = aExecutor.queryAll (sSQL);
+      assertEquals (20, aRows.size ());
+      assertTrue (aExecutor.getFetchSizeAdvisor ().getAverageRowWidth (sSQL) > 0);
+
+      aExecutor.setFetchSizeAdvisor (null);
+      assertEquals (20, aExecutor.queryAll (sSQL).size ());
+    }
+    finally
+    {
+      aConnector.close ();
+    }
+  }
+}
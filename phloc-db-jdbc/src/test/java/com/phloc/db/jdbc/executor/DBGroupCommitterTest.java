@@ -0,0 +1,230 @@
+/**
+ * Copyright (C) 2006-2015 phloc systems
+ * http://www.phloc.com
+ * office[at]phloc[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.phloc.db.jdbc.executor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.Nonnull;
+
+import org.junit.Test;
+
+import com.phloc.commons.state.ESuccess;
+import com.phloc.db.jdbc.callback.ConstantPreparedStatementDataProvider;
+import com.phloc.db.jdbc.callback.IUpdatedRowCountCallback;
+import com.phloc.db.jdbc.h2.H2MemConnector;
+
+/**
+ * Test class for class {@link DBGroupCommitter}.
+ * 
+ * @author Philip Helger
+ */
+public final class DBGroupCommitterTest
+{
+  @Test
+  public void testConcurrentInserts () throws InterruptedException
+  {
+    final H2MemConnector aConnector = new H2MemConnector ("groupcommittest", "sa", "");
+    try
+    {
+      final DBExecutor aExecutor = new DBExecutor (aConnector);
+      assertEquals (ESuccess.SUCCESS, aExecutor.executeStatement ("CREATE TABLE t (id INT PRIMARY KEY, txt VARCHAR(20))"));
+
+      final DBGroupCommitter aGC = new DBGroupCommitter (aExecutor, 50, 20);
+      try
+      {
+        final AtomicInteger aSuccess = new AtomicInteger ();
+        final AtomicInteger aFailure = new AtomicInteger ();
+        final List <Thread> aThreads = new ArrayList <Thread> ();
+        for (int i = 0; i < 40; ++i)
+        {
+          // Thread 0 and 1 use the same ID, so one of them must fail
+          final int nID = Math.max (1, i);
+          aThreads.add (new Thread (new Runnable ()
+          {
+            public void run ()
+            {
+              final int nCount = aGC.executeUpdate ("INSERT INTO t (id, txt) VALUES (?, ?)",
+                                                    new ConstantPreparedStatementDataProvider (Integer.valueOf (nID), "x"));
+              if (nCount == IUpdatedRowCountCallback.NOT_INITIALIZED)
+                aFailure.incrementAndGet ();
+              else
+                aSuccess.incrementAndGet ();
+            }
+          }));
+        }
+        for (final Thread aThread : aThreads)
+          aThread.start ();
+        for (final Thread aThread : aThreads)
+          aThread.join ();
+
+        assertEquals (39, aSuccess.get ());
+        assertEquals (1, aFailure.get ());
+        assertEquals (39, aExecutor.queryCount ("SELECT COUNT(*) FROM t"));
+        assertEquals (39, aGC.getOperationCount ());
+        assertEquals (1, aGC.getFailedOperationCount ());
+        // Less transactions than operations
+        assertTrue (aGC.getGroupCount () < 39);
+      }
+      finally
+      {
+        aGC.close ();
+      }
+    }
+    finally
+    {
+      aConnector.close ();
+    }
+  }
+
+  @Test
+  public void testConcurrentClose () throws InterruptedException
+  {
+    final H2MemConnector aConnector = new H2MemConnector ("groupcommitclosetest", "sa", "");
+    try
+    {
+      final DBExecutor aExecutor = new DBExecutor (aConnector);
+      assertEquals (ESuccess.SUCCESS, aExecutor.executeStatement ("CREATE TABLE t (id INT PRIMARY KEY)"));
+
+      final DBGroupCommitter aGC = new DBGroupCommitter (aExecutor, 10, 1);
+      final AtomicInteger aSuccess = new AtomicInteger ();
+      final AtomicInteger aRejected = new AtomicInteger ();
+      final List <Thread> aThreads = new ArrayList <Thread> ();
+      for (int i = 0; i < 20; ++i)
+      {
+        final int nThread = i;
+        aThreads.add (new Thread (new Runnable ()
+        {
+          public void run ()
+          {
+            for (int j = 0; j < 50; ++j)
+              try
+              {
+                if (aGC.executeUpdate ("INSERT INTO t (id) VALUES (?)",
+                                       new ConstantPreparedStatementDataProvider (Integer.valueOf (nThread * 100 + j))) == 1)
+                  aSuccess.incrementAndGet ();
+              }
+              catch (final IllegalStateException ex)
+              {
+                // Already closed
+                aRejected.incrementAndGet ();
+              }
+          }
+        }));
+      }
+      for (final Thread aThread : aThreads)
+        aThread.start ();
+      Thread.sleep (20);
+      aGC.close ();
+
+      // No caller may hang, no matter when it submitted its operation
+      for (final Thread aThread : aThreads)
+      {
+        aThread.join (10000);
+        assertFalse (aThread.isAlive ());
+      }
+      assertEquals (1000, aSuccess.get () + aRejected.get ());
+      assertEquals (aSuccess.get (), aExecutor.queryCount ("SELECT COUNT(*) FROM t"));
+    }
+    finally
+    {
+      aConnector.close ();
+    }
+  }
+
+  @Test
+  public void testAutoCommitWithFailingMember () throws InterruptedException
+  {
+    // Connections are handed out with auto-commit enabled
+    final H2MemConnector aConnector = new H2MemConnector ("groupcommitautocommittest", "sa", "")
+    {
+      @Override
+      protected boolean isUseDefaultAutoCommit ()
+      {
+        return true;
+      }
+    };
+    try
+    {
+      final DBExecutor aExecutor = new DBExecutor (aConnector);
+      // No primary key, so executing an operation twice is not detected by
+      // the database
+      assertEquals (ESuccess.SUCCESS, aExecutor.executeStatement ("CREATE TABLE t (txt VARCHAR(20))"));
+
+      // Large time window so that all operations end up in one group
+      final DBGroupCommitter aGC = new DBGroupCommitter (aExecutor, 10, 500);
+      try
+      {
+        final int [] aResults = new int [3];
+        final List <Thread> aThreads = new ArrayList <Thread> ();
+        for (int i = 0; i < 3; ++i)
+        {
+          final int nIndex = i;
+          final Thread aThread = new Thread (new Runnable ()
+          {
+            public void run ()
+            {
+              if (nIndex == 1)
+                aResults[nIndex] = aGC.execute (new IGroupCommitOperation ()
+                {
+                  public int execute (@Nonnull final Connection aConnection) throws SQLException
+                  {
+                    aConnection.createStatement ().executeUpdate ("INSERT INTO no_such_table VALUES (1)");
+                    return 1;
+                  }
+                });
+              else
+                aResults[nIndex] = aGC.executeUpdate ("INSERT INTO t (txt) VALUES (?)",
+                                                      new ConstantPreparedStatementDataProvider ("op" + nIndex));
+            }
+          });
+          aThreads.add (aThread);
+          aThread.start ();
+          // Make sure the failing operation is not the first of the group
+          Thread.sleep (50);
+        }
+        for (final Thread aThread : aThreads)
+          aThread.join ();
+
+        assertEquals (1, aResults[0]);
+        assertEquals (IUpdatedRowCountCallback.NOT_INITIALIZED, aResults[1]);
+        assertEquals (1, aResults[2]);
+        // Each successful operation was written exactly once
+        assertEquals (2, aExecutor.queryCount ("SELECT COUNT(*) FROM t"));
+        assertEquals (1, aExecutor.queryCount ("SELECT COUNT(*) FROM t WHERE txt = 'op0'"));
+        assertEquals (2, aGC.getOperationCount ());
+        assertEquals (1, aGC.getFailedOperationCount ());
+      }
+      finally
+      {
+        aGC.close ();
+      }
+    }
+    finally
+    {
+      aConnector.close ();
+    }
+  }
+}
@@ -0,0 +1,87 @@
+/**
+ * Copyright (C) 2006-2015 phloc systems
+ * http://www.phloc.com
+ * office[at]phloc[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.phloc.db.jdbc.executor;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.phloc.commons.state.ESuccess;
+import com.phloc.db.jdbc.EDatabaseDialect;
+import com.phloc.db.jdbc.callback.ConstantPreparedStatementDataProvider;
+import com.phloc.db.jdbc.callback.IPreparedStatementDataProvider;
+import com.phloc.db.jdbc.h2.H2MemConnector;
+
+/**
+ * Test class for class {@link DBMultiRowInsert}.
+ * 
+ * @author Philip Helger
+ */
+public final class DBMultiRowInsertTest
+{
+  @Test
+  public void testGetSQL ()
+  {
+    final DBMultiRowInsert aInsert = new DBMultiRowInsert ("t", "a", "b");
+    assertEquals ("INSERT INTO t (a, b) VALUES (?, ?)", aInsert.getSQL (EDatabaseDialect.H2, 1));
+    assertEquals ("INSERT INTO t (a, b) VALUES (?, ?), (?, ?)", aInsert.getSQL (EDatabaseDialect.MYSQL, 2));
+    assertEquals ("INSERT ALL INTO t (a, b) VALUES (?, ?) INTO t (a, b) VALUES (?, ?) SELECT 1 FROM DUAL",
+                  aInsert.getSQL (EDatabaseDialect.ORACLE, 2));
+
+    // Limited by the number of parameters
+    assertEquals (1000, aInsert.getRowsPerStatement (EDatabaseDialect.H2));
+    assertEquals (1000, aInsert.getRowsPerStatement (EDatabaseDialect.MSSQL));
+    assertEquals (1, aInsert.getRowsPerStatement (EDatabaseDialect.GENERIC));
+    aInsert.setMaxRowsPerStatement (7);
+    assertEquals (7, aInsert.getRowsPerStatement (EDatabaseDialect.H2));
+    assertEquals (1, aInsert.getRowsPerStatement (EDatabaseDialect.GENERIC));
+  }
+
+  @Test
+  public void testInsert ()
+  {
+    final H2MemConnector aConnector = new H2MemConnector ("multirowtest", "sa", "");
+    try
+    {
+      final DBExecutor aExecutor = new DBExecutor (aConnector);
+      assertEquals (EDatabaseDialect.H2, aExecutor.getDialect ());
+      assertEquals (ESuccess.SUCCESS, aExecutor.executeStatement ("CREATE TABLE t (a INT, b VARCHAR(20))"));
+
+      final List <IPreparedStatementDataProvider> aRows = new ArrayList <IPreparedStatementDataProvider> ();
+      for (int i = 0; i < 25; ++i)
+        aRows.add (new ConstantPreparedStatementDataProvider (Integer.valueOf (i), "v" + i));
+
+      // 3 full chunks and a remainder of 4
+      final DBMultiRowInsert aInsert = new DBMultiRowInsert ("t", "a", "b").setMaxRowsPerStatement (7);
+      assertEquals (25, aExecutor.insertMultiRow (aInsert, aRows));
+      assertEquals (25, aExecutor.queryCount ("SELECT COUNT(*) FROM t"));
+
+      // Fallback to regular batches
+      aExecutor.setDialect (EDatabaseDialect.GENERIC);
+      assertEquals (25, aExecutor.insertMultiRow (aInsert, aRows));
+      assertEquals (50, aExecutor.queryCount ("SELECT COUNT(*) FROM t"));
+    }
+    finally
+    {
+      aConnector.close ();
+    }
+  }
+}
@@ -0,0 +1,230 @@
+/**
+ * Copyright (C) 2006-2015 phloc systems
+ * http://www.phloc.com
+ * office[at]phloc[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.phloc.db.jdbc.executor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.phloc.commons.state.ESuccess;
+import com.phloc.db.jdbc.callback.BeanNamedParameterSource;
+import com.phloc.db.jdbc.callback.MapNamedParameterSource;
+import com.phloc.db.jdbc.h2.H2MemConnector;
+
+/**
+ * Test class for class {@link DBNamedParameterSQL}.
+ * 
+ * @author Philip Helger
+ */
+public final class DBNamedParameterSQLTest
+{
+  public static final class MockBean
+  {
+    public int getId ()
+    {
+      return 2;
+    }
+
+    public String getStatus ()
+    {
+      return "b";
+    }
+  }
+
+  @Test
+  public void testParse ()
+  {
+    DBNamedParameterSQL aSQL = DBNamedParameterSQL.parse ("SELECT * FROM t WHERE id = :id AND (a = :a OR b = :a)");
+    assertEquals ("SELECT * FROM t WHERE id = ? AND (a = ? OR b = ?)", aSQL.getPositionalSQL ());
+    assertEquals (Arrays.asList ("id", "a", "a"), aSQL.getAllPositionalParameterNames ());
+    assertEquals (2, aSQL.getAllParameterNames ().size ());
+
+    // Literals, comments and casts are not touched
+    aSQL = DBNamedParameterSQL.parse ("SELECT ':x', \"a:b\", c::int /* :y */ FROM t -- :z\nWHERE d=:d_1");
+    assertEquals ("SELECT ':x', \"a:b\", c::int /* :y */ FROM t -- :z\nWHERE d=?", aSQL.getPositionalSQL ());
+    assertEquals (Arrays.asList ("d_1"), aSQL.getAllPositionalParameterNames ());
+
+    // Escaped quote
+    aSQL = DBNamedParameterSQL.parse ("SELECT 'it''s :x' FROM t WHERE a=:a");
+    assertEquals ("SELECT 'it''s :x' FROM t WHERE a=?", aSQL.getPositionalSQL ());
+
+    try
+    {
+      DBNamedParameterSQL.parse ("SELECT * FROM t WHERE a=:a AND b=?");
+      fail ();
+    }
+    catch (final IllegalArgumentException ex)
+    {
+      // expected
+    }
+
+    try
+    {
+      DBNamedParameterSQL.parse ("SELECT 'abc FROM t");
+      fail ();
+    }
+    catch (final IllegalArgumentException ex)
+    {
+      // expected
+    }
+  }
+
+  @Test
+  public void testInListBucketSize ()
+  {
+    assertEquals (1, DBNamedParameterSQL.getInListBucketSize (0, 512));
+    assertEquals (1, DBNamedParameterSQL.getInListBucketSize (1, 512));
+    assertEquals (2, DBNamedParameterSQL.getInListBucketSize (2, 512));
+    assertEquals (4, DBNamedParameterSQL.getInListBucketSize (3, 512));
+    assertEquals (4, DBNamedParameterSQL.getInListBucketSize (4, 512));
+    assertEquals (8, DBNamedParameterSQL.getInListBucketSize (5, 512));
+    assertEquals (512, DBNamedParameterSQL.getInListBucketSize (300, 512));
+    assertEquals (100, DBNamedParameterSQL.getInListBucketSize (100, 100));
+  }
+
+  @Test
+  public void testBindInList ()
+  {
+    final DBNamedParameterSQL aSQL = DBNamedParameterSQL.parse ("SELECT * FROM t WHERE id IN (:ids) AND s = :s");
+    DBBoundSQL aBound = aSQL.bind (new MapNamedParameterSource ().addValue ("ids", Arrays.asList ("a", "b", "c"))
+                                                                 .addValue ("s", "x"), 512);
+    assertEquals ("SELECT * FROM t WHERE id IN (?, ?, ?, ?) AND s = ?", aBound.getSQL ());
+    assertEquals (Arrays.<Object> asList ("a", "b", "c", "c", "x"), aBound.getDataProvider ().getObjectValues ());
+
+    // Empty list
+    aBound = aSQL.bind (new MapNamedParameterSource ().addValue ("ids", new ArrayList <String> ()).addValue ("s", "x"),
+                        512);
+    assertEquals ("SELECT * FROM t WHERE id IN (?) AND s = ?", aBound.getSQL ());
+    assertEquals (Arrays.<Object> asList (null, "x"), aBound.getDataProvider ().getObjectValues ());
+
+    // Exactly the maximum size
+    aBound = aSQL.bind (new MapNamedParameterSource ().addValue ("ids", Arrays.asList ("a", "b")).addValue ("s", "x"),
+                        2);
+    assertEquals ("SELECT * FROM t WHERE id IN (?, ?) AND s = ?", aBound.getSQL ());
+
+    // Too large lists are not split
+    try
+    {
+      aSQL.bind (new MapNamedParameterSource ().addValue ("ids", Arrays.asList ("a", "b", "c", "d", "e"))
+                                               .addValue ("s", "x"), 2);
+      fail ();
+    }
+    catch (final IllegalArgumentException ex)
+    {
+      // expected
+    }
+  }
+
+  @Test
+  public void testCache ()
+  {
+    final String sSQL = "SELECT * FROM t WHERE id = :id";
+    assertSame (DBNamedParameterSQL.getParsed (sSQL), DBNamedParameterSQL.getParsed (sSQL));
+  }
+
+  @Test
+  public void testExecute ()
+  {
+    final H2MemConnector aConnector = new H2MemConnector ("namedparamtest", "sa", "");
+    try
+    {
+      final DBExecutor aExecutor = new DBExecutor (aConnector);
+      assertEquals (ESuccess.SUCCESS, aExecutor.executeStatement ("CREATE TABLE t (id INT PRIMARY KEY, status VARCHAR(20))"));
+      for (int i = 1; i <= 3; ++i)
+        assertEquals (1,
+                      aExecutor.insertOrUpdateOrDeleteNamed ("INSERT INTO t (id, status) VALUES (:id, :status)",
+                                                             new MapNamedParameterSource ().addValue ("id",
+                                                                                                      Integer.valueOf (i))
+                                                                                           .addValue ("status",
+                                                                                                      i == 2 ? "b"
+                                                                                                            : "a")));
+
+      assertEquals (1,
+                    aExecutor.queryCountNamed ("SELECT COUNT(*) FROM t WHERE id = :id AND status = :status",
+                                               new BeanNamedParameterSource (new MockBean ())));
+      assertEquals (2,
+                    aExecutor.queryCountNamed ("SELECT COUNT(*) FROM t WHERE id <> :id AND status <> :status",
+                                               new BeanNamedParameterSource (new MockBean ())));
+
+      // IN lists
+      final List <Integer> aIDs = new ArrayList <Integer> ();
+      for (int i = 0; i < 10; ++i)
+        aIDs.add (Integer.valueOf (i));
+      assertEquals (3, aExecutor.queryAllNamed ("SELECT * FROM t WHERE id IN (:ids)",
+                                                new MapNamedParameterSource ().addValue ("ids", aIDs)).size ());
+      assertEquals (2,
+                    aExecutor.insertOrUpdateOrDeleteNamed ("UPDATE t SET status = 'c' WHERE id IN (:ids) AND status = :s",
+                                                           new MapNamedParameterSource ().addValue ("ids", aIDs)
+                                                                                         .addValue ("s", "a")));
+
+      // Negated predicate: splitting would combine the results of
+      // "NOT IN (0, 1)" and "NOT IN (2, 3)" and match all rows
+      assertEquals (1,
+                    aExecutor.queryAllNamed ("SELECT * FROM t WHERE id NOT IN (:ids)",
+                                             new MapNamedParameterSource ().addValue ("ids", aIDs.subList (0, 3)))
+                             .size ());
+
+      aExecutor.setMaxInListSize (2);
+      assertEquals (2,
+                    aExecutor.queryCountNamed ("SELECT COUNT(*) FROM t WHERE id IN (:ids)",
+                                               new MapNamedParameterSource ().addValue ("ids", aIDs.subList (1, 3))));
+      // Too large for a single IN list - rejected instead of split
+      try
+      {
+        aExecutor.queryAllNamed ("SELECT * FROM t WHERE id NOT IN (:ids)",
+                                 new MapNamedParameterSource ().addValue ("ids", aIDs.subList (0, 3)));
+        fail ();
+      }
+      catch (final IllegalArgumentException ex)
+      {
+        // expected
+      }
+      try
+      {
+        aExecutor.insertOrUpdateOrDeleteNamed ("DELETE FROM t WHERE id NOT IN (:ids)",
+                                               new MapNamedParameterSource ().addValue ("ids", aIDs.subList (0, 4)));
+        fail ();
+      }
+      catch (final IllegalArgumentException ex)
+      {
+        // expected
+      }
+      assertEquals (3, aExecutor.queryCount ("SELECT COUNT(*) FROM t"));
+
+      try
+      {
+        aExecutor.queryCountNamed ("SELECT COUNT(*) FROM t WHERE id = :id", new MapNamedParameterSource ());
+        fail ();
+      }
+      catch (final IllegalArgumentException ex)
+      {
+        // expected
+      }
+    }
+    finally
+    {
+      aConnector.close ();
+    }
+  }
+}
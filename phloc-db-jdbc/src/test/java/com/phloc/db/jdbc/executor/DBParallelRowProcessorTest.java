@@ -0,0 +1,245 @@
+/**
+ * Copyright (C) 2006-2015 phloc systems
+ * http://www.phloc.com
+ * office[at]phloc[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.phloc.db.jdbc.executor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.Nonnull;
+
+import org.junit.Test;
+
+import com.phloc.commons.callback.INonThrowingRunnableWithParameter;
+import com.phloc.commons.convert.IUnidirectionalConverter;
+import com.phloc.commons.state.ESuccess;
+import com.phloc.db.jdbc.h2.H2MemConnector;
+
+/**
+ * Test class for class {@link DBParallelRowProcessor}.
+ * 
+ * @author Philip Helger
+ */
+public final class DBParallelRowProcessorTest
+{
+  private static final int ROWS = 1000;
+  private static final String SQL = "SELECT X FROM SYSTEM_RANGE(0, " + (ROWS - 1) + ") ORDER BY X";
+
+  /**
+   * A converter with varying runtime, so that batches complete out of order.
+   */
+  private static final class SlowConverter implements IUnidirectionalConverter <DBResultRow, Integer>
+  {
+    private final AtomicInteger m_aConverted = new AtomicInteger (0);
+    private final int m_nFailingRow;
+
+    SlowConverter (final int nFailingRow)
+    {
+      m_nFailingRow = nFailingRow;
+    }
+
+    public Integer convert (@Nonnull final DBResultRow aRow)
+    {
+      final int nValue = aRow.getAsInt (0);
+      if (nValue == m_nFailingRow)
+        throw new IllegalStateException ("Failed to convert row " + nValue);
+      if (nValue % 97 == 0)
+        try
+        {
+          Thread.sleep (5);
+        }
+        catch (final InterruptedException ex)
+        {
+          Thread.currentThread ().interrupt ();
+        }
+      m_aConverted.incrementAndGet ();
+      return Integer.valueOf (nValue);
+    }
+  }
+
+  private static final class CollectingSink implements INonThrowingRunnableWithParameter <Integer>
+  {
+    private final List <Integer> m_aResults = new ArrayList <Integer> ();
+
+    public void run (@Nonnull final Integer aValue)
+    {
+      m_aResults.add (aValue);
+    }
+  }
+
+  @Test
+  public void testOrderedAndUnordered ()
+  {
+    final H2MemConnector aConnector = new H2MemConnector ("paralleltest1", "sa", "");
+    try
+    {
+      final DBExecutor aExecutor = new DBExecutor (aConnector);
+      final List <Integer> aExpected = new ArrayList <Integer> ();
+      for (int i = 0; i < ROWS; ++i)
+        aExpected.add (Integer.valueOf (i));
+
+      // Ordered: exactly the row order
+      CollectingSink aSink = new CollectingSink ();
+      assertEquals (ESuccess.SUCCESS,
+                    aExecutor.queryAllParallel (SQL,
+                                                new SlowConverter (-1),
+                                                aSink,
+                                                new DBParallelProcessingSettings ().setThreadCount (4)
+                                                                                   .setBatchSize (10)));
+      assertEquals (aExpected, aSink.m_aResults);
+
+      // Unordered: all rows, any order
+      aSink = new CollectingSink ();
+      assertEquals (ESuccess.SUCCESS,
+                    aExecutor.queryAllParallel (SQL,
+                                                new SlowConverter (-1),
+                                                aSink,
+                                                new DBParallelProcessingSettings ().setThreadCount (4)
+                                                                                   .setBatchSize (10)
+                                                                                   .setOrdered (false)));
+      Collections.sort (aSink.m_aResults);
+      assertEquals (aExpected, aSink.m_aResults);
+    }
+    finally
+    {
+      aConnector.close ();
+    }
+  }
+
+  @Test
+  public void testBackpressure ()
+  {
+    final H2MemConnector aConnector = new H2MemConnector ("paralleltest2", "sa", "");
+    try
+    {
+      final DBExecutor aExecutor = new DBExecutor (aConnector);
+      final int nBatchSize = 10;
+      final int nMaxPending = 2;
+      final SlowConverter aConverter = new SlowConverter (-1);
+      final AtomicInteger aMaxAhead = new AtomicInteger (0);
+      final INonThrowingRunnableWithParameter <Integer> aSink = new INonThrowingRunnableWithParameter <Integer> ()
+      {
+        private int m_nDelivered = 0;
+
+        public void run (@Nonnull final Integer aValue)
+        {
+          // Number of rows converted but not yet delivered
+          final int nAhead = aConverter.m_aConverted.get () - m_nDelivered;
+          if (nAhead > aMaxAhead.get ())
+            aMaxAhead.set (nAhead);
+          m_nDelivered++;
+        }
+      };
+      assertEquals (ESuccess.SUCCESS,
+                    aExecutor.queryAllParallel (SQL,
+                                                aConverter,
+                                                aSink,
+                                                new DBParallelProcessingSettings ().setThreadCount (8)
+                                                                                   .setBatchSize (nBatchSize)
+                                                                                   .setMaxPendingBatches (nMaxPending)));
+      assertEquals (ROWS, aConverter.m_aConverted.get ());
+      assertTrue ("Converted too far ahead: " + aMaxAhead.get (), aMaxAhead.get () <= nMaxPending * nBatchSize);
+    }
+    finally
+    {
+      aConnector.close ();
+    }
+  }
+
+  @Test
+  public void testFailingWorker ()
+  {
+    final H2MemConnector aConnector = new H2MemConnector ("paralleltest3", "sa", "");
+    try
+    {
+      final DBExecutor aExecutor = new DBExecutor (aConnector);
+      for (final boolean bOrdered : new boolean [] { true, false })
+      {
+        final CollectingSink aSink = new CollectingSink ();
+        try
+        {
+          aExecutor.queryAllParallel (SQL,
+                                      new SlowConverter (500),
+                                      aSink,
+                                      new DBParallelProcessingSettings ().setThreadCount (4)
+                                                                         .setBatchSize (10)
+                                                                         .setOrdered (bOrdered));
+          fail ();
+        }
+        catch (final IllegalStateException ex)
+        {
+          assertEquals ("Failed to convert row 500", ex.getMessage ());
+        }
+        assertFalse (aSink.m_aResults.contains (Integer.valueOf (500)));
+      }
+
+      // The executor is still usable
+      assertEquals (ROWS, aExecutor.queryCount ("SELECT COUNT(*) FROM SYSTEM_RANGE(1, " + ROWS + ")"));
+    }
+    finally
+    {
+      aConnector.close ();
+    }
+  }
+
+  @Test
+  public void testSharedExecutor ()
+  {
+    final H2MemConnector aConnector = new H2MemConnector ("paralleltest4", "sa", "");
+    final ExecutorService aPool = Executors.newFixedThreadPool (3);
+    try
+    {
+      final DBExecutor aExecutor = new DBExecutor (aConnector);
+      final DBParallelProcessingSettings aSettings = new DBParallelProcessingSettings ().setBatchSize (10)
+                                                                                        .setExecutor (aPool);
+      for (int i = 0; i < 3; ++i)
+      {
+        final CollectingSink aSink = new CollectingSink ();
+        assertEquals (ESuccess.SUCCESS, aExecutor.queryAllParallel (SQL, new SlowConverter (-1), aSink, aSettings));
+        assertEquals (ROWS, aSink.m_aResults.size ());
+        // Not shut down by the processor
+        assertFalse (aPool.isShutdown ());
+      }
+
+      // A failing query does not shut down the shared executor either
+      try
+      {
+        aExecutor.queryAllParallel (SQL, new SlowConverter (10), new CollectingSink (), aSettings);
+        fail ();
+      }
+      catch (final IllegalStateException ex)
+      {
+        // expected
+      }
+      assertFalse (aPool.isShutdown ());
+    }
+    finally
+    {
+      aPool.shutdown ();
+      aConnector.close ();
+    }
+  }
+}
@@ -0,0 +1,160 @@
+/**
+ * Copyright (C) 2006-2015 phloc systems
+ * http://www.phloc.com
+ * office[at]phloc[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.phloc.db.jdbc.executor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.Nonnull;
+
+import org.junit.Test;
+
+import com.phloc.db.jdbc.h2.H2MemConnector;
+
+/**
+ * Test class for class {@link DBPrefetchingCursor}.
+ * 
+ * @author Philip Helger
+ */
+public final class DBPrefetchingCursorTest
+{
+  private static final String SQL = "SELECT * FROM SYSTEM_RANGE(1, 100)";
+
+  @Test
+  public void testIterate ()
+  {
+    final H2MemConnector aConnector = new H2MemConnector ("prefetchtest1", "sa", "");
+    try
+    {
+      final DBExecutor aExecutor = new DBExecutor (aConnector);
+      final DBPrefetchingCursor aCursor = aExecutor.queryPrefetching (SQL, 7);
+      try
+      {
+        int nCount = 0;
+        for (final DBResultRow aRow : aCursor)
+          assertEquals (++nCount, aRow.getAsInt (0));
+        assertEquals (100, nCount);
+        assertFalse (aCursor.hasNext ());
+      }
+      finally
+      {
+        aCursor.close ();
+      }
+
+      // Usable after the cursor was exhausted
+      assertEquals (100, aExecutor.queryCount ("SELECT COUNT(*) FROM SYSTEM_RANGE(1, 100)"));
+    }
+    finally
+    {
+      aConnector.close ();
+    }
+  }
+
+  @Test
+  public void testReentrantUseFailsFast ()
+  {
+    final H2MemConnector aConnector = new H2MemConnector ("prefetchtest2", "sa", "");
+    try
+    {
+      final DBExecutor aExecutor = new DBExecutor (aConnector);
+      final DBPrefetchingCursor aCursor = aExecutor.queryPrefetching (SQL, 2);
+      try
+      {
+        assertTrue (aCursor.hasNext ());
+        assertEquals (1, aCursor.next ().getAsInt (0));
+        // Would wait forever for the fetcher thread that waits for us
+        try
+        {
+          aExecutor.queryCount ("SELECT COUNT(*) FROM SYSTEM_RANGE(1, 10)");
+          fail ();
+        }
+        catch (final IllegalStateException ex)
+        {
+          // expected
+        }
+        // A second cursor is not possible either
+        try
+        {
+          aExecutor.queryPrefetching (SQL, 2);
+          fail ();
+        }
+        catch (final IllegalStateException ex)
+        {
+          // expected
+        }
+      }
+      finally
+      {
+        aCursor.close ();
+      }
+
+      // Usable again after the cursor was closed
+      assertEquals (10, aExecutor.queryCount ("SELECT COUNT(*) FROM SYSTEM_RANGE(1, 10)"));
+    }
+    finally
+    {
+      aConnector.close ();
+    }
+  }
+
+  @Test
+  public void testThreadFactory ()
+  {
+    final H2MemConnector aConnector = new H2MemConnector ("prefetchtest3", "sa", "");
+    try
+    {
+      final DBExecutor aExecutor = new DBExecutor (aConnector);
+      final AtomicInteger aCreated = new AtomicInteger (0);
+      aExecutor.setPrefetchingThreadFactory (new ThreadFactory ()
+      {
+        public Thread newThread (@Nonnull final Runnable aRunnable)
+        {
+          aCreated.incrementAndGet ();
+          final Thread ret = new Thread (aRunnable, "test-prefetch");
+          ret.setDaemon (true);
+          return ret;
+        }
+      });
+      final DBPrefetchingCursor aCursor = aExecutor.queryPrefetching (SQL, 10);
+      try
+      {
+        int nCount = 0;
+        while (aCursor.hasNext ())
+        {
+          aCursor.next ();
+          ++nCount;
+        }
+        assertEquals (100, nCount);
+      }
+      finally
+      {
+        aCursor.close ();
+      }
+      assertEquals (1, aCreated.get ());
+    }
+    finally
+    {
+      aConnector.close ();
+    }
+  }
+}
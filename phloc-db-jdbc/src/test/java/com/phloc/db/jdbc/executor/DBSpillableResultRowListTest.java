@@ -0,0 +1,158 @@
+/**
+ * Copyright (C) 2006-2015 phloc systems
+ * http://www.phloc.com
+ * office[at]phloc[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.phloc.db.jdbc.executor;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.phloc.commons.state.ESuccess;
+import com.phloc.db.jdbc.callback.ConstantPreparedStatementDataProvider;
+import com.phloc.db.jdbc.callback.IPreparedStatementDataProvider;
+import com.phloc.db.jdbc.h2.H2MemConnector;
+
+/**
+ * Test class for class {@link DBSpillableResultRowList}.
+ * 
+ * @author Philip Helger
+ */
+public final class DBSpillableResultRowListTest
+{
+  private static void _fill (final DBExecutor aExecutor)
+  {
+    assertEquals (ESuccess.SUCCESS,
+                  aExecutor.executeStatement ("CREATE TABLE t (id INT, name VARCHAR(50), amount DECIMAL(10,2), data BINARY(4))"));
+    final List <IPreparedStatementDataProvider> aRows = new ArrayList <IPreparedStatementDataProvider> ();
+    for (int i = 0; i < 100; ++i)
+      aRows.add (new ConstantPreparedStatementDataProvider (Integer.valueOf (i),
+                                                            i % 10 == 0 ? null : "name" + i,
+                                                            new BigDecimal (i + ".25"),
+                                                            new byte [] { 1, 2, 3, (byte) i }));
+    assertEquals (100, aExecutor.insertMultiRow (new DBMultiRowInsert ("t", "id", "name", "amount", "data"), aRows));
+  }
+
+  @Test
+  public void testSpillToDisk ()
+  {
+    final H2MemConnector aConnector = new H2MemConnector ("spilltest", "sa", "");
+    try
+    {
+      final DBExecutor aExecutor = new DBExecutor (aConnector);
+      _fill (aExecutor);
+
+      final DBSpillableResultRowList aList = aExecutor.queryAll ("SELECT * FROM t ORDER BY id",
+                                                                 DBResultMaterializationLimit.createSpillToDisk (2000));
+      assertNotNull (aList);
+      try
+      {
+        assertEquals (100, aList.size ());
+        assertTrue (aList.isSpilled ());
+        assertTrue (aList.getInMemoryRowCount () > 0);
+        assertTrue (aList.getEstimatedMemoryBytes () <= 2000);
+        final File aSpillFile = aList.getSpillFile ();
+        assertNotNull (aSpillFile);
+        assertTrue (aSpillFile.exists ());
+
+        int nIndex = 0;
+        for (final DBResultRow aRow : aList)
+        {
+          assertEquals (nIndex, aRow.getAsInt (0));
+          if (nIndex % 10 == 0)
+            assertNull (aRow.getValue (1));
+          else
+            assertEquals ("name" + nIndex, aRow.getAsString (1));
+          assertEquals (new BigDecimal (nIndex + ".25"), aRow.getValue (2));
+          assertArrayEquals (new byte [] { 1, 2, 3, (byte) nIndex }, (byte []) aRow.getValue (3));
+          assertEquals ("NAME", aRow.getColumnName (1));
+          ++nIndex;
+        }
+        assertEquals (100, nIndex);
+
+        // Random access to spilled rows in any order
+        for (final int nRandomIndex : new int [] { 99, 50, 98, 99 })
+        {
+          final DBResultRow aRow = aList.get (nRandomIndex);
+          assertEquals (nRandomIndex, aRow.getAsInt (0));
+          assertEquals (new BigDecimal (nRandomIndex + ".25"), aRow.getValue (2));
+        }
+
+        // Abandoned iteration
+        assertEquals (0, aList.iterator ().next ().getAsInt (0));
+        final Iterator <DBResultRow> aIt = aList.listIterator (aList.size () - 1);
+        assertEquals (99, aIt.next ().getAsInt (0));
+
+        aList.close ();
+        assertFalse (aSpillFile.exists ());
+      }
+      finally
+      {
+        aList.close ();
+      }
+    }
+    finally
+    {
+      aConnector.close ();
+    }
+  }
+
+  @Test
+  public void testFailFast ()
+  {
+    final H2MemConnector aConnector = new H2MemConnector ("failfasttest", "sa", "");
+    try
+    {
+      final DBExecutor aExecutor = new DBExecutor (aConnector);
+      _fill (aExecutor);
+
+      try
+      {
+        aExecutor.queryAll ("SELECT * FROM t", DBResultMaterializationLimit.createFailFast (2000));
+        fail ();
+      }
+      catch (final DBResultSizeLimitExceededException ex)
+      {
+        assertEquals (2000, ex.getMaxBytes ());
+        assertTrue (ex.getRowCount () < 100);
+      }
+
+      // Enough memory
+      final DBSpillableResultRowList aList = aExecutor.queryAll ("SELECT * FROM t",
+                                                                 DBResultMaterializationLimit.createFailFast (1024 * 1024));
+      assertNotNull (aList);
+      assertEquals (100, aList.size ());
+      assertFalse (aList.isSpilled ());
+      aList.close ();
+    }
+    finally
+    {
+      aConnector.close ();
+    }
+  }
+}
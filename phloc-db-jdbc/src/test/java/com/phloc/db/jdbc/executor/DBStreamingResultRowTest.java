@@ -0,0 +1,245 @@
+/**
+ * Copyright (C) 2006-2015 phloc systems
+ * http://www.phloc.com
+ * office[at]phloc[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.phloc.db.jdbc.executor;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringWriter;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.annotation.Nonnull;
+
+import org.junit.Test;
+
+import com.phloc.commons.io.file.FileUtils;
+import com.phloc.commons.io.streams.StreamUtils;
+import com.phloc.commons.state.ESuccess;
+import com.phloc.db.jdbc.callback.ConstantPreparedStatementDataProvider;
+import com.phloc.db.jdbc.callback.IStreamingResultSetRowCallback;
+import com.phloc.db.jdbc.h2.H2MemConnector;
+
+/**
+ * Test class for class {@link DBStreamingResultRow} and the streaming query
+ * methods of {@link DBExecutor}.
+ * 
+ * @author Philip Helger
+ */
+public final class DBStreamingResultRowTest
+{
+  private static final Charset UTF8 = Charset.forName ("UTF-8");
+
+  // Larger than the copy buffer, so that more than one chunk is copied
+  private static final int LOB_SIZE = DBStreamingResultRow.COPY_BUFFER_SIZE * 2 + 17;
+
+  @Nonnull
+  private static byte [] _createBinary ()
+  {
+    final byte [] ret = new byte [LOB_SIZE];
+    for (int i = 0; i < ret.length; ++i)
+      ret[i] = (byte) i;
+    return ret;
+  }
+
+  @Nonnull
+  private static String _createText ()
+  {
+    final StringBuilder aSB = new StringBuilder (LOB_SIZE);
+    for (int i = 0; i < LOB_SIZE; ++i)
+      aSB.append ((char) ('a' + i % 26));
+    // Add a non-ASCII character to check the charset handling
+    return aSB.append ('ä').toString ();
+  }
+
+  @Nonnull
+  private static DBExecutor _createExecutor (@Nonnull final H2MemConnector aConnector)
+  {
+    final DBExecutor aExecutor = new DBExecutor (aConnector);
+    assertEquals (ESuccess.SUCCESS, aExecutor.executeStatement ("CREATE TABLE lobs (id INT PRIMARY KEY, b BLOB, c CLOB)"));
+    assertEquals (1, aExecutor.insertOrUpdateOrDelete ("INSERT INTO lobs VALUES (?, ?, ?)",
+                                                       new ConstantPreparedStatementDataProvider (Integer.valueOf (1),
+                                                                                                  _createBinary (),
+                                                                                                  _createText ())));
+    assertEquals (1, aExecutor.insertOrUpdateOrDelete ("INSERT INTO lobs VALUES (?, ?, ?)",
+                                                       new ConstantPreparedStatementDataProvider (Integer.valueOf (2),
+                                                                                                  null,
+                                                                                                  null)));
+    return aExecutor;
+  }
+
+  @Test
+  public void testCopyToStreamAndWriter ()
+  {
+    final H2MemConnector aConnector = new H2MemConnector ("streamingtest1", "sa", "");
+    try
+    {
+      final DBExecutor aExecutor = _createExecutor (aConnector);
+      final List <Integer> aIDs = new ArrayList <Integer> ();
+      assertEquals (ESuccess.SUCCESS,
+                    aExecutor.queryAllStreaming ("SELECT id, b, c FROM lobs ORDER BY id",
+                                                 new IStreamingResultSetRowCallback ()
+                                                 {
+                                                   public void run (@Nonnull final DBStreamingResultRow aRow) throws SQLException,
+                                                                                                              IOException
+                                                   {
+                                                     assertEquals (3, aRow.getColumnCount ());
+                                                     assertEquals ("B", aRow.getColumnName (1));
+                                                     assertTrue (aRow.isBinaryLOBColumn (1));
+                                                     assertFalse (aRow.isCharacterLOBColumn (1));
+                                                     assertTrue (aRow.isCharacterLOBColumn (2));
+                                                     assertFalse (aRow.isBinaryLOBColumn (2));
+
+                                                     final Integer aID = (Integer) aRow.getValue (0);
+                                                     aIDs.add (aID);
+                                                     final ByteArrayOutputStream aBAOS = new ByteArrayOutputStream ();
+                                                     final StringWriter aSW = new StringWriter ();
+                                                     if (aID.intValue () == 1)
+                                                     {
+                                                       assertEquals (LOB_SIZE, aRow.copyBinaryTo (1, aBAOS));
+                                                       assertArrayEquals (_createBinary (), aBAOS.toByteArray ());
+                                                       assertEquals (LOB_SIZE + 1, aRow.copyCharactersTo (2, aSW));
+                                                       assertEquals (_createText (), aSW.toString ());
+                                                     }
+                                                     else
+                                                     {
+                                                       // SQL NULL
+                                                       assertEquals (-1, aRow.copyBinaryTo (1, aBAOS));
+                                                       assertEquals (-1, aRow.copyCharactersTo (2, aSW));
+                                                       assertEquals (0, aBAOS.size ());
+                                                     }
+                                                   }
+                                                 }));
+      assertEquals (2, aIDs.size ());
+    }
+    finally
+    {
+      aConnector.close ();
+    }
+  }
+
+  @Test
+  public void testCopyToChannelAndFile () throws IOException
+  {
+    final H2MemConnector aConnector = new H2MemConnector ("streamingtest2", "sa", "");
+    final File aBinFile = File.createTempFile ("phloc-db-streaming", ".bin");
+    final File aTextFile = File.createTempFile ("phloc-db-streaming", ".txt");
+    try
+    {
+      final DBExecutor aExecutor = _createExecutor (aConnector);
+      final ByteArrayOutputStream aBAOS = new ByteArrayOutputStream ();
+      assertEquals (ESuccess.SUCCESS,
+                    aExecutor.queryAllStreaming ("SELECT b, c FROM lobs WHERE id = ?",
+                                                 new ConstantPreparedStatementDataProvider (Integer.valueOf (1)),
+                                                 new IStreamingResultSetRowCallback ()
+                                                 {
+                                                   public void run (@Nonnull final DBStreamingResultRow aRow) throws SQLException,
+                                                                                                              IOException
+                                                   {
+                                                     final WritableByteChannel aChannel = Channels.newChannel (aBAOS);
+                                                     assertEquals (LOB_SIZE, aRow.copyBinaryTo (0, aChannel));
+                                                     assertEquals (LOB_SIZE, aRow.copyBinaryTo (0, aBinFile));
+                                                     assertEquals (LOB_SIZE + 1,
+                                                                   aRow.copyCharactersTo (1, aTextFile, UTF8));
+                                                   }
+                                                 }));
+      assertArrayEquals (_createBinary (), aBAOS.toByteArray ());
+      assertEquals (LOB_SIZE, aBinFile.length ());
+
+      final Reader aReader = new InputStreamReader (FileUtils.getInputStream (aTextFile), UTF8);
+      try
+      {
+        final StringWriter aSW = new StringWriter ();
+        final char [] aBuf = new char [4096];
+        int nRead;
+        while ((nRead = aReader.read (aBuf)) != -1)
+          aSW.write (aBuf, 0, nRead);
+        assertEquals (_createText (), aSW.toString ());
+      }
+      finally
+      {
+        StreamUtils.close (aReader);
+      }
+    }
+    finally
+    {
+      aConnector.close ();
+      aBinFile.delete ();
+      aTextFile.delete ();
+    }
+  }
+
+  @Test
+  public void testRowOnlyValidInCallback ()
+  {
+    final H2MemConnector aConnector = new H2MemConnector ("streamingtest3", "sa", "");
+    try
+    {
+      final DBExecutor aExecutor = _createExecutor (aConnector);
+      final List <DBStreamingResultRow> aRows = new ArrayList <DBStreamingResultRow> ();
+      assertEquals (ESuccess.SUCCESS, aExecutor.queryAllStreaming ("SELECT id FROM lobs",
+                                                                   new IStreamingResultSetRowCallback ()
+                                                                   {
+                                                                     public void run (@Nonnull final DBStreamingResultRow aRow)
+                                                                     {
+                                                                       aRows.add (aRow);
+                                                                     }
+                                                                   }));
+      assertEquals (2, aRows.size ());
+      try
+      {
+        aRows.get (0).getValue (0);
+        fail ();
+      }
+      catch (final IllegalStateException ex)
+      {
+        // expected
+      }
+      catch (final SQLException ex)
+      {
+        fail ();
+      }
+
+      // IO errors in the callback make the query fail
+      assertEquals (ESuccess.FAILURE, aExecutor.queryAllStreaming ("SELECT id FROM lobs",
+                                                                   new IStreamingResultSetRowCallback ()
+                                                                   {
+                                                                     public void run (@Nonnull final DBStreamingResultRow aRow) throws IOException
+                                                                     {
+                                                                       throw new IOException ("test");
+                                                                     }
+                                                                   }));
+    }
+    finally
+    {
+      aConnector.close ();
+    }
+  }
+}
@@ -0,0 +1,156 @@
+/**
+ * Copyright (C) 2006-2015 phloc systems
+ * http://www.phloc.com
+ * office[at]phloc[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.phloc.db.jdbc.executor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.phloc.commons.state.ESuccess;
+import com.phloc.db.jdbc.EDatabaseDialect;
+import com.phloc.db.jdbc.callback.ConstantPreparedStatementDataProvider;
+import com.phloc.db.jdbc.callback.IPreparedStatementDataProvider;
+import com.phloc.db.jdbc.h2.H2MemConnector;
+
+/**
+ * Test class for class {@link DBUpsert}.
+ * 
+ * @author Philip Helger
+ */
+public final class DBUpsertTest
+{
+  private static final DBUpsert UPSERT = new DBUpsert ("t", Arrays.asList ("id", "v"), Arrays.asList ("id"));
+
+  @Test
+  public void testGetSQL ()
+  {
+    assertEquals ("MERGE INTO t (id, v) KEY (id) VALUES (?, ?)", UPSERT.getSQL (EDatabaseDialect.H2));
+    assertEquals ("INSERT INTO t (id, v) VALUES (?, ?) ON DUPLICATE KEY UPDATE v = VALUES(v)",
+                  UPSERT.getSQL (EDatabaseDialect.MYSQL));
+    assertEquals ("MERGE INTO t USING (VALUES (?, ?)) AS src (id, v) ON (t.id = src.id)" +
+                  " WHEN MATCHED THEN UPDATE SET v = src.v" +
+                  " WHEN NOT MATCHED THEN INSERT (id, v) VALUES (src.id, src.v);", UPSERT.getSQL (EDatabaseDialect.MSSQL));
+    assertEquals ("UPDATE t SET v = ? WHERE id = ?", UPSERT.getFallbackUpdateSQL ());
+    assertEquals ("INSERT INTO t (id, v) VALUES (?, ?)", UPSERT.getFallbackInsertSQL ());
+    assertEquals (Arrays.<Object> asList ("a", Integer.valueOf (1)),
+                  UPSERT.getFallbackUpdateValues (Arrays.<Object> asList (Integer.valueOf (1), "a")));
+
+    // DB2 requires typed parameter markers
+    assertEquals ("MERGE INTO t USING (VALUES (CAST(? AS INTEGER), CAST(? AS VARCHAR(20)))) AS src (id, v)" +
+                      " ON (t.id = src.id)" +
+                      " WHEN MATCHED THEN UPDATE SET v = src.v" +
+                      " WHEN NOT MATCHED THEN INSERT (id, v) VALUES (src.id, src.v)",
+                  UPSERT.getSQL (EDatabaseDialect.DB2, Arrays.asList ("INTEGER", "VARCHAR(20)")));
+    assertEquals (UPSERT.getSQL (EDatabaseDialect.DB2, Arrays.asList ("INTEGER", "VARCHAR(20)")),
+                  new DBUpsert ("t", Arrays.asList ("id", "v"), Arrays.asList ("id"), Arrays.asList ("INTEGER",
+                                                                                                    "VARCHAR(20)")).getSQL (EDatabaseDialect.DB2));
+    try
+    {
+      UPSERT.getSQL (EDatabaseDialect.DB2);
+      fail ();
+    }
+    catch (final IllegalArgumentException ex)
+    {
+      // expected - no column types
+    }
+
+    assertTrue (EDatabaseDialect.H2.isUpsertSupported ());
+    assertTrue (EDatabaseDialect.DB2.isUpsertSupported ());
+    assertFalse (EDatabaseDialect.GENERIC.isUpsertSupported ());
+  }
+
+  @Test
+  public void testReadColumnTypes () throws SQLException
+  {
+    final H2MemConnector aConnector = new H2MemConnector ("upserttypes", "sa", "");
+    try
+    {
+      final DBExecutor aExecutor = new DBExecutor (aConnector);
+      assertEquals (ESuccess.SUCCESS,
+                    aExecutor.executeStatement ("CREATE TABLE t (id INT PRIMARY KEY, v VARCHAR(20), d DECIMAL(10, 2))"));
+      final Connection aConnection = aConnector.getDataSource ().getConnection ();
+      try
+      {
+        assertEquals (Arrays.asList ("DECIMAL(10, 2)", "INTEGER", "VARCHAR(20)"),
+                      DBExecutor.readColumnTypes (aConnection, new DBUpsert ("t",
+                                                                             Arrays.asList ("d", "id", "v"),
+                                                                             Arrays.asList ("id"))));
+      }
+      finally
+      {
+        aConnection.close ();
+      }
+    }
+    finally
+    {
+      aConnector.close ();
+    }
+  }
+
+  private static void _testUpsert (final boolean bNative)
+  {
+    final H2MemConnector aConnector = new H2MemConnector ("upserttest" + bNative, "sa", "");
+    try
+    {
+      final DBExecutor aExecutor = new DBExecutor (aConnector);
+      if (!bNative)
+        aExecutor.setDialect (EDatabaseDialect.GENERIC);
+      assertEquals (ESuccess.SUCCESS, aExecutor.executeStatement ("CREATE TABLE t (id INT PRIMARY KEY, v VARCHAR(20))"));
+      assertEquals (ESuccess.SUCCESS, aExecutor.executeStatement ("INSERT INTO t VALUES (1, 'old'), (2, 'keep')"));
+
+      final List <IPreparedStatementDataProvider> aRows = new ArrayList <IPreparedStatementDataProvider> ();
+      aRows.add (new ConstantPreparedStatementDataProvider (Integer.valueOf (1), "new"));
+      aRows.add (new ConstantPreparedStatementDataProvider (Integer.valueOf (3), "added"));
+      // Key 4 occurs twice - the last row wins
+      aRows.add (new ConstantPreparedStatementDataProvider (Integer.valueOf (4), "first"));
+      aRows.add (new ConstantPreparedStatementDataProvider (Integer.valueOf (4), "last"));
+      assertEquals (4, aExecutor.upsert (UPSERT, aRows));
+
+      assertEquals (4, aExecutor.queryCount ("SELECT COUNT(*) FROM t"));
+      assertEquals ("new", aExecutor.querySingle ("SELECT v FROM t WHERE id = 1").get (0).getAsString ());
+      assertEquals ("keep", aExecutor.querySingle ("SELECT v FROM t WHERE id = 2").get (0).getAsString ());
+      assertEquals ("added", aExecutor.querySingle ("SELECT v FROM t WHERE id = 3").get (0).getAsString ());
+      assertEquals ("last", aExecutor.querySingle ("SELECT v FROM t WHERE id = 4").get (0).getAsString ());
+    }
+    finally
+    {
+      aConnector.close ();
+    }
+  }
+
+  @Test
+  public void testUpsertMerge ()
+  {
+    _testUpsert (true);
+  }
+
+  @Test
+  public void testUpsertFallback ()
+  {
+    _testUpsert (false);
+  }
+}
@@ -0,0 +1,103 @@
+/**
+ * Copyright (C) 2006-2015 phloc systems
+ * http://www.phloc.com
+ * office[at]phloc[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.phloc.db.jdbc.h2;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+
+import org.h2.tools.DeleteDbFiles;
+import org.junit.Test;
+
+import com.phloc.commons.io.file.FileOperations;
+import com.phloc.commons.state.ESuccess;
+import com.phloc.db.jdbc.executor.DBExecutor;
+
+/**
+ * Test class for class {@link H2BackupScheduler}.
+ * 
+ * @author Philip Helger
+ */
+public final class H2BackupSchedulerTest
+{
+  @Test
+  public void testRunBackup () throws Exception
+  {
+    final File aDir = new File ("./target/h2backup");
+    final H2FileConnector h2c = new H2FileConnector ("./target/h2backup/db", "test", "sa", "");
+    final H2BackupScheduler aScheduler = new H2BackupScheduler (h2c,
+                                                                new H2BackupSettings (new File (aDir, "backups")).setMaxBackupCount (2)
+                                                                                                                 .setMaxBytesPerSecond (1024 * 1024));
+    try
+    {
+      for (final File aFile : aScheduler.getAllBackupFiles ())
+        FileOperations.deleteFile (aFile);
+
+      final DBExecutor aExecutor = new DBExecutor (h2c);
+      assertEquals (ESuccess.SUCCESS, aExecutor.executeStatement ("CREATE TABLE t (id INT PRIMARY KEY, v VARCHAR(100))"));
+      assertEquals (ESuccess.SUCCESS,
+                    aExecutor.executeStatement ("INSERT INTO t SELECT x, 'value ' || x FROM SYSTEM_RANGE(1, 1000)"));
+
+      final File aBackup1 = aScheduler.runBackup ();
+      assertNotNull (aBackup1);
+      assertTrue (aBackup1.length () > 0);
+      assertEquals (aBackup1, aScheduler.getLastBackupFile ());
+
+      // Nothing changed
+      assertNull (aScheduler.runBackup ());
+
+      // Rotation keeps the 2 most recent backups
+      for (int i = 0; i < 2; ++i)
+      {
+        Thread.sleep (5);
+        assertEquals (ESuccess.SUCCESS, aExecutor.executeStatement ("INSERT INTO t VALUES (" + (2000 + i) + ", 'new')"));
+        assertNotNull (aScheduler.runBackup ());
+      }
+      assertEquals (2, aScheduler.getAllBackupFiles ().size ());
+      assertTrue (!aBackup1.exists ());
+
+      // The backup can be restored
+      final H2MemConnector aMem = new H2MemConnector ("h2backuprestore", "sa", "");
+      try
+      {
+        assertTrue (aMem.restoreDatabase (aScheduler.getLastBackupFile (), EH2DumpCompression.GZIP, 100, null)
+                        .isSuccess ());
+        assertEquals (1002, new DBExecutor (aMem).queryCount ("SELECT COUNT(*) FROM t"));
+      }
+      finally
+      {
+        aMem.close ();
+      }
+
+      // Scheduled run
+      assertTrue (aScheduler.start ().isChanged ());
+      assertTrue (aScheduler.start ().isUnchanged ());
+      assertTrue (aScheduler.stop ().isChanged ());
+      assertTrue (aScheduler.stop ().isUnchanged ());
+    }
+    finally
+    {
+      aScheduler.close ();
+      h2c.close ();
+      DeleteDbFiles.execute ("./target/h2backup/db", "test", true);
+    }
+  }
+}
@@ -17,9 +17,29 @@
  */
 package com.phloc.db.jdbc.h2;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.Nonnull;
+
+import org.h2.engine.Session;
+import org.h2.jdbc.JdbcConnection;
+import org.h2.tools.DeleteDbFiles;
 import org.junit.Test;
 
-import com.phloc.db.jdbc.h2.H2FileConnector;
+import com.phloc.commons.callback.INonThrowingRunnableWithParameter;
+import com.phloc.commons.io.file.FileOperations;
+import com.phloc.commons.state.ESuccess;
+import com.phloc.db.api.h2.H2ConnectionProperties;
+import com.phloc.db.api.jdbc.JDBCHelper;
+import com.phloc.db.jdbc.executor.DBExecutor;
+import com.phloc.db.jdbc.executor.DBResultRow;
 
 /**
  * Test class for class {@link H2FileConnector}.
@@ -28,6 +48,20 @@ import com.phloc.db.jdbc.h2.H2FileConnector;
  */
 public final class H2FileConnectorTest
 {
+  private static int _getRetentionTime (@Nonnull final H2FileConnector h2c) throws SQLException
+  {
+    final Connection aConnection = h2c.getDataSource ().getConnection ();
+    try
+    {
+      final Session aSession = (Session) aConnection.unwrap (JdbcConnection.class).getSession ();
+      return aSession.getDatabase ().getMvStore ().getStore ().getRetentionTime ();
+    }
+    finally
+    {
+      JDBCHelper.close (aConnection);
+    }
+  }
+
   @Test
   public void testAll ()
   {
@@ -36,4 +70,168 @@ public final class H2FileConnectorTest
     // Close again
     h2c.close ();
   }
+
+  @Test
+  public void testCompactDatabaseOnline () throws SQLException
+  {
+    final H2FileConnector h2c = new H2FileConnector ("./target/h2compact", "test", "sa", "");
+    try
+    {
+      final DBExecutor aExecutor = new DBExecutor (h2c);
+      assertEquals (ESuccess.SUCCESS, aExecutor.executeStatement ("CREATE TABLE t (id INT PRIMARY KEY, v VARCHAR(1000))"));
+      assertEquals (ESuccess.SUCCESS,
+                    aExecutor.executeStatement ("INSERT INTO t SELECT x, SPACE(900) FROM SYSTEM_RANGE(1, 10000)"));
+      assertEquals (ESuccess.SUCCESS, aExecutor.executeStatement ("DELETE FROM t WHERE id > 10"));
+
+      final int nRetentionTime = _getRetentionTime (h2c);
+      assertTrue (nRetentionTime > 0);
+      final H2CompactionResult aResult = h2c.compactDatabaseOnline ();
+      assertTrue (aResult.isSuccess ());
+      assertEquals (EH2CompactionMode.MVSTORE, aResult.getMode ());
+      assertTrue (aResult.getBytesReclaimed () > 0);
+      // Not changed by the compaction
+      assertEquals (nRetentionTime, _getRetentionTime (h2c));
+
+      // The same executor continues to work
+      assertEquals (10, aExecutor.queryCount ("SELECT COUNT(*) FROM t"));
+    }
+    finally
+    {
+      h2c.close ();
+      DeleteDbFiles.execute ("./target/h2compact", "test", true);
+    }
+  }
+
+  @Test
+  public void testCompactDatabaseOnlinePageStore () throws SQLException
+  {
+    final H2FileConnector h2c = new H2FileConnector ("./target/h2compactpage", "test", "sa", "");
+    h2c.setConnectionProperties (new H2ConnectionProperties ().setMVStore (false));
+    try
+    {
+      final DBExecutor aExecutor = new DBExecutor (h2c);
+      assertEquals (ESuccess.SUCCESS, aExecutor.executeStatement ("CREATE TABLE t (id INT PRIMARY KEY)"));
+      assertEquals (ESuccess.SUCCESS, aExecutor.executeStatement ("INSERT INTO t SELECT x FROM SYSTEM_RANGE(1, 10)"));
+
+      // Refused while a connection not borrowed by an executor is open
+      final Connection aConnection = h2c.getDataSource ().getConnection ();
+      try
+      {
+        final H2CompactionResult aResult = h2c.compactDatabaseOnline ();
+        assertFalse (aResult.isSuccess ());
+        assertEquals (EH2CompactionMode.SHUTDOWN_COMPACT, aResult.getMode ());
+        assertFalse (aConnection.isClosed ());
+        assertTrue (aConnection.createStatement ().execute ("SELECT COUNT(*) FROM t"));
+      }
+      finally
+      {
+        JDBCHelper.close (aConnection);
+      }
+
+      final H2CompactionResult aResult = h2c.compactDatabaseOnline ();
+      assertTrue (aResult.isSuccess ());
+      assertEquals (EH2CompactionMode.SHUTDOWN_COMPACT, aResult.getMode ());
+      assertEquals (10, aExecutor.queryCount ("SELECT COUNT(*) FROM t"));
+    }
+    finally
+    {
+      h2c.close ();
+      DeleteDbFiles.execute ("./target/h2compactpage", "test", true);
+    }
+  }
+
+  @Test
+  public void testDumpAndRestore ()
+  {
+    final File aDumpFile = new File ("target/h2dump-test.sql.gz");
+    final H2FileConnector aSrc = new H2FileConnector ("./target/h2dump", "src", "sa", "");
+    final H2FileConnector aDst = new H2FileConnector ("./target/h2dump", "dst", "sa", "");
+    try
+    {
+      final DBExecutor aExecutor = new DBExecutor (aSrc);
+      assertEquals (ESuccess.SUCCESS, aExecutor.executeStatement ("CREATE TABLE t (id INT PRIMARY KEY, v VARCHAR(100))"));
+      assertEquals (ESuccess.SUCCESS,
+                    aExecutor.executeStatement ("INSERT INTO t SELECT x, 'it''s ' || x FROM SYSTEM_RANGE(1, 2500)"));
+
+      final AtomicLong aDumped = new AtomicLong ();
+      assertEquals (ESuccess.SUCCESS, aSrc.dumpDatabase (aDumpFile, EH2DumpCompression.GZIP, new IH2ProgressCallback ()
+      {
+        public void onProgress (final long nStatementCount, final long nCharCount)
+        {
+          aDumped.set (nStatementCount);
+        }
+      }));
+      assertTrue (aDumped.get () > 2500);
+      assertTrue (aDumpFile.length () > 0);
+
+      final AtomicLong aRestored = new AtomicLong ();
+      assertEquals (ESuccess.SUCCESS, aDst.restoreDatabase (aDumpFile, EH2DumpCompression.GZIP, 100, new IH2ProgressCallback ()
+      {
+        public void onProgress (final long nStatementCount, final long nCharCount)
+        {
+          aRestored.set (nStatementCount);
+        }
+      }));
+      assertTrue (aRestored.get () > 2500);
+      final DBExecutor aDstExecutor = new DBExecutor (aDst);
+      assertEquals (2500, aDstExecutor.queryCount ("SELECT COUNT(*) FROM t"));
+      assertEquals ("it's 7", aDstExecutor.querySingle ("SELECT v FROM t WHERE id = 7").get (0).getAsString ());
+
+      // Offline compaction uses the same pipeline
+      assertEquals (ESuccess.SUCCESS, aSrc.compactDatabase (true));
+      assertEquals (2500, new DBExecutor (aSrc).queryCount ("SELECT COUNT(*) FROM t"));
+    }
+    finally
+    {
+      aSrc.close ();
+      aDst.close ();
+      DeleteDbFiles.execute ("target/h2dump", null, true);
+      FileOperations.deleteFileIfExisting (aDumpFile);
+    }
+  }
+
+  @Test
+  public void testBulkLoadMode ()
+  {
+    final String sSettingsSQL = "SELECT LOCK_MODE(), (SELECT VALUE FROM INFORMATION_SCHEMA.SETTINGS WHERE NAME = 'LOG')";
+    final H2FileConnector h2c = new H2FileConnector ("./target/h2bulk", "test", "sa", "");
+    try
+    {
+      final DBExecutor aExecutor = new DBExecutor (h2c);
+      assertEquals (ESuccess.SUCCESS, aExecutor.executeStatement ("CREATE TABLE t (id INT PRIMARY KEY, v VARCHAR(100))"));
+
+      assertEquals (ESuccess.SUCCESS, h2c.doInBulkLoadMode (new INonThrowingRunnableWithParameter <DBExecutor> ()
+      {
+        public void run (final DBExecutor aBulkExecutor)
+        {
+          final DBResultRow aRow = aBulkExecutor.querySingle (sSettingsSQL);
+          assertEquals (0, aRow.getAsInt (0));
+          assertEquals ("0", aRow.getAsString (1));
+          assertEquals (ESuccess.SUCCESS,
+                        aBulkExecutor.executeStatement ("INSERT INTO t SELECT x, 'v' || x FROM SYSTEM_RANGE(1, 5000)"));
+        }
+      }));
+      DBResultRow aRow = aExecutor.querySingle (sSettingsSQL);
+      assertEquals (3, aRow.getAsInt (0));
+      assertEquals ("2", aRow.getAsString (1));
+      assertEquals (5000, aExecutor.queryCount ("SELECT COUNT(*) FROM t"));
+
+      // Settings are restored if the import fails
+      assertEquals (ESuccess.FAILURE, h2c.doInBulkLoadMode (new INonThrowingRunnableWithParameter <DBExecutor> ()
+      {
+        public void run (final DBExecutor aBulkExecutor)
+        {
+          throw new IllegalStateException ("Import failed");
+        }
+      }));
+      aRow = aExecutor.querySingle (sSettingsSQL);
+      assertEquals (3, aRow.getAsInt (0));
+      assertEquals ("2", aRow.getAsString (1));
+    }
+    finally
+    {
+      h2c.close ();
+      DeleteDbFiles.execute ("./target/h2bulk", "test", true);
+    }
+  }
 }
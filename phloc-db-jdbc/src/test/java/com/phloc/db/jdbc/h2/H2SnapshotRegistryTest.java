@@ -0,0 +1,232 @@
+/**
+ * Copyright (C) 2006-2015 phloc systems
+ * http://www.phloc.com
+ * office[at]phloc[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.phloc.db.jdbc.h2;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.h2.tools.DeleteDbFiles;
+import org.junit.Test;
+
+import com.phloc.commons.callback.INonThrowingRunnableWithParameter;
+import com.phloc.commons.state.EChange;
+import com.phloc.commons.state.ESuccess;
+import com.phloc.db.jdbc.executor.DBExecutor;
+
+/**
+ * Test class for class {@link H2SnapshotRegistry}.
+ * 
+ * @author Philip Helger
+ */
+public final class H2SnapshotRegistryTest
+{
+  private static class MockInitializer implements INonThrowingRunnableWithParameter <DBExecutor>
+  {
+    private final AtomicInteger m_aCount = new AtomicInteger (0);
+
+    public void run (final DBExecutor aExecutor)
+    {
+      m_aCount.incrementAndGet ();
+      assertEquals (ESuccess.SUCCESS, aExecutor.executeStatement ("CREATE TABLE t (id INT PRIMARY KEY, v VARCHAR(100))"));
+      assertEquals (ESuccess.SUCCESS,
+                    aExecutor.executeStatement ("INSERT INTO t SELECT x, 'seed ' || x FROM SYSTEM_RANGE(1, 500)"));
+    }
+  }
+
+  @Test
+  public void testGetTemplateName ()
+  {
+    assertEquals ("template-1_002e0-b", H2SnapshotRegistry.getTemplateName ("1.0-b"));
+    assertEquals ("template-a_002fb", H2SnapshotRegistry.getTemplateName ("a/b"));
+    assertEquals ("template-a_005fb", H2SnapshotRegistry.getTemplateName ("a_b"));
+    assertEquals ("template-_00e4", H2SnapshotRegistry.getTemplateName ("\u00e4"));
+    // No collisions between escaped and unescaped characters
+    assertNotEquals (H2SnapshotRegistry.getTemplateName ("a.b"), H2SnapshotRegistry.getTemplateName ("a_002eb"));
+  }
+
+  @Test
+  public void testMemTemplate ()
+  {
+    final H2SnapshotRegistry aRegistry = new H2SnapshotRegistry ();
+    final MockInitializer aInit = new MockInitializer ();
+    final H2DatabaseSnapshot aSnapshot = aRegistry.getOrCreateSnapshot ("1.0", aInit);
+    assertNotNull (aSnapshot);
+    assertNull (aSnapshot.getTemplateFile ());
+    assertSame (aSnapshot, aRegistry.getOrCreateSnapshot ("1.0", aInit));
+    assertTrue (aRegistry.containsSnapshot ("1.0"));
+
+    for (int i = 0; i < 3; ++i)
+    {
+      final H2MemConnector aTarget = new H2MemConnector ("snapshotclone" + i, "sa", "");
+      try
+      {
+        assertEquals (ESuccess.SUCCESS, aRegistry.cloneInto ("1.0", aInit, aTarget));
+        final DBExecutor aExecutor = new DBExecutor (aTarget);
+        assertEquals (500, aExecutor.queryCount ("SELECT COUNT(*) FROM t"));
+        // Clones are independent
+        assertEquals (ESuccess.SUCCESS, aExecutor.executeStatement ("DELETE FROM t WHERE id > " + i));
+        assertEquals (i, aExecutor.queryCount ("SELECT COUNT(*) FROM t"));
+      }
+      finally
+      {
+        aTarget.close ();
+      }
+    }
+    // The template was built only once
+    assertEquals (1, aInit.m_aCount.get ());
+
+    assertTrue (aRegistry.removeSnapshot ("1.0").isChanged ());
+    assertFalse (aRegistry.containsSnapshot ("1.0"));
+  }
+
+  @Test
+  public void testFileTemplate ()
+  {
+    final H2SnapshotRegistry aRegistry = new H2SnapshotRegistry (new File ("./target/h2snapshot/templates"));
+    final MockInitializer aInit = new MockInitializer ();
+    final H2FileConnector aFileTarget = new H2FileConnector ("./target/h2snapshot/clones", "clone", "sa", "");
+    final H2FileConnector aOtherUserTarget = new H2FileConnector ("./target/h2snapshot/clones",
+                                                                  "clone2",
+                                                                  "app",
+                                                                  "it's secret");
+    final H2MemConnector aMemTarget = new H2MemConnector ("snapshotfileclone", "sa", "");
+    try
+    {
+      final H2DatabaseSnapshot aSnapshot = aRegistry.getOrCreateSnapshot ("2.0/beta", aInit);
+      assertNotNull (aSnapshot);
+      assertNotNull (aSnapshot.getTemplateFile ());
+      assertTrue (aSnapshot.getTemplateFile ().isFile ());
+
+      // File copy
+      assertEquals (ESuccess.SUCCESS, aSnapshot.cloneInto (aFileTarget));
+      assertEquals (500, new DBExecutor (aFileTarget).queryCount ("SELECT COUNT(*) FROM t"));
+
+      // Cloning again replaces the modified database
+      assertEquals (ESuccess.SUCCESS, new DBExecutor (aFileTarget).executeStatement ("DELETE FROM t"));
+      assertEquals (ESuccess.SUCCESS, aSnapshot.cloneInto (aFileTarget));
+      assertEquals (500, new DBExecutor (aFileTarget).queryCount ("SELECT COUNT(*) FROM t"));
+
+      // File copy accessed with other credentials
+      assertEquals (ESuccess.SUCCESS, aSnapshot.cloneInto (aOtherUserTarget));
+      assertEquals (500, new DBExecutor (aOtherUserTarget).queryCount ("SELECT COUNT(*) FROM t"));
+
+      // Script
+      assertEquals (ESuccess.SUCCESS, aSnapshot.cloneInto (aMemTarget));
+      assertEquals ("seed 42", new DBExecutor (aMemTarget).querySingle ("SELECT v FROM t WHERE id = 42")
+                                                          .get (0)
+                                                          .getAsString ());
+      assertEquals (1, aInit.m_aCount.get ());
+
+      // A version with the same sanitized name uses another template
+      final H2DatabaseSnapshot aSnapshot2 = aRegistry.getOrCreateSnapshot ("2.0_beta", aInit);
+      assertNotNull (aSnapshot2);
+      assertEquals (2, aInit.m_aCount.get ());
+      assertNotEquals (aSnapshot.getTemplateFile (), aSnapshot2.getTemplateFile ());
+
+      assertTrue (aRegistry.removeSnapshot ("2.0/beta").isChanged ());
+      assertFalse (aSnapshot.getTemplateFile ().exists ());
+      assertTrue (aSnapshot2.getTemplateFile ().isFile ());
+    }
+    finally
+    {
+      aFileTarget.close ();
+      aOtherUserTarget.close ();
+      aMemTarget.close ();
+      DeleteDbFiles.execute ("./target/h2snapshot/clones", null, true);
+      DeleteDbFiles.execute ("./target/h2snapshot/templates", null, true);
+    }
+  }
+
+  @Test
+  public void testRemoveWaitsForClone () throws InterruptedException
+  {
+    final H2SnapshotRegistry aRegistry = new H2SnapshotRegistry (new File ("./target/h2snapshot/templates2"));
+    final H2FileConnector aTarget = new H2FileConnector ("./target/h2snapshot/clones2", "clone", "sa", "");
+    final CountDownLatch aInitStarted = new CountDownLatch (1);
+    final CountDownLatch aInitRelease = new CountDownLatch (1);
+    final MockInitializer aBlockingInit = new MockInitializer ()
+    {
+      @Override
+      public void run (final DBExecutor aExecutor)
+      {
+        super.run (aExecutor);
+        aInitStarted.countDown ();
+        try
+        {
+          aInitRelease.await ();
+        }
+        catch (final InterruptedException ex)
+        {
+          Thread.currentThread ().interrupt ();
+        }
+      }
+    };
+    try
+    {
+      final AtomicReference <ESuccess> aCloneResult = new AtomicReference <ESuccess> ();
+      final Thread aCloner = new Thread (new Runnable ()
+      {
+        public void run ()
+        {
+          aCloneResult.set (aRegistry.cloneInto ("3.0", aBlockingInit, aTarget));
+        }
+      });
+      aCloner.start ();
+      assertTrue (aInitStarted.await (10, TimeUnit.SECONDS));
+
+      final AtomicReference <EChange> aRemoveResult = new AtomicReference <EChange> ();
+      final Thread aRemover = new Thread (new Runnable ()
+      {
+        public void run ()
+        {
+          aRemoveResult.set (aRegistry.removeSnapshot ("3.0"));
+        }
+      });
+      aRemover.start ();
+      // Blocked while the clone is running
+      aRemover.join (200);
+      assertTrue (aRemover.isAlive ());
+
+      aInitRelease.countDown ();
+      aCloner.join ();
+      aRemover.join ();
+      assertEquals (ESuccess.SUCCESS, aCloneResult.get ());
+      assertEquals (500, new DBExecutor (aTarget).queryCount ("SELECT COUNT(*) FROM t"));
+      assertEquals (EChange.CHANGED, aRemoveResult.get ());
+      assertFalse (aRegistry.containsSnapshot ("3.0"));
+    }
+    finally
+    {
+      aInitRelease.countDown ();
+      aTarget.close ();
+      DeleteDbFiles.execute ("./target/h2snapshot/clones2", null, true);
+      DeleteDbFiles.execute ("./target/h2snapshot/templates2", null, true);
+    }
+  }
+}
@@ -0,0 +1,170 @@
+/**
+ * Copyright (C) 2006-2015 phloc systems
+ * http://www.phloc.com
+ * office[at]phloc[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.phloc.db.jdbc.id;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+
+import com.phloc.commons.state.ESuccess;
+import com.phloc.db.jdbc.EDatabaseDialect;
+import com.phloc.db.jdbc.executor.DBExecutor;
+import com.phloc.db.jdbc.h2.H2MemConnector;
+
+/**
+ * Test class for class {@link HiLoIDGenerator}.
+ * 
+ * @author Philip Helger
+ */
+public final class HiLoIDGeneratorTest
+{
+  @Test
+  public void testCounterTable () throws InterruptedException
+  {
+    final H2MemConnector aConnector = new H2MemConnector ("hilotest", "sa", "");
+    try
+    {
+      final DBExecutor aExecutor = new DBExecutor (aConnector);
+      assertEquals (ESuccess.SUCCESS,
+                    aExecutor.executeStatement ("CREATE TABLE id_counter (name VARCHAR(100) PRIMARY KEY, next_id BIGINT NOT NULL)"));
+
+      // Two generators sharing the same counter simulate two processes
+      final HiLoIDGenerator aGen1 = new HiLoIDGenerator (new CounterTableIDBlockSource (aExecutor, "t"), 10);
+      final HiLoIDGenerator aGen2 = new HiLoIDGenerator (new CounterTableIDBlockSource (aExecutor, "t"), 10);
+      final Set <Long> aIDs = Collections.synchronizedSet (new HashSet <Long> ());
+      final List <Thread> aThreads = new ArrayList <Thread> ();
+      for (int i = 0; i < 8; ++i)
+      {
+        final HiLoIDGenerator aGen = (i % 2) == 0 ? aGen1 : aGen2;
+        aThreads.add (new Thread (new Runnable ()
+        {
+          public void run ()
+          {
+            for (int j = 0; j < 250; ++j)
+              aIDs.add (Long.valueOf (aGen.getNextID ()));
+          }
+        }));
+      }
+      for (final Thread aThread : aThreads)
+        aThread.start ();
+      for (final Thread aThread : aThreads)
+        aThread.join ();
+
+      // All IDs must be unique
+      assertEquals (2000, aIDs.size ());
+      assertEquals (200, aGen1.getReservedBlockCount () + aGen2.getReservedBlockCount ());
+      assertEquals (2001, aExecutor.queryCount ("SELECT next_id FROM id_counter WHERE name='t'"));
+    }
+    finally
+    {
+      aConnector.close ();
+    }
+  }
+
+  @Test
+  public void testSequence ()
+  {
+    final H2MemConnector aConnector = new H2MemConnector ("hiloseqtest", "sa", "");
+    try
+    {
+      final DBExecutor aExecutor = new DBExecutor (aConnector);
+      assertEquals (ESuccess.SUCCESS, aExecutor.executeStatement ("CREATE SEQUENCE seq START WITH 1 INCREMENT BY 20"));
+
+      final HiLoIDGenerator aGen = new HiLoIDGenerator (new SequenceIDBlockSource (aExecutor,
+                                                                                   "seq",
+                                                                                   EDatabaseDialect.H2), 20);
+      for (int i = 1; i <= 45; ++i)
+        assertEquals (i, aGen.getNextID ());
+      assertEquals (3, aGen.getReservedBlockCount ());
+    }
+    finally
+    {
+      aConnector.close ();
+    }
+  }
+
+  @Test
+  public void testSequenceIncrementMismatch ()
+  {
+    final H2MemConnector aConnector = new H2MemConnector ("hiloseqmismatchtest", "sa", "");
+    try
+    {
+      final DBExecutor aExecutor = new DBExecutor (aConnector);
+      // Increment 1 - each value is not the start of a block of 50
+      assertEquals (ESuccess.SUCCESS, aExecutor.executeStatement ("CREATE SEQUENCE plainseq"));
+
+      final HiLoIDGenerator aGen1 = new HiLoIDGenerator (new SequenceIDBlockSource (aExecutor, "plainseq"), 50);
+      final HiLoIDGenerator aGen2 = new HiLoIDGenerator (new SequenceIDBlockSource (aExecutor, "PUBLIC.plainseq"), 50);
+      for (final HiLoIDGenerator aGen : new HiLoIDGenerator [] { aGen1, aGen2 })
+        try
+        {
+          aGen.getNextID ();
+          fail ();
+        }
+        catch (final IllegalStateException ex)
+        {
+          assertTrue (ex.getMessage (), ex.getMessage ().contains ("INCREMENT BY 50"));
+        }
+      assertEquals (0, aGen1.getReservedBlockCount ());
+
+      // A matching block size works
+      final HiLoIDGenerator aGen3 = new HiLoIDGenerator (new SequenceIDBlockSource (aExecutor, "plainseq"), 1);
+      assertEquals (1, aGen3.getNextID ());
+      assertEquals (2, aGen3.getNextID ());
+    }
+    finally
+    {
+      aConnector.close ();
+    }
+  }
+
+  @Test
+  public void testManager ()
+  {
+    final H2MemConnector aConnector = new H2MemConnector ("hilomgrtest", "sa", "");
+    try
+    {
+      final DBExecutor aExecutor = new DBExecutor (aConnector);
+      assertEquals (ESuccess.SUCCESS,
+                    aExecutor.executeStatement ("CREATE TABLE id_counter (name VARCHAR(100) PRIMARY KEY, next_id BIGINT NOT NULL)"));
+      assertEquals (ESuccess.SUCCESS, aExecutor.executeStatement ("CREATE SEQUENCE seq START WITH 1000 INCREMENT BY 5"));
+
+      final IDGeneratorManager aMgr = new IDGeneratorManager (aExecutor);
+      assertTrue (aMgr.registerTable ("b", new SequenceIDBlockSource (aExecutor, "seq"), 5).isChanged ());
+      assertTrue (aMgr.registerTable ("b", new SequenceIDBlockSource (aExecutor, "seq"), 5).isUnchanged ());
+
+      assertEquals (1, aMgr.getNextID ("a"));
+      assertEquals (2, aMgr.getNextID ("a"));
+      assertEquals (1000, aMgr.getNextID ("b"));
+      assertEquals (1001, aMgr.getNextID ("b"));
+      assertEquals (2, aMgr.getAllGenerators ().size ());
+    }
+    finally
+    {
+      aConnector.close ();
+    }
+  }
+}
@@ -0,0 +1,74 @@
+/**
+ * Copyright (C) 2006-2015 phloc systems
+ * http://www.phloc.com
+ * office[at]phloc[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.phloc.db.jdbc.mysql;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.sql.SQLException;
+import java.util.Properties;
+
+import org.junit.Test;
+
+import com.mysql.jdbc.NonRegisteringDriver;
+import com.phloc.db.jdbc.EDatabaseDialect;
+
+/**
+ * Test class for class {@link AbstractMySQLConnector}.
+ * 
+ * @author Philip Helger
+ */
+public final class AbstractMySQLConnectorTest
+{
+  private static final class MockMySQLConnector extends AbstractMySQLConnector
+  {
+    @Override
+    protected String getUserName ()
+    {
+      return "user";
+    }
+
+    @Override
+    protected String getPassword ()
+    {
+      return "password";
+    }
+
+    @Override
+    protected String getDatabase ()
+    {
+      return "//localhost:3306/test";
+    }
+  }
+
+  @Test
+  public void testFetchSize () throws SQLException
+  {
+    final MockMySQLConnector aConnector = new MockMySQLConnector ();
+    final String sURL = aConnector.getConnectionUrl ();
+    assertEquals ("jdbc:mysql://localhost:3306/test?useCursorFetch=true", sURL);
+    assertEquals (EDatabaseDialect.MYSQL, aConnector.getDialect ());
+    assertTrue (aConnector.getDialect ().getDefaultFetchSize () > 0);
+
+    // The fetch size is only used by Connector/J with cursor fetching
+    final Properties aProps = new NonRegisteringDriver ().parseURL (sURL, null);
+    assertNotNull (aProps);
+    assertEquals ("true", aProps.getProperty ("useCursorFetch"));
+  }
+}
@@ -0,0 +1,142 @@
+/**
+ * Copyright (C) 2006-2015 phloc systems
+ * http://www.phloc.com
+ * office[at]phloc[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.phloc.db.jdbc.pipeline;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.phloc.commons.callback.INonThrowingRunnableWithParameter;
+import com.phloc.commons.convert.IUnidirectionalConverter;
+import com.phloc.commons.filter.IFilter;
+import com.phloc.commons.state.ESuccess;
+import com.phloc.db.jdbc.callback.ConstantPreparedStatementDataProvider;
+import com.phloc.db.jdbc.callback.IPreparedStatementDataProvider;
+import com.phloc.db.jdbc.executor.DBExecutor;
+import com.phloc.db.jdbc.executor.DBMultiRowInsert;
+import com.phloc.db.jdbc.executor.DBResultRow;
+import com.phloc.db.jdbc.h2.H2MemConnector;
+
+/**
+ * Test class for class {@link DBRowPipeline}.
+ * 
+ * @author Philip Helger
+ */
+public final class DBRowPipelineTest
+{
+  private static final IUnidirectionalConverter <DBResultRow, String> CATEGORY = new IUnidirectionalConverter <DBResultRow, String> ()
+  {
+    public String convert (final DBResultRow aRow)
+    {
+      return aRow.getAsString (1);
+    }
+  };
+
+  private static final IDoubleExtractor <DBResultRow> AMOUNT = new IDoubleExtractor <DBResultRow> ()
+  {
+    public double extract (final DBResultRow aRow)
+    {
+      return aRow.getAsInt (2);
+    }
+  };
+
+  @Test
+  public void testPipeline ()
+  {
+    final H2MemConnector aConnector = new H2MemConnector ("pipelinetest", "sa", "");
+    try
+    {
+      final DBExecutor aExecutor = new DBExecutor (aConnector);
+      assertEquals (ESuccess.SUCCESS, aExecutor.executeStatement ("CREATE TABLE t (id INT, cat VARCHAR(10), amount INT)"));
+      final List <IPreparedStatementDataProvider> aRows = new ArrayList <IPreparedStatementDataProvider> ();
+      for (int i = 0; i < 1000; ++i)
+        aRows.add (new ConstantPreparedStatementDataProvider (Integer.valueOf (i), "c" + (i % 3), Integer.valueOf (i)));
+      assertEquals (1000, aExecutor.insertMultiRow (new DBMultiRowInsert ("t", "id", "cat", "amount"), aRows));
+
+      // Group by category for all even amounts
+      final DBGroupBy <DBResultRow, String> aGroupBy = new DBGroupBy <DBResultRow, String> (CATEGORY, AMOUNT);
+      final IFilter <DBResultRow> aEvenFilter = new IFilter <DBResultRow> ()
+      {
+        public boolean matchesFilter (final DBResultRow aRow)
+        {
+          return aRow.getAsInt (2) % 2 == 0;
+        }
+      };
+      assertEquals (ESuccess.SUCCESS,
+                    aExecutor.queryAll ("SELECT * FROM t", DBRowPipeline.create ().filter (aEvenFilter).into (aGroupBy)));
+      assertEquals (3, aGroupBy.getGroupCount ());
+      final DBAggregate aC0 = aGroupBy.getGroup ("c0");
+      // 0, 6, 12, ..., 996
+      assertEquals (167, aC0.getCount ());
+      assertEquals (0, aC0.getMin (), 0);
+      assertEquals (996, aC0.getMax (), 0);
+      assertEquals (83166, aC0.getSum (), 0);
+
+      // Distinct categories
+      final List <String> aDistinct = new ArrayList <String> ();
+      final INonThrowingRunnableWithParameter <String> aCollector = new INonThrowingRunnableWithParameter <String> ()
+      {
+        public void run (final String sCategory)
+        {
+          aDistinct.add (sCategory);
+        }
+      };
+      aExecutor.queryAll ("SELECT * FROM t ORDER BY id", DBRowPipeline.create ().map (CATEGORY).distinct ().into (aCollector));
+      assertEquals ("[c0, c1, c2]", aDistinct.toString ());
+
+      // Distinct raw rows - the row object is reused, so it must be compared
+      // by its values
+      final List <String> aDistinctRows = new ArrayList <String> ();
+      assertEquals (ESuccess.SUCCESS,
+                    aExecutor.queryAll ("SELECT cat, MOD(amount, 2) FROM t ORDER BY id",
+                                        DBRowPipeline.create ()
+                                                     .distinct ()
+                                                     .into (new INonThrowingRunnableWithParameter <DBResultRow> ()
+                                                     {
+                                                       public void run (final DBResultRow aRow)
+                                                       {
+                                                         aDistinctRows.add (aRow.getAsString (0) + aRow.getAsInt (1));
+                                                       }
+                                                     })));
+      assertEquals ("[c00, c11, c20, c01, c10, c21]", aDistinctRows.toString ());
+
+      // Top 3 rows by amount
+      final DBTopN <DBResultRow> aTopN = new DBTopN <DBResultRow> (3, new Comparator <DBResultRow> ()
+      {
+        public int compare (final DBResultRow aRow1, final DBResultRow aRow2)
+        {
+          return aRow1.getAsInt (2) - aRow2.getAsInt (2);
+        }
+      });
+      aExecutor.queryAll ("SELECT * FROM t", DBRowPipeline.create ().into (aTopN));
+      final List <DBResultRow> aTop = aTopN.getResult ();
+      assertEquals (3, aTop.size ());
+      assertEquals (999, aTop.get (0).getAsInt (2));
+      assertEquals (998, aTop.get (1).getAsInt (2));
+      assertEquals (997, aTop.get (2).getAsInt (2));
+    }
+    finally
+    {
+      aConnector.close ();
+    }
+  }
+}
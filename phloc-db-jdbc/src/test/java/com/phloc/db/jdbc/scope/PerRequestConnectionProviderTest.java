@@ -0,0 +1,177 @@
+/**
+ * Copyright (C) 2006-2015 phloc systems
+ * http://www.phloc.com
+ * office[at]phloc[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.phloc.db.jdbc.scope;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.annotation.Nonnull;
+
+import org.junit.Test;
+
+import com.phloc.commons.annotations.UsedViaReflection;
+import com.phloc.commons.state.ESuccess;
+import com.phloc.db.jdbc.executor.DBExecutor;
+import com.phloc.db.jdbc.h2.H2MemConnector;
+import com.phloc.scopes.mgr.ScopeManager;
+
+/**
+ * Test class for class {@link PerRequestConnectionProvider} and
+ * {@link AbstractPerRequestConnection}.
+ * 
+ * @author Philip Helger
+ */
+public final class PerRequestConnectionProviderTest
+{
+  private static H2MemConnector s_aConnector;
+  // Calls to the connections created by MockPerRequestConnection
+  private static final List <String> s_aCalls = new ArrayList <String> ();
+
+  public static final class MockPerRequestConnection extends AbstractPerRequestConnection
+  {
+    @Deprecated
+    @UsedViaReflection
+    public MockPerRequestConnection ()
+    {}
+
+    @Override
+    @Nonnull
+    protected Connection createConnection ()
+    {
+      s_aCalls.add ("create");
+      try
+      {
+        final Connection aConnection = s_aConnector.getDataSource ().getConnection ();
+        return (Connection) Proxy.newProxyInstance (Connection.class.getClassLoader (),
+                                                    new Class <?> [] { Connection.class },
+                                                    new InvocationHandler ()
+                                                    {
+                                                      public Object invoke (final Object aProxy,
+                                                                            final Method aMethod,
+                                                                            final Object [] aArgs) throws Throwable
+                                                      {
+                                                        if (aMethod.getName ().equals ("rollback") ||
+                                                            aMethod.getName ().equals ("close"))
+                                                          s_aCalls.add (aMethod.getName ());
+                                                        try
+                                                        {
+                                                          return aMethod.invoke (aConnection, aArgs);
+                                                        }
+                                                        catch (final InvocationTargetException ex)
+                                                        {
+                                                          throw ex.getCause ();
+                                                        }
+                                                      }
+                                                    });
+      }
+      catch (final SQLException ex)
+      {
+        throw new IllegalStateException ("Failed to get connection", ex);
+      }
+    }
+  }
+
+  private static void _insertUncommitted (@Nonnull final Connection aConnection) throws SQLException
+  {
+    final Statement aStatement = aConnection.createStatement ();
+    try
+    {
+      aStatement.executeUpdate ("INSERT INTO t VALUES (2)");
+    }
+    finally
+    {
+      aStatement.close ();
+    }
+  }
+
+  @Test
+  public void testOneConnectionPerRequest () throws SQLException
+  {
+    s_aConnector = new H2MemConnector ("perrequesttest", "sa", "");
+    s_aCalls.clear ();
+    ScopeManager.onGlobalBegin ("perrequesttest");
+    try
+    {
+      final PerRequestConnectionProvider aProvider = new PerRequestConnectionProvider (MockPerRequestConnection.class);
+      final DBExecutor aExecutor = new DBExecutor (aProvider);
+
+      // Not usable outside of a request scope
+      try
+      {
+        aProvider.getConnection ();
+        fail ();
+      }
+      catch (final IllegalStateException ex)
+      {
+        // expected
+      }
+
+      ScopeManager.onRequestBegin ("app", "request1", "session1");
+      try
+      {
+        // All executor calls share the connection of the request
+        assertEquals (ESuccess.SUCCESS, aExecutor.executeStatement ("CREATE TABLE t (id INT PRIMARY KEY)"));
+        assertEquals (ESuccess.SUCCESS, aExecutor.executeStatement ("INSERT INTO t VALUES (1)"));
+        assertEquals (1, aExecutor.queryCount ("SELECT COUNT(*) FROM t"));
+        assertSame (aProvider.getConnection (), aProvider.getConnection ());
+        assertEquals (Arrays.asList ("create"), s_aCalls);
+
+        // Pending changes at the end of the request
+        _insertUncommitted (aProvider.getConnection ());
+      }
+      finally
+      {
+        ScopeManager.onRequestEnd ();
+      }
+      // Rolled back and returned to the pool
+      assertEquals (Arrays.asList ("create", "rollback", "close"), s_aCalls);
+
+      // A new connection for the next request
+      ScopeManager.onRequestBegin ("app", "request2", "session1");
+      try
+      {
+        assertEquals (1, aExecutor.queryCount ("SELECT COUNT(*) FROM t"));
+        assertEquals ("create", s_aCalls.get (3));
+      }
+      finally
+      {
+        ScopeManager.onRequestEnd ();
+      }
+      assertEquals (6, s_aCalls.size ());
+    }
+    finally
+    {
+      ScopeManager.onGlobalEnd ();
+      s_aConnector.close ();
+      s_aConnector = null;
+    }
+  }
+}
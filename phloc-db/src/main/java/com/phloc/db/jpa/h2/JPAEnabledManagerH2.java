@@ -17,6 +17,12 @@
  */
 package com.phloc.db.jpa.h2;
 
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+import javax.annotation.Nonnegative;
 import javax.annotation.Nonnull;
 import javax.annotation.concurrent.ThreadSafe;
 
@@ -24,10 +30,16 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.phloc.commons.annotations.Nonempty;
+import com.phloc.commons.stats.IStatisticsHandlerKeyedTimer;
+import com.phloc.commons.stats.StatisticsManager;
+import com.phloc.commons.timing.StopWatch;
 import com.phloc.db.api.h2.EH2LockMode;
 import com.phloc.db.api.h2.EH2Log;
+import com.phloc.db.api.h2.H2BulkLoadMode;
+import com.phloc.db.api.sql.SQLNormalizer;
 import com.phloc.db.jpa.IEntityManagerProvider;
 import com.phloc.db.jpa.JPAEnabledManager;
+import com.phloc.db.jpa.JPAExecutionResult;
 
 /**
  * Special H2 version of {@link JPAEnabledManager}
@@ -38,6 +50,8 @@ import com.phloc.db.jpa.JPAEnabledManager;
 public class JPAEnabledManagerH2 extends JPAEnabledManager
 {
   private static final Logger s_aLogger = LoggerFactory.getLogger (JPAEnabledManager.class);
+  private static final IStatisticsHandlerKeyedTimer s_aStatsTimerNative = StatisticsManager.getKeyedTimerHandler (JPAEnabledManagerH2.class.getName () +
+                                                                                                                  "$native");
 
   public JPAEnabledManagerH2 (@Nonnull final IEntityManagerProvider aEntityManagerProvider)
   {
@@ -51,14 +65,23 @@ public class JPAEnabledManagerH2 extends JPAEnabledManager
                                                        .setParameter ("tablename", sTableName)).intValue () > 0;
   }
 
-  private void _executeH2Native (@Nonnull @Nonempty final String sNativeSQL)
+  private void _runH2Native (@Nonnull @Nonempty final String sNativeSQL)
+  {
+    s_aLogger.info ("Running H2 native command: " + sNativeSQL);
+    final StopWatch aSW = new StopWatch (true);
+    getEntityManager ().createNativeQuery (sNativeSQL).executeUpdate ();
+    // Key by the normalized SQL, as the commands contain inlined values
+    s_aStatsTimerNative.addTime (SQLNormalizer.getNormalized (sNativeSQL), aSW.stopAndGetMillis ());
+  }
+
+  @Nonnull
+  private JPAExecutionResult <?> _executeH2Native (@Nonnull @Nonempty final String sNativeSQL)
   {
-    doInTransaction (new Runnable ()
+    return doInTransaction (new Runnable ()
     {
       public void run ()
       {
-        s_aLogger.info ("Running H2 native command: " + sNativeSQL);
-        getEntityManager ().createNativeQuery (sNativeSQL).executeUpdate ();
+        _runH2Native (sNativeSQL);
       }
     });
   }
@@ -82,4 +105,90 @@ public class JPAEnabledManagerH2 extends JPAEnabledManager
   {
     _executeH2Native ("SET UNDO_LOG=" + (bEnabled ? "1" : "0"));
   }
+
+  /**
+   * Run a bulk import with the default bulk load cache size.
+   * 
+   * @param aCallable
+   *        The callable performing the import. May not be <code>null</code>.
+   * @return The result of the import. Never <code>null</code>.
+   * @see #doInBulkLoadMode(Callable, long)
+   */
+  @Nonnull
+  public final <T> JPAExecutionResult <T> doInBulkLoadMode (@Nonnull final Callable <T> aCallable)
+  {
+    return doInBulkLoadMode (aCallable, H2BulkLoadMode.DEFAULT_CACHE_SIZE_KB);
+  }
+
+  /**
+   * Run a bulk import in a transaction with the transaction log, the undo log
+   * and locking disabled and an enlarged cache. The current settings are
+   * recorded before and restored afterwards, followed by "ANALYZE" - even if
+   * the import fails. As locking is disabled, no other operations should run
+   * on the database in the meantime.<br>
+   * The undo log setting is per session, so the settings are changed, the
+   * import is performed and the settings are restored within a single
+   * transaction and therefore on a single connection. The callable must use
+   * the entity manager of this object. Without the undo log a failed import
+   * cannot be rolled back completely.
+   * 
+   * @param aCallable
+   *        The callable performing the import. May not be <code>null</code>.
+   * @param nCacheSizeKB
+   *        The cache size in KB to use during the import. Must be &gt; 0.
+   * @return The result of the import. Never <code>null</code>.
+   */
+  @Nonnull
+  public final <T> JPAExecutionResult <T> doInBulkLoadMode (@Nonnull final Callable <T> aCallable,
+                                                            @Nonnegative final long nCacheSizeKB)
+  {
+    if (aCallable == null)
+      throw new NullPointerException ("callable");
+    if (nCacheSizeKB <= 0)
+      throw new IllegalArgumentException ("CacheSizeKB must be > 0: " + nCacheSizeKB);
+
+    // Record the current settings
+    final JPAExecutionResult <List <?>> aSettingsResult = doSelect (new Callable <List <?>> ()
+    {
+      public List <?> call ()
+      {
+        return getEntityManager ().createNativeQuery (H2BulkLoadMode.SQL_READ_SETTINGS).getResultList ();
+      }
+    });
+    if (aSettingsResult.isFailure ())
+      return JPAExecutionResult.createFailure (aSettingsResult.getThrowable ());
+    final Map <String, String> aSettings = new HashMap <String, String> ();
+    for (final Object aRow : aSettingsResult.get ())
+    {
+      final Object [] aColumns = (Object []) aRow;
+      aSettings.put (String.valueOf (aColumns[0]), aColumns[1] == null ? null : aColumns[1].toString ());
+    }
+    final H2BulkLoadMode aMode = new H2BulkLoadMode (aSettings, nCacheSizeKB);
+
+    // The first native update binds the connection to the transaction
+    return doInTransaction (new Callable <T> ()
+    {
+      public T call () throws Exception
+      {
+        try
+        {
+          for (final String sSQL : aMode.getAllEnableStatements ())
+            _runH2Native (sSQL);
+          return aCallable.call ();
+        }
+        finally
+        {
+          for (final String sSQL : aMode.getAllRestoreStatements ())
+            try
+            {
+              _runH2Native (sSQL);
+            }
+            catch (final RuntimeException ex)
+            {
+              s_aLogger.error ("Failed to execute '" + sSQL + "' after bulk load", ex);
+            }
+        }
+      }
+    });
+  }
 }
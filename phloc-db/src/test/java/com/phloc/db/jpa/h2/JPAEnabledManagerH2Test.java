@@ -0,0 +1,117 @@
+/**
+ * Copyright (C) 2006-2015 phloc systems
+ * http://www.phloc.com
+ * office[at]phloc[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.phloc.db.jpa.h2;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+import javax.annotation.Nonnull;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+
+import org.eclipse.persistence.config.PersistenceUnitProperties;
+import org.eclipse.persistence.internal.sessions.UnitOfWorkImpl;
+import org.eclipse.persistence.platform.database.H2Platform;
+import org.h2.Driver;
+import org.junit.Test;
+
+import com.phloc.db.api.h2.EH2LockMode;
+import com.phloc.db.jpa.IEntityManagerProvider;
+import com.phloc.db.jpa.JPAExecutionResult;
+
+/**
+ * Test class for class {@link JPAEnabledManagerH2}.
+ * 
+ * @author Philip Helger
+ */
+public final class JPAEnabledManagerH2Test
+{
+  private static int _queryInt (@Nonnull final EntityManager aEntityMgr, @Nonnull final String sSQL)
+  {
+    return ((Number) aEntityMgr.createNativeQuery (sSQL).getSingleResult ()).intValue ();
+  }
+
+  @Test
+  public void testDoInBulkLoadMode ()
+  {
+    final Map <String, Object> aProps = new HashMap <String, Object> ();
+    aProps.put (PersistenceUnitProperties.JDBC_DRIVER, Driver.class.getName ());
+    aProps.put (PersistenceUnitProperties.JDBC_URL, "jdbc:h2:mem:jpabulkloadtest;DB_CLOSE_DELAY=-1");
+    aProps.put (PersistenceUnitProperties.JDBC_USER, "sa");
+    aProps.put (PersistenceUnitProperties.JDBC_PASSWORD, "");
+    aProps.put (PersistenceUnitProperties.TARGET_DATABASE, H2Platform.class.getName ());
+    final EntityManagerFactory aEMF = Persistence.createEntityManagerFactory ("phloc-db-test", aProps);
+    final EntityManager aEntityMgr = aEMF.createEntityManager ();
+    try
+    {
+      final JPAEnabledManagerH2 aMgr = new JPAEnabledManagerH2 (new IEntityManagerProvider ()
+      {
+        @Nonnull
+        public EntityManager getEntityManager ()
+        {
+          return aEntityMgr;
+        }
+      });
+      assertTrue (aMgr.doInTransaction (new Runnable ()
+      {
+        public void run ()
+        {
+          aEntityMgr.createNativeQuery ("CREATE TABLE t (id INT PRIMARY KEY)").executeUpdate ();
+        }
+      }).isSuccess ());
+
+      final JPAExecutionResult <Integer> aResult = aMgr.doInBulkLoadMode (new Callable <Integer> ()
+      {
+        public Integer call ()
+        {
+          // The settings were changed in the same transaction, so the
+          // connection of the import is already bound
+          assertTrue (aEntityMgr.unwrap (UnitOfWorkImpl.class).wasTransactionBegunPrematurely ());
+          assertEquals (EH2LockMode.READ_UNCOMMITED.getValue (), _queryInt (aEntityMgr, "SELECT LOCK_MODE()"));
+          return Integer.valueOf (aEntityMgr.createNativeQuery ("INSERT INTO t SELECT X FROM SYSTEM_RANGE(1, 100)")
+                                            .executeUpdate ());
+        }
+      });
+      assertTrue (aResult.isSuccess ());
+      assertEquals (100, aResult.get ().intValue ());
+      assertEquals (100, _queryInt (aEntityMgr, "SELECT COUNT(*) FROM t"));
+      assertEquals (EH2LockMode.DEFAULT.getValue (), _queryInt (aEntityMgr, "SELECT LOCK_MODE()"));
+
+      // The settings are restored if the import fails
+      final JPAExecutionResult <Integer> aFailure = aMgr.doInBulkLoadMode (new Callable <Integer> ()
+      {
+        public Integer call ()
+        {
+          throw new IllegalStateException ("Import failed");
+        }
+      });
+      assertTrue (aFailure.isFailure ());
+      assertEquals (EH2LockMode.DEFAULT.getValue (), _queryInt (aEntityMgr, "SELECT LOCK_MODE()"));
+    }
+    finally
+    {
+      aEntityMgr.close ();
+      aEMF.close ();
+    }
+  }
+}